@@ -2,6 +2,7 @@ plugins {
     java
     id("org.springframework.boot") version "3.1.5"
     id("io.spring.dependency-management") version "1.1.3"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "ru.webkonditer"
@@ -26,17 +27,47 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-security")
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.2.0")
+    implementation("org.hibernate.orm:hibernate-jcache")
+    implementation("com.github.ben-manes.caffeine:jcache")
     compileOnly("org.projectlombok:lombok")
-    runtimeOnly("org.postgresql:postgresql")
+    implementation("org.postgresql:postgresql")
     annotationProcessor("org.projectlombok:lombok")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("org.springframework.security:spring-security-test")
+    testRuntimeOnly("com.h2database:h2")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
 }
 
+// Бенчмарки GPS обработки (src/jmh): ./gradlew jmh, отдельные бенчмарки - ./gradlew jmh -PjmhIncludes=Geofence
+jmh {
+    jmhVersion.set("1.37")
+    includes.set(listOf(project.findProperty("jmhIncludes")?.toString() ?: ".*"))
+    // Пропускная способность и перцентили задержки задаются в самих бенчмарках, здесь - расход памяти
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+    jvmArgsAppend.add("-Dgps.bench.dir=${layout.buildDirectory.dir("jmh-logs").get().asFile}")
+}
+
+// Нагрузочный прогон приема GPS данных (src/loadtest) против запущенного приложения:
+// ./gradlew gpsReplay -PreplayArgs="--mode=stream --cars=100 --speedup=60"
+sourceSets {
+    create("loadtest") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+tasks.register<JavaExec>("gpsReplay") {
+    description = "Replays generated NMEA logs from many simulated cars against a running application"
+    classpath = sourceSets["loadtest"].runtimeClasspath
+    mainClass.set("ru.webkonditer.samarafleet.loadtest.GpsReplayer")
+    args = (project.findProperty("replayArgs")?.toString() ?: "").split(" ").filter { it.isNotBlank() }
+}
+
 tasks.bootBuildImage {
     builder.set("paketobuildpacks/builder-jammy-base:latest")
 }
@@ -0,0 +1,70 @@
+package ru.webkonditer.samarafleet.service;
+
+import ru.webkonditer.samarafleet.service.gps.NmeaLogGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * GPS логи для бенчмарков из {@link NmeaLogGenerator}: раз в секунду $GPGGA и $GNVTG, раз в минуту $GNZDA,
+ * как у реального трекера; машина едет с меняющейся скоростью, стоит на светофорах, изредка теряет спутники.
+ * Логи кэшируются в каталоге gps.bench.dir (по умолчанию build/jmh-logs), чтобы 500 МБ не генерировать
+ * на каждый запуск.
+ */
+final class BenchmarkLogs {
+
+    private BenchmarkLogs() {
+    }
+
+    /**
+     * Возвращает путь к логу заданного размера, при необходимости генерируя его.
+     *
+     * @param sizeMb Размер лога в мегабайтах.
+     * @return Путь к файлу лога.
+     */
+    static Path log(int sizeMb) {
+        Path directory = Paths.get(System.getProperty("gps.bench.dir", "build/jmh-logs"));
+        Path file = directory.resolve("gps-" + sizeMb + "mb.nmea");
+        try {
+            if (!Files.exists(file)) {
+                Files.createDirectories(directory);
+                Path tempFile = Files.createTempFile(directory, "gps-", ".tmp");
+                try (OutputStream out = Files.newOutputStream(tempFile)) {
+                    new NmeaLogGenerator(sizeMb).write(out, sizeMb * 1024L * 1024L);
+                }
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Строки для разбора по отдельности: реальные $GPGGA и $GNVTG из сгенерированного лога.
+     *
+     * @param count Число строк каждого вида.
+     * @return Массив из двух массивов: строки $GPGGA и строки $GNVTG.
+     */
+    static String[][] sentences(int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new NmeaLogGenerator(1).write(out, count * 160L);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String log = out.toString(StandardCharsets.US_ASCII);
+        String[] gga = log.lines().filter(line -> line.startsWith("$GPGGA") && !line.contains(",,N"))
+                .limit(count).toArray(String[]::new);
+        String[] vtg = log.lines().filter(line -> line.startsWith("$GNVTG"))
+                .limit(count).toArray(String[]::new);
+        return new String[][]{gga, vtg};
+    }
+}
@@ -0,0 +1,65 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор отдельных строк и расчет одного отрезка: {@code parseGPGGA}, {@code extractSpeedFromGNVTG},
+ * {@code calculateDistance}. Строки берутся по кругу из сгенерированного лога, чтобы ветвления
+ * не выучивались на одной строке.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GpsLogParsingBenchmark {
+
+    private static final int SENTENCES = 1024;
+
+    private GpsLogService service;
+    private String[] gga;
+    private String[] vtg;
+    private GpsLogService.GPGGAPoint[] points;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        service = new GpsLogService(1, DataSize.ofMegabytes(4), 5, Duration.ofMinutes(5), 0, Duration.ofHours(1));
+        String[][] sentences = BenchmarkLogs.sentences(SENTENCES);
+        gga = sentences[0];
+        vtg = sentences[1];
+        points = new GpsLogService.GPGGAPoint[gga.length];
+        for (int i = 0; i < gga.length; i++) {
+            points[i] = GpsLogService.parseGPGGA(gga[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public GpsLogService.GPGGAPoint parseGPGGA() {
+        index = (index + 1) & (SENTENCES - 1);
+        return GpsLogService.parseGPGGA(gga[index % gga.length]);
+    }
+
+    @Benchmark
+    public int extractSpeedFromGNVTG() {
+        index = (index + 1) & (SENTENCES - 1);
+        return service.extractSpeedFromGNVTG(vtg[index % vtg.length]);
+    }
+
+    @Benchmark
+    public double calculateDistance() {
+        index = (index + 1) & (SENTENCES - 1);
+        int i = index % (points.length - 1);
+        return service.calculateDistance(points[i], points[i + 1]);
+    }
+}
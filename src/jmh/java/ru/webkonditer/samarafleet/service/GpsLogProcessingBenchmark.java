@@ -0,0 +1,54 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка GPS лога целиком на логах 1, 50 и 500 МБ: потоковый {@code processGpsLog} и путь загрузки
+ * файла, который для больших логов разбирает участки параллельно. Кэш результатов отключен, чтобы каждый
+ * вызов действительно разбирал лог.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class GpsLogProcessingBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int sizeMb;
+
+    private GpsLogService service;
+    private Path log;
+
+    @Setup
+    public void setUp() {
+        service = new GpsLogService(0, DataSize.ofMegabytes(4), 5, Duration.ofMinutes(5), 0, Duration.ofHours(1));
+        log = BenchmarkLogs.log(sizeMb);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public String processGpsLog() throws IOException {
+        try (InputStream inputStream = Files.newInputStream(log)) {
+            return service.processGpsLog(inputStream);
+        }
+    }
+
+    @Benchmark
+    public double processGpsLogFile() throws IOException {
+        return service.calculateTotalDistance(log);
+    }
+}
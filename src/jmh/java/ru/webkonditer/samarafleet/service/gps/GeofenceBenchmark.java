@@ -0,0 +1,102 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость проверки точки по геозонам: дилеры с геозонами в районе 2x2 градуса, точки треков автомобилей,
+ * переходящих из геозоны в геозону. Для сравнения - та же проверка перебором всех геозон дилера без сетки.
+ * Результат - время на одну точку.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeofenceBenchmark {
+
+    private static final int FIXES = 100_000;
+
+    /**
+     * Число дилеров и число геозон у дилера.
+     */
+    @Param({"1000x20", "100x200", "10x2000"})
+    public String layout;
+
+    private int fencesPerDealer;
+    private List<GeofenceIndex.Polygon> polygons;
+    private GeofenceTracker[] trackers;
+    private int[] dealers;
+    private double[] latitudes;
+    private double[] longitudes;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        int dealerCount = Integer.parseInt(layout.substring(0, layout.indexOf('x')));
+        fencesPerDealer = Integer.parseInt(layout.substring(layout.indexOf('x') + 1));
+        Random random = new Random(1);
+        polygons = new ArrayList<>();
+        long id = 1;
+        for (long dealerId = 1; dealerId <= dealerCount; dealerId++) {
+            for (int i = 0; i < fencesPerDealer; i++) {
+                double latitude = 52 + random.nextDouble() * 2;
+                double longitude = 49 + random.nextDouble() * 2;
+                double size = 0.005 + random.nextDouble() * 0.05;
+                polygons.add(new GeofenceIndex.Polygon(id++, dealerId,
+                        new double[]{latitude, latitude, latitude + size, latitude + size * 1.5, latitude + size},
+                        new double[]{longitude, longitude + size, longitude + size, longitude + size / 2, longitude}));
+            }
+        }
+        GeofenceIndex index = GeofenceIndex.build(polygons, 0.01);
+
+        // Случайное блуждание с шагом около 30 м, как при точке в секунду на скорости 100 км/ч
+        dealers = new int[FIXES];
+        latitudes = new double[FIXES];
+        longitudes = new double[FIXES];
+        double latitude = 53;
+        double longitude = 50;
+        for (int i = 0; i < FIXES; i++) {
+            latitude = Math.min(54, Math.max(52, latitude + (random.nextDouble() - 0.5) * 0.0005));
+            longitude = Math.min(51, Math.max(49, longitude + (random.nextDouble() - 0.5) * 0.0005));
+            dealers[i] = 1 + random.nextInt(dealerCount);
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+        }
+
+        trackers = new GeofenceTracker[dealerCount + 1];
+        for (int dealerId = 1; dealerId <= dealerCount; dealerId++) {
+            trackers[dealerId] = new GeofenceTracker(dealerId, dealerId, () -> index,
+                    (geofenceId, carId, enter, timeMillis, lat, lon) -> {
+                    });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public void grid() {
+        for (int i = 0; i < FIXES; i++) {
+            trackers[dealers[i]].onFix(time++, latitudes[i], longitudes[i], 0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public long scanDealerFences() {
+        long inside = 0;
+        for (int i = 0; i < FIXES; i++) {
+            int from = (dealers[i] - 1) * fencesPerDealer;
+            for (int j = from; j < from + fencesPerDealer; j++) {
+                if (polygons.get(j).contains(latitudes[i], longitudes[i])) {
+                    inside++;
+                }
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчет дистанции на миллион отрезков трека (точка в секунду, около 15 м между точками): поточечная формула,
+ * пакетный расчет с повторным использованием косинусов и быстрый режим. Результат - время на миллион отрезков.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HaversineKernelBenchmark {
+
+    private static final int POINTS = 1_000_001;
+
+    private double[] latitudes;
+    private double[] longitudes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        latitudes = new double[POINTS];
+        longitudes = new double[POINTS];
+        latitudes[0] = 53.2;
+        longitudes[0] = 50.1;
+        for (int i = 1; i < POINTS; i++) {
+            latitudes[i] = latitudes[i - 1] + random.nextGaussian() * 1e-4;
+            longitudes[i] = longitudes[i - 1] + random.nextGaussian() * 1e-4;
+        }
+    }
+
+    @Benchmark
+    public double pointwise() {
+        double total = 0;
+        for (int i = 1; i < POINTS; i++) {
+            total += HaversineKernel.distance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double batch() {
+        return HaversineKernel.pathLength(latitudes, longitudes, 0, POINTS, false);
+    }
+
+    @Benchmark
+    public double fast() {
+        return HaversineKernel.pathLength(latitudes, longitudes, 0, POINTS, true);
+    }
+}
@@ -0,0 +1,391 @@
+package ru.webkonditer.samarafleet.loadtest;
+
+import ru.webkonditer.samarafleet.service.gps.NmeaLogGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный прогон приема GPS данных: множество машин шлют сгенерированные {@link NmeaLogGenerator} логи
+ * в работающее приложение с ускорением N относительно реального времени.
+ * <p>
+ * Режим stream: каждая машина держит запрос POST /api/v1/cars/{id}/gps-stream и пишет в него строки
+ * по расписанию (секунда лога - 1/N секунды), в конце сверяет дистанцию из ответа с эталоном генератора.
+ * Режим upload: каждая машина загружает лог длительностью duration через POST /upload-gps-log раз
+ * в duration/N секунд, rounds раз.
+ * <p>
+ * Записываются задержки запросов (upload - весь запрос, stream - от конца тела до ответа), задержки записи
+ * в поток и отставание от расписания, а также пропускная способность в байтах и точках в секунду.
+ * Параметры передаются как --ключ=значение, см. {@link #USAGE}. Машины с указанными ID должны существовать.
+ */
+public class GpsReplayer {
+
+    static final String USAGE = String.join("\n",
+            "Параметры (--ключ=значение):",
+            "  url=http://localhost:8081   адрес приложения",
+            "  user=user, password=password учетные данные basic-аутентификации",
+            "  mode=stream                 stream - живые потоки, upload - загрузка файлов логов",
+            "  cars=10                     число машин",
+            "  first-car-id=1              ID первой машины, остальные идут подряд",
+            "  speedup=60                  ускорение относительно реального времени",
+            "  duration=3600               секунд лога на машину (upload - на одну загрузку)",
+            "  rounds=1                    число загрузок на машину в режиме upload",
+            "  store=false                 upload: передавать carId и сохранять точки в трек машины",
+            "  ramp-up=10                  секунд, за которые стартуют все машины",
+            "  write-interval=100          stream: минимальный интервал между записями в поток (мс)",
+            "  seed=1                      seed генератора; машина i получает seed + i",
+            "  output=                     CSV с каждым измерением (по умолчанию не пишется)");
+
+    private static final String BOUNDARY = "----gps-replayer-boundary";
+
+    private static final Pattern DISTANCE = Pattern.compile("\"(?:totalDistance|distance)\"\\s*:\\s*([-0-9.eE+]+)");
+
+    private final Map<String, String> options;
+    private final String url;
+    private final String authorization;
+    private final int cars;
+    private final long firstCarId;
+    private final double speedup;
+    private final long duration;
+    private final int rounds;
+    private final boolean store;
+    private final long rampUpMillis;
+    private final long writeIntervalMillis;
+    private final long seed;
+
+    private final Samples requestLatency = new Samples("запрос");
+    private final Samples writeLatency = new Samples("запись в поток");
+    private final Samples scheduleLag = new Samples("отставание от расписания");
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong fixesSent = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong distanceMismatches = new AtomicLong();
+    private final List<String> rows = new ArrayList<>();
+
+    GpsReplayer(Map<String, String> options) {
+        this.options = options;
+        this.url = option("url", "http://localhost:8081").replaceAll("/+$", "");
+        String credentials = option("user", "user") + ":" + option("password", "password");
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        this.cars = Integer.parseInt(option("cars", "10"));
+        this.firstCarId = Long.parseLong(option("first-car-id", "1"));
+        this.speedup = Double.parseDouble(option("speedup", "60"));
+        this.duration = Long.parseLong(option("duration", "3600"));
+        this.rounds = Integer.parseInt(option("rounds", "1"));
+        this.store = Boolean.parseBoolean(option("store", "false"));
+        this.rampUpMillis = Math.round(Double.parseDouble(option("ramp-up", "10")) * 1000);
+        this.writeIntervalMillis = Long.parseLong(option("write-interval", "100"));
+        this.seed = Long.parseLong(option("seed", "1"));
+        if (cars <= 0 || speedup <= 0 || duration <= 0 || rounds <= 0) {
+            throw new IllegalArgumentException("cars, speedup, duration и rounds должны быть положительными");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new GpsReplayer(options).run();
+    }
+
+    void run() throws Exception {
+        String mode = option("mode", "stream");
+        if (!mode.equals("stream") && !mode.equals("upload")) {
+            throw new IllegalArgumentException("Неизвестный режим: " + mode);
+        }
+        System.out.printf(Locale.ROOT, "Режим %s: %d машин, ускорение %.1fx, %d с лога на машину%n",
+                mode, cars, speedup, duration);
+
+        ExecutorService executor = Executors.newFixedThreadPool(cars);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < cars; i++) {
+            int car = i;
+            long startDelay = cars > 1 ? rampUpMillis * car / (cars - 1) : 0;
+            futures.add(executor.submit(() -> {
+                sleepUntil(start + TimeUnit.MILLISECONDS.toNanos(startDelay));
+                if (mode.equals("stream")) {
+                    streamCar(car);
+                } else {
+                    uploadCar(car);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf(Locale.ROOT, "Время: %.1f с, отправлено %.1f МБ (%.2f МБ/с), %d точек (%.0f точек/с)%n",
+                seconds, bytesSent.get() / 1048576.0, bytesSent.get() / 1048576.0 / seconds,
+                fixesSent.get(), fixesSent.get() / seconds);
+        System.out.printf(Locale.ROOT, "Ошибок: %d, расхождений дистанции с эталоном: %d%n",
+                failures.get(), distanceMismatches.get());
+        requestLatency.print();
+        if (mode.equals("stream")) {
+            writeLatency.print();
+            scheduleLag.print();
+        }
+
+        String output = option("output", "");
+        if (!output.isEmpty()) {
+            Path file = Paths.get(output);
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+                writer.println("car_id,kind,start_millis,latency_micros,bytes");
+                synchronized (rows) {
+                    rows.forEach(writer::println);
+                }
+            }
+            System.out.println("Измерения записаны в " + file.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Живой поток одной машины: строки каждой секунды лога отправляются в момент, когда эта секунда
+     * наступает по ускоренному времени; записи чаще writeInterval объединяются.
+     */
+    private void streamCar(int car) {
+        long carId = firstCarId + car;
+        NmeaLogGenerator generator = generator(car);
+        try {
+            HttpURLConnection connection = open("/api/v1/cars/" + carId + "/gps-stream");
+            connection.setRequestProperty("Content-Type", "text/plain");
+            connection.setChunkedStreamingMode(8192);
+            connection.setReadTimeout(0);
+
+            long start = System.nanoTime();
+            double nanosPerSecond = 1e9 / speedup;
+            StringBuilder lines = new StringBuilder(8192);
+            byte[] buffer = new byte[0];
+            try (OutputStream out = connection.getOutputStream()) {
+                while (generator.getSeconds() < duration) {
+                    long due = start + (long) (generator.getSeconds() * nanosPerSecond);
+                    sleepUntil(due);
+                    long now = System.nanoTime();
+                    scheduleLag.add(now - due);
+
+                    // Все секунды, наступившие к этому моменту и в пределах интервала записи
+                    long horizon = now + TimeUnit.MILLISECONDS.toNanos(writeIntervalMillis);
+                    lines.setLength(0);
+                    long fixesBefore = generator.getFixCount();
+                    do {
+                        generator.appendSecond(lines);
+                    } while (generator.getSeconds() < duration
+                            && start + (long) (generator.getSeconds() * nanosPerSecond) < horizon);
+                    if (buffer.length < lines.length()) {
+                        buffer = new byte[lines.length() * 2];
+                    }
+                    for (int i = 0; i < lines.length(); i++) {
+                        buffer[i] = (byte) lines.charAt(i);
+                    }
+
+                    long writeStart = System.nanoTime();
+                    out.write(buffer, 0, lines.length());
+                    out.flush();
+                    writeLatency.add(System.nanoTime() - writeStart);
+                    bytesSent.addAndGet(lines.length());
+                    fixesSent.addAndGet(generator.getFixCount() - fixesBefore);
+                }
+            }
+
+            long finish = System.nanoTime();
+            String response = readResponse(connection);
+            long latency = System.nanoTime() - finish;
+            requestLatency.add(latency);
+            record(carId, "stream", finish, latency, generator.getBytes());
+            checkDistance(carId, response, generator.getDistance());
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            System.err.println("Машина " + carId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Загрузки одной машины: лог длительностью duration раз в duration/speedup секунд.
+     */
+    private void uploadCar(int car) {
+        long carId = firstCarId + car;
+        NmeaLogGenerator generator = generator(car);
+        long interval = (long) (duration * 1e9 / speedup);
+        long next = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            sleepUntil(next);
+            next += interval;
+            try {
+                // Каждая загрузка - продолжение маршрута машины
+                ByteArrayOutputStream log = new ByteArrayOutputStream();
+                double distanceBefore = generator.getDistance();
+                long fixesBefore = generator.getFixCount();
+                generator.writeSeconds(log, duration);
+                byte[] body = multipart(log.toByteArray());
+
+                HttpURLConnection connection = open("/upload-gps-log" + (store ? "?carId=" + carId : ""));
+                connection.setRequestProperty("Accept", "application/json");
+                connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+                connection.setFixedLengthStreamingMode(body.length);
+
+                long start = System.nanoTime();
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+                String response = readResponse(connection);
+                long latency = System.nanoTime() - start;
+                requestLatency.add(latency);
+                record(carId, "upload", start, latency, log.size());
+                bytesSent.addAndGet(log.size());
+                fixesSent.addAndGet(generator.getFixCount() - fixesBefore);
+                checkDistance(carId, response, generator.getDistance() - distanceBefore);
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                System.err.println("Машина " + carId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static byte[] multipart(byte[] log) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(log.length + 256);
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"replay.nmea\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.write(log);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    private NmeaLogGenerator generator(int car) {
+        NmeaLogGenerator generator = new NmeaLogGenerator(seed + car);
+        // Машины разнесены по области примерно 50 x 50 км
+        generator.setStart(53.0 + (car % 100) * 0.005, 49.9 + (car / 100 % 100) * 0.007);
+        return generator;
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Authorization", authorization);
+        return connection;
+    }
+
+    private static String readResponse(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream stream = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String body = stream == null ? "" : new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        if (status >= 400) {
+            throw new IOException("HTTP " + status + ": " + body);
+        }
+        return body;
+    }
+
+    /**
+     * Сверяет дистанцию из ответа с эталоном; сервер может складывать участки в другом порядке.
+     */
+    private void checkDistance(long carId, String response, double expected) {
+        Matcher matcher = DISTANCE.matcher(response);
+        if (!matcher.find()) {
+            return;
+        }
+        double actual = Double.parseDouble(matcher.group(1));
+        if (Math.abs(actual - expected) > Math.max(1e-9, expected * 1e-9)) {
+            distanceMismatches.incrementAndGet();
+            System.err.printf(Locale.ROOT, "Машина %d: дистанция %.6f км, эталон %.6f км%n", carId, actual, expected);
+        }
+    }
+
+    private void record(long carId, String kind, long startNanos, long latencyNanos, long bytes) {
+        if (options.getOrDefault("output", "").isEmpty()) {
+            return;
+        }
+        String row = carId + "," + kind + "," + TimeUnit.NANOSECONDS.toMillis(startNanos) + ","
+                + TimeUnit.NANOSECONDS.toMicros(latencyNanos) + "," + bytes;
+        synchronized (rows) {
+            rows.add(row);
+        }
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Набор измерений в наносекундах с перцентилями.
+     */
+    static final class Samples {
+
+        private final String name;
+        private long[] values = new long[1024];
+        private int size;
+
+        Samples(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.max(0, Math.ceil(percentile / 100 * size) - 1)];
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        void print() {
+            System.out.printf(Locale.ROOT, "%s: n=%d, p50=%.2f мс, p90=%.2f мс, p99=%.2f мс, max=%.2f мс%n",
+                    name, size(), percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6,
+                    percentile(100) / 1e6);
+        }
+    }
+}
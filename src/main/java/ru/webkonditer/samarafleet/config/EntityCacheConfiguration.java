@@ -0,0 +1,102 @@
+package ru.webkonditer.samarafleet.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Кэш второго уровня Hibernate для дилеров, владельцев, автомобилей и их коллекций.
+ * <p>
+ * Области кэша - ограниченные по размеру и сроку хранения кэши Caffeine, созданные через JCache до запуска
+ * Hibernate; размер и срок хранения каждой области задаются свойствами entity-cache.&lt;область&gt;.max-entries
+ * и entity-cache.&lt;область&gt;.ttl. Области, не описанные здесь, Hibernate создавать не может: без ограничения
+ * размера такой кэш рос бы без предела.
+ * <p>
+ * Изменения через Hibernate (в том числе set-based UPDATE) сбрасывают кэш сами, включая коллекции на
+ * обратной стороне связей; запись в таблицы мимо Hibernate требует явного сброса
+ * (см. {@link ru.webkonditer.samarafleet.service.EntityCacheService}).
+ */
+@Configuration
+@ConditionalOnProperty(name = "entity-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class EntityCacheConfiguration {
+
+    public static final String DEALERS = "dealers";
+    public static final String OWNERS = "owners";
+    public static final String CARS = "cars";
+    public static final String DEALER_OWNERS = "dealer-owners";
+    public static final String OWNER_CARS = "owner-cars";
+
+    /**
+     * Все области кэша.
+     */
+    public static final List<String> REGIONS = List.of(DEALERS, OWNERS, CARS, DEALER_OWNERS, OWNER_CARS);
+
+    private static final long DEFAULT_MAX_ENTRIES = 10_000;
+    private static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    /**
+     * Менеджер кэшей JCache с областями кэша второго уровня.
+     * У каждого контекста приложения свой менеджер, чтобы контексты (например, в тестах) не делили кэш.
+     *
+     * @param environment Окружение со свойствами entity-cache.*.
+     * @return Менеджер кэшей.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager(Environment environment) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("entity-cache:" + UUID.randomUUID()),
+                getClass().getClassLoader(), new Properties());
+        Binder binder = Binder.get(environment);
+        for (String region : REGIONS) {
+            long maxEntries = binder.bind("entity-cache." + region + ".max-entries", Long.class)
+                    .orElse(DEFAULT_MAX_ENTRIES);
+            Duration ttl = binder.bind("entity-cache." + region + ".ttl", Duration.class).orElse(DEFAULT_TTL);
+
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(maxEntries));
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+            // Hibernate кладет в кэш неизменяемые разобранные состояния, копировать их не нужно
+            configuration.setStoreByValue(false);
+            cacheManager.createCache(region, configuration);
+        }
+        return cacheManager;
+    }
+
+    /**
+     * Подключает кэш второго уровня к Hibernate. Свойства настройки применяются после spring.jpa.properties.*,
+     * поэтому включают кэш поверх значения по умолчанию из application.properties.
+     *
+     * @param entityCacheManager Менеджер кэшей с областями.
+     * @return Настройка свойств Hibernate.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheHibernateProperties(CacheManager entityCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            // Изменение car.owner или owner.dealer сбрасывает коллекцию на стороне владельца связи
+            properties.put(AvailableSettings.AUTO_EVICT_COLLECTION_CACHE, true);
+            // Счетчики попаданий и промахов по областям для статистики кэша
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package ru.webkonditer.samarafleet.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включение периодических задач (очистка устаревших данных и т.п.).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfiguration {
+}
@@ -0,0 +1,114 @@
+package ru.webkonditer.samarafleet.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.webkonditer.samarafleet.dto.BulkImportReport;
+import ru.webkonditer.samarafleet.service.BulkImportService;
+import ru.webkonditer.samarafleet.service.bulk.BulkImportFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/api/v1/import")
+public class BulkImportController {
+
+    private static final String TEXT_CSV = "text/csv";
+
+    private final BulkImportService bulkImportService;
+
+    @Autowired
+    public BulkImportController(BulkImportService bulkImportService) {
+        this.bulkImportService = bulkImportService;
+    }
+
+    @PostMapping(value = "/dealers", consumes = {TEXT_CSV, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(
+            summary = "Import dealers",
+            description = "Import dealers from CSV with a header row or from newline-delimited JSON. "
+                    + "Fields: name, email, representativeName; name and email are required and email must be "
+                    + "unique. Rows are inserted in batches; rejected rows are listed in the report and do not "
+                    + "roll back the others"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Import report",
+            content = @Content(schema = @Schema(implementation = BulkImportReport.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Missing CSV header or required column")
+    public ResponseEntity<?> importDealers(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @Parameter(hidden = true) InputStream body
+    ) {
+        try {
+            return ResponseEntity.ok(bulkImportService.importDealers(body, formatOf(contentType)));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error importing dealers: " + e.getMessage());
+        }
+    }
+
+    @PostMapping(value = "/owners", consumes = {TEXT_CSV, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(
+            summary = "Import owners",
+            description = "Import owners from CSV with a header row or from newline-delimited JSON. "
+                    + "Fields: fullName, phone, email, dealerEmail; fullName and email are required and email must "
+                    + "be unique. dealerEmail links the owner to an existing dealer. Rows are inserted in batches; "
+                    + "rejected rows are listed in the report and do not roll back the others"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Import report",
+            content = @Content(schema = @Schema(implementation = BulkImportReport.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Missing CSV header or required column")
+    public ResponseEntity<?> importOwners(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @Parameter(hidden = true) InputStream body
+    ) {
+        try {
+            return ResponseEntity.ok(bulkImportService.importOwners(body, formatOf(contentType)));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error importing owners: " + e.getMessage());
+        }
+    }
+
+    @PostMapping(value = "/cars", consumes = {TEXT_CSV, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(
+            summary = "Import cars",
+            description = "Import cars from CSV with a header row or from newline-delimited JSON. "
+                    + "Fields: registrationNumber, manufactureDate, ownerEmail; registrationNumber is required and "
+                    + "must be unique. ownerEmail links the car to an existing owner. Rows are inserted in batches; "
+                    + "rejected rows are listed in the report and do not roll back the others"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Import report",
+            content = @Content(schema = @Schema(implementation = BulkImportReport.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Missing CSV header or required column")
+    public ResponseEntity<?> importCars(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @Parameter(hidden = true) InputStream body
+    ) {
+        try {
+            return ResponseEntity.ok(bulkImportService.importCars(body, formatOf(contentType)));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error importing cars: " + e.getMessage());
+        }
+    }
+
+    private static BulkImportFormat formatOf(String contentType) {
+        return MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(TEXT_CSV))
+                ? BulkImportFormat.CSV
+                : BulkImportFormat.NDJSON;
+    }
+}
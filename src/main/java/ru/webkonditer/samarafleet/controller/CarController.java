@@ -1,14 +1,18 @@
 package ru.webkonditer.samarafleet.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.webkonditer.samarafleet.dto.KeysetPage;
 import ru.webkonditer.samarafleet.model.Car;
 import ru.webkonditer.samarafleet.service.CarService;
 import ru.webkonditer.samarafleet.service.OwnerService;
@@ -21,17 +25,45 @@ public class CarController {
 
     private final CarService carService;
     private final OwnerService ownerService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public CarController(CarService carService, OwnerService ownerService) {
+    public CarController(CarService carService, OwnerService ownerService, ObjectMapper objectMapper) {
         this.carService = carService;
         this.ownerService = ownerService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
-    @Operation(summary = "Get all cars", description = "Get a list of all cars")
-    public List<Car> getAllCars() {
-        return carService.getAllCars();
+    @Operation(
+            summary = "Get all cars",
+            description = "Get cars ordered by ID. Without paging parameters the whole list is streamed as a JSON "
+                    + "array, or as newline-delimited JSON when application/x-ndjson is accepted; with a limit "
+                    + "or a cursor one page is returned together with the cursor of the next page"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "List of cars or a page of cars",
+            content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = KeysetPage.class)),
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Car.class))
+            }
+    )
+    @ApiResponse(responseCode = "400", description = "Invalid cursor or limit")
+    public ResponseEntity<?> getAllCars(
+            @Parameter(description = "Cursor of the page returned as nextCursor of the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size, at most " + KeysetPagination.MAX_LIMIT)
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) {
+        if (cursor != null || limit != null) {
+            return KeysetPagination.page(cursor, limit, carService::getCarsAfter, Car::getId);
+        }
+        if (KeysetPagination.acceptsNdjson(accept)) {
+            return KeysetPagination.ndjson(objectMapper, carService::forEachCar);
+        }
+        return KeysetPagination.jsonArray(objectMapper, carService::forEachCar);
     }
 
     @GetMapping("/{carId}")
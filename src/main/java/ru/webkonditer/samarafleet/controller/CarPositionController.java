@@ -0,0 +1,125 @@
+package ru.webkonditer.samarafleet.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.webkonditer.samarafleet.dto.CarPositionInfo;
+import ru.webkonditer.samarafleet.dto.NearbyCarInfo;
+import ru.webkonditer.samarafleet.service.CarPositionService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/cars")
+public class CarPositionController {
+
+    // Ограничение размера ответа поисковых запросов
+    private static final int MAX_LIMIT = 10_000;
+
+    private final CarPositionService carPositionService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public CarPositionController(CarPositionService carPositionService, ObjectMapper objectMapper) {
+        this.carPositionService = carPositionService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/{carId}/position")
+    @Operation(summary = "Get car position", description = "Get the last known position of a car from memory")
+    @ApiResponse(
+            responseCode = "200",
+            description = "Last known position",
+            content = @Content(schema = @Schema(implementation = CarPositionInfo.class))
+    )
+    @ApiResponse(responseCode = "404", description = "No position of the car is known")
+    public ResponseEntity<CarPositionInfo> getPosition(@Parameter(description = "ID of the car") @PathVariable Long carId) {
+        return carPositionService.getPosition(carId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/positions", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Get all car positions",
+            description = "Get last known positions of all cars from memory, streamed as a JSON array"
+    )
+    @ApiResponse(responseCode = "200", description = "Last known positions")
+    public ResponseEntity<StreamingResponseBody> getAllPositions() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                carPositionService.forEachPosition((carId, timeMillis, latitude, longitude, speed) -> {
+                    try {
+                        generator.writeStartObject();
+                        generator.writeNumberField("carId", carId);
+                        generator.writeStringField("time", Instant.ofEpochMilli(timeMillis).toString());
+                        generator.writeNumberField("latitude", latitude);
+                        generator.writeNumberField("longitude", longitude);
+                        generator.writeNumberField("speed", speed);
+                        generator.writeEndObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @GetMapping("/positions/nearest")
+    @Operation(
+            summary = "Find nearest cars",
+            description = "Find cars closest to a point, ordered by distance, optionally within a radius in km"
+    )
+    @ApiResponse(responseCode = "200", description = "Nearest cars")
+    @ApiResponse(responseCode = "400", description = "Invalid coordinates, radius or limit")
+    public ResponseEntity<List<NearbyCarInfo>> findNearest(
+            @Parameter(description = "Latitude of the point") @RequestParam double latitude,
+            @Parameter(description = "Longitude of the point") @RequestParam double longitude,
+            @Parameter(description = "Search radius in km") @RequestParam(required = false) Double radius,
+            @Parameter(description = "Maximum number of cars") @RequestParam(defaultValue = "10") int limit
+    ) {
+        if (!isValid(latitude, longitude) || limit <= 0 || limit > MAX_LIMIT
+                || (radius != null && !(radius >= 0))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(carPositionService.findNearest(latitude, longitude, limit, radius));
+    }
+
+    @GetMapping("/positions/within")
+    @Operation(summary = "Find cars in a bounding box", description = "Find cars whose last known position is inside a bounding box")
+    @ApiResponse(responseCode = "200", description = "Cars inside the bounding box")
+    @ApiResponse(responseCode = "400", description = "Invalid bounding box or limit")
+    public ResponseEntity<List<CarPositionInfo>> findWithin(
+            @Parameter(description = "Minimum latitude") @RequestParam double minLatitude,
+            @Parameter(description = "Minimum longitude") @RequestParam double minLongitude,
+            @Parameter(description = "Maximum latitude") @RequestParam double maxLatitude,
+            @Parameter(description = "Maximum longitude") @RequestParam double maxLongitude,
+            @Parameter(description = "Maximum number of cars") @RequestParam(defaultValue = "1000") int limit
+    ) {
+        if (!isValid(minLatitude, minLongitude) || !isValid(maxLatitude, maxLongitude)
+                || minLatitude > maxLatitude || minLongitude > maxLongitude || limit <= 0 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(carPositionService.findWithin(minLatitude, minLongitude, maxLatitude, maxLongitude,
+                limit));
+    }
+
+    private static boolean isValid(double latitude, double longitude) {
+        return latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+}
@@ -1,14 +1,20 @@
 package ru.webkonditer.samarafleet.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.webkonditer.samarafleet.dto.BulkLinkReport;
+import ru.webkonditer.samarafleet.dto.KeysetPage;
 import ru.webkonditer.samarafleet.model.Car;
 import ru.webkonditer.samarafleet.model.Dealer;
 import ru.webkonditer.samarafleet.model.Owner;
@@ -21,16 +27,44 @@ import java.util.List;
 public class DealerController {
 
     private final DealerService dealerService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public DealerController(DealerService dealerService) {
+    public DealerController(DealerService dealerService, ObjectMapper objectMapper) {
         this.dealerService = dealerService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
-    @Operation(summary = "Get all dealers", description = "Get a list of all dealers")
-    public List<Dealer> getAllDealers() {
-        return dealerService.getAllDealers();
+    @Operation(
+            summary = "Get all dealers",
+            description = "Get dealers ordered by ID. Without paging parameters the whole list is streamed as a JSON "
+                    + "array, or as newline-delimited JSON when application/x-ndjson is accepted; with a limit "
+                    + "or a cursor one page is returned together with the cursor of the next page"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "List of dealers or a page of dealers",
+            content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = KeysetPage.class)),
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Dealer.class))
+            }
+    )
+    @ApiResponse(responseCode = "400", description = "Invalid cursor or limit")
+    public ResponseEntity<?> getAllDealers(
+            @Parameter(description = "Cursor of the page returned as nextCursor of the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size, at most " + KeysetPagination.MAX_LIMIT)
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) {
+        if (cursor != null || limit != null) {
+            return KeysetPagination.page(cursor, limit, dealerService::getDealersAfter, Dealer::getId);
+        }
+        if (KeysetPagination.acceptsNdjson(accept)) {
+            return KeysetPagination.ndjson(objectMapper, dealerService::forEachDealer);
+        }
+        return KeysetPagination.jsonArray(objectMapper, dealerService::forEachDealer);
     }
 
     @GetMapping("/{dealerId}")
@@ -118,36 +152,36 @@ public class DealerController {
         return ResponseEntity.ok(responseEntity.getBody());
     }
 
-    @GetMapping("/{dealerId}/owners")
+    @GetMapping(value = "/{dealerId}/owners", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(
             summary = "Get all owners of a dealer",
-            description = "Get a list of all owners associated with the specified dealer"
+            description = "Get a list of all owners associated with the specified dealer, streamed as a JSON array"
     )
     @ApiResponse(
             responseCode = "200",
             description = "List of owners",
             content = @Content(schema = @Schema(implementation = Owner.class))
     )
-    public List<Owner> getAllDealerOwners(
+    public ResponseEntity<StreamingResponseBody> getAllDealerOwners(
             @Parameter(description = "ID of the dealer for which owners are to be retrieved") @PathVariable Long dealerId
     ) {
-        return dealerService.getAllDealerOwners(dealerId);
+        return KeysetPagination.jsonArray(objectMapper, consumer -> dealerService.forEachDealerOwner(dealerId, consumer));
     }
 
-    @GetMapping("/{dealerId}/cars")
+    @GetMapping(value = "/{dealerId}/cars", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(
             summary = "Get all cars of a dealer",
-            description = "Get a list of all cars associated with the specified dealer"
+            description = "Get a list of all cars associated with the specified dealer, streamed as a JSON array"
     )
     @ApiResponse(
             responseCode = "200",
             description = "List of cars",
             content = @Content(schema = @Schema(implementation = Car.class))
     )
-    public List<Car> getAllDealerCars(
+    public ResponseEntity<StreamingResponseBody> getAllDealerCars(
             @Parameter(description = "ID of the dealer for which cars are to be retrieved") @PathVariable Long dealerId
     ) {
-        return dealerService.getAllDealerCars(dealerId);
+        return KeysetPagination.jsonArray(objectMapper, consumer -> dealerService.forEachDealerCar(dealerId, consumer));
     }
 
     @DeleteMapping("/{dealerId}/owners/{ownerId}")
@@ -164,4 +198,45 @@ public class DealerController {
         return dealerService.detachOwnerFromDealer(dealerId, ownerId) ?
                 ResponseEntity.noContent().build() : ResponseEntity.badRequest().build();
     }
+
+    @PostMapping("/{dealerId}/owners/attach")
+    @Operation(
+            summary = "Attach owners to dealer",
+            description = "Move the listed owners to the dealer in one transaction, whoever they belonged to "
+                    + "before. Unknown owner IDs are skipped; the cost does not depend on how many owners the dealer "
+                    + "already has"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Owners attached",
+            content = @Content(schema = @Schema(implementation = BulkLinkReport.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Bad request, dealer not found")
+    public ResponseEntity<BulkLinkReport> attachOwners(
+            @Parameter(description = "ID of the dealer") @PathVariable Long dealerId,
+            @RequestBody List<Long> ownerIds
+    ) {
+        BulkLinkReport report = dealerService.attachOwnersToDealer(dealerId, ownerIds);
+        return report != null ? ResponseEntity.ok(report) : ResponseEntity.badRequest().build();
+    }
+
+    @PostMapping("/{dealerId}/owners/detach")
+    @Operation(
+            summary = "Detach owners from dealer",
+            description = "Detach the listed owners from the dealer in one transaction. "
+                    + "Owners that do not belong to the dealer are left unchanged"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Owners detached",
+            content = @Content(schema = @Schema(implementation = BulkLinkReport.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Bad request, dealer not found")
+    public ResponseEntity<BulkLinkReport> detachOwners(
+            @Parameter(description = "ID of the dealer") @PathVariable Long dealerId,
+            @RequestBody List<Long> ownerIds
+    ) {
+        BulkLinkReport report = dealerService.detachOwnersFromDealer(dealerId, ownerIds);
+        return report != null ? ResponseEntity.ok(report) : ResponseEntity.badRequest().build();
+    }
 }
@@ -0,0 +1,43 @@
+package ru.webkonditer.samarafleet.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.webkonditer.samarafleet.dto.EntityCacheRegionStats;
+import ru.webkonditer.samarafleet.service.EntityCacheService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/entity-cache")
+public class EntityCacheController {
+
+    private final EntityCacheService entityCacheService;
+
+    @Autowired
+    public EntityCacheController(EntityCacheService entityCacheService) {
+        this.entityCacheService = entityCacheService;
+    }
+
+    @GetMapping("/stats")
+    @Operation(
+            summary = "Get entity cache statistics",
+            description = "Get limits, hit, miss and put counters of the second-level cache regions of dealers, "
+                    + "owners, cars and their collections. The list is empty when the cache is disabled"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Cache statistics by region",
+            content = @Content(array = @ArraySchema(schema = @Schema(implementation = EntityCacheRegionStats.class)))
+    )
+    public ResponseEntity<List<EntityCacheRegionStats>> getStats() {
+        return ResponseEntity.ok(entityCacheService.getStats());
+    }
+}
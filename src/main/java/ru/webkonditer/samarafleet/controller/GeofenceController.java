@@ -0,0 +1,110 @@
+package ru.webkonditer.samarafleet.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.webkonditer.samarafleet.dto.GeofenceEventInfo;
+import ru.webkonditer.samarafleet.model.Geofence;
+import ru.webkonditer.samarafleet.service.DealerService;
+import ru.webkonditer.samarafleet.service.GeofenceService;
+
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/dealers/{dealerId}")
+public class GeofenceController {
+
+    private final GeofenceService geofenceService;
+    private final DealerService dealerService;
+
+    @Autowired
+    public GeofenceController(GeofenceService geofenceService, DealerService dealerService) {
+        this.geofenceService = geofenceService;
+        this.dealerService = dealerService;
+    }
+
+    @GetMapping("/geofences")
+    @Operation(summary = "Get dealer geofences", description = "Get all geofence polygons of the specified dealer")
+    @ApiResponse(
+            responseCode = "200",
+            description = "List of geofences",
+            content = @Content(schema = @Schema(implementation = Geofence.class))
+    )
+    @ApiResponse(responseCode = "404", description = "Dealer not found")
+    public ResponseEntity<List<Geofence>> getGeofences(
+            @Parameter(description = "ID of the dealer") @PathVariable Long dealerId
+    ) {
+        return geofenceService.getDealerGeofences(dealerId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/geofences")
+    @Operation(
+            summary = "Create a geofence",
+            description = "Create a geofence polygon for the dealer; cars of the dealer's owners are checked against it"
+    )
+    @ApiResponse(
+            responseCode = "201",
+            description = "Geofence created",
+            content = @Content(schema = @Schema(implementation = Geofence.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Bad request, invalid polygon")
+    @ApiResponse(responseCode = "404", description = "Dealer not found")
+    public ResponseEntity<?> createGeofence(
+            @Parameter(description = "ID of the dealer") @PathVariable Long dealerId,
+            @RequestBody Geofence geofence
+    ) {
+        try {
+            return geofenceService.createGeofence(dealerId, geofence)
+                    .<ResponseEntity<?>>map(created -> ResponseEntity.status(HttpStatus.CREATED).body(created))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/geofences/{geofenceId}")
+    @Operation(summary = "Delete a geofence", description = "Delete a geofence of the dealer together with its events")
+    @ApiResponse(responseCode = "204", description = "Geofence deleted successfully")
+    @ApiResponse(responseCode = "404", description = "Geofence not found for the dealer")
+    public ResponseEntity<Void> deleteGeofence(
+            @Parameter(description = "ID of the dealer") @PathVariable Long dealerId,
+            @Parameter(description = "ID of the geofence to be deleted") @PathVariable Long geofenceId
+    ) {
+        return geofenceService.deleteGeofence(dealerId, geofenceId) ?
+                ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/geofence-events")
+    @Operation(
+            summary = "Get geofence events",
+            description = "Get enter and exit events of the dealer's geofences for a time range"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "List of events ordered by time",
+            content = @Content(schema = @Schema(implementation = GeofenceEventInfo.class))
+    )
+    @ApiResponse(responseCode = "404", description = "Dealer not found")
+    public ResponseEntity<List<GeofenceEventInfo>> getEvents(
+            @Parameter(description = "ID of the dealer") @PathVariable Long dealerId,
+            @Parameter(description = "Start of the time range (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "End of the time range, exclusive (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        if (dealerService.getDealerById(dealerId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(geofenceService.getDealerEvents(dealerId, from, to));
+    }
+}
@@ -0,0 +1,111 @@
+package ru.webkonditer.samarafleet.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.webkonditer.samarafleet.dto.GpsLogEntryResult;
+import ru.webkonditer.samarafleet.service.GpsLogBatchService;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/v1/gps-log-batches")
+public class GpsLogBatchController {
+
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final GpsLogBatchService gpsLogBatchService;
+    private final ObjectMapper objectMapper;
+    private final Duration responseTimeout;
+
+    @Autowired
+    public GpsLogBatchController(GpsLogBatchService gpsLogBatchService, ObjectMapper objectMapper,
+                                 @Value("${gps.batch.response-timeout:30m}") Duration responseTimeout) {
+        this.gpsLogBatchService = gpsLogBatchService;
+        this.objectMapper = objectMapper;
+        this.responseTimeout = responseTimeout;
+    }
+
+    @PostMapping
+    @Operation(
+            summary = "Upload a batch of GPS logs",
+            description = "Upload many GPS log files (plain, gzip or zip) in one request. Files are processed " +
+                    "concurrently with a bounded number of threads and results are streamed back as " +
+                    "newline-delimited JSON, one line per log, in order of completion"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Stream of per-file results",
+            content = @Content(schema = @Schema(implementation = GpsLogEntryResult.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Bad request, no files or error saving files")
+    @ApiResponse(responseCode = "503", description = "Batch queue is full, retry later")
+    public ResponseEntity<ResponseBodyEmitter> uploadBatch(
+            @Parameter(
+                    description = "GPS log files to be processed",
+                    required = true
+            ) @RequestParam("files") List<MultipartFile> files
+    ) {
+        if (files.isEmpty()) {
+            return message(HttpStatus.BAD_REQUEST, "No files in the batch");
+        }
+
+        // Таймаут задается только для этого ответа, остальные асинхронные запросы живут с общим таймаутом
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(responseTimeout.toMillis());
+        GpsLogBatchService.Batch batch;
+        try {
+            batch = gpsLogBatchService.submit(files, new GpsLogBatchService.ResultListener() {
+                @Override
+                public void onResult(List<GpsLogEntryResult> results) throws IOException {
+                    for (GpsLogEntryResult result : results) {
+                        // Каждая отправка сразу сбрасывается клиенту, не дожидаясь остальных файлов
+                        emitter.send(objectMapper.writeValueAsString(result) + "\n", APPLICATION_NDJSON);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    emitter.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return message(HttpStatus.SERVICE_UNAVAILABLE, "GPS log batch queue is full, retry later");
+        } catch (IOException e) {
+            return message(HttpStatus.BAD_REQUEST, "Error saving GPS log files: " + e.getMessage());
+        }
+
+        // Клиент оборвал соединение или не дождался ответа: оставшиеся файлы не обрабатываем
+        emitter.onTimeout(batch::cancel);
+        emitter.onError(e -> batch.cancel());
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(emitter);
+    }
+
+    private static ResponseEntity<ResponseBodyEmitter> message(HttpStatus status, String message) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        try {
+            // До возврата из контроллера отправка только буферизуется и не может завершиться ошибкой
+            emitter.send(message, MediaType.TEXT_PLAIN);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        emitter.complete();
+        return ResponseEntity.status(status).contentType(MediaType.TEXT_PLAIN).body(emitter);
+    }
+}
@@ -0,0 +1,39 @@
+package ru.webkonditer.samarafleet.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.webkonditer.samarafleet.dto.GpsLogCacheStats;
+import ru.webkonditer.samarafleet.service.GpsLogService;
+
+@RestController
+@RequestMapping("/api/v1/gps-log-cache")
+public class GpsLogCacheController {
+
+    private final GpsLogService gpsLogService;
+
+    @Autowired
+    public GpsLogCacheController(GpsLogService gpsLogService) {
+        this.gpsLogService = gpsLogService;
+    }
+
+    @GetMapping("/stats")
+    @Operation(
+            summary = "Get GPS log result cache statistics",
+            description = "Get size, hit and miss counters of the cache of repeated GPS log uploads"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Cache statistics",
+            content = @Content(schema = @Schema(implementation = GpsLogCacheStats.class))
+    )
+    public ResponseEntity<GpsLogCacheStats> getStats() {
+        return ResponseEntity.ok(gpsLogService.getCacheStats());
+    }
+}
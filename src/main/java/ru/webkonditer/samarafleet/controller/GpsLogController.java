@@ -6,49 +6,150 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogResult;
+import ru.webkonditer.samarafleet.dto.GpsTripReport;
 import ru.webkonditer.samarafleet.service.GpsLogService;
+import ru.webkonditer.samarafleet.service.GpsTrackService;
+import ru.webkonditer.samarafleet.service.gps.GpsLogCompression;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 
 @Controller
 public class GpsLogController {
 
     private final GpsLogService gpsLogService;
+    private final GpsTrackService gpsTrackService;
 
     @Autowired
-    public GpsLogController(GpsLogService gpsLogService) {
+    public GpsLogController(GpsLogService gpsLogService, GpsTrackService gpsTrackService) {
         this.gpsLogService = gpsLogService;
+        this.gpsTrackService = gpsTrackService;
     }
 
-    @PostMapping("/upload-gps-log")
+    // Выбор между текстом и JSON - по заголовку Accept средствами Spring (produces); */* у текстового
+    // обработчика оставляет текстовый ответ без заголовка Accept и с Accept: */*
+    @PostMapping(value = "/upload-gps-log", produces = {MediaType.TEXT_PLAIN_VALUE, MediaType.ALL_VALUE})
     @Operation(
             summary = "Upload GPS log file",
-            description = "Upload a GPS log file for processing"
+            description = "Upload a GPS log file for processing, plain or gzip-compressed. " +
+                    "A zip archive is processed as a batch with a result per entry. " +
+                    "When a car ID is given, the parsed fixes are also stored in the car's track. " +
+                    "Returns a text summary by default or structured statistics when application/json is preferred"
     )
     @ApiResponse(
             responseCode = "200",
             description = "GPS log processed successfully",
+            content = @Content(mediaType = "text/plain", schema = @Schema(implementation = String.class))
+    )
+    @ApiResponse(
+            responseCode = "400",
+            description = "Bad request, error processing GPS log file or car not found",
             content = @Content(schema = @Schema(implementation = String.class))
     )
+    public ResponseEntity<String> uploadGpsLog(
+            @Parameter(
+                    description = "GPS log file to be uploaded",
+                    required = true
+            ) @RequestParam("file") MultipartFile file,
+            @Parameter(
+                    description = "ID of the car whose track the fixes are stored to"
+            ) @RequestParam(value = "carId", required = false) Long carId
+    ) {
+        try {
+            if (carId != null) {
+                Optional<GpsLogResult> result = gpsTrackService.processAndStore(carId, file);
+                if (result.isEmpty()) {
+                    return ResponseEntity.badRequest().body("Car not found: " + carId);
+                }
+                return textResponse(gpsLogService.formatResult(result.get()));
+            }
+            // Текстовый ответ считает только дистанцию и может использовать параллельную обработку
+            return textResponse(gpsLogService.processGpsLog(file));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error processing GPS log file: " + e.getMessage());
+        }
+    }
+
+    @PostMapping(value = "/upload-gps-log", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Upload GPS log file",
+            description = "Upload a GPS log file for processing, plain or gzip-compressed. " +
+                    "A zip archive is processed as a batch with a result per entry. " +
+                    "When a car ID is given, the parsed fixes are also stored in the car's track"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "GPS log processed successfully",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = GpsLogResult.class))
+    )
+    @ApiResponse(
+            responseCode = "400",
+            description = "Bad request, error processing GPS log file or car not found",
+            content = @Content(schema = @Schema(implementation = String.class))
+    )
+    public ResponseEntity<?> uploadGpsLogJson(
+            @Parameter(
+                    description = "GPS log file to be uploaded",
+                    required = true
+            ) @RequestParam("file") MultipartFile file,
+            @Parameter(
+                    description = "ID of the car whose track the fixes are stored to"
+            ) @RequestParam(value = "carId", required = false) Long carId
+    ) {
+        try {
+            if (carId != null) {
+                Optional<GpsLogResult> result = gpsTrackService.processAndStore(carId, file);
+                if (result.isEmpty()) {
+                    return ResponseEntity.badRequest().body("Car not found: " + carId);
+                }
+                return ResponseEntity.ok(result.get());
+            }
+            if (gpsLogService.detectCompression(file) == GpsLogCompression.ZIP) {
+                return ResponseEntity.ok(gpsLogService.analyzeArchive(file));
+            }
+            return ResponseEntity.ok(gpsLogService.analyzeGpsLog(file));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error processing GPS log file: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/upload-gps-log/trips")
+    @Operation(
+            summary = "Split GPS log into trips",
+            description = "Upload a GPS log file and split the track into trips separated by long stops. " +
+                    "Returns per-trip start/end time and position, distance, max and average speed and idle time"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "GPS log processed successfully",
+            content = @Content(schema = @Schema(implementation = GpsTripReport.class))
+    )
     @ApiResponse(
             responseCode = "400",
             description = "Bad request, error processing GPS log file",
             content = @Content(schema = @Schema(implementation = String.class))
     )
-    public ResponseEntity<String> uploadGpsLog(
+    public ResponseEntity<?> uploadGpsLogTrips(
             @Parameter(
                     description = "GPS log file to be uploaded",
                     required = true
             ) @RequestParam("file") MultipartFile file
     ) {
         try {
-            String result = gpsLogService.processGpsLog(file);
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(gpsLogService.processTrips(file));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error processing GPS log file: " + e.getMessage());
         }
     }
+
+    private static ResponseEntity<String> textResponse(String body) {
+        return ResponseEntity.ok().contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8)).body(body);
+    }
 }
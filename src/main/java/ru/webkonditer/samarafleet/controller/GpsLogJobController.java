@@ -0,0 +1,109 @@
+package ru.webkonditer.samarafleet.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogJobInfo;
+import ru.webkonditer.samarafleet.service.GpsLogJobService;
+
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/v1/gps-log-jobs")
+public class GpsLogJobController {
+
+    private final GpsLogJobService gpsLogJobService;
+
+    @Autowired
+    public GpsLogJobController(GpsLogJobService gpsLogJobService) {
+        this.gpsLogJobService = gpsLogJobService;
+    }
+
+    @PostMapping
+    @Operation(
+            summary = "Submit GPS log for processing",
+            description = "Queue a GPS log file for background processing and return the job immediately"
+    )
+    @ApiResponse(
+            responseCode = "202",
+            description = "Job accepted",
+            content = @Content(schema = @Schema(implementation = GpsLogJobInfo.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Bad request, error saving GPS log file")
+    @ApiResponse(responseCode = "503", description = "Job queue is full, retry later")
+    public ResponseEntity<?> submitJob(
+            @Parameter(
+                    description = "GPS log file to be processed",
+                    required = true
+            ) @RequestParam("file") MultipartFile file
+    ) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(gpsLogJobService.submit(file));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("GPS log job queue is full, retry later");
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error submitting GPS log file: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    @Operation(summary = "Get job status", description = "Get status and progress of a GPS log job")
+    @ApiResponse(
+            responseCode = "200",
+            description = "Job found",
+            content = @Content(schema = @Schema(implementation = GpsLogJobInfo.class))
+    )
+    @ApiResponse(responseCode = "404", description = "Job not found or expired")
+    public ResponseEntity<GpsLogJobInfo> getJob(
+            @Parameter(description = "ID of the job") @PathVariable String jobId
+    ) {
+        return gpsLogJobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/{jobId}/result")
+    @Operation(summary = "Get job result", description = "Get the result of a successfully finished GPS log job")
+    @ApiResponse(
+            responseCode = "200",
+            description = "Job result",
+            content = @Content(schema = @Schema(implementation = String.class))
+    )
+    @ApiResponse(responseCode = "404", description = "Job not found or expired")
+    @ApiResponse(responseCode = "409", description = "Job is not finished successfully")
+    public ResponseEntity<String> getJobResult(
+            @Parameter(description = "ID of the job") @PathVariable String jobId
+    ) {
+        Optional<GpsLogJobInfo> job = gpsLogJobService.getJob(jobId);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return gpsLogJobService.getResult(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+
+    @DeleteMapping("/{jobId}")
+    @Operation(summary = "Cancel job", description = "Cancel a queued or running GPS log job")
+    @ApiResponse(
+            responseCode = "200",
+            description = "Job cancelled or already finished",
+            content = @Content(schema = @Schema(implementation = GpsLogJobInfo.class))
+    )
+    @ApiResponse(responseCode = "404", description = "Job not found or expired")
+    public ResponseEntity<GpsLogJobInfo> cancelJob(
+            @Parameter(description = "ID of the job") @PathVariable String jobId
+    ) {
+        return gpsLogJobService.cancel(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,166 @@
+package ru.webkonditer.samarafleet.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.webkonditer.samarafleet.dto.CarOdometer;
+import ru.webkonditer.samarafleet.dto.GpsStreamReport;
+import ru.webkonditer.samarafleet.service.GpsStreamService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/v1/cars/{carId}")
+public class GpsStreamController {
+
+    private static final Logger logger = LoggerFactory.getLogger(GpsStreamController.class);
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final GpsStreamService gpsStreamService;
+    private final ObjectMapper objectMapper;
+    private final Duration maxStreamDuration;
+
+    @Autowired
+    public GpsStreamController(GpsStreamService gpsStreamService,
+                               ObjectMapper objectMapper,
+                               @Value("${gps.stream.max-duration:24h}") Duration maxStreamDuration) {
+        this.gpsStreamService = gpsStreamService;
+        this.objectMapper = objectMapper;
+        this.maxStreamDuration = maxStreamDuration;
+    }
+
+    @PostMapping("/gps-stream")
+    @Operation(
+            summary = "Stream live NMEA data of a car",
+            description = "Send NMEA sentences as a long-lived (e.g. chunked) request body. Sentences are " +
+                    "processed as they arrive and update the car's running odometer. The body is read with " +
+                    "non-blocking I/O, so an idle stream does not hold a server thread. When the client ends " +
+                    "the body, a summary of the stream is returned"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Stream finished",
+            content = @Content(schema = @Schema(implementation = GpsStreamReport.class))
+    )
+    @ApiResponse(responseCode = "404", description = "Car not found")
+    public void streamGpsData(
+            @Parameter(description = "ID of the car") @PathVariable Long carId,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        Optional<GpsStreamService.StreamSession> session = gpsStreamService.openStream(carId);
+        if (session.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Car not found: " + carId);
+            return;
+        }
+
+        // Дальше запрос обслуживается асинхронно: поток контейнера освобождается сразу после выхода из метода,
+        // а данные читаются в обработчике, который контейнер вызывает только когда они пришли
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(maxStreamDuration.toMillis());
+        ServletInputStream inputStream = request.getInputStream();
+        StreamReadListener listener = new StreamReadListener(session.get(), asyncContext, inputStream);
+        asyncContext.addListener(listener);
+        inputStream.setReadListener(listener);
+    }
+
+    @GetMapping("/odometer")
+    @Operation(summary = "Get car odometer", description = "Get the running odometer of a car from live streams")
+    @ApiResponse(
+            responseCode = "200",
+            description = "Odometer reading",
+            content = @Content(schema = @Schema(implementation = CarOdometer.class))
+    )
+    @ApiResponse(responseCode = "404", description = "No live data from the car yet")
+    public ResponseEntity<CarOdometer> getOdometer(@Parameter(description = "ID of the car") @PathVariable Long carId) {
+        return gpsStreamService.getOdometer(carId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private class StreamReadListener implements ReadListener, AsyncListener {
+
+        private final GpsStreamService.StreamSession session;
+        private final AsyncContext asyncContext;
+        private final ServletInputStream inputStream;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+        private StreamReadListener(GpsStreamService.StreamSession session, AsyncContext asyncContext,
+                                   ServletInputStream inputStream) {
+            this.session = session;
+            this.asyncContext = asyncContext;
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            // Читаем, пока данные есть без блокировки; дальше контейнер вызовет нас снова
+            while (inputStream.isReady()) {
+                int read = inputStream.read(buffer);
+                if (read == -1) {
+                    return;
+                }
+                session.feed(buffer, 0, read);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            GpsStreamReport report = session.finish();
+            HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            objectMapper.writeValue(response.getOutputStream(), report);
+            asyncContext.complete();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.warn("Поток GPS данных прерван: " + t.getMessage());
+            session.close();
+            asyncContext.complete();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            logger.warn("Поток GPS данных закрыт по истечении максимальной длительности");
+            session.close();
+            asyncContext.complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            session.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            session.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ru.webkonditer.samarafleet.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.webkonditer.samarafleet.dto.GpsTrackDistance;
+import ru.webkonditer.samarafleet.service.CarService;
+import ru.webkonditer.samarafleet.service.GpsTrackService;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/api/v1/cars/{carId}/track")
+public class GpsTrackController {
+
+    private final GpsTrackService gpsTrackService;
+    private final CarService carService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public GpsTrackController(GpsTrackService gpsTrackService, CarService carService, ObjectMapper objectMapper) {
+        this.gpsTrackService = gpsTrackService;
+        this.carService = carService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Get car track",
+            description = "Get stored GPS fixes of a car for a time range, streamed as a JSON array; "
+                    + "with a tolerance the track is simplified on the fly for map rendering"
+    )
+    @ApiResponse(responseCode = "200", description = "Track fixes")
+    @ApiResponse(responseCode = "400", description = "Negative tolerance")
+    @ApiResponse(responseCode = "404", description = "Car not found")
+    public ResponseEntity<StreamingResponseBody> getTrack(
+            @Parameter(description = "ID of the car") @PathVariable Long carId,
+            @Parameter(description = "Start of the time range (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "End of the time range (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @Parameter(description = "Simplification tolerance in metres (omit for all stored fixes)")
+            @RequestParam(required = false) Double tolerance
+    ) {
+        if (tolerance != null && !(tolerance >= 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (carService.getCarById(carId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                GpsFixListener writer = (timeMillis, latitude, longitude, speed) -> {
+                    try {
+                        generator.writeStartObject();
+                        generator.writeStringField("time", Instant.ofEpochMilli(timeMillis).toString());
+                        generator.writeNumberField("latitude", latitude);
+                        generator.writeNumberField("longitude", longitude);
+                        generator.writeNumberField("speed", speed);
+                        generator.writeEndObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                if (tolerance != null) {
+                    gpsTrackService.readTrack(carId, from, to, tolerance, writer);
+                } else {
+                    gpsTrackService.readTrack(carId, from, to, writer);
+                }
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @GetMapping("/distance")
+    @Operation(
+            summary = "Get car track distance",
+            description = "Get the distance in km driven by a car over a time range, measured along its stored "
+                    + "track: segments starting at a fix whose speed rounds to 0 km/h are not counted, like in "
+                    + "GPS log distance. The stored track is simplified, so the result may be up to 1% shorter "
+                    + "than the distance of the original logs; logs with fixes lacking coordinates may give "
+                    + "a slightly longer result, as the stored track joins the neighbours of such fixes"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Track distance",
+            content = @Content(schema = @Schema(implementation = GpsTrackDistance.class))
+    )
+    @ApiResponse(responseCode = "404", description = "Car not found")
+    public ResponseEntity<GpsTrackDistance> getTrackDistance(
+            @Parameter(description = "ID of the car") @PathVariable Long carId,
+            @Parameter(description = "Start of the time range (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "End of the time range (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) throws IOException {
+        if (carService.getCarById(carId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(gpsTrackService.trackDistance(carId, from, to));
+    }
+}
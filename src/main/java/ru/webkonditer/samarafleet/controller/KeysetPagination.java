@@ -0,0 +1,155 @@
+package ru.webkonditer.samarafleet.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.webkonditer.samarafleet.dto.KeysetPage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Общая часть списочных эндпоинтов: постраничное чтение по идентификатору с непрозрачным курсором
+ * и потоковая выдача всего списка JSON массивом или NDJSON без сборки списка в памяти.
+ */
+final class KeysetPagination {
+
+    static final int DEFAULT_LIMIT = 100;
+
+    static final int MAX_LIMIT = 1000;
+
+    private KeysetPagination() {
+    }
+
+    /**
+     * Загрузчик страницы: элементы с идентификатором больше afterId, не больше limit штук, по возрастанию id.
+     */
+    @FunctionalInterface
+    interface PageLoader<T> {
+
+        List<T> load(long afterId, int limit);
+    }
+
+    /**
+     * Возвращает страницу после курсора. Загружается на один элемент больше, чтобы знать, есть ли следующая.
+     *
+     * @param cursor Курсор из предыдущей страницы или null для первой страницы.
+     * @param limit  Размер страницы или null для размера по умолчанию.
+     * @param loader Загрузчик страницы.
+     * @param idOf   Идентификатор элемента.
+     * @return Страница или 400, если курсор или размер страницы невалидны.
+     */
+    static <T> ResponseEntity<KeysetPage<T>> page(String cursor, Integer limit, PageLoader<T> loader,
+                                                  ToLongFunction<T> idOf) {
+        int size = limit == null ? DEFAULT_LIMIT : limit;
+        Long afterId = cursor == null ? Long.valueOf(Long.MIN_VALUE) : decodeCursor(cursor);
+        if (afterId == null || size <= 0 || size > MAX_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<T> items = loader.load(afterId, size + 1);
+        String nextCursor = null;
+        if (items.size() > size) {
+            items = items.subList(0, size);
+            nextCursor = encodeCursor(idOf.applyAsLong(items.get(size - 1)));
+        }
+        return ResponseEntity.ok(new KeysetPage<>(items, nextCursor));
+    }
+
+    /**
+     * Отдает элементы JSON массивом по мере чтения из базы данных.
+     *
+     * @param objectMapper Сериализатор.
+     * @param source       Источник, передающий элементы потребителю.
+     * @return Ответ с потоковым телом.
+     */
+    static ResponseEntity<StreamingResponseBody> jsonArray(ObjectMapper objectMapper,
+                                                           Consumer<Consumer<Object>> source) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                source.accept(item -> write(generator, item));
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Отдает элементы в формате NDJSON (объект на строку) по мере чтения из базы данных.
+     *
+     * @param objectMapper Сериализатор.
+     * @param source       Источник, передающий элементы потребителю.
+     * @return Ответ с потоковым телом.
+     */
+    static ResponseEntity<StreamingResponseBody> ndjson(ObjectMapper objectMapper,
+                                                        Consumer<Consumer<Object>> source) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                source.accept(item -> {
+                    write(generator, item);
+                    try {
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Проверяет, запрошен ли явно формат NDJSON; шаблоны со звездочкой не в счет.
+     *
+     * @param accept Заголовок Accept.
+     * @return true, если в заголовке есть application/x-ndjson с ненулевым весом.
+     */
+    static boolean acceptsNdjson(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(mediaType -> mediaType.getQualityValue() > 0
+                            && MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(mediaType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    static String encodeCursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Разбирает курсор.
+     *
+     * @return Идентификатор последнего элемента предыдущей страницы или null, если курсор невалиден.
+     */
+    static Long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException тоже IllegalArgumentException
+            return null;
+        }
+    }
+
+    private static void write(JsonGenerator generator, Object item) {
+        try {
+            generator.writeObject(item);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
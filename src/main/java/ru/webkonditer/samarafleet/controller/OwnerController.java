@@ -1,14 +1,19 @@
 package ru.webkonditer.samarafleet.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.webkonditer.samarafleet.dto.BulkLinkReport;
+import ru.webkonditer.samarafleet.dto.KeysetPage;
 import ru.webkonditer.samarafleet.model.Car;
 import ru.webkonditer.samarafleet.model.Owner;
 import ru.webkonditer.samarafleet.service.OwnerService;
@@ -20,19 +25,44 @@ import java.util.List;
 public class OwnerController {
 
     private final OwnerService ownerService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public OwnerController(OwnerService ownerService) {
+    public OwnerController(OwnerService ownerService, ObjectMapper objectMapper) {
         this.ownerService = ownerService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
     @Operation(
             summary = "Get all owners",
-            description = "Retrieve a list of all owners"
+            description = "Get owners ordered by ID. Without paging parameters the whole list is streamed as a JSON "
+                    + "array, or as newline-delimited JSON when application/x-ndjson is accepted; with a limit "
+                    + "or a cursor one page is returned together with the cursor of the next page"
     )
-    public List<Owner> getAllOwners() {
-        return ownerService.getAllOwners();
+    @ApiResponse(
+            responseCode = "200",
+            description = "List of owners or a page of owners",
+            content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = KeysetPage.class)),
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Owner.class))
+            }
+    )
+    @ApiResponse(responseCode = "400", description = "Invalid cursor or limit")
+    public ResponseEntity<?> getAllOwners(
+            @Parameter(description = "Cursor of the page returned as nextCursor of the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size, at most " + KeysetPagination.MAX_LIMIT)
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) {
+        if (cursor != null || limit != null) {
+            return KeysetPagination.page(cursor, limit, ownerService::getOwnersAfter, Owner::getId);
+        }
+        if (KeysetPagination.acceptsNdjson(accept)) {
+            return KeysetPagination.ndjson(objectMapper, ownerService::forEachOwner);
+        }
+        return KeysetPagination.jsonArray(objectMapper, ownerService::forEachOwner);
     }
 
     @GetMapping("/{ownerId}")
@@ -196,4 +226,45 @@ public class OwnerController {
         return ownerService.detachCarFromOwner(ownerId, carId) ?
                 ResponseEntity.noContent().build() : ResponseEntity.badRequest().build();
     }
+
+    @PostMapping("/{ownerId}/cars/attach")
+    @Operation(
+            summary = "Attach cars to owner",
+            description = "Move the listed cars to the owner in one transaction, whoever they belonged to "
+                    + "before. Unknown car IDs are skipped; the cost does not depend on how many cars the owner "
+                    + "already has"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Cars attached",
+            content = @Content(schema = @Schema(implementation = BulkLinkReport.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Bad request, owner not found")
+    public ResponseEntity<BulkLinkReport> attachCars(
+            @Parameter(description = "ID of the owner") @PathVariable Long ownerId,
+            @RequestBody List<Long> carIds
+    ) {
+        BulkLinkReport report = ownerService.attachCarsToOwner(ownerId, carIds);
+        return report != null ? ResponseEntity.ok(report) : ResponseEntity.badRequest().build();
+    }
+
+    @PostMapping("/{ownerId}/cars/detach")
+    @Operation(
+            summary = "Detach cars from owner",
+            description = "Detach the listed cars from the owner in one transaction. "
+                    + "Cars that do not belong to the owner are left unchanged"
+    )
+    @ApiResponse(
+            responseCode = "200",
+            description = "Cars detached",
+            content = @Content(schema = @Schema(implementation = BulkLinkReport.class))
+    )
+    @ApiResponse(responseCode = "400", description = "Bad request, owner not found")
+    public ResponseEntity<BulkLinkReport> detachCars(
+            @Parameter(description = "ID of the owner") @PathVariable Long ownerId,
+            @RequestBody List<Long> carIds
+    ) {
+        BulkLinkReport report = ownerService.detachCarsFromOwner(ownerId, carIds);
+        return report != null ? ResponseEntity.ok(report) : ResponseEntity.badRequest().build();
+    }
 }
@@ -0,0 +1,40 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Итоги массового импорта: импортированные записи остаются в базе, ошибочные перечислены построчно.
+ */
+@Getter
+@AllArgsConstructor
+public class BulkImportReport {
+
+    // Число прочитанных записей
+    private long rowCount;
+
+    private long importedCount;
+
+    private long failedCount;
+
+    // Ошибки по строкам; не больше заданного числа, остальные только посчитаны в failedCount
+    private List<RowError> errors;
+
+    /**
+     * Ошибка импорта одной записи.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class RowError {
+
+        // Номер строки файла, с которой начинается запись
+        private long line;
+
+        // Естественный ключ записи (email или регистрационный номер), если он прочитан
+        private String key;
+
+        private String message;
+    }
+}
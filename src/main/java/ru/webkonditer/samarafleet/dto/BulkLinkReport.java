@@ -0,0 +1,18 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Итоги массового прикрепления или открепления.
+ */
+@Getter
+@AllArgsConstructor
+public class BulkLinkReport {
+
+    // Число различных идентификаторов в запросе
+    private long requestedCount;
+
+    // Число измененных записей; несуществующие идентификаторы и чужие записи при откреплении не учитываются
+    private long updatedCount;
+}
@@ -0,0 +1,25 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Текущие показания одометра автомобиля по живым потокам GPS данных.
+ */
+@Getter
+@AllArgsConstructor
+public class CarOdometer {
+
+    private Long carId;
+
+    // Дистанция в км, накопленная с запуска приложения
+    private double distance;
+
+    // Число открытых потоков данных от автомобиля
+    private int activeStreams;
+
+    // Время последнего учтенного отрезка или null, если отрезков еще не было
+    private Instant lastUpdate;
+}
@@ -0,0 +1,25 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Последняя известная позиция автомобиля.
+ */
+@Getter
+@AllArgsConstructor
+public class CarPositionInfo {
+
+    private Long carId;
+
+    private Instant time;
+
+    private double latitude;
+
+    private double longitude;
+
+    // Скорость в км/ч
+    private double speed;
+}
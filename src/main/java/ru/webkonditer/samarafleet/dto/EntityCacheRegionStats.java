@@ -0,0 +1,27 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Статистика области кэша второго уровня Hibernate.
+ */
+@Getter
+@AllArgsConstructor
+public class EntityCacheRegionStats {
+
+    private String region;
+
+    private long maxEntries;
+
+    private long ttlSeconds;
+
+    private long hits;
+
+    private long misses;
+
+    // Записи, помещенные в кэш после чтения из базы данных или изменения
+    private long puts;
+
+    private double hitRate;
+}
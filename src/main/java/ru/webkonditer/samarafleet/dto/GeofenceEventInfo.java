@@ -0,0 +1,29 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.webkonditer.samarafleet.model.GeofenceEventType;
+
+import java.time.Instant;
+
+/**
+ * Событие въезда автомобиля в геозону или выезда из нее.
+ */
+@Getter
+@AllArgsConstructor
+public class GeofenceEventInfo {
+
+    private Long id;
+
+    private Long geofenceId;
+
+    private Long carId;
+
+    private GeofenceEventType type;
+
+    private Instant time;
+
+    private double latitude;
+
+    private double longitude;
+}
@@ -0,0 +1,23 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Итоги пакетной записи точек трека в базу данных.
+ */
+@Getter
+@AllArgsConstructor
+public class GpsFixIngestReport {
+
+    private long rows;
+
+    private int batches;
+
+    private long elapsedMillis;
+
+    private double rowsPerSecond;
+
+    // Способ записи: COPY для PostgreSQL или JDBC batch для остальных баз
+    private String method;
+}
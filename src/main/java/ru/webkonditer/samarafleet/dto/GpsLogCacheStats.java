@@ -0,0 +1,30 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Статистика кэша результатов обработки GPS логов.
+ */
+@Getter
+@AllArgsConstructor
+public class GpsLogCacheStats {
+
+    private boolean enabled;
+
+    // Текущее число записей
+    private int size;
+
+    private int maxEntries;
+
+    private long ttlSeconds;
+
+    private long hits;
+
+    private long misses;
+
+    // Записи, удаленные по размеру или сроку хранения
+    private long evictions;
+
+    private double hitRate;
+}
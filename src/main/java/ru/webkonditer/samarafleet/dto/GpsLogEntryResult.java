@@ -0,0 +1,19 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Результат обработки одного GPS лога из пакета (записи zip архива или файла пакетной загрузки).
+ */
+@Getter
+@AllArgsConstructor
+public class GpsLogEntryResult {
+
+    private String name;
+
+    // Результат обработки или null, если произошла ошибка
+    private GpsLogResult result;
+
+    private String error;
+}
@@ -0,0 +1,47 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Состояние фоновой задачи обработки GPS лога.
+ */
+@Getter
+@AllArgsConstructor
+public class GpsLogJobInfo {
+
+    /**
+     * Статус задачи.
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        /**
+         * Проверяет, завершена ли задача (успешно, с ошибкой или отменой).
+         *
+         * @return true, если задача больше не изменится.
+         */
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private String id;
+
+    private Status status;
+
+    private long bytesProcessed;
+
+    private long bytesTotal;
+
+    // Доля обработанных байтов от 0 до 1
+    private double progress;
+
+    private String error;
+
+    private Instant createdAt;
+
+    private Instant finishedAt;
+}
@@ -0,0 +1,90 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Структурированный результат обработки GPS лога.
+ * Экземпляр неизменяем, поэтому один результат из кэша можно отдавать всем запросам.
+ */
+@Getter
+public class GpsLogResult {
+
+    // Общая дистанция в км
+    private double totalDistance;
+
+    // Время в движении в секундах
+    private long movingSeconds;
+
+    // Число точек $GPGGA с координатами
+    private long fixCount;
+
+    // Число невалидных строк $GPGGA и $GNVTG
+    private long invalidSentenceCount;
+
+    private List<SpeedBucket> speedHistogram;
+
+    // Границы трека или null, если в логе нет точек
+    private BoundingBox boundingBox;
+
+    // Итоги записи точек в таблицу gps_fixes или null, если точки в базу данных не записывались
+    private GpsFixIngestReport fixIngest;
+
+    /**
+     * Создает результат; гистограмма копируется в неизменяемый список.
+     */
+    public GpsLogResult(double totalDistance, long movingSeconds, long fixCount, long invalidSentenceCount,
+                        List<SpeedBucket> speedHistogram, BoundingBox boundingBox, GpsFixIngestReport fixIngest) {
+        this.totalDistance = totalDistance;
+        this.movingSeconds = movingSeconds;
+        this.fixCount = fixCount;
+        this.invalidSentenceCount = invalidSentenceCount;
+        this.speedHistogram = List.copyOf(speedHistogram);
+        this.boundingBox = boundingBox;
+        this.fixIngest = fixIngest;
+    }
+
+    /**
+     * Возвращает копию результата с итогами записи точек в базу данных.
+     *
+     * @param fixIngest Итоги записи точек.
+     * @return Новый результат; исходный не меняется.
+     */
+    public GpsLogResult withFixIngest(GpsFixIngestReport fixIngest) {
+        return new GpsLogResult(totalDistance, movingSeconds, fixCount, invalidSentenceCount, speedHistogram,
+                boundingBox, fixIngest);
+    }
+
+    /**
+     * Корзина гистограммы скоростей: число точек со скоростью в [fromSpeed, toSpeed) км/ч.
+     * У последней корзины toSpeed равен null.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SpeedBucket {
+
+        private int fromSpeed;
+
+        private Integer toSpeed;
+
+        private long count;
+    }
+
+    /**
+     * Прямоугольник, содержащий все точки трека.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class BoundingBox {
+
+        private double minLatitude;
+
+        private double minLongitude;
+
+        private double maxLatitude;
+
+        private double maxLongitude;
+    }
+}
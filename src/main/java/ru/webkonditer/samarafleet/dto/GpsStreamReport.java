@@ -0,0 +1,29 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Итоги завершенного потока GPS данных.
+ */
+@Getter
+@AllArgsConstructor
+public class GpsStreamReport {
+
+    private Long carId;
+
+    private long bytesReceived;
+
+    // Дистанция в км за этот поток
+    private double distance;
+
+    private long fixCount;
+
+    private long invalidSentenceCount;
+
+    // Отрезки пути, пропущенные из-за невалидных координат
+    private long rejectedLineCount;
+
+    // Показания одометра после завершения потока
+    private CarOdometer odometer;
+}
@@ -0,0 +1,25 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Пройденный путь по сохраненному треку автомобиля за интервал времени.
+ */
+@Getter
+@AllArgsConstructor
+public class GpsTrackDistance {
+
+    private Long carId;
+
+    private Instant from;
+
+    private Instant to;
+
+    private long fixCount;
+
+    // Пройденный путь по треку в км (без отрезков на стоянках)
+    private double distance;
+}
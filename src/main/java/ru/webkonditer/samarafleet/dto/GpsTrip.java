@@ -0,0 +1,38 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Поездка, выделенная из GPS трека: непрерывное движение между двумя стоянками.
+ */
+@Getter
+@AllArgsConstructor
+public class GpsTrip {
+
+    private Instant startTime;
+
+    private Instant endTime;
+
+    private double startLatitude;
+
+    private double startLongitude;
+
+    private double endLatitude;
+
+    private double endLongitude;
+
+    // Дистанция в км
+    private double distance;
+
+    // Максимальная скорость в км/ч
+    private double maxSpeed;
+
+    // Средняя скорость в км/ч за время движения (без коротких остановок)
+    private double averageSpeed;
+
+    // Суммарная длительность коротких остановок внутри поездки в секундах
+    private long idleSeconds;
+}
@@ -0,0 +1,19 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Результат разбиения GPS лога на поездки.
+ */
+@Getter
+@AllArgsConstructor
+public class GpsTripReport {
+
+    // Общая дистанция по логу в км
+    private double totalDistance;
+
+    private List<GpsTrip> trips;
+}
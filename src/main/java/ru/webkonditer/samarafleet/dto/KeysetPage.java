@@ -0,0 +1,22 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Страница списка при постраничном чтении по идентификатору (keyset-пагинация).
+ *
+ * @param <T> Тип элементов.
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetPage<T> {
+
+    // Элементы страницы в порядке возрастания идентификатора
+    private List<T> items;
+
+    // Курсор следующей страницы или null, если страница последняя
+    private String nextCursor;
+}
@@ -0,0 +1,28 @@
+package ru.webkonditer.samarafleet.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Позиция автомобиля, найденного рядом с точкой, и расстояние до нее.
+ */
+@Getter
+@AllArgsConstructor
+public class NearbyCarInfo {
+
+    private Long carId;
+
+    private Instant time;
+
+    private double latitude;
+
+    private double longitude;
+
+    // Скорость в км/ч
+    private double speed;
+
+    // Расстояние до точки запроса в км
+    private double distance;
+}
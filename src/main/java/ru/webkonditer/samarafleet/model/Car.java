@@ -2,12 +2,17 @@ package ru.webkonditer.samarafleet.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.Data;
+import ru.webkonditer.samarafleet.config.EntityCacheConfiguration;
 
 /**
  * Класс, представляющий автомобиль (Car).
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = EntityCacheConfiguration.CARS)
 @Table(name = "cars")
 @Data // Аннотация Lombok для генерации геттеров, сеттеров, equals, hashCode и toString
 public class Car {
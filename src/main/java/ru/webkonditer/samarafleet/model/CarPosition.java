@@ -0,0 +1,45 @@
+package ru.webkonditer.samarafleet.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+
+/**
+ * Класс, представляющий последнюю известную позицию автомобиля (CarPosition).
+ * Актуальные позиции хранятся в памяти, таблица периодически обновляется из них через JDBC.
+ */
+@Entity
+@Getter
+@Table(name = "car_positions")
+public class CarPosition {
+
+    @Id
+    @Column(name = "car_id")
+    private Long carId;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @MapsId
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JsonIgnore // Игнорируем поле при сериализации в JSON
+    @JoinColumn(name = "car_id")
+    private Car car;
+
+    @Column(name = "fix_time", nullable = false)
+    private Instant fixTime;
+
+    private double latitude;
+
+    private double longitude;
+
+    private double speed;
+
+    /**
+     * Конструктор без аргументов (для JPA).
+     */
+    public CarPosition() {
+    }
+}
@@ -2,7 +2,10 @@ package ru.webkonditer.samarafleet.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.Getter;
+import ru.webkonditer.samarafleet.config.EntityCacheConfiguration;
 
 import java.util.List;
 
@@ -10,6 +13,8 @@ import java.util.List;
  * Класс, представляющий дилера (Dealer).
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = EntityCacheConfiguration.DEALERS)
 @Getter // Аннотация Lombok для генерации геттеров, сеттеров, equals, hashCode и toString
 //@Setter // Аннотация Lombok для генерации сеттеров (закомментирована, так как не используется)
 @Table(name = "dealers")
@@ -27,6 +32,7 @@ public class Dealer {
     private String representativeName;
 
     @OneToMany(mappedBy = "dealer", cascade = CascadeType.ALL)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = EntityCacheConfiguration.DEALER_OWNERS)
     @JsonIgnore // Игнорируем поле при сериализации в JSON
     private List<Owner> owners;
 
@@ -0,0 +1,81 @@
+package ru.webkonditer.samarafleet.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс, представляющий геозону дилера (Geofence): многоугольник, о въезде в который и выезде из которого
+ * автомобилей владельцев дилера записываются события.
+ */
+@Entity
+@Getter
+@Table(name = "geofences")
+public class Geofence {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JsonIgnore // Игнорируем поле при сериализации в JSON
+    @JoinColumn(name = "dealer_id", nullable = false)
+    private Dealer dealer;
+
+    private String name;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @OnDelete(action = OnDeleteAction.CASCADE) // Вершины удаляются вместе с геозоной, в том числе при удалении дилера
+    @CollectionTable(name = "geofence_vertices", joinColumns = @JoinColumn(name = "geofence_id"))
+    @JoinColumn(name = "geofence_id")
+    @OrderColumn(name = "vertex_index")
+    private List<GeofenceVertex> vertices = new ArrayList<>();
+
+    /**
+     * Конструктор без аргументов (для JPA).
+     */
+    public Geofence() {
+    }
+
+    /**
+     * Устанавливает идентификатор геозоны.
+     *
+     * @param id Идентификатор геозоны.
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * Устанавливает дилера геозоны.
+     *
+     * @param dealer Дилер.
+     */
+    public void setDealer(Dealer dealer) {
+        this.dealer = dealer;
+    }
+
+    /**
+     * Устанавливает название геозоны.
+     *
+     * @param name Название геозоны.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Устанавливает вершины многоугольника геозоны.
+     *
+     * @param vertices Вершины в порядке обхода.
+     */
+    public void setVertices(List<GeofenceVertex> vertices) {
+        this.vertices = vertices;
+    }
+}
@@ -0,0 +1,55 @@
+package ru.webkonditer.samarafleet.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+
+/**
+ * Класс, представляющий событие въезда автомобиля в геозону или выезда из нее (GeofenceEvent).
+ * Строки этой таблицы пишутся пакетно через JDBC, минуя JPA.
+ */
+@Entity
+@Getter
+@Table(name = "geofence_events", indexes = {
+        @Index(name = "idx_geofence_events_geofence_time", columnList = "geofence_id, event_time"),
+        @Index(name = "idx_geofence_events_car_time", columnList = "car_id, event_time")
+})
+public class GeofenceEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JsonIgnore // Игнорируем поле при сериализации в JSON
+    @JoinColumn(name = "geofence_id", nullable = false)
+    private Geofence geofence;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JsonIgnore // Игнорируем поле при сериализации в JSON
+    @JoinColumn(name = "car_id", nullable = false)
+    private Car car;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 8)
+    private GeofenceEventType eventType;
+
+    @Column(name = "event_time", nullable = false)
+    private Instant eventTime;
+
+    private double latitude;
+
+    private double longitude;
+
+    /**
+     * Конструктор без аргументов (для JPA).
+     */
+    public GeofenceEvent() {
+    }
+}
@@ -0,0 +1,17 @@
+package ru.webkonditer.samarafleet.model;
+
+/**
+ * Тип события геозоны.
+ */
+public enum GeofenceEventType {
+
+    /**
+     * Автомобиль въехал в геозону.
+     */
+    ENTER,
+
+    /**
+     * Автомобиль выехал из геозоны.
+     */
+    EXIT
+}
@@ -0,0 +1,35 @@
+package ru.webkonditer.samarafleet.model;
+
+import jakarta.persistence.Embeddable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Вершина многоугольника геозоны (GeofenceVertex).
+ */
+@Embeddable
+@Getter
+@Setter
+public class GeofenceVertex {
+
+    private double latitude;
+
+    private double longitude;
+
+    /**
+     * Конструктор без аргументов (для JPA).
+     */
+    public GeofenceVertex() {
+    }
+
+    /**
+     * Конструктор с координатами.
+     *
+     * @param latitude  Широта в градусах.
+     * @param longitude Долгота в градусах.
+     */
+    public GeofenceVertex(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
@@ -0,0 +1,44 @@
+package ru.webkonditer.samarafleet.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+
+/**
+ * Класс, представляющий точку GPS трека автомобиля (GpsFix).
+ * Строки этой таблицы пишутся пакетно через JDBC, минуя JPA.
+ */
+@Entity
+@Getter
+@Table(name = "gps_fixes", indexes = @Index(name = "idx_gps_fixes_car_time", columnList = "car_id, fix_time"))
+public class GpsFix {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @OnDelete(action = OnDeleteAction.CASCADE) // Точки удаляются вместе с машиной, в том числе при удалении владельца или дилера
+    @JsonIgnore // Игнорируем поле при сериализации в JSON
+    @JoinColumn(name = "car_id", nullable = false)
+    private Car car;
+
+    @Column(name = "fix_time", nullable = false)
+    private Instant fixTime;
+
+    private double latitude;
+
+    private double longitude;
+
+    private double speed;
+
+    /**
+     * Конструктор без аргументов (для JPA).
+     */
+    public GpsFix() {
+    }
+}
@@ -2,7 +2,10 @@ package ru.webkonditer.samarafleet.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.ToString;
+import ru.webkonditer.samarafleet.config.EntityCacheConfiguration;
 
 import java.util.List;
 
@@ -10,6 +13,8 @@ import java.util.List;
  * Класс, представляющий владельца автомобиля (Owner).
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = EntityCacheConfiguration.OWNERS)
 @Table(name = "owners")
 public class Owner {
 
@@ -30,6 +35,7 @@ public class Owner {
     private Dealer dealer;
 
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = EntityCacheConfiguration.OWNER_CARS)
     @JsonIgnore
     @ToString.Exclude
     private List<Car> cars;
@@ -0,0 +1,23 @@
+package ru.webkonditer.samarafleet.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.webkonditer.samarafleet.model.CarPosition;
+
+@Repository
+public interface CarPositionRepository extends JpaRepository<CarPosition, Long> {
+
+    /**
+     * Удаляет сохраненную позицию автомобиля одним запросом.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Количество удаленных строк.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from CarPosition p where p.carId = :carId")
+    int deleteByCarId(Long carId);
+}
@@ -1,10 +1,107 @@
 package ru.webkonditer.samarafleet.repo;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import ru.webkonditer.samarafleet.model.Car;
+import ru.webkonditer.samarafleet.model.Owner;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface CarRepository extends JpaRepository<Car, Long> {
-    // Здесь можно добавить методы для специфичных запросов, если они потребуются
+
+    /**
+     * Автомобили всех владельцев дилера одним запросом: владелец и дилер (EAGER-связи) подтягиваются
+     * в том же запросе, а не отдельными select на каждую строку.
+     * Поток читается курсором и должен потребляться внутри транзакции.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @return Автомобили дилера в порядке идентификаторов.
+     */
+    @Query("select c from Car c join fetch c.owner o join fetch o.dealer d where d.id = :dealerId order by c.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Car> streamByDealerId(Long dealerId);
+
+    /**
+     * Страница автомобилей после заданного идентификатора (keyset-пагинация) вместе с владельцами и дилерами.
+     *
+     * @param afterId  Идентификатор последнего автомобиля предыдущей страницы.
+     * @param pageable Размер страницы (номер страницы не используется).
+     * @return Автомобили в порядке идентификаторов.
+     */
+    @Query("select c from Car c left join fetch c.owner o left join fetch o.dealer where c.id > :afterId order by c.id")
+    List<Car> findPageAfter(long afterId, Pageable pageable);
+
+    /**
+     * Все автомобили в порядке идентификаторов вместе с владельцами и дилерами, одним запросом.
+     * Поток читается курсором и должен потребляться внутри транзакции.
+     *
+     * @return Автомобили.
+     */
+    @Query("select c from Car c left join fetch c.owner o left join fetch o.dealer order by c.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Car> streamAll();
+
+    /**
+     * Передает автомобили владельцу одним UPDATE, не загружая ни автомобили, ни коллекцию cars владельца.
+     *
+     * @param owner  Новый владелец (достаточно ссылки без загрузки).
+     * @param carIds Идентификаторы автомобилей.
+     * @return Число найденных автомобилей.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Car c set c.owner = :owner where c.id in :carIds")
+    int reassignOwner(Owner owner, Collection<Long> carIds);
+
+    /**
+     * Открепляет автомобили от владельца одним UPDATE. Автомобили других владельцев не меняются.
+     *
+     * @param ownerId Идентификатор владельца.
+     * @param carIds  Идентификаторы автомобилей.
+     * @return Число открепленных автомобилей.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Car c set c.owner = null where c.owner.id = :ownerId and c.id in :carIds")
+    int detachFromOwner(Long ownerId, Collection<Long> carIds);
+
+    /**
+     * Идентификаторы автомобилей владельца.
+     *
+     * @param ownerId Идентификатор владельца.
+     * @return Идентификаторы автомобилей.
+     */
+    @Query("select c.id from Car c where c.owner.id = :ownerId")
+    List<Long> findIdsByOwnerId(Long ownerId);
+
+    /**
+     * Идентификаторы автомобилей нескольких владельцев.
+     *
+     * @param ownerIds Идентификаторы владельцев.
+     * @return Идентификаторы автомобилей.
+     */
+    @Query("select c.id from Car c where c.owner.id in :ownerIds")
+    List<Long> findIdsByOwnerIds(Collection<Long> ownerIds);
+
+    /**
+     * Идентификаторы автомобилей всех владельцев дилера.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @return Идентификаторы автомобилей.
+     */
+    @Query("select c.id from Car c where c.owner.dealer.id = :dealerId")
+    List<Long> findIdsByDealerId(Long dealerId);
 }
@@ -1,10 +1,39 @@
 package ru.webkonditer.samarafleet.repo;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import ru.webkonditer.samarafleet.model.Dealer;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface DealerRepository extends JpaRepository<Dealer, Long> {
-    // Здесь можно добавить методы для специфичных запросов, если они потребуются
+
+    /**
+     * Страница дилеров после заданного идентификатора (keyset-пагинация).
+     *
+     * @param afterId  Идентификатор последнего дилера предыдущей страницы.
+     * @param pageable Размер страницы (номер страницы не используется).
+     * @return Дилеры в порядке идентификаторов.
+     */
+    @Query("select d from Dealer d where d.id > :afterId order by d.id")
+    List<Dealer> findPageAfter(long afterId, Pageable pageable);
+
+    /**
+     * Все дилеры в порядке идентификаторов. Поток читается курсором и должен потребляться внутри транзакции.
+     *
+     * @return Дилеры.
+     */
+    @Query("select d from Dealer d order by d.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Dealer> streamAll();
 }
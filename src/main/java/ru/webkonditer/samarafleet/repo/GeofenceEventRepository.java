@@ -0,0 +1,28 @@
+package ru.webkonditer.samarafleet.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.webkonditer.samarafleet.dto.GeofenceEventInfo;
+import ru.webkonditer.samarafleet.model.GeofenceEvent;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface GeofenceEventRepository extends JpaRepository<GeofenceEvent, Long> {
+
+    /**
+     * Получение событий геозон дилера за интервал времени.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @param from     Начало интервала (включительно).
+     * @param to       Конец интервала (не включительно).
+     * @return События по возрастанию времени.
+     */
+    @Query("select new ru.webkonditer.samarafleet.dto.GeofenceEventInfo(e.id, e.geofence.id, e.car.id, e.eventType, "
+            + "e.eventTime, e.latitude, e.longitude) from GeofenceEvent e "
+            + "where e.geofence.dealer.id = :dealerId and e.eventTime >= :from and e.eventTime < :to "
+            + "order by e.eventTime, e.id")
+    List<GeofenceEventInfo> findDealerEvents(Long dealerId, Instant from, Instant to);
+}
@@ -0,0 +1,38 @@
+package ru.webkonditer.samarafleet.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.webkonditer.samarafleet.model.Geofence;
+
+import java.util.List;
+
+@Repository
+public interface GeofenceRepository extends JpaRepository<Geofence, Long> {
+
+    /**
+     * Получение геозон дилера.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @return Геозоны дилера.
+     */
+    @Query("select distinct g from Geofence g left join fetch g.vertices where g.dealer.id = :dealerId order by g.id")
+    List<Geofence> findByDealerId(Long dealerId);
+
+    /**
+     * Получение всех геозон с вершинами одним запросом.
+     *
+     * @return Все геозоны.
+     */
+    @Query("select distinct g from Geofence g left join fetch g.vertices")
+    List<Geofence> findAllWithVertices();
+
+    /**
+     * Получение идентификатора дилера геозоны без загрузки дилера.
+     *
+     * @param geofenceId Идентификатор геозоны.
+     * @return Идентификатор дилера или null, если геозоны нет.
+     */
+    @Query("select g.dealer.id from Geofence g where g.id = :geofenceId")
+    Long findDealerIdById(Long geofenceId);
+}
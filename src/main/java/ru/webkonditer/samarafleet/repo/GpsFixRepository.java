@@ -0,0 +1,23 @@
+package ru.webkonditer.samarafleet.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.webkonditer.samarafleet.model.GpsFix;
+
+@Repository
+public interface GpsFixRepository extends JpaRepository<GpsFix, Long> {
+
+    /**
+     * Удаляет все точки трека автомобиля одним запросом.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Количество удаленных точек.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from GpsFix f where f.car.id = :carId")
+    int deleteByCarId(Long carId);
+}
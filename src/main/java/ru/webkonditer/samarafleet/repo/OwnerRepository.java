@@ -1,10 +1,79 @@
 package ru.webkonditer.samarafleet.repo;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import ru.webkonditer.samarafleet.model.Dealer;
 import ru.webkonditer.samarafleet.model.Owner;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface OwnerRepository extends JpaRepository<Owner, Long> {
-    // Здесь можно добавить методы для специфичных запросов, если они потребуются
+
+    /**
+     * Владельцы дилера одним запросом вместе с дилером (EAGER-связь).
+     * Поток читается курсором и должен потребляться внутри транзакции.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @return Владельцы дилера в порядке идентификаторов.
+     */
+    @Query("select o from Owner o join fetch o.dealer d where d.id = :dealerId order by o.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Owner> streamByDealerId(Long dealerId);
+
+    /**
+     * Страница владельцев после заданного идентификатора (keyset-пагинация) вместе с дилерами.
+     *
+     * @param afterId  Идентификатор последнего владельца предыдущей страницы.
+     * @param pageable Размер страницы (номер страницы не используется).
+     * @return Владельцы в порядке идентификаторов.
+     */
+    @Query("select o from Owner o left join fetch o.dealer where o.id > :afterId order by o.id")
+    List<Owner> findPageAfter(long afterId, Pageable pageable);
+
+    /**
+     * Все владельцы в порядке идентификаторов вместе с дилерами, одним запросом.
+     * Поток читается курсором и должен потребляться внутри транзакции.
+     *
+     * @return Владельцы.
+     */
+    @Query("select o from Owner o left join fetch o.dealer order by o.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Owner> streamAll();
+
+    /**
+     * Передает владельцев дилеру одним UPDATE, не загружая ни владельцев, ни коллекцию owners дилера.
+     *
+     * @param dealer   Новый дилер (достаточно ссылки без загрузки).
+     * @param ownerIds Идентификаторы владельцев.
+     * @return Число найденных владельцев.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Owner o set o.dealer = :dealer where o.id in :ownerIds")
+    int reassignDealer(Dealer dealer, Collection<Long> ownerIds);
+
+    /**
+     * Открепляет владельцев от дилера одним UPDATE. Владельцы других дилеров не меняются.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @param ownerIds Идентификаторы владельцев.
+     * @return Число открепленных владельцев.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Owner o set o.dealer = null where o.dealer.id = :dealerId and o.id in :ownerIds")
+    int detachFromDealer(Long dealerId, Collection<Long> ownerIds);
 }
@@ -0,0 +1,392 @@
+package ru.webkonditer.samarafleet.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.webkonditer.samarafleet.dto.BulkImportReport;
+import ru.webkonditer.samarafleet.model.Dealer;
+import ru.webkonditer.samarafleet.model.Owner;
+import ru.webkonditer.samarafleet.service.bulk.BulkImportFormat;
+import ru.webkonditer.samarafleet.service.bulk.BulkRecordReader;
+import ru.webkonditer.samarafleet.service.bulk.CsvRecordReader;
+import ru.webkonditer.samarafleet.service.bulk.NdjsonRecordReader;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Массовый импорт дилеров, владельцев и автомобилей из CSV или NDJSON.
+ * <p>
+ * Файл читается потоково, записи пишутся пакетами JDBC batch по batchSize строк, каждый пакет - в своей
+ * транзакции. Связи задаются естественными ключами: владелец ссылается на дилера по email дилера,
+ * автомобиль на владельца по email владельца. Записи, чей ключ уже есть в базе или раньше в файле,
+ * с неизвестной ссылкой или без обязательных полей, попадают в отчет об ошибках; остальные импортируются.
+ * Если пакет отклонен базой данных, он вставляется по одной строке, чтобы найти ошибочные записи.
+ * <p>
+ * Идентификаторы по-прежнему выдает база данных (IDENTITY): для вставки они не нужны, а ссылки
+ * разрешаются одним запросом на пакет.
+ */
+@Service
+public class BulkImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportService.class);
+
+    private static final ImportKind DEALERS = new ImportKind("dealers", "email",
+            new String[]{"name", "email", "representativeName"},
+            new String[]{"name", "email", "representative_name"},
+            new String[]{"name", "email"},
+            null);
+
+    private static final ImportKind OWNERS = new ImportKind("owners", "email",
+            new String[]{"fullName", "phone", "email"},
+            new String[]{"full_name", "phone", "email"},
+            new String[]{"fullName", "email"},
+            new Reference("dealerEmail", "dealers", "email", "dealer_id", Dealer.class, "owners"));
+
+    private static final ImportKind CARS = new ImportKind("cars", "registrationNumber",
+            new String[]{"registrationNumber", "manufactureDate"},
+            new String[]{"registration_number", "manufacture_date"},
+            new String[]{"registrationNumber"},
+            new Reference("ownerEmail", "owners", "email", "owner_id", Owner.class, "cars"));
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final EntityCacheService entityCacheService;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    /**
+     * @param dataSource         Источник соединений с базой данных.
+     * @param objectMapper       Парсер JSON для NDJSON.
+     * @param entityCacheService Сервис кэша второго уровня для сброса коллекций после импорта.
+     * @param batchSize          Число строк в одном пакете вставки.
+     * @param maxReportedErrors  Максимальное число ошибок, перечисляемых в отчете.
+     */
+    @Autowired
+    public BulkImportService(DataSource dataSource,
+                             ObjectMapper objectMapper,
+                             EntityCacheService entityCacheService,
+                             @Value("${import.batch-size:1000}") int batchSize,
+                             @Value("${import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.entityCacheService = entityCacheService;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Импортирует дилеров. Поля: name, email, representativeName; ключ - email.
+     *
+     * @param inputStream Данные в кодировке UTF-8.
+     * @param format      Формат данных.
+     * @return Отчет об импорте.
+     * @throws IOException              Ошибка чтения данных.
+     * @throws IllegalArgumentException Если в заголовке CSV нет обязательных полей.
+     */
+    public BulkImportReport importDealers(InputStream inputStream, BulkImportFormat format) throws IOException {
+        return importRows(DEALERS, inputStream, format);
+    }
+
+    /**
+     * Импортирует владельцев. Поля: fullName, phone, email, dealerEmail (необязательное); ключ - email.
+     *
+     * @param inputStream Данные в кодировке UTF-8.
+     * @param format      Формат данных.
+     * @return Отчет об импорте.
+     * @throws IOException              Ошибка чтения данных.
+     * @throws IllegalArgumentException Если в заголовке CSV нет обязательных полей.
+     */
+    public BulkImportReport importOwners(InputStream inputStream, BulkImportFormat format) throws IOException {
+        return importRows(OWNERS, inputStream, format);
+    }
+
+    /**
+     * Импортирует автомобили. Поля: registrationNumber, manufactureDate, ownerEmail (необязательное);
+     * ключ - registrationNumber.
+     *
+     * @param inputStream Данные в кодировке UTF-8.
+     * @param format      Формат данных.
+     * @return Отчет об импорте.
+     * @throws IOException              Ошибка чтения данных.
+     * @throws IllegalArgumentException Если в заголовке CSV нет обязательных полей.
+     */
+    public BulkImportReport importCars(InputStream inputStream, BulkImportFormat format) throws IOException {
+        return importRows(CARS, inputStream, format);
+    }
+
+    private BulkImportReport importRows(ImportKind kind, InputStream inputStream, BulkImportFormat format)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8),
+                64 * 1024);
+        BulkRecordReader records;
+        if (format == BulkImportFormat.CSV) {
+            CsvRecordReader csv = new CsvRecordReader(reader);
+            for (String field : kind.requiredFields) {
+                if (!csv.hasColumn(field)) {
+                    throw new IllegalArgumentException("Missing CSV column: " + field);
+                }
+            }
+            records = csv;
+        } else {
+            records = new NdjsonRecordReader(reader, objectMapper);
+        }
+
+        ImportRun run = new ImportRun();
+        List<Row> chunk = new ArrayList<>();
+        while (records.next()) {
+            run.rowCount++;
+            Row row = parse(kind, records, run);
+            if (row != null) {
+                chunk.add(row);
+                if (chunk.size() >= batchSize) {
+                    writeChunk(kind, chunk, run);
+                    chunk.clear();
+                }
+            }
+        }
+        writeChunk(kind, chunk, run);
+        // Строки записаны мимо Hibernate: закэшированные коллекции родителей их не содержат
+        if (run.importedCount > 0 && kind.reference != null) {
+            entityCacheService.evictCollection(kind.reference.parentClass, kind.reference.collection);
+        }
+        // Ошибки пакета обнаруживаются позже ошибок формата следующих строк
+        run.errors.sort(Comparator.comparingLong(BulkImportReport.RowError::getLine));
+
+        logger.info("Импорт " + kind.table + ": записей " + run.rowCount + ", импортировано " + run.importedCount
+                + ", ошибок " + run.failedCount);
+        return new BulkImportReport(run.rowCount, run.importedCount, run.failedCount, run.errors);
+    }
+
+    /**
+     * Проверяет формат и обязательные поля записи.
+     *
+     * @return Запись для вставки или null, если запись ошибочна (ошибка уже учтена).
+     */
+    private Row parse(ImportKind kind, BulkRecordReader records, ImportRun run) {
+        if (records.getError() != null) {
+            run.fail(records.getLineNumber(), null, records.getError());
+            return null;
+        }
+        String key = records.get(kind.keyField);
+        for (String field : kind.requiredFields) {
+            if (records.get(field) == null) {
+                run.fail(records.getLineNumber(), key, "Missing required field: " + field);
+                return null;
+            }
+        }
+        String[] values = new String[kind.fields.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = records.get(kind.fields[i]);
+        }
+        String reference = kind.reference != null ? records.get(kind.reference.field) : null;
+        return new Row(records.getLineNumber(), key, values, reference);
+    }
+
+    private void writeChunk(ImportKind kind, List<Row> chunk, ImportRun run) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            // Ключи, которые уже есть в базе; предыдущие пакеты этого файла уже записаны и тоже учитываются
+            Set<String> keys = new LinkedHashSet<>();
+            Set<String> references = new LinkedHashSet<>();
+            for (Row row : chunk) {
+                keys.add(row.key);
+                if (row.reference != null && !run.references.containsKey(row.reference)) {
+                    references.add(row.reference);
+                }
+            }
+            Set<String> existing = new HashSet<>();
+            queryIn(connection, "select " + kind.keyColumn() + " from " + kind.table + " where " + kind.keyColumn()
+                    + " in ", keys, resultSet -> existing.add(resultSet.getString(1)));
+            if (!references.isEmpty()) {
+                Reference reference = kind.reference;
+                // Email не уникален в таблице: ссылку на несколько записей нельзя разрешить однозначно
+                queryIn(connection, "select id, " + reference.column + " from " + reference.table + " where "
+                                + reference.column + " in ", references, resultSet -> {
+                            String value = resultSet.getString(2);
+                            long id = resultSet.getLong(1);
+                            Long previous = run.references.putIfAbsent(value, id);
+                            if (previous != null && previous != id) {
+                                run.ambiguousReferences.add(value);
+                            }
+                        });
+            }
+
+            List<Row> insertable = new ArrayList<>(chunk.size());
+            Set<String> seen = new HashSet<>();
+            for (Row row : chunk) {
+                if (existing.contains(row.key) || !seen.add(row.key)) {
+                    run.fail(row.line, row.key, "Duplicate " + kind.keyField + ": " + row.key);
+                } else if (row.reference != null && !run.references.containsKey(row.reference)) {
+                    run.fail(row.line, row.key, "Unknown " + kind.reference.field + ": " + row.reference);
+                } else if (row.reference != null && run.ambiguousReferences.contains(row.reference)) {
+                    run.fail(row.line, row.key, "Ambiguous " + kind.reference.field + ": " + row.reference);
+                } else {
+                    insertable.add(row);
+                }
+            }
+            insert(connection, kind, insertable, run);
+        } catch (SQLException e) {
+            logger.error("Ошибка импорта " + kind.table, e);
+            for (Row row : chunk) {
+                run.fail(row.line, row.key, "Database error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void insert(Connection connection, ImportKind kind, List<Row> rows, ImportRun run) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        String sql = kind.insertSql();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Row row : rows) {
+                bind(statement, kind, row, run);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+            run.importedCount += rows.size();
+            return;
+        } catch (SQLException e) {
+            connection.rollback();
+            logger.warn("Ошибка пакетной вставки " + kind.table + ", вставка по одной: " + e.getMessage());
+        }
+
+        // Пакет отклонен: вставляем по одной, каждая строка - отдельная транзакция
+        connection.setAutoCommit(true);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Row row : rows) {
+                try {
+                    bind(statement, kind, row, run);
+                    statement.executeUpdate();
+                    run.importedCount++;
+                } catch (SQLException e) {
+                    run.fail(row.line, row.key, "Database error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement statement, ImportKind kind, Row row, ImportRun run)
+            throws SQLException {
+        for (int i = 0; i < row.values.length; i++) {
+            statement.setString(i + 1, row.values[i]);
+        }
+        if (kind.reference != null) {
+            if (row.reference != null) {
+                statement.setLong(row.values.length + 1, run.references.get(row.reference));
+            } else {
+                statement.setNull(row.values.length + 1, Types.BIGINT);
+            }
+        }
+    }
+
+    /**
+     * Выполняет запрос с условием "in (?, ..., ?)" по набору значений.
+     */
+    private static void queryIn(Connection connection, String sqlPrefix, Set<String> values, RowHandler handler)
+            throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(values.size(), "?"));
+        try (PreparedStatement statement = connection.prepareStatement(sqlPrefix + "(" + placeholders + ")")) {
+            int index = 1;
+            for (String value : values) {
+                statement.setString(index++, value);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    handler.accept(resultSet);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+
+        void accept(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Импортируемая таблица: поля файла и соответствующие им колонки, обязательные поля и ссылка на другую
+     * таблицу по естественному ключу. Ключ записи - поле keyField, оно же входит в fields.
+     */
+    private record ImportKind(String table, String keyField, String[] fields, String[] columns,
+                              String[] requiredFields, Reference reference) {
+
+        String keyColumn() {
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].equals(keyField)) {
+                    return columns[i];
+                }
+            }
+            throw new IllegalStateException("Key field is not a column: " + keyField);
+        }
+
+        String insertSql() {
+            List<String> insertColumns = new ArrayList<>(List.of(columns));
+            if (reference != null) {
+                insertColumns.add(reference.foreignKeyColumn);
+            }
+            return "insert into " + table + " (" + String.join(", ", insertColumns) + ") values ("
+                    + String.join(", ", Collections.nCopies(insertColumns.size(), "?")) + ")";
+        }
+    }
+
+    /**
+     * Ссылка по естественному ключу: значение поля field ищется в колонке column таблицы table,
+     * найденный id пишется в foreignKeyColumn. Коллекция collection сущности parentClass содержит
+     * импортированные записи.
+     */
+    private record Reference(String field, String table, String column, String foreignKeyColumn,
+                             Class<?> parentClass, String collection) {
+    }
+
+    private record Row(long line, String key, String[] values, String reference) {
+    }
+
+    /**
+     * Состояние одного импорта: счетчики, ошибки и уже найденные ссылки.
+     */
+    private final class ImportRun {
+
+        private final List<BulkImportReport.RowError> errors = new ArrayList<>();
+        private final Map<String, Long> references = new HashMap<>();
+        // Значения ссылок, которым соответствует больше одной записи
+        private final Set<String> ambiguousReferences = new HashSet<>();
+        private long rowCount;
+        private long importedCount;
+        private long failedCount;
+
+        void fail(long line, String key, String message) {
+            failedCount++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new BulkImportReport.RowError(line, key, message));
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.webkonditer.samarafleet.service;
+
+import ru.webkonditer.samarafleet.dto.BulkLinkReport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.ToIntFunction;
+
+/**
+ * Выполнение UPDATE ... WHERE id IN (...) по длинному списку идентификаторов частями,
+ * чтобы число параметров одного запроса оставалось ограниченным.
+ */
+final class BulkUpdates {
+
+    /**
+     * Максимальное число идентификаторов в одном запросе.
+     */
+    static final int CHUNK_SIZE = 1000;
+
+    private BulkUpdates() {
+    }
+
+    /**
+     * Выполняет обновление для идентификаторов частями по {@link #CHUNK_SIZE}.
+     * Повторяющиеся и пустые идентификаторы отбрасываются.
+     *
+     * @param ids    Идентификаторы.
+     * @param update Обновление одной части, возвращает число измененных строк.
+     * @return Итоги обновления.
+     */
+    static BulkLinkReport inChunks(Collection<Long> ids, ToIntFunction<List<Long>> update) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinct.removeIf(Objects::isNull);
+        long updated = 0;
+        for (int from = 0; from < distinct.size(); from += CHUNK_SIZE) {
+            updated += update.applyAsInt(distinct.subList(from, Math.min(from + CHUNK_SIZE, distinct.size())));
+        }
+        return new BulkLinkReport(distinct.size(), updated);
+    }
+}
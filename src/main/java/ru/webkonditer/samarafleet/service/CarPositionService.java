@@ -0,0 +1,330 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.webkonditer.samarafleet.dto.CarPositionInfo;
+import ru.webkonditer.samarafleet.dto.NearbyCarInfo;
+import ru.webkonditer.samarafleet.model.CarPosition;
+import ru.webkonditer.samarafleet.repo.CarPositionRepository;
+import ru.webkonditer.samarafleet.service.gps.CarPositionStore;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+import ru.webkonditer.samarafleet.service.gps.SpatialGridIndex;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Сервис последних известных позиций автомобилей.
+ * Позиции обновляются из обработки GPS данных в хранилище в памяти ({@link CarPositionStore}) и отдаются
+ * из него же без обращения к базе данных. В таблицу car_positions изменившиеся позиции записываются
+ * периодически пакетом через JDBC; при запуске хранилище заполняется из этой таблицы.
+ * Поиск автомобилей рядом с точкой и в прямоугольнике идет по сетке {@link SpatialGridIndex},
+ * которая обновляется вместе с хранилищем.
+ */
+@Service
+public class CarPositionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CarPositionService.class);
+
+    private static final String UPDATE_SQL =
+            "UPDATE car_positions SET fix_time = ?, latitude = ?, longitude = ?, speed = ? WHERE car_id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO car_positions (car_id, fix_time, latitude, longitude, speed) VALUES (?, ?, ?, ?, ?)";
+
+    private static final GpsFixListener NO_OP_LISTENER = (timeMillis, latitude, longitude, speed) -> {
+    };
+
+    private final CarPositionRepository carPositionRepository;
+    private final DataSource dataSource;
+    private final CarPositionStore store;
+    private final SpatialGridIndex index;
+
+    // Версии ячеек, записанные в базу; используется только потоком записи
+    private final long[] flushedVersions;
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param carPositionRepository Репозиторий позиций автомобилей.
+     * @param dataSource            Источник соединений для пакетной записи позиций.
+     * @param capacity              Максимальное число автомобилей в хранилище позиций.
+     * @param gridCellSize          Размер клетки пространственной сетки в градусах.
+     */
+    @Autowired
+    public CarPositionService(CarPositionRepository carPositionRepository,
+                              DataSource dataSource,
+                              @Value("${gps.positions.capacity:100000}") int capacity,
+                              @Value("${gps.positions.grid-cell-size:0.01}") double gridCellSize) {
+        this.carPositionRepository = carPositionRepository;
+        this.dataSource = dataSource;
+        this.store = new CarPositionStore(capacity);
+        this.index = new SpatialGridIndex(store, gridCellSize);
+        this.flushedVersions = new long[capacity];
+    }
+
+    /**
+     * Заполняет хранилище позициями, сохраненными в базе данных.
+     */
+    @PostConstruct
+    public void load() {
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        for (CarPosition saved : carPositionRepository.findAll()) {
+            int slot = store.slotOf(saved.getCarId());
+            if (slot < 0) {
+                logger.warn("Хранилище позиций заполнено, позиция автомобиля " + saved.getCarId() + " не загружена");
+                continue;
+            }
+            store.read(slot, position);
+            store.update(slot, position.getGeneration(), saved.getFixTime().toEpochMilli(), saved.getLatitude(),
+                    saved.getLongitude(), saved.getSpeed());
+            index.update(slot, saved.getLatitude(), saved.getLongitude());
+            // Загруженные позиции уже есть в базе
+            store.read(slot, position);
+            flushedVersions[slot] = position.getVersion();
+        }
+    }
+
+    /**
+     * Записывает несохраненные позиции при остановке приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Возвращает получателя точек трека, обновляющего позицию автомобиля.
+     * Ячейка автомобиля находится один раз, дальше каждое обновление - только запись в массив.
+     * После удаления позиции автомобиля ({@link #deletePosition(Long)}) получатель перестает что-либо писать:
+     * ячейка к этому времени может принадлежать другому автомобилю.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Получатель точек.
+     */
+    public GpsFixListener positionUpdater(long carId) {
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        int found;
+        do {
+            found = store.slotOf(carId);
+            if (found < 0) {
+                logger.warn("Хранилище позиций заполнено, позиция автомобиля " + carId + " не отслеживается");
+                return NO_OP_LISTENER;
+            }
+            store.read(found, position);
+            // Между поиском и чтением ячейку могли освободить и отдать другому автомобилю
+        } while (position.getCarId() != carId);
+
+        int slot = found;
+        long generation = position.getGeneration();
+        return (timeMillis, latitude, longitude, speed) -> {
+            if (store.update(slot, generation, timeMillis, latitude, longitude, speed)) {
+                index.update(slot, latitude, longitude);
+            }
+        };
+    }
+
+    /**
+     * Получение последней известной позиции автомобиля.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Позиция или пустой Optional, если позиций автомобиля еще не было.
+     */
+    public Optional<CarPositionInfo> getPosition(Long carId) {
+        int slot = store.find(carId);
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        if (slot < 0 || !store.read(slot, position) || position.getCarId() != carId) {
+            return Optional.empty();
+        }
+        return Optional.of(new CarPositionInfo(carId, Instant.ofEpochMilli(position.getTimeMillis()),
+                position.getLatitude(), position.getLongitude(), position.getSpeed()));
+    }
+
+    /**
+     * Поиск ближайших к точке автомобилей.
+     *
+     * @param latitude    Широта точки.
+     * @param longitude   Долгота точки.
+     * @param limit       Максимальное число автомобилей.
+     * @param maxDistance Максимальное расстояние в км (null - без ограничения).
+     * @return Автомобили по возрастанию расстояния.
+     */
+    public List<NearbyCarInfo> findNearest(double latitude, double longitude, int limit, Double maxDistance) {
+        return index.nearest(latitude, longitude, limit, maxDistance != null ? maxDistance : Double.POSITIVE_INFINITY)
+                .stream()
+                .map(neighbor -> {
+                    CarPositionStore.Position position = neighbor.getPosition();
+                    return new NearbyCarInfo(position.getCarId(), Instant.ofEpochMilli(position.getTimeMillis()),
+                            position.getLatitude(), position.getLongitude(), position.getSpeed(),
+                            neighbor.getDistance());
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Поиск автомобилей внутри прямоугольника.
+     *
+     * @param minLatitude  Минимальная широта.
+     * @param minLongitude Минимальная долгота.
+     * @param maxLatitude  Максимальная широта.
+     * @param maxLongitude Максимальная долгота.
+     * @param limit        Максимальное число автомобилей.
+     * @return Позиции автомобилей.
+     */
+    public List<CarPositionInfo> findWithin(double minLatitude, double minLongitude,
+                                            double maxLatitude, double maxLongitude, int limit) {
+        return index.within(minLatitude, minLongitude, maxLatitude, maxLongitude, limit).stream()
+                .map(position -> new CarPositionInfo(position.getCarId(),
+                        Instant.ofEpochMilli(position.getTimeMillis()), position.getLatitude(),
+                        position.getLongitude(), position.getSpeed()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Обходит позиции всех автомобилей без создания объектов на каждую позицию.
+     *
+     * @param consumer Получатель позиций.
+     */
+    public void forEachPosition(CarPositionStore.PositionConsumer consumer) {
+        store.forEach(consumer);
+    }
+
+    /**
+     * Удаляет позицию автомобиля из памяти и из базы данных.
+     * Выполняется под той же блокировкой, что и {@link #flush()}: иначе идущая запись могла бы вставить
+     * строку заново сразу после удаления.
+     *
+     * @param carId Идентификатор автомобиля.
+     */
+    public synchronized void deletePosition(Long carId) {
+        int slot = store.remove(carId);
+        if (slot >= 0) {
+            index.remove(slot);
+        }
+        carPositionRepository.deleteByCarId(carId);
+    }
+
+    /**
+     * Записывает в базу данных позиции, изменившиеся с прошлой записи.
+     * Сначала пакет UPDATE, затем пакет INSERT для автомобилей, строк которых в таблице еще нет.
+     *
+     * @return Число записанных позиций.
+     */
+    @Scheduled(fixedDelayString = "${gps.positions.flush-interval:10000}")
+    public synchronized int flush() {
+        int count = store.getAllocated();
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        int[] slots = new int[count];
+        CarPositionStore.Position[] changed = new CarPositionStore.Position[count];
+        int changedCount = 0;
+        for (int slot = 0; slot < count; slot++) {
+            if (store.read(slot, position) && position.getVersion() != flushedVersions[slot]) {
+                slots[changedCount] = slot;
+                changed[changedCount++] = position;
+                position = new CarPositionStore.Position();
+            }
+        }
+        if (changedCount == 0) {
+            return 0;
+        }
+
+        try {
+            writeBatch(changed, changedCount);
+        } catch (SQLException e) {
+            // Одна проблемная строка (например, автомобиль удален в обход сервиса) не должна навсегда
+            // блокировать запись остальных: пишем по одной, проблемные строки пропускаем
+            logger.warn("Ошибка пакетной записи позиций автомобилей, запись по одной: " + e.getMessage());
+            if (!writeOneByOne(changed, changedCount)) {
+                return 0;
+            }
+        }
+
+        for (int i = 0; i < changedCount; i++) {
+            flushedVersions[slots[i]] = changed[i].getVersion();
+        }
+        return changedCount;
+    }
+
+    private void writeBatch(CarPositionStore.Position[] positions, int count) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            int[] updated;
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+                for (int i = 0; i < count; i++) {
+                    bindUpdate(statement, positions[i]);
+                    statement.addBatch();
+                }
+                updated = statement.executeBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                boolean hasInserts = false;
+                for (int i = 0; i < count; i++) {
+                    // Драйвер может не сообщать число строк в пакете, тогда строка считается обновленной
+                    if (updated[i] == 0) {
+                        bindInsert(statement, positions[i]);
+                        statement.addBatch();
+                        hasInserts = true;
+                    }
+                }
+                if (hasInserts) {
+                    statement.executeBatch();
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    private boolean writeOneByOne(CarPositionStore.Position[] positions, int count) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement update = connection.prepareStatement(UPDATE_SQL);
+             PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            connection.setAutoCommit(true);
+            for (int i = 0; i < count; i++) {
+                try {
+                    bindUpdate(update, positions[i]);
+                    if (update.executeUpdate() == 0) {
+                        bindInsert(insert, positions[i]);
+                        insert.executeUpdate();
+                    }
+                } catch (SQLException e) {
+                    logger.error("Позиция автомобиля " + positions[i].getCarId() + " не записана", e);
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            // Позиции останутся измененными и будут записаны при следующем запуске
+            logger.error("Ошибка записи позиций автомобилей в базу данных", e);
+            return false;
+        }
+    }
+
+    private static void bindUpdate(PreparedStatement statement, CarPositionStore.Position position)
+            throws SQLException {
+        statement.setTimestamp(1, new Timestamp(position.getTimeMillis()));
+        statement.setDouble(2, position.getLatitude());
+        statement.setDouble(3, position.getLongitude());
+        statement.setDouble(4, position.getSpeed());
+        statement.setLong(5, position.getCarId());
+    }
+
+    private static void bindInsert(PreparedStatement statement, CarPositionStore.Position position)
+            throws SQLException {
+        statement.setLong(1, position.getCarId());
+        statement.setTimestamp(2, new Timestamp(position.getTimeMillis()));
+        statement.setDouble(3, position.getLatitude());
+        statement.setDouble(4, position.getLongitude());
+        statement.setDouble(5, position.getSpeed());
+    }
+}
@@ -1,12 +1,17 @@
 package ru.webkonditer.samarafleet.service;
 
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.webkonditer.samarafleet.model.Car;
 import ru.webkonditer.samarafleet.repo.CarRepository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Сервис для работы с сущностью "Автомобиль" (Car).
@@ -15,24 +20,59 @@ import java.util.Optional;
 public class CarService {
 
     private final CarRepository carRepository;
+    private final GpsTrackService gpsTrackService;
+    private final CarPositionService carPositionService;
+    private final GeofenceService geofenceService;
+    private final EntityManager entityManager;
 
     /**
      * Конструктор сервиса, использующий внедрение зависимости для доступа к репозиторию машин.
      *
-     * @param carRepository Репозиторий для работы с данными об автомобилях.
+     * @param carRepository      Репозиторий для работы с данными об автомобилях.
+     * @param gpsTrackService    Сервис хранения треков автомобилей.
+     * @param carPositionService Сервис последних известных позиций автомобилей.
+     * @param geofenceService    Сервис геозон дилеров.
+     * @param entityManager      Менеджер сущностей для отсоединения прочитанных автомобилей.
      */
     @Autowired
-    public CarService(CarRepository carRepository) {
+    public CarService(CarRepository carRepository, GpsTrackService gpsTrackService,
+                      CarPositionService carPositionService, GeofenceService geofenceService,
+                      EntityManager entityManager) {
         this.carRepository = carRepository;
+        this.gpsTrackService = gpsTrackService;
+        this.carPositionService = carPositionService;
+        this.geofenceService = geofenceService;
+        this.entityManager = entityManager;
     }
 
     /**
-     * Получение списка всех автомобилей.
+     * Получение страницы автомобилей после заданного идентификатора (keyset-пагинация по id).
      *
-     * @return Список всех автомобилей.
+     * @param afterId Идентификатор последнего автомобиля предыдущей страницы.
+     * @param limit   Размер страницы.
+     * @return Автомобили в порядке идентификаторов.
      */
-    public List<Car> getAllCars() {
-        return carRepository.findAll();
+    public List<Car> getCarsAfter(long afterId, int limit) {
+        return carRepository.findPageAfter(afterId, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Передает все автомобили потребителю по мере чтения из базы данных.
+     * Переданные автомобили отсоединяются от контекста, поэтому расход памяти не зависит от размера таблицы.
+     *
+     * @param consumer Потребитель автомобилей.
+     */
+    @Transactional(readOnly = true)
+    public void forEachCar(Consumer<? super Car> consumer) {
+        try (Stream<Car> cars = carRepository.streamAll()) {
+            cars.forEach(car -> {
+                consumer.accept(car);
+                entityManager.detach(car);
+                if (car.getOwner() != null) {
+                    entityManager.detach(car.getOwner());
+                }
+            });
+        }
     }
 
     /**
@@ -71,7 +111,10 @@ public class CarService {
         // Проверка наличия машины с заданным ID
         if (carRepository.existsById(carId)) {
             updatedCar.setId(carId);
-            return carRepository.save(updatedCar);
+            Car saved = carRepository.save(updatedCar);
+            // Владелец мог смениться, а с ним и дилер, по геозонам которого отслеживается автомобиль
+            geofenceService.removeCars(List.of(carId));
+            return saved;
         } else {
             return null;
         }
@@ -83,7 +126,22 @@ public class CarService {
      * @param carId Идентификатор удаляемого автомобиля.
      */
     public void deleteCar(Long carId) {
+        deleteCarData(carId);
         // Удаление машины по ID
         carRepository.deleteById(carId);
     }
+
+    /**
+     * Удаляет трек, последнюю позицию и отслеживание геозон автомобиля перед удалением самого автомобиля,
+     * в том числе каскадным - вместе с владельцем или дилером. Позиция и геозоны отслеживаются и в памяти,
+     * поэтому одного каскада базы данных мало.
+     *
+     * @param carId Идентификатор удаляемого автомобиля.
+     */
+    public void deleteCarData(Long carId) {
+        // Трек удаленной машины больше не нужен, точки в базе ссылаются на машину и удаляются первыми
+        gpsTrackService.deleteTrack(carId);
+        carPositionService.deletePosition(carId);
+        geofenceService.removeCars(List.of(carId));
+    }
 }
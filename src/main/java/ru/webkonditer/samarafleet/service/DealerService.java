@@ -1,18 +1,24 @@
 package ru.webkonditer.samarafleet.service;
 
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.webkonditer.samarafleet.dto.BulkLinkReport;
 import ru.webkonditer.samarafleet.model.Car;
 import ru.webkonditer.samarafleet.model.Dealer;
 import ru.webkonditer.samarafleet.model.Owner;
+import ru.webkonditer.samarafleet.repo.CarRepository;
 import ru.webkonditer.samarafleet.repo.DealerRepository;
 import ru.webkonditer.samarafleet.repo.OwnerRepository;
 
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Сервис для работы с дилерами (Dealer).
@@ -23,6 +29,10 @@ public class DealerService {
     private final DealerRepository dealerRepository;
     private final OwnerService ownerService;
     private final OwnerRepository ownerRepository;
+    private final CarRepository carRepository;
+    private final CarService carService;
+    private final GeofenceService geofenceService;
+    private final EntityManager entityManager;
 
     /**
      * Конструктор сервиса, использующий внедрение зависимости для доступа к репозиториям дилеров и владельцев.
@@ -30,21 +40,49 @@ public class DealerService {
      * @param dealerRepository Репозиторий для работы с данными о дилерах.
      * @param ownerService     Сервис для работы с данными о владельцах.
      * @param ownerRepository  Репозиторий для работы с данными о владельцах.
+     * @param carRepository    Репозиторий для работы с данными об автомобилях.
+     * @param carService       Сервис для работы с данными об автомобилях.
+     * @param geofenceService  Сервис геозон дилеров.
+     * @param entityManager    Менеджер сущностей для отсоединения прочитанных сущностей.
      */
     @Autowired
-    public DealerService(DealerRepository dealerRepository, OwnerService ownerService, OwnerRepository ownerRepository) {
+    public DealerService(DealerRepository dealerRepository, OwnerService ownerService, OwnerRepository ownerRepository,
+                         CarRepository carRepository, CarService carService, GeofenceService geofenceService,
+                         EntityManager entityManager) {
         this.dealerRepository = dealerRepository;
         this.ownerService = ownerService;
         this.ownerRepository = ownerRepository;
+        this.carRepository = carRepository;
+        this.carService = carService;
+        this.geofenceService = geofenceService;
+        this.entityManager = entityManager;
     }
 
     /**
-     * Получение списка всех дилеров.
+     * Получение страницы дилеров после заданного идентификатора (keyset-пагинация по id).
      *
-     * @return Список всех дилеров.
+     * @param afterId Идентификатор последнего дилера предыдущей страницы.
+     * @param limit   Размер страницы.
+     * @return Дилеры в порядке идентификаторов.
      */
-    public List<Dealer> getAllDealers() {
-        return dealerRepository.findAll();
+    public List<Dealer> getDealersAfter(long afterId, int limit) {
+        return dealerRepository.findPageAfter(afterId, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Передает всех дилеров потребителю по мере чтения из базы данных.
+     * Переданные дилеры отсоединяются от контекста, поэтому расход памяти не зависит от размера таблицы.
+     *
+     * @param consumer Потребитель дилеров.
+     */
+    @Transactional(readOnly = true)
+    public void forEachDealer(Consumer<? super Dealer> consumer) {
+        try (Stream<Dealer> dealers = dealerRepository.streamAll()) {
+            dealers.forEach(dealer -> {
+                consumer.accept(dealer);
+                entityManager.detach(dealer);
+            });
+        }
     }
 
     /**
@@ -95,8 +133,11 @@ public class DealerService {
      * @param dealerId Идентификатор удаляемого дилера.
      */
     public void deleteDealer(Long dealerId) {
-        // Удаление дилера по ID
+        // Владельцы и автомобили удаляются вместе с дилером каскадно, треки и позиции автомобилей - заранее
+        carRepository.findIdsByDealerId(dealerId).forEach(carService::deleteCarData);
+        // Удаление дилера по ID; его геозоны удаляются базой данных каскадно
         dealerRepository.deleteById(dealerId);
+        geofenceService.removeDealer(dealerId);
     }
 
     /**
@@ -121,36 +162,45 @@ public class DealerService {
         dealer.addOwner(owner);
 
         dealerRepository.save(dealer);
+        // Автомобили владельца теперь отслеживаются по геозонам нового дилера
+        geofenceService.removeCars(carRepository.findIdsByOwnerId(ownerId));
 
         return ResponseEntity.ok(dealer);
     }
 
     /**
-     * Получение списка владельцев дилера по его идентификатору.
+     * Передает владельцев дилера потребителю по мере чтения из базы данных, одним запросом.
+     * Если дилера нет, владельцев нет.
      *
      * @param dealerId Идентификатор дилера.
-     * @return Список владельцев дилера.
+     * @param consumer Потребитель владельцев.
      */
-    public List<Owner> getAllDealerOwners(Long dealerId) {
-        // Получаем диллера по идентификатору
-        Optional<Dealer> dealer = dealerRepository.findById(dealerId);
-        // Возвращаем список владельцев дилера или пустой список, если диллера нет
-        return dealer.map(Dealer::getOwners).orElse(Collections.emptyList());
+    @Transactional(readOnly = true)
+    public void forEachDealerOwner(Long dealerId, Consumer<? super Owner> consumer) {
+        try (Stream<Owner> owners = ownerRepository.streamByDealerId(dealerId)) {
+            owners.forEach(owner -> {
+                consumer.accept(owner);
+                entityManager.detach(owner);
+            });
+        }
     }
 
     /**
-     * Получение списка всех автомобилей дилера по его идентификатору.
+     * Передает автомобили всех владельцев дилера потребителю по мере чтения из базы данных, одним запросом
+     * вместо обхода дилер - владельцы - автомобили. Если дилера нет, автомобилей нет.
      *
      * @param dealerId Идентификатор дилера.
-     * @return Список всех автомобилей дилера.
+     * @param consumer Потребитель автомобилей.
      */
-    public List<Car> getAllDealerCars(Long dealerId) {
-        return dealerRepository.findById(dealerId)
-                .map(dealer -> dealer.getOwners()
-                        .stream()
-                        .flatMap(owner -> owner.getCars().stream())
-                        .collect(Collectors.toList()))
-                .orElse(Collections.emptyList());
+    @Transactional(readOnly = true)
+    public void forEachDealerCar(Long dealerId, Consumer<? super Car> consumer) {
+        try (Stream<Car> cars = carRepository.streamByDealerId(dealerId)) {
+            cars.forEach(car -> {
+                consumer.accept(car);
+                entityManager.detach(car);
+                entityManager.detach(car.getOwner());
+            });
+        }
     }
 
     /**
@@ -177,6 +227,7 @@ public class DealerService {
                 // Сохранение изменений в базе данных
                 dealerRepository.save(dealer);
                 ownerRepository.save(owner);
+                geofenceService.removeCars(carRepository.findIdsByOwnerId(ownerId));
 
                 // Возвращаем true в случае успеха
                 return true;
@@ -186,4 +237,47 @@ public class DealerService {
         // Возвращаем false в случае неудачи
         return false;
     }
+
+    /**
+     * Передает владельцев дилеру набором UPDATE в одной транзакции. Ни владельцы, ни коллекция
+     * owners дилера не загружаются, поэтому стоимость не зависит от числа его владельцев.
+     * Отслеживание геозон затронутых автомобилей сбрасывается после фиксации транзакции.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @param ownerIds Идентификаторы владельцев; несуществующие пропускаются.
+     * @return Итоги или null, если дилер не найден.
+     */
+    @Transactional
+    public BulkLinkReport attachOwnersToDealer(Long dealerId, Collection<Long> ownerIds) {
+        if (!dealerRepository.existsById(dealerId)) {
+            return null;
+        }
+        Dealer dealer = dealerRepository.getReferenceById(dealerId);
+        return BulkUpdates.inChunks(ownerIds, chunk -> {
+            int updated = ownerRepository.reassignDealer(dealer, chunk);
+            geofenceService.removeCars(carRepository.findIdsByOwnerIds(chunk));
+            return updated;
+        });
+    }
+
+    /**
+     * Открепляет владельцев от дилера набором UPDATE в одной транзакции.
+     * Владельцы других дилеров не меняются.
+     * Отслеживание геозон затронутых автомобилей сбрасывается после фиксации транзакции.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @param ownerIds Идентификаторы владельцев.
+     * @return Итоги или null, если дилер не найден.
+     */
+    @Transactional
+    public BulkLinkReport detachOwnersFromDealer(Long dealerId, Collection<Long> ownerIds) {
+        if (!dealerRepository.existsById(dealerId)) {
+            return null;
+        }
+        return BulkUpdates.inChunks(ownerIds, chunk -> {
+            int updated = ownerRepository.detachFromDealer(dealerId, chunk);
+            geofenceService.removeCars(carRepository.findIdsByOwnerIds(chunk));
+            return updated;
+        });
+    }
 }
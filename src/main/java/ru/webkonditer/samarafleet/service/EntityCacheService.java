@@ -0,0 +1,79 @@
+package ru.webkonditer.samarafleet.service;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.webkonditer.samarafleet.config.EntityCacheConfiguration;
+import ru.webkonditer.samarafleet.dto.EntityCacheRegionStats;
+
+import javax.cache.CacheManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика и явный сброс кэша второго уровня Hibernate (см. {@link EntityCacheConfiguration}).
+ */
+@Service
+public class EntityCacheService {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectProvider<CacheManager> entityCacheManager;
+
+    /**
+     * @param entityManagerFactory Фабрика менеджеров сущностей (кэш и статистика Hibernate).
+     * @param entityCacheManager   Менеджер кэшей с областями; отсутствует, если кэш выключен.
+     */
+    @Autowired
+    public EntityCacheService(EntityManagerFactory entityManagerFactory,
+                              ObjectProvider<CacheManager> entityCacheManager) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityCacheManager = entityCacheManager;
+    }
+
+    /**
+     * Сбрасывает закэшированные коллекции. Нужен после записи в таблицы мимо Hibernate (JDBC, COPY):
+     * новые строки не видны в уже закэшированных коллекциях их родителей.
+     *
+     * @param ownerClass Сущность, которой принадлежит коллекция.
+     * @param property   Имя поля коллекции.
+     */
+    public void evictCollection(Class<?> ownerClass, String property) {
+        entityManagerFactory.getCache().unwrap(Cache.class).evictCollectionData(ownerClass.getName() + "." + property);
+    }
+
+    /**
+     * Получает статистику областей кэша.
+     *
+     * @return Статистика по областям или пустой список, если кэш выключен.
+     */
+    public List<EntityCacheRegionStats> getStats() {
+        CacheManager cacheManager = entityCacheManager.getIfAvailable();
+        if (cacheManager == null) {
+            return List.of();
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<EntityCacheRegionStats> stats = new ArrayList<>();
+        for (String region : EntityCacheConfiguration.REGIONS) {
+            @SuppressWarnings("unchecked")
+            CaffeineConfiguration<Object, Object> configuration = cacheManager.getCache(region)
+                    .getConfiguration(CaffeineConfiguration.class);
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            long hits = regionStatistics != null ? regionStatistics.getHitCount() : 0;
+            long misses = regionStatistics != null ? regionStatistics.getMissCount() : 0;
+            long puts = regionStatistics != null ? regionStatistics.getPutCount() : 0;
+            stats.add(new EntityCacheRegionStats(region,
+                    configuration.getMaximumSize().orElse(-1),
+                    TimeUnit.NANOSECONDS.toSeconds(configuration.getExpireAfterWrite().orElse(0)),
+                    hits, misses, puts,
+                    hits + misses > 0 ? (double) hits / (hits + misses) : 0));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,376 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.webkonditer.samarafleet.dto.CarPositionInfo;
+import ru.webkonditer.samarafleet.dto.GeofenceEventInfo;
+import ru.webkonditer.samarafleet.model.Car;
+import ru.webkonditer.samarafleet.model.Dealer;
+import ru.webkonditer.samarafleet.model.Geofence;
+import ru.webkonditer.samarafleet.model.GeofenceEventType;
+import ru.webkonditer.samarafleet.model.GeofenceVertex;
+import ru.webkonditer.samarafleet.model.Owner;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.repo.DealerRepository;
+import ru.webkonditer.samarafleet.repo.GeofenceEventRepository;
+import ru.webkonditer.samarafleet.repo.GeofenceRepository;
+import ru.webkonditer.samarafleet.service.gps.GeofenceIndex;
+import ru.webkonditer.samarafleet.service.gps.GeofenceTracker;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Сервис геозон дилеров.
+ * Геозоны хранятся в таблице geofences и в памяти в виде {@link GeofenceIndex}, по которому проверяется каждая
+ * точка автомобилей владельцев дилера прямо в потоке обработки GPS данных. События въезда и выезда
+ * складываются в очередь и периодически пакетом записываются в таблицу geofence_events через JDBC.
+ */
+@Service
+public class GeofenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeofenceService.class);
+
+    // Пределы размера геозоны: проверка точки перебирает все вершины, а крупные геозоны проверяются для каждой точки
+    private static final int MAX_VERTICES = 10_000;
+    private static final double MAX_SPAN_DEGREES = 10;
+
+    private static final String INSERT_SQL = "INSERT INTO geofence_events "
+            + "(geofence_id, car_id, event_type, event_time, latitude, longitude) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final GpsFixListener NO_OP_LISTENER = (timeMillis, latitude, longitude, speed) -> {
+    };
+
+    private final GeofenceRepository geofenceRepository;
+    private final GeofenceEventRepository geofenceEventRepository;
+    private final DealerRepository dealerRepository;
+    private final CarRepository carRepository;
+    private final CarPositionService carPositionService;
+    private final DataSource dataSource;
+    private final double cellSize;
+    private final BlockingQueue<PendingEvent> pendingEvents;
+    private final Map<Long, GeofenceTracker> trackers = new ConcurrentHashMap<>();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private volatile GeofenceIndex index;
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param geofenceRepository      Репозиторий геозон.
+     * @param geofenceEventRepository Репозиторий событий геозон.
+     * @param dealerRepository        Репозиторий для работы с данными о дилерах.
+     * @param carRepository           Репозиторий для работы с данными об автомобилях.
+     * @param carPositionService      Сервис последних известных позиций автомобилей.
+     * @param dataSource              Источник соединений для пакетной записи событий.
+     * @param cellSize                Размер клетки сетки предварительного отбора в градусах.
+     * @param queueCapacity           Максимальное число событий, ожидающих записи.
+     */
+    @Autowired
+    public GeofenceService(GeofenceRepository geofenceRepository,
+                           GeofenceEventRepository geofenceEventRepository,
+                           DealerRepository dealerRepository,
+                           CarRepository carRepository,
+                           CarPositionService carPositionService,
+                           DataSource dataSource,
+                           @Value("${gps.geofences.grid-cell-size:0.01}") double cellSize,
+                           @Value("${gps.geofences.event-queue-capacity:100000}") int queueCapacity) {
+        this.geofenceRepository = geofenceRepository;
+        this.geofenceEventRepository = geofenceEventRepository;
+        this.dealerRepository = dealerRepository;
+        this.carRepository = carRepository;
+        this.carPositionService = carPositionService;
+        this.dataSource = dataSource;
+        this.cellSize = cellSize;
+        this.pendingEvents = new ArrayBlockingQueue<>(queueCapacity);
+        this.index = GeofenceIndex.build(Collections.emptyList(), cellSize);
+    }
+
+    /**
+     * Строит индекс по геозонам из базы данных.
+     */
+    @PostConstruct
+    public synchronized void load() {
+        index = GeofenceIndex.build(geofenceRepository.findAllWithVertices().stream()
+                .map(GeofenceService::toPolygon)
+                .collect(Collectors.toList()), cellSize);
+        logger.info("Загружено геозон: " + index.getFenceCount());
+    }
+
+    /**
+     * Записывает накопленные события при остановке приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Возвращает получателя точек трека, проверяющего их по геозонам дилера владельца автомобиля.
+     * Дилер определяется при каждом вызове, поэтому смена владельца или дилера учитывается
+     * со следующего открытого потока данных.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Получатель точек (ничего не делает, если у владельца автомобиля нет дилера).
+     */
+    public GpsFixListener tracker(long carId) {
+        Optional<Long> dealerId = carRepository.findById(carId)
+                .map(Car::getOwner)
+                .map(Owner::getDealer)
+                .map(Dealer::getId);
+        if (dealerId.isEmpty()) {
+            trackers.remove(carId);
+            return NO_OP_LISTENER;
+        }
+        return trackers.compute(carId, (id, tracker) ->
+                tracker != null && tracker.getDealerId() == dealerId.get() ? tracker : newTracker(carId, dealerId.get()));
+    }
+
+    /**
+     * Забывает отслеживание геозон автомобилей после их удаления или смены владельца либо дилера.
+     * Следующий поток данных автомобиля начнет отслеживание заново по актуальному дилеру.
+     * Внутри транзакции отслеживание забывается после ее фиксации: до нее поток данных может заново создать
+     * отслеживание по прежней связи с дилером, а после отката связь не меняется.
+     *
+     * @param carIds Идентификаторы автомобилей.
+     */
+    public void removeCars(Collection<Long> carIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            carIds.forEach(trackers::remove);
+            return;
+        }
+        List<Long> ids = List.copyOf(carIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ids.forEach(trackers::remove);
+            }
+        });
+    }
+
+    /**
+     * Получение геозон дилера.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @return Геозоны или пустой Optional, если дилер не найден.
+     */
+    public Optional<List<Geofence>> getDealerGeofences(Long dealerId) {
+        if (!dealerRepository.existsById(dealerId)) {
+            return Optional.empty();
+        }
+        return Optional.of(geofenceRepository.findByDealerId(dealerId));
+    }
+
+    /**
+     * Создание геозоны дилера.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @param geofence Новая геозона.
+     * @return Созданная геозона или пустой Optional, если дилер не найден.
+     * @throws IllegalArgumentException Если многоугольник некорректен.
+     */
+    public synchronized Optional<Geofence> createGeofence(Long dealerId, Geofence geofence) {
+        validate(geofence);
+        Optional<Dealer> dealer = dealerRepository.findById(dealerId);
+        if (dealer.isEmpty()) {
+            return Optional.empty();
+        }
+        geofence.setId(null);
+        geofence.setDealer(dealer.get());
+        Geofence saved = geofenceRepository.save(geofence);
+        index = index.with(toPolygon(saved));
+        return Optional.of(saved);
+    }
+
+    /**
+     * Удаление геозоны дилера вместе с ее событиями.
+     *
+     * @param dealerId   Идентификатор дилера.
+     * @param geofenceId Идентификатор геозоны.
+     * @return true, если геозона удалена; false, если у дилера нет такой геозоны.
+     */
+    public synchronized boolean deleteGeofence(Long dealerId, Long geofenceId) {
+        if (!dealerId.equals(geofenceRepository.findDealerIdById(geofenceId))) {
+            return false;
+        }
+        // Сначала из индекса, чтобы новые события по удаляемой геозоне не попадали в очередь
+        index = index.without(List.of(geofenceId));
+        geofenceRepository.deleteById(geofenceId);
+        return true;
+    }
+
+    /**
+     * Убирает из индекса геозоны удаленного дилера (строки удаляются базой данных каскадно).
+     *
+     * @param dealerId Идентификатор дилера.
+     */
+    public synchronized void removeDealer(Long dealerId) {
+        long[] fences = index.dealerFences(dealerId);
+        if (fences.length > 0) {
+            List<Long> ids = new ArrayList<>(fences.length);
+            for (long id : fences) {
+                ids.add(id);
+            }
+            index = index.without(ids);
+        }
+        trackers.values().removeIf(tracker -> tracker.getDealerId() == dealerId);
+    }
+
+    /**
+     * Получение событий геозон дилера за интервал времени.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @param from     Начало интервала (включительно).
+     * @param to       Конец интервала (не включительно).
+     * @return События по возрастанию времени.
+     */
+    public List<GeofenceEventInfo> getDealerEvents(Long dealerId, Instant from, Instant to) {
+        // Последние события могут еще ждать записи в очереди
+        flush();
+        return geofenceEventRepository.findDealerEvents(dealerId, from, to);
+    }
+
+    /**
+     * Записывает в базу данных накопленные события одним пакетом.
+     *
+     * @return Число записанных событий.
+     */
+    @Scheduled(fixedDelayString = "${gps.geofences.flush-interval:1000}")
+    public synchronized int flush() {
+        long dropped = droppedEvents.getAndSet(0);
+        if (dropped > 0) {
+            logger.warn("Очередь событий геозон переполнена, потеряно событий: " + dropped);
+        }
+        List<PendingEvent> events = new ArrayList<>();
+        pendingEvents.drainTo(events);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                for (PendingEvent event : events) {
+                    bind(statement, event);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+            return events.size();
+        } catch (SQLException e) {
+            // Геозону или автомобиль могли удалить, пока событие ждало записи: пишем по одной
+            logger.warn("Ошибка пакетной записи событий геозон, запись по одной: " + e.getMessage());
+            return writeOneByOne(events);
+        }
+    }
+
+    private int writeOneByOne(List<PendingEvent> events) {
+        int written = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+            connection.setAutoCommit(true);
+            for (PendingEvent event : events) {
+                try {
+                    bind(statement, event);
+                    statement.executeUpdate();
+                    written++;
+                } catch (SQLException e) {
+                    logger.error("Событие геозоны " + event.geofenceId + " не записано", e);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Ошибка записи событий геозон в базу данных", e);
+        }
+        return written;
+    }
+
+    private GeofenceTracker newTracker(long carId, long dealerId) {
+        GeofenceTracker tracker = new GeofenceTracker(carId, dealerId, () -> index, (geofenceId, car, enter,
+                timeMillis, latitude, longitude) -> {
+            if (!pendingEvents.offer(new PendingEvent(geofenceId, car, enter, timeMillis, latitude, longitude))) {
+                droppedEvents.incrementAndGet();
+            }
+        });
+        // После запуска автомобиль уже может быть внутри геозон: начальное положение - последняя известная позиция
+        carPositionService.getPosition(carId).ifPresent((CarPositionInfo position) -> tracker.initialize(
+                position.getTime().toEpochMilli(), position.getLatitude(), position.getLongitude()));
+        return tracker;
+    }
+
+    private static void validate(Geofence geofence) {
+        List<GeofenceVertex> vertices = geofence.getVertices();
+        if (vertices == null || vertices.size() < 3) {
+            throw new IllegalArgumentException("A geofence polygon needs at least 3 vertices");
+        }
+        if (vertices.size() > MAX_VERTICES) {
+            throw new IllegalArgumentException("A geofence polygon may have at most " + MAX_VERTICES + " vertices");
+        }
+        double minLatitude = 90;
+        double maxLatitude = -90;
+        double minLongitude = 180;
+        double maxLongitude = -180;
+        for (GeofenceVertex vertex : vertices) {
+            if (!(vertex.getLatitude() >= -90 && vertex.getLatitude() <= 90
+                    && vertex.getLongitude() >= -180 && vertex.getLongitude() <= 180)) {
+                throw new IllegalArgumentException("Invalid geofence vertex: "
+                        + vertex.getLatitude() + ", " + vertex.getLongitude());
+            }
+            minLatitude = Math.min(minLatitude, vertex.getLatitude());
+            maxLatitude = Math.max(maxLatitude, vertex.getLatitude());
+            minLongitude = Math.min(minLongitude, vertex.getLongitude());
+            maxLongitude = Math.max(maxLongitude, vertex.getLongitude());
+        }
+        if (maxLatitude - minLatitude > MAX_SPAN_DEGREES || maxLongitude - minLongitude > MAX_SPAN_DEGREES) {
+            throw new IllegalArgumentException("A geofence may span at most " + MAX_SPAN_DEGREES
+                    + " degrees of latitude and longitude");
+        }
+    }
+
+    private static GeofenceIndex.Polygon toPolygon(Geofence geofence) {
+        List<GeofenceVertex> vertices = geofence.getVertices();
+        double[] latitudes = new double[vertices.size()];
+        double[] longitudes = new double[vertices.size()];
+        for (int i = 0; i < vertices.size(); i++) {
+            latitudes[i] = vertices.get(i).getLatitude();
+            longitudes[i] = vertices.get(i).getLongitude();
+        }
+        return new GeofenceIndex.Polygon(geofence.getId(), geofence.getDealer().getId(), latitudes, longitudes);
+    }
+
+    private static void bind(PreparedStatement statement, PendingEvent event) throws SQLException {
+        statement.setLong(1, event.geofenceId);
+        statement.setLong(2, event.carId);
+        statement.setString(3, (event.enter ? GeofenceEventType.ENTER : GeofenceEventType.EXIT).name());
+        statement.setTimestamp(4, new Timestamp(event.timeMillis));
+        statement.setDouble(5, event.latitude);
+        statement.setDouble(6, event.longitude);
+    }
+
+    private record PendingEvent(long geofenceId, long carId, boolean enter, long timeMillis,
+                                double latitude, double longitude) {
+    }
+}
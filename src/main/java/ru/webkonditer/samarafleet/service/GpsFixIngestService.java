@@ -0,0 +1,245 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.webkonditer.samarafleet.dto.GpsFixIngestReport;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Сервис пакетной записи точек GPS трека в таблицу gps_fixes.
+ * Для PostgreSQL строки передаются протоколом COPY, для остальных баз - через JDBC batch.
+ * Запись идет ограниченными пакетами, каждый пакет фиксируется собственной транзакцией
+ * на отдельном соединении, не связанном с транзакциями JPA.
+ */
+@Service
+public class GpsFixIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GpsFixIngestService.class);
+
+    private static final String COPY_SQL =
+            "COPY gps_fixes (car_id, fix_time, latitude, longitude, speed) FROM STDIN WITH (FORMAT csv)";
+    private static final String INSERT_SQL =
+            "INSERT INTO gps_fixes (car_id, fix_time, latitude, longitude, speed) VALUES (?, ?, ?, ?, ?)";
+    // Размер буфера, через который строки пакета передаются в COPY
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final int batchSize;
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param dataSource Источник соединений с базой данных.
+     * @param enabled    Признак записи точек трека в базу данных при загрузке логов.
+     * @param batchSize  Максимальное число строк в одном пакете (и в одной транзакции).
+     */
+    @Autowired
+    public GpsFixIngestService(DataSource dataSource,
+                               @Value("${gps.fixes.database.enabled:false}") boolean enabled,
+                               @Value("${gps.fixes.database.batch-size:10000}") int batchSize) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Проверяет, включена ли запись точек трека в базу данных.
+     *
+     * @return true, если запись включена.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Открывает сессию записи точек трека автомобиля.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Сессия записи, которую нужно завершить через {@link IngestSession#finish()} или {@link IngestSession#abort()}.
+     * @throws SQLException В случае ошибок базы данных.
+     */
+    public IngestSession openSession(long carId) throws SQLException {
+        return new IngestSession(carId, dataSource.getConnection());
+    }
+
+    /**
+     * Сессия записи точек одного автомобиля. Точки копятся в примитивных массивах и сбрасываются
+     * в базу по заполнении пакета. Экземпляр не потокобезопасен.
+     */
+    public class IngestSession implements GpsFixListener, AutoCloseable {
+
+        private final long carId;
+        private final Connection connection;
+        private final boolean copySupported;
+        private final long startedAt = System.nanoTime();
+
+        private final long[] times = new long[batchSize];
+        private final double[] latitudes = new double[batchSize];
+        private final double[] longitudes = new double[batchSize];
+        private final double[] speeds = new double[batchSize];
+        private final StringBuilder copyRow = new StringBuilder();
+        private byte[] copyBuffer;
+
+        private int size;
+        private long rows;
+        private int batches;
+        private boolean closed;
+
+        private IngestSession(long carId, Connection connection) throws SQLException {
+            this.carId = carId;
+            this.connection = connection;
+            try {
+                connection.setAutoCommit(false);
+                this.copySupported = connection.isWrapperFor(PGConnection.class);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void onFix(long timeMillis, double latitude, double longitude, double speed) {
+            times[size] = timeMillis;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            speeds[size] = speed;
+            size++;
+            if (size == batchSize) {
+                try {
+                    flush();
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Ошибка записи точек трека в базу данных", e);
+                }
+            }
+        }
+
+        /**
+         * Записывает оставшиеся точки и закрывает сессию.
+         *
+         * @return Итоги записи.
+         * @throws SQLException В случае ошибок базы данных.
+         */
+        public GpsFixIngestReport finish() throws SQLException {
+            try {
+                flush();
+            } finally {
+                close();
+            }
+            long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+            double rowsPerSecond = elapsedMillis > 0 ? rows * 1000.0 / elapsedMillis : rows;
+            GpsFixIngestReport report = new GpsFixIngestReport(rows, batches, elapsedMillis, rowsPerSecond,
+                    copySupported ? "COPY" : "JDBC batch");
+            logger.info(String.format("Записано точек трека автомобиля %d: %d за %d мс (%.0f строк/с, %s)",
+                    carId, rows, elapsedMillis, rowsPerSecond, report.getMethod()));
+            return report;
+        }
+
+        /**
+         * Прерывает запись: незафиксированный пакет откатывается, уже записанные пакеты остаются.
+         */
+        public void abort() {
+            size = 0;
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                logger.warn("Ошибка отката записи точек трека", e);
+            }
+            close();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Ошибка закрытия соединения", e);
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (size == 0) {
+                return;
+            }
+            try {
+                if (copySupported) {
+                    copyBatch();
+                } else {
+                    insertBatch();
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+            rows += size;
+            batches++;
+            size = 0;
+        }
+
+        private void copyBatch() throws SQLException {
+            if (copyBuffer == null) {
+                copyBuffer = new byte[COPY_BUFFER_SIZE];
+            }
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                // Строки уходят в COPY порциями через один буфер, пакет целиком в памяти не собирается
+                int length = 0;
+                for (int i = 0; i < size; i++) {
+                    copyRow.setLength(0);
+                    copyRow.append(carId).append(',')
+                            .append(Instant.ofEpochMilli(times[i])).append(',')
+                            .append(latitudes[i]).append(',')
+                            .append(longitudes[i]).append(',')
+                            .append(speeds[i]).append('\n');
+                    if (length + copyRow.length() > copyBuffer.length) {
+                        copyIn.writeToCopy(copyBuffer, 0, length);
+                        length = 0;
+                    }
+                    // Строка состоит только из ASCII символов
+                    for (int j = 0; j < copyRow.length(); j++) {
+                        copyBuffer[length++] = (byte) copyRow.charAt(j);
+                    }
+                }
+                if (length > 0) {
+                    copyIn.writeToCopy(copyBuffer, 0, length);
+                }
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+
+        private void insertBatch() throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                for (int i = 0; i < size; i++) {
+                    statement.setLong(1, carId);
+                    statement.setTimestamp(2, new Timestamp(times[i]));
+                    statement.setDouble(3, latitudes[i]);
+                    statement.setDouble(4, longitudes[i]);
+                    statement.setDouble(5, speeds[i]);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+}
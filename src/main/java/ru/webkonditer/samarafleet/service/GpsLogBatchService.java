@@ -0,0 +1,248 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogEntryResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сервис пакетной обработки GPS логов.
+ * Файлы пакета обрабатываются параллельно в общем для всех пакетов пуле фиксированного размера
+ * с ограниченной очередью, поэтому даже большой пакет или несколько одновременных пакетов не занимают
+ * больше заданного числа потоков. Результаты передаются получателю по мере готовности,
+ * а не в порядке файлов в запросе.
+ */
+@Service
+public class GpsLogBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GpsLogBatchService.class);
+
+    private final GpsLogService gpsLogService;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param gpsLogService  Сервис обработки GPS логов.
+     * @param maxConcurrency Максимальное число одновременно обрабатываемых файлов во всех пакетах
+     *                       (0 - половина ядер, но не меньше одного).
+     * @param queueCapacity  Максимальное число файлов всех пакетов, ожидающих обработки.
+     */
+    @Autowired
+    public GpsLogBatchService(GpsLogService gpsLogService,
+                              @Value("${gps.batch.max-concurrency:0}") int maxConcurrency,
+                              @Value("${gps.batch.queue-capacity:64}") int queueCapacity) {
+        this.gpsLogService = gpsLogService;
+
+        int poolSize = maxConcurrency > 0 ? maxConcurrency : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gps-log-batch-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Останавливает пул при остановке приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Сохраняет файлы пакета во временные файлы и ставит их на обработку.
+     * Файлы сохраняются заранее, так как загруженные данные удаляются после завершения запроса,
+     * а результаты отдаются уже после него.
+     *
+     * @param files    Файлы пакета: логи, gzip логи или zip архивы.
+     * @param listener Получатель результатов.
+     * @return Пакет, поставленный на обработку.
+     * @throws IOException                В случае ошибок сохранения файлов.
+     * @throws RejectedExecutionException Если в очереди нет места для всех файлов пакета.
+     */
+    public Batch submit(List<MultipartFile> files, ResultListener listener) throws IOException {
+        // Проверяем место в очереди до сохранения файлов, чтобы не писать на диск заведомо отклоненный пакет
+        if (executor.getQueue().remainingCapacity() < files.size()) {
+            throw new RejectedExecutionException("Очередь пакетной обработки GPS логов заполнена");
+        }
+
+        Batch batch = new Batch(files.size(), listener);
+        try {
+            for (MultipartFile file : files) {
+                BatchFile batchFile = new BatchFile(Files.createTempFile("gps-log-batch-", ".nmea"));
+                batch.files.add(batchFile);
+                file.transferTo(batchFile.path);
+            }
+        } catch (IOException e) {
+            batch.cancel();
+            throw e;
+        }
+
+        // Задачи могут завершиться раньше, чем поставлены все остальные: отмена ждет окончания постановки
+        synchronized (batch) {
+            try {
+                for (int i = 0; i < files.size(); i++) {
+                    String originalName = files.get(i).getOriginalFilename();
+                    String name = originalName != null && !originalName.isEmpty() ? originalName : "file-" + (i + 1);
+                    BatchFile batchFile = batch.files.get(i);
+                    batch.futures.add(executor.submit(() -> batch.run(name, batchFile)));
+                }
+            } catch (RejectedExecutionException e) {
+                // Очередь заняли параллельные пакеты между проверкой и постановкой
+                batch.cancel();
+                throw e;
+            }
+        }
+        return batch;
+    }
+
+    private List<GpsLogEntryResult> process(String name, Path file) {
+        try {
+            return gpsLogService.analyzeFile(name, file);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ошибка обработки файла " + name + " пакета GPS логов", e);
+            return List.of(new GpsLogEntryResult(name, null, e.getMessage()));
+        } finally {
+            deleteQuietly(file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить временный файл " + file, e);
+        }
+    }
+
+    /**
+     * Получатель результатов пакета.
+     * Методы вызываются из потоков пула, но никогда одновременно.
+     */
+    public interface ResultListener {
+
+        /**
+         * Принимает результаты очередного завершившегося файла.
+         *
+         * @param results Результаты по файлу (по записи для zip архива).
+         * @throws IOException Если результат некуда передать, например клиент оборвал соединение.
+         *                     Оставшиеся файлы пакета в этом случае отменяются.
+         */
+        void onResult(List<GpsLogEntryResult> results) throws IOException;
+
+        /**
+         * Вызывается после результатов последнего файла пакета.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Временный файл пакета. Файл удаляет тот, кто первым его захватит: задача при запуске
+     * или отмена пакета. Так отмена не удаляет файл из-под уже запущенной обработки,
+     * а файл задачи, снятой до запуска, не остается на диске.
+     */
+    private static class BatchFile {
+
+        private final Path path;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private BatchFile(Path path) {
+            this.path = path;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * Пакет файлов, поставленный на обработку.
+     */
+    public class Batch {
+
+        private final int size;
+        private final ResultListener listener;
+        private final List<BatchFile> files = new ArrayList<>();
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        // Защищены монитором пакета
+        private int delivered;
+        private boolean cancelled;
+
+        private Batch(int size, ResultListener listener) {
+            this.size = size;
+            this.listener = listener;
+        }
+
+        private void run(String name, BatchFile file) {
+            if (!file.claim()) {
+                // Пакет отменен до запуска задачи, файл уже удален
+                return;
+            }
+            try {
+                deliver(process(name, file.path));
+            } catch (Error e) {
+                // process перехватывает остальные ошибки сам
+                deliver(List.of(new GpsLogEntryResult(name, null, String.valueOf(e))));
+                throw e;
+            }
+        }
+
+        private synchronized void deliver(List<GpsLogEntryResult> results) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                listener.onResult(results);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Получатель результатов пакета GPS логов недоступен, пакет отменен: " + e.getMessage());
+                cancel();
+                return;
+            }
+            if (++delivered == size) {
+                listener.onComplete();
+            }
+        }
+
+        /**
+         * Отменяет необработанные файлы, например если клиент оборвал соединение.
+         * Запущенные задачи прерываются и удаляют свои файлы сами.
+         */
+        public synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            for (BatchFile file : files) {
+                if (file.claim()) {
+                    deleteQuietly(file.path);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogJobInfo;
+import ru.webkonditer.samarafleet.service.gps.GpsLogCompression;
+import ru.webkonditer.samarafleet.service.gps.ProgressInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сервис фоновой обработки GPS логов.
+ * Задачи выполняются в отдельном ограниченном пуле с очередью, чтобы разбор больших логов
+ * не занимал потоки обработки HTTP запросов. Завершенные задачи хранятся ограниченное время.
+ */
+@Service
+public class GpsLogJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GpsLogJobService.class);
+
+    private final GpsLogService gpsLogService;
+    private final ThreadPoolExecutor executor;
+    private final Duration resultTtl;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param gpsLogService Сервис обработки GPS логов.
+     * @param poolSize      Число потоков обработки.
+     * @param queueCapacity Размер очереди ожидающих задач.
+     * @param resultTtl     Время хранения завершенных задач и их результатов.
+     */
+    @Autowired
+    public GpsLogJobService(GpsLogService gpsLogService,
+                            @Value("${gps.jobs.pool-size:2}") int poolSize,
+                            @Value("${gps.jobs.queue-capacity:16}") int queueCapacity,
+                            @Value("${gps.jobs.result-ttl:30m}") Duration resultTtl) {
+        this.gpsLogService = gpsLogService;
+        this.resultTtl = resultTtl;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gps-log-job-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Останавливает пул при остановке приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Ставит GPS лог в очередь на обработку. Файл сохраняется во временный файл,
+     * так как загруженные данные удаляются после завершения запроса. Сжатый gzip лог распаковывается
+     * при обработке.
+     *
+     * @param file MultipartFile, содержащий GPS лог.
+     * @return Состояние созданной задачи.
+     * @throws IOException                В случае ошибок сохранения файла.
+     * @throws IllegalArgumentException   Если загружен zip архив.
+     * @throws RejectedExecutionException Если очередь задач заполнена.
+     */
+    public GpsLogJobInfo submit(MultipartFile file) throws IOException {
+        if (gpsLogService.detectCompression(file) == GpsLogCompression.ZIP) {
+            throw new IllegalArgumentException("Zip архив с GPS логами нельзя обработать как один лог");
+        }
+        Path tempFile = Files.createTempFile("gps-log-job-", ".nmea");
+        try {
+            file.transferTo(tempFile);
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+            throw e;
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), tempFile, file.getSize());
+        jobs.put(job.id, job);
+        try {
+            executor.execute(job.task);
+        } catch (RejectedExecutionException e) {
+            // Очередь заполнена: задачу не регистрируем и сразу удаляем файл
+            jobs.remove(job.id);
+            deleteQuietly(tempFile);
+            throw e;
+        }
+        return job.toInfo();
+    }
+
+    /**
+     * Получение состояния задачи.
+     *
+     * @param jobId Идентификатор задачи.
+     * @return Состояние задачи в виде Optional.
+     */
+    public Optional<GpsLogJobInfo> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toInfo);
+    }
+
+    /**
+     * Получение результата успешно завершенной задачи.
+     *
+     * @param jobId Идентификатор задачи.
+     * @return Результат обработки или пустой Optional, если задачи нет или она еще не завершена успешно.
+     */
+    public Optional<String> getResult(String jobId) {
+        Job job = jobs.get(jobId);
+        return job != null && job.status == GpsLogJobInfo.Status.DONE ? Optional.of(job.result) : Optional.empty();
+    }
+
+    /**
+     * Отмена задачи. Ожидающая задача снимается с очереди, выполняющаяся прерывается.
+     *
+     * @param jobId Идентификатор задачи.
+     * @return Состояние задачи после отмены или пустой Optional, если задачи нет.
+     */
+    public Optional<GpsLogJobInfo> cancel(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        synchronized (job) {
+            if (!job.status.isFinished()) {
+                job.finish(GpsLogJobInfo.Status.CANCELLED, null, null);
+            }
+        }
+        if (job.task.cancel(true)) {
+            executor.remove(job.task);
+            deleteQuietly(job.file);
+        }
+        return Optional.of(job.toInfo());
+    }
+
+    /**
+     * Удаляет завершенные задачи, срок хранения которых истек.
+     */
+    @Scheduled(fixedDelayString = "${gps.jobs.eviction-interval:60000}")
+    public void evictExpiredJobs() {
+        Instant expiredBefore = Instant.now().minus(resultTtl);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(expiredBefore));
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.status != GpsLogJobInfo.Status.QUEUED) {
+                return;
+            }
+            job.status = GpsLogJobInfo.Status.RUNNING;
+        }
+        // Прогресс считается по байтам файла, то есть для gzip лога - по сжатым данным
+        try (InputStream file = new BufferedInputStream(new ProgressInputStream(Files.newInputStream(job.file),
+                bytesRead -> job.bytesProcessed = bytesRead), 64 * 1024);
+             InputStream inputStream = GpsLogCompression.decompress(file)) {
+            String result = gpsLogService.processGpsLog(inputStream);
+            synchronized (job) {
+                job.finish(GpsLogJobInfo.Status.DONE, result, null);
+            }
+        } catch (InterruptedIOException e) {
+            synchronized (job) {
+                job.finish(GpsLogJobInfo.Status.CANCELLED, null, null);
+            }
+        } catch (Exception e) {
+            logger.error("Ошибка обработки GPS лога в задаче " + job.id, e);
+            synchronized (job) {
+                job.finish(GpsLogJobInfo.Status.FAILED, null, e.getMessage());
+            }
+        } finally {
+            deleteQuietly(job.file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить временный файл " + file, e);
+        }
+    }
+
+    /**
+     * Задача обработки одного лога.
+     */
+    private class Job {
+
+        private final String id;
+        private final Path file;
+        private final long bytesTotal;
+        private final Instant createdAt = Instant.now();
+        private final FutureTask<Void> task;
+
+        private volatile GpsLogJobInfo.Status status = GpsLogJobInfo.Status.QUEUED;
+        private volatile long bytesProcessed;
+        private volatile String result;
+        private volatile String error;
+        private volatile Instant finishedAt;
+
+        Job(String id, Path file, long bytesTotal) {
+            this.id = id;
+            this.file = file;
+            this.bytesTotal = bytesTotal;
+            this.task = new FutureTask<>(() -> run(this), null);
+        }
+
+        void finish(GpsLogJobInfo.Status status, String result, String error) {
+            if (this.status.isFinished()) {
+                return;
+            }
+            this.result = result;
+            this.error = error;
+            this.finishedAt = Instant.now();
+            this.status = status;
+        }
+
+        GpsLogJobInfo toInfo() {
+            long processed = bytesProcessed;
+            double progress = status == GpsLogJobInfo.Status.DONE ? 1.0
+                    : bytesTotal > 0 ? Math.min(1.0, (double) processed / bytesTotal) : 0.0;
+            return new GpsLogJobInfo(id, status, processed, bytesTotal, progress, error, createdAt, finishedAt);
+        }
+    }
+}
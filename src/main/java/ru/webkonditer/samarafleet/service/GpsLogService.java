@@ -1,15 +1,46 @@
 package ru.webkonditer.samarafleet.service;
 
+import jakarta.annotation.PreDestroy;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogCacheStats;
+import ru.webkonditer.samarafleet.dto.GpsLogEntryResult;
+import ru.webkonditer.samarafleet.dto.GpsLogResult;
+import ru.webkonditer.samarafleet.dto.GpsTripReport;
+import ru.webkonditer.samarafleet.service.gps.GpsDistanceAccumulator;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+import ru.webkonditer.samarafleet.service.gps.GpsLogCompression;
+import ru.webkonditer.samarafleet.service.gps.GpsLogResultCache;
+import ru.webkonditer.samarafleet.service.gps.GpsMotionStatistics;
+import ru.webkonditer.samarafleet.service.gps.GpsSegmentListener;
+import ru.webkonditer.samarafleet.service.gps.NmeaCursor;
+import ru.webkonditer.samarafleet.service.gps.NmeaLineSplitter;
+import ru.webkonditer.samarafleet.service.gps.ParallelGpsLogProcessor;
+import ru.webkonditer.samarafleet.service.gps.TripSegmenter;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,72 +53,422 @@ public class GpsLogService {
 
     private static final Logger logger = LoggerFactory.getLogger(GpsLogService.class);
 
+    private final ForkJoinPool parallelPool;
+    private final ParallelGpsLogProcessor parallelProcessor;
+    private final double tripMovingSpeed;
+    private final Duration tripMinStopDuration;
+    private final GpsLogResultCache resultCache;
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param parallelism         Число потоков для параллельной обработки больших логов (0 - по числу ядер).
+     * @param minChunkSize        Минимальный размер участка лога при параллельной обработке.
+     *                            Логи меньше двух участков обрабатываются последовательно.
+     * @param tripMovingSpeed     Скорость в км/ч, начиная с которой машина считается движущейся.
+     * @param tripMinStopDuration Минимальная длительность остановки, завершающей поездку.
+     * @param cacheMaxEntries     Максимальное число результатов в кэше (0 - кэш отключен).
+     * @param cacheTtl            Срок хранения результата в кэше.
+     */
+    @Autowired
+    public GpsLogService(@Value("${gps.parallel.parallelism:0}") int parallelism,
+                         @Value("${gps.parallel.min-chunk-size:4MB}") DataSize minChunkSize,
+                         @Value("${gps.trips.moving-speed:5}") double tripMovingSpeed,
+                         @Value("${gps.trips.min-stop-duration:5m}") Duration tripMinStopDuration,
+                         @Value("${gps.cache.max-entries:1000}") int cacheMaxEntries,
+                         @Value("${gps.cache.ttl:1h}") Duration cacheTtl) {
+        this.parallelPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.parallelProcessor = new ParallelGpsLogProcessor(parallelPool, minChunkSize.toBytes());
+        this.tripMovingSpeed = tripMovingSpeed;
+        this.tripMinStopDuration = tripMinStopDuration;
+        this.resultCache = new GpsLogResultCache(cacheMaxEntries, cacheTtl.toMillis());
+    }
+
+    /**
+     * Останавливает пул параллельной обработки при остановке приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        parallelPool.shutdown();
+    }
+
     /**
      * Обработка GPS лога для вычисления пройденного пути.
+     * Большие логи на многоядерной машине обрабатываются параллельно по участкам, остальные - потоково.
+     * Повторно загруженный лог берется из кэша по хешу содержимого.
+     * Сжатые gzip логи распаковываются на лету и обрабатываются потоково, для zip архива
+     * возвращается по строке на каждую запись.
      *
      * @param file MultipartFile, содержащий GPS лог.
      * @return Строка с результатами обработки лога.
      * @throws IOException В случае ошибок ввода/вывода.
      */
     public String processGpsLog(MultipartFile file) throws IOException {
-        List<String> logLineList = parseGpsLog(file);
-        double totalDistance = calculateTotalDistance(logLineList);
+        GpsLogCompression compression = detectCompression(file);
+        if (compression == GpsLogCompression.ZIP) {
+            StringBuilder result = new StringBuilder();
+            for (GpsLogEntryResult entry : analyzeArchive(file)) {
+                result.append(entry.getName()).append(": ")
+                        .append(entry.getResult() != null ? formatResult(entry.getResult()) : entry.getError())
+                        .append('\n');
+            }
+            return result.toString();
+        }
+        if (compression == GpsLogCompression.GZIP) {
+            try (InputStream inputStream = openLog(file)) {
+                return processGpsLog(inputStream);
+            }
+        }
 
-        return "Общая дистанция: " + String.format("%.3f", totalDistance) + " километров.";
+        long size = file.getSize();
+        String key = lookupKey(file);
+        if (key != null) {
+            Double cached = resultCache.getDistance(key);
+            if (cached != null) {
+                return formatResult(cached);
+            }
+        }
+
+        double totalDistance;
+        if (parallelProcessor.isWorthParallel(size)) {
+            // Для параллельного чтения нужен файл на диске, transferTo обычно просто перемещает временный файл
+            Path tempFile = Files.createTempFile("gps-log-", ".nmea");
+            try {
+                file.transferTo(tempFile);
+                ForkJoinTask<Double> task = parallelPool.submit(() -> calculateTotalDistance(tempFile));
+                // Хеш для кэша считается в текущем потоке, пока участки обрабатываются в пуле
+                if (key == null && resultCache.isEnabled()) {
+                    try (InputStream inputStream = Files.newInputStream(tempFile)) {
+                        key = GpsLogResultCache.key(inputStream);
+                    }
+                }
+                totalDistance = join(task);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } else {
+            // Хеш для кэша считается попутно, только если ключа еще нет и кэш включен
+            MessageDigest digest = key == null && resultCache.isEnabled() ? GpsLogResultCache.newDigest() : null;
+            try (InputStream inputStream = file.getInputStream()) {
+                totalDistance = calculateTotalDistance(digest != null
+                        ? new DigestInputStream(inputStream, digest) : inputStream);
+            }
+            if (digest != null) {
+                key = GpsLogResultCache.key(digest, size);
+            }
+        }
+
+        if (resultCache.isEnabled()) {
+            resultCache.putDistance(key, size, totalDistance);
+        }
+        return formatResult(totalDistance);
+    }
+
+    /**
+     * Потоковая обработка GPS лога из произвольного источника.
+     *
+     * @param inputStream Поток с содержимым GPS лога. Не закрывается.
+     * @return Строка с результатами обработки лога.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public String processGpsLog(InputStream inputStream) throws IOException {
+        return formatResult(calculateTotalDistance(inputStream));
     }
 
     /**
-     * Создает список строк из GPS лога, исключая строки, начинающиеся с $GNZDA.
+     * Обработка GPS лога со сбором статистики: дистанция, время в движении, гистограмма скоростей,
+     * число точек и невалидных строк, границы трека. Все считается за один потоковый проход.
      *
      * @param file MultipartFile, содержащий GPS лог.
-     * @return Список строк лога без $GNZDA.
+     * @return Структурированный результат обработки лога.
      * @throws IOException В случае ошибок ввода/вывода.
      */
-    private List<String> parseGpsLog(MultipartFile file) throws IOException {
-        List<String> logLinesList = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Пропустить пустые строки
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-                // Исключаем $GNZDA
-                if (!line.startsWith("$GNZDA")) {
-                    logLinesList.add(line);
-                }
+    public GpsLogResult analyzeGpsLog(MultipartFile file) throws IOException {
+        if (detectCompression(file) != GpsLogCompression.NONE) {
+            try (InputStream inputStream = openLog(file)) {
+                return analyzeGpsLog(inputStream, null);
+            }
+        }
+
+        long size = file.getSize();
+        String key = lookupKey(file);
+        if (key != null) {
+            GpsLogResult cached = resultCache.getResult(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        GpsLogResult result;
+        MessageDigest digest = key == null && resultCache.isEnabled() ? GpsLogResultCache.newDigest() : null;
+        try (InputStream inputStream = file.getInputStream()) {
+            result = analyzeGpsLog(digest != null ? new DigestInputStream(inputStream, digest) : inputStream, null);
+        }
+        if (resultCache.isEnabled()) {
+            resultCache.putResult(key != null ? key : GpsLogResultCache.key(digest, size), size, result);
+        }
+        return result;
+    }
+
+    /**
+     * Обрабатывает zip архив с несколькими GPS логами как пакет.
+     * Записи читаются и распаковываются по очереди прямо из загруженного архива, ничего не разворачивается
+     * на диск или целиком в память. Записи, сжатые еще и gzip, тоже распаковываются. Ошибка в одной записи
+     * не прерывает обработку остальных.
+     *
+     * @param file MultipartFile с zip архивом.
+     * @return Результаты по каждой записи архива в порядке следования.
+     * @throws IOException В случае ошибок чтения самого архива.
+     */
+    public List<GpsLogEntryResult> analyzeArchive(MultipartFile file) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return analyzeArchive(inputStream, "");
+        }
+    }
+
+    /**
+     * Обрабатывает сохраненный на диск файл пакетной загрузки: лог, gzip лог или zip архив с логами.
+     *
+     * @param name Имя файла в пакете.
+     * @param file Путь к файлу.
+     * @return Результаты обработки: один для лога или по одному на каждую запись архива с именами вида
+     * "архив/запись".
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public List<GpsLogEntryResult> analyzeFile(String name, Path file) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            if (GpsLogCompression.detect(inputStream) == GpsLogCompression.ZIP) {
+                return analyzeArchive(inputStream, name + "/");
+            }
+            GpsLogResult result = analyzeGpsLog(GpsLogCompression.decompress(inputStream), null);
+            return List.of(new GpsLogEntryResult(name, result, null));
+        }
+    }
+
+    private List<GpsLogEntryResult> analyzeArchive(InputStream archive, String namePrefix) throws IOException {
+        List<GpsLogEntryResult> results = new ArrayList<>();
+        ZipInputStream zip = new ZipInputStream(archive instanceof BufferedInputStream
+                ? archive : new BufferedInputStream(archive, 64 * 1024));
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = namePrefix + entry.getName();
+            try {
+                InputStream inputStream = GpsLogCompression.decompress(new BufferedInputStream(zip));
+                results.add(new GpsLogEntryResult(name, analyzeGpsLog(inputStream, null), null));
+            } catch (RuntimeException | IOException e) {
+                logger.error("Ошибка обработки записи " + name + " архива GPS логов", e);
+                results.add(new GpsLogEntryResult(name, null, e.getMessage()));
             }
         }
-        return logLinesList;
+        return results;
     }
 
     /**
-     * Вычисляет общую дистанцию, используя строки с координатами и скоростью из лога.
+     * Определяет формат сжатия загруженного лога по первым байтам.
      *
-     * @param logLinesList Список строк GPS лога.
-     * @return Общая дистанция в метрах.
+     * @param file MultipartFile, содержащий GPS лог.
+     * @return Формат сжатия.
+     * @throws IOException В случае ошибок ввода/вывода.
      */
-    private double calculateTotalDistance(List<String> logLinesList) {
-        double totalDistance = 0;
-        for (int i = 0; i < logLinesList.size(); i++) {
-            int previousIndex = i - 1;
-            int nextIndex = i + 1;
+    public GpsLogCompression detectCompression(MultipartFile file) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(file.getInputStream(), 4)) {
+            return GpsLogCompression.detect(inputStream);
+        }
+    }
 
-            String line = logLinesList.get(i);
-            if (line.startsWith("$GNVTG") && extractSpeedFromGNVTG(line) > 0) {
-                if (previousIndex >= 0 && nextIndex < logLinesList.size()) {
-                    GPGGAPoint startingCoordinate = parseGPGGA(logLinesList.get(previousIndex));
-                    GPGGAPoint finalCoordinate = parseGPGGA(logLinesList.get(nextIndex));
+    /**
+     * Открывает загруженный лог для потокового чтения, распаковывая gzip на лету.
+     *
+     * @param file MultipartFile, содержащий GPS лог.
+     * @return Поток с текстом лога.
+     * @throws IOException              В случае ошибок ввода/вывода.
+     * @throws IllegalArgumentException Если загружен zip архив: его записи обрабатываются по отдельности.
+     */
+    public InputStream openLog(MultipartFile file) throws IOException {
+        InputStream inputStream = new BufferedInputStream(file.getInputStream(), 64 * 1024);
+        try {
+            if (GpsLogCompression.detect(inputStream) == GpsLogCompression.ZIP) {
+                throw new IllegalArgumentException("Zip архив с GPS логами нельзя обработать как один лог");
+            }
+            return GpsLogCompression.decompress(inputStream);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
 
-                    if (startingCoordinate != null && finalCoordinate != null) {
+    /**
+     * Возвращает статистику кэша результатов.
+     *
+     * @return Снимок счетчиков кэша.
+     */
+    public GpsLogCacheStats getCacheStats() {
+        return resultCache.getStats();
+    }
 
-                        // Получаем длину отрезка и прибавляем к общему расстоянию
-                        totalDistance += calculateDistance(startingCoordinate, finalCoordinate);
-                    }
-                }
+    /**
+     * Потоковая обработка GPS лога со сбором статистики и, если задан получатель, с выдачей точек трека.
+     * Лог всегда читается последовательно, чтобы точки выдавались в порядке следования в логе.
+     *
+     * @param inputStream Поток с содержимым GPS лога. Не закрывается.
+     * @param fixListener Получатель точек трека или null.
+     * @return Структурированный результат обработки лога.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public GpsLogResult analyzeGpsLog(InputStream inputStream, GpsFixListener fixListener) throws IOException {
+        return analyze(inputStream, fixListener, null);
+    }
+
+    /**
+     * Преобразует структурированный результат в прежнее текстовое представление.
+     *
+     * @param result Результат обработки лога.
+     * @return Строка с результатами обработки лога.
+     */
+    public String formatResult(GpsLogResult result) {
+        return formatResult(result.getTotalDistance());
+    }
+
+    /**
+     * Разбивает GPS лог на поездки за один потоковый проход вместе с расчетом общей дистанции.
+     * Сжатый gzip лог распаковывается на лету.
+     *
+     * @param file MultipartFile, содержащий GPS лог.
+     * @return Общая дистанция и список поездок.
+     * @throws IOException              В случае ошибок ввода/вывода.
+     * @throws IllegalArgumentException Если загружен zip архив.
+     */
+    public GpsTripReport processTrips(MultipartFile file) throws IOException {
+        try (InputStream inputStream = openLog(file)) {
+            return processTrips(inputStream);
+        }
+    }
+
+    /**
+     * Разбивает GPS лог на поездки за один потоковый проход вместе с расчетом общей дистанции.
+     *
+     * @param inputStream Поток с содержимым GPS лога. Не закрывается.
+     * @return Общая дистанция и список поездок.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public GpsTripReport processTrips(InputStream inputStream) throws IOException {
+        TripSegmenter segmenter = new TripSegmenter(tripMovingSpeed, tripMinStopDuration.toMillis());
+        GpsLogResult result = analyze(inputStream, segmenter, segmenter);
+        segmenter.finish();
+        return new GpsTripReport(result.getTotalDistance(), segmenter.getTrips());
+    }
+
+    /**
+     * Последовательный проход по логу с выдачей точек трека и учтенных отрезков.
+     *
+     * @param inputStream     Поток с содержимым GPS лога. Не закрывается.
+     * @param fixListener     Получатель точек трека или null.
+     * @param segmentListener Получатель учтенных отрезков или null.
+     * @return Структурированный результат обработки лога.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    private GpsLogResult analyze(InputStream inputStream, GpsFixListener fixListener,
+                                 GpsSegmentListener segmentListener) throws IOException {
+        GpsDistanceAccumulator accumulator = new GpsDistanceAccumulator();
+        GpsMotionStatistics motion = new GpsMotionStatistics();
+        // До первого $GNZDA точки датируются днем обработки
+        accumulator.setFixListener(fixListener != null ? motion.andThen(fixListener) : motion,
+                LocalDate.now(ZoneOffset.UTC).toEpochDay());
+        if (segmentListener != null) {
+            accumulator.setSegmentListener(segmentListener);
+        }
+        new NmeaLineSplitter(accumulator).readFrom(inputStream);
+        accumulator.finish();
+        return toResult(accumulator, motion);
+    }
+
+    private static GpsLogResult toResult(GpsDistanceAccumulator accumulator, GpsMotionStatistics motion) {
+        long[] histogram = motion.getSpeedHistogram();
+        List<GpsLogResult.SpeedBucket> speedHistogram = new ArrayList<>(histogram.length);
+        for (int i = 0; i < histogram.length; i++) {
+            int fromSpeed = i * GpsMotionStatistics.BUCKET_WIDTH;
+            Integer toSpeed = i + 1 < histogram.length ? fromSpeed + GpsMotionStatistics.BUCKET_WIDTH : null;
+            speedHistogram.add(new GpsLogResult.SpeedBucket(fromSpeed, toSpeed, histogram[i]));
+        }
+
+        GpsLogResult.BoundingBox boundingBox = null;
+        if (accumulator.getFixCount() > 0) {
+            boundingBox = new GpsLogResult.BoundingBox(accumulator.getMinLatitude(), accumulator.getMinLongitude(),
+                    accumulator.getMaxLatitude(), accumulator.getMaxLongitude());
+        }
+
+        return new GpsLogResult(accumulator.getTotalDistance(), motion.getMovingMillis() / 1000,
+                accumulator.getFixCount(), accumulator.getInvalidSentenceCount(), speedHistogram, boundingBox,
+                null);
+    }
+
+    /**
+     * Потоково вычисляет общую дистанцию по GPS логу за один проход.
+     * Строки разбираются прямо из байтового буфера, в памяти держится только окно из трех соседних строк,
+     * поэтому расход памяти не зависит от размера файла. Пустые строки и строки $GNZDA пропускаются.
+     *
+     * @param inputStream Поток с содержимым GPS лога.
+     * @return Общая дистанция в километрах.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    double calculateTotalDistance(InputStream inputStream) throws IOException {
+        GpsDistanceAccumulator accumulator = new GpsDistanceAccumulator();
+        new NmeaLineSplitter(accumulator).readFrom(inputStream);
+        return accumulator.getTotalDistance();
+    }
+
+    /**
+     * Вычисляет общую дистанцию по файлу лога, параллельно по участкам, если файл достаточно большой.
+     *
+     * @param file Путь к файлу лога.
+     * @return Общая дистанция в километрах.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    double calculateTotalDistance(Path file) throws IOException {
+        if (parallelProcessor.isWorthParallel(Files.size(file))) {
+            return parallelProcessor.calculateTotalDistance(file);
+        }
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return calculateTotalDistance(inputStream);
+        }
+    }
+
+    /**
+     * Считает ключ кэша до разбора лога, только если в кэше есть логи такого же размера.
+     * Иначе повторной загрузки заведомо нет, и хеш считается попутно при разборе.
+     */
+    private String lookupKey(MultipartFile file) throws IOException {
+        if (!resultCache.isEnabled() || !resultCache.mayContain(file.getSize())) {
+            return null;
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            return GpsLogResultCache.key(inputStream);
+        }
+    }
+
+    private static double join(ForkJoinTask<Double> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Обработка GPS лога прервана", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
+            throw new IOException(e.getCause());
         }
-        return totalDistance;
+    }
+
+    private static String formatResult(double totalDistance) {
+        return "Общая дистанция: " + String.format("%.3f", totalDistance) + " километров.";
     }
 
     /**
@@ -95,9 +476,9 @@ public class GpsLogService {
      */
     @AllArgsConstructor
     @Data
-    private static class GPGGAPoint {
-        private String latitude;
-        private String longitude;
+    static class GPGGAPoint {
+        private double latitude;
+        private double longitude;
     }
 
     /**
@@ -105,35 +486,35 @@ public class GpsLogService {
      *
      * @param nmeaString Строка $GPGGA.
      * @return Объект GPGGAPoint или null, если парсинг не удался.
+     * @throws NumberFormatException Если координаты заданы, но не являются числами.
      */
     public static GPGGAPoint parseGPGGA(String nmeaString) {
-        try {
-            // Проверяем, что строка начинается с $GPGGA
-            if (nmeaString.startsWith("$GPGGA")) {
-
-                // Разбиваем строку по разделителю
-                String[] tokens = nmeaString.split(",");
+        byte[] bytes = nmeaString.getBytes(StandardCharsets.UTF_8);
+        NmeaCursor line = new NmeaCursor().reset(bytes, 0, bytes.length);
 
-                // Извлекаем нужные параметры из строки
-                String latitude = tokens[2];
-                String longitude = tokens[4];
-
-                // Проверяем, что координаты не пусты
-                if (latitude.isEmpty() || longitude.isEmpty()) {
-                    throw new IllegalArgumentException("Latitude or longitude is empty");
-                }
+        // Проверяем, что строка начинается с $GPGGA
+        if (!line.startsWith(NmeaCursor.GPGGA)) {
+            return null;
+        }
 
-                // Создаем и возвращаем объект GPGGAPoint
-                return new GPGGAPoint(latitude, longitude);
-            }
-        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
-            // Обработка ошибок при отсутствии значения или пустых координатах
-            // Логируем сообщение об ошибке
+        // Проверяем, что координаты есть и не пусты
+        if (!line.field(2) || line.isFieldEmpty()) {
             logger.error("Ошибка (Невалидная GPGGA строка): " + nmeaString);
+            return null;
+        }
+        double latitude = line.fieldAsDouble();
+        if (!line.field(4) || line.isFieldEmpty()) {
+            logger.error("Ошибка (Невалидная GPGGA строка): " + nmeaString);
+            return null;
+        }
+        double longitude = line.fieldAsDouble();
+
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            throw new NumberFormatException("Невалидные координаты в GPGGA строке: " + nmeaString);
         }
 
-        // Возвращаем null в случае неудачи
-        return null;
+        // Создаем и возвращаем объект GPGGAPoint
+        return new GPGGAPoint(latitude, longitude);
     }
 
     /**
@@ -142,22 +523,9 @@ public class GpsLogService {
      * @param nmeaString Строка $GNVTG.
      * @return Скорость в км/ч.
      */
-    private int extractSpeedFromGNVTG(String nmeaString) {
-        try {
-            // Разбиваем строку по разделителю
-            String[] tokens = nmeaString.split(",");
-
-            // Индекс, соответствующий параметру скорости в км/ч
-            int speedIndex = 7;
-
-            // Извлекаем значение скорости в км/ч, округленное до целого
-            return (int) Math.round(Double.parseDouble(tokens[speedIndex]));
-        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-            // Логируем сообщение об ошибке
-            logger.error("Ошибка (Невалидная GNVTG строка): " + nmeaString);
-            // Возвращаем 0 в случае ошибки
-            return 0;
-        }
+    int extractSpeedFromGNVTG(String nmeaString) {
+        byte[] bytes = nmeaString.getBytes(StandardCharsets.UTF_8);
+        return GpsDistanceAccumulator.speedOf(new NmeaCursor().reset(bytes, 0, bytes.length));
     }
 
     /**
@@ -167,28 +535,8 @@ public class GpsLogService {
      * @param point2 Вторая точка.
      * @return Расстояние между точками в км.
      */
-    private double calculateDistance(GPGGAPoint point1, GPGGAPoint point2) {
-        // Радиус Земли в километрах
-        final double EARTH_RADIUS = 6371.0;
-
-        // Конвертируем широту и долготу в радианы
-        double lat1 = Math.toRadians(Double.parseDouble(point1.getLatitude()));
-        double lon1 = Math.toRadians(Double.parseDouble(point1.getLongitude()));
-        double lat2 = Math.toRadians(Double.parseDouble(point2.getLatitude()));
-        double lon2 = Math.toRadians(Double.parseDouble(point2.getLongitude()));
-
-        // Разница между широтами и долготами
-        double dLat = lat2 - lat1;
-        double dLon = lon2 - lon1;
-
-        // Формула гаверсинуса для вычисления расстояния
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(lat1) * Math.cos(lat2) *
-                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        // Вычисление расстояния в километрах
-        return EARTH_RADIUS * c;
+    double calculateDistance(GPGGAPoint point1, GPGGAPoint point2) {
+        return GpsDistanceAccumulator.distance(
+                point1.getLatitude(), point1.getLongitude(), point2.getLatitude(), point2.getLongitude());
     }
 }
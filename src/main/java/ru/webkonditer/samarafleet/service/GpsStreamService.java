@@ -0,0 +1,155 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.webkonditer.samarafleet.dto.CarOdometer;
+import ru.webkonditer.samarafleet.dto.GpsStreamReport;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.service.gps.GpsDistanceAccumulator;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+import ru.webkonditer.samarafleet.service.gps.NmeaLineSplitter;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Сервис приема живых потоков NMEA данных от автомобилей.
+ * Данные разбираются по мере поступления тем же алгоритмом, что и загруженные логи, каждый учтенный
+ * отрезок сразу прибавляется к одометру автомобиля. Одометры хранятся в памяти; от одного автомобиля
+ * может быть открыто несколько потоков одновременно. Точки потока обновляют последнюю известную позицию
+ * автомобиля и проверяются по геозонам его дилера.
+ */
+@Service
+public class GpsStreamService {
+
+    private final CarRepository carRepository;
+    private final CarPositionService carPositionService;
+    private final GeofenceService geofenceService;
+    private final Map<Long, Odometer> odometers = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param carRepository      Репозиторий для работы с данными об автомобилях.
+     * @param carPositionService Сервис последних известных позиций автомобилей.
+     * @param geofenceService    Сервис геозон дилеров.
+     */
+    @Autowired
+    public GpsStreamService(CarRepository carRepository, CarPositionService carPositionService,
+                            GeofenceService geofenceService) {
+        this.carRepository = carRepository;
+        this.carPositionService = carPositionService;
+        this.geofenceService = geofenceService;
+    }
+
+    /**
+     * Открывает поток данных от автомобиля.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Поток или пустой Optional, если автомобиль не найден.
+     */
+    public Optional<StreamSession> openStream(Long carId) {
+        if (!carRepository.existsById(carId)) {
+            return Optional.empty();
+        }
+        Odometer odometer = odometers.computeIfAbsent(carId, id -> new Odometer());
+        odometer.activeStreams.incrementAndGet();
+        GpsFixListener fixListener = carPositionService.positionUpdater(carId)
+                .andThen(geofenceService.tracker(carId));
+        return Optional.of(new StreamSession(carId, odometer, fixListener));
+    }
+
+    /**
+     * Получение показаний одометра автомобиля.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Показания одометра или пустой Optional, если от автомобиля еще не было данных.
+     */
+    public Optional<CarOdometer> getOdometer(Long carId) {
+        return Optional.ofNullable(odometers.get(carId)).map(odometer -> odometer.toDto(carId));
+    }
+
+    private static final class Odometer {
+
+        private final DoubleAdder distance = new DoubleAdder();
+        private final AtomicInteger activeStreams = new AtomicInteger();
+        private volatile long lastUpdate;
+
+        private CarOdometer toDto(Long carId) {
+            long updated = lastUpdate;
+            return new CarOdometer(carId, distance.sum(), activeStreams.get(),
+                    updated > 0 ? Instant.ofEpochMilli(updated) : null);
+        }
+    }
+
+    /**
+     * Открытый поток данных от автомобиля. Данные подаются порциями из одного потока за раз
+     * (контейнер сервлетов не вызывает обработчики чтения одного запроса параллельно).
+     */
+    public static final class StreamSession {
+
+        private final Long carId;
+        private final Odometer odometer;
+        private final GpsDistanceAccumulator accumulator = new GpsDistanceAccumulator();
+        private final NmeaLineSplitter splitter;
+        private long bytesReceived;
+        private boolean closed;
+
+        private StreamSession(Long carId, Odometer odometer, GpsFixListener fixListener) {
+            this.carId = carId;
+            this.odometer = odometer;
+            // До первого $GNZDA в потоке точки датируются днем открытия потока
+            accumulator.setFixListener(fixListener, LocalDate.now(ZoneOffset.UTC).toEpochDay());
+            accumulator.setSegmentListener(distance -> {
+                odometer.distance.add(distance);
+                odometer.lastUpdate = System.currentTimeMillis();
+            });
+            // Одна строка с невалидными координатами не должна обрывать многочасовой поток
+            accumulator.setSkipMalformedSegments(true);
+            this.splitter = new NmeaLineSplitter(accumulator);
+        }
+
+        /**
+         * Подает очередную порцию данных потока.
+         *
+         * @param data   Буфер с данными.
+         * @param offset Начало данных.
+         * @param length Длина данных.
+         */
+        public void feed(byte[] data, int offset, int length) {
+            bytesReceived += length;
+            splitter.feed(data, offset, length);
+        }
+
+        /**
+         * Завершает поток: разбирает последнюю строку и возвращает итоги.
+         *
+         * @return Итоги потока.
+         */
+        public GpsStreamReport finish() {
+            splitter.finish();
+            // Последняя точка ждет следующей строки; без этого она не попадет ни в позицию, ни в геозоны
+            accumulator.finish();
+            close();
+            return new GpsStreamReport(carId, bytesReceived, accumulator.getTotalDistance(),
+                    accumulator.getFixCount(), accumulator.getInvalidSentenceCount(), accumulator.getRejectedSegmentCount(),
+                    odometer.toDto(carId));
+        }
+
+        /**
+         * Закрывает поток после ошибки соединения. Уже учтенная дистанция остается в одометре.
+         */
+        public void close() {
+            if (!closed) {
+                closed = true;
+                odometer.activeStreams.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.webkonditer.samarafleet.dto.GpsStreamReport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP сервер для приема сырых NMEA данных от трекеров.
+ * <p>
+ * Первая строка соединения - рукопожатие вида {@code CAR <id>}, связывающее соединение с автомобилем.
+ * Сервер отвечает {@code OK} и дальше передает все данные соединения в {@link GpsStreamService}, как при
+ * потоковой загрузке по HTTP; при ошибке отвечает {@code ERR <причина>} и закрывает соединение.
+ * <p>
+ * Соединения обслуживаются неблокирующим вводом/выводом на нескольких потоках с селекторами, поэтому
+ * тысячи трекеров не требуют потока на каждого. Проверка автомобиля в базе данных выполняется
+ * в отдельном небольшом пуле, чтобы не останавливать селектор. Включается свойством gps.tcp.enabled.
+ */
+@Service
+@ConditionalOnProperty(name = "gps.tcp.enabled", havingValue = "true")
+public class GpsTcpServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(GpsTcpServer.class);
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    // Строка рукопожатия короткая, длинная строка без перевода - это не наш клиент
+    private static final int MAX_HANDSHAKE_LENGTH = 64;
+
+    private static final String HANDSHAKE_PREFIX = "CAR ";
+
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    // Пауза после ошибки приема растет от минимальной до максимальной и сбрасывается при успешном приеме
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final GpsStreamService gpsStreamService;
+    private final String host;
+    private final int port;
+    private final int selectorThreads;
+    private final long idleTimeoutMillis;
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private ExecutorService handshakeExecutor;
+    private Thread acceptorThread;
+    private volatile boolean running;
+
+    /**
+     * Конструктор сервера.
+     *
+     * @param gpsStreamService Сервис приема потоков GPS данных.
+     * @param host             Адрес, на котором принимаются соединения.
+     * @param port             Порт (0 - любой свободный).
+     * @param selectorThreads  Число потоков с селекторами.
+     * @param idleTimeout      Время без данных, после которого соединение закрывается.
+     */
+    @Autowired
+    public GpsTcpServer(GpsStreamService gpsStreamService,
+                        @Value("${gps.tcp.host:0.0.0.0}") String host,
+                        @Value("${gps.tcp.port:5050}") int port,
+                        @Value("${gps.tcp.selector-threads:2}") int selectorThreads,
+                        @Value("${gps.tcp.idle-timeout:5m}") Duration idleTimeout) {
+        this.gpsStreamService = gpsStreamService;
+        this.host = host;
+        this.port = port;
+        this.selectorThreads = Math.max(1, selectorThreads);
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+    }
+
+    /**
+     * Открывает порт и запускает потоки сервера.
+     *
+     * @throws IOException Если порт не удалось открыть.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(host, port), 1024);
+
+        AtomicInteger handshakeThreadNumber = new AtomicInteger();
+        handshakeExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "gps-tcp-handshake-" + handshakeThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        running = true;
+        for (int i = 0; i < selectorThreads; i++) {
+            Worker worker = new Worker(Selector.open());
+            workers.add(worker);
+            Thread thread = new Thread(worker::run, "gps-tcp-selector-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        acceptorThread = new Thread(this::acceptLoop, "gps-tcp-acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+        logger.info("TCP прием NMEA данных запущен на порту " + getPort());
+    }
+
+    /**
+     * Останавливает сервер и закрывает все соединения.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.warn("Ошибка закрытия TCP порта", e);
+        }
+        for (Worker worker : workers) {
+            worker.selector.wakeup();
+        }
+        handshakeExecutor.shutdownNow();
+    }
+
+    /**
+     * Возвращает порт, на котором принимаются соединения.
+     *
+     * @return Номер порта.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void acceptLoop() {
+        long backoffMillis = 0;
+        while (running) {
+            SocketChannel channel = null;
+            try {
+                // Прием блокирующий: это один поток на весь сервер
+                channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                // Соединения раздаются потокам с селекторами по кругу, регистрация - в потоке селектора
+                Worker worker = workers.get(Math.floorMod(nextWorker.getAndIncrement(), workers.size()));
+                SocketChannel accepted = channel;
+                worker.execute(() -> worker.register(accepted));
+                backoffMillis = 0;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (channel != null) {
+                    closeQuietly(channel);
+                }
+                // Ошибки вроде исчерпания дескрипторов (EMFILE) повторяются сразу же:
+                // без паузы поток крутился бы в цикле и засыпал лог
+                backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS,
+                        Math.max(MIN_ACCEPT_BACKOFF_MILLIS, backoffMillis * 2));
+                logger.warn("Ошибка приема TCP соединения, повтор через " + backoffMillis + " мс", e);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Поток с селектором, обслуживающий часть соединений.
+     */
+    private class Worker {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Буфер чтения общий для всех соединений потока: данные сразу передаются разбору
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private long lastSweep;
+
+        private Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Выполняет действие в потоке селектора.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void run() {
+            try {
+                while (running) {
+                    selector.select(SWEEP_INTERVAL_MILLIS);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        // Сбой одной задачи не должен останавливать поток со всеми его соединениями
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            logger.error("Ошибка задачи потока TCP приема NMEA данных", e);
+                        }
+                    }
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            Connection connection = (Connection) key.attachment();
+                            try {
+                                read(connection);
+                            } catch (RuntimeException e) {
+                                fail(connection, e);
+                            }
+                        }
+                    }
+                    closeIdleConnections();
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                logger.error("Ошибка селектора TCP приема NMEA данных", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    try {
+                        close((Connection) key.attachment(), false);
+                    } catch (RuntimeException e) {
+                        logger.warn("Ошибка закрытия TCP соединения", e);
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    logger.warn("Ошибка закрытия селектора", e);
+                }
+            }
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Не удалось зарегистрировать TCP соединение", e);
+                closeQuietly(channel);
+            }
+        }
+
+        private void read(Connection connection) {
+            readBuffer.clear();
+            int read;
+            try {
+                read = connection.channel.read(readBuffer);
+            } catch (IOException e) {
+                close(connection, false);
+                return;
+            }
+            if (read == -1) {
+                close(connection, true);
+                return;
+            }
+            connection.lastActivity = System.currentTimeMillis();
+            if (connection.session != null) {
+                connection.session.feed(readBuffer.array(), 0, read);
+            } else {
+                acceptHandshake(connection, readBuffer.array(), read);
+            }
+        }
+
+        private void acceptHandshake(Connection connection, byte[] data, int length) {
+            int lineEnd = -1;
+            for (int i = 0; i < length; i++) {
+                if (data[i] == '\n') {
+                    lineEnd = i;
+                    break;
+                }
+            }
+            int headLength = lineEnd >= 0 ? lineEnd : length;
+            if (connection.handshakeLength + headLength > MAX_HANDSHAKE_LENGTH) {
+                reject(connection, "handshake too long");
+                return;
+            }
+            System.arraycopy(data, 0, connection.handshake, connection.handshakeLength, headLength);
+            connection.handshakeLength += headLength;
+            if (lineEnd < 0) {
+                return;
+            }
+
+            // Данные после рукопожатия придержим до подключения к потоку автомобиля
+            connection.pending = Arrays.copyOfRange(data, lineEnd + 1, length);
+            String line = new String(connection.handshake, 0, connection.handshakeLength, StandardCharsets.US_ASCII)
+                    .trim();
+            Long carId = parseCarId(line);
+            if (carId == null) {
+                reject(connection, "expected '" + HANDSHAKE_PREFIX + "<id>'");
+                return;
+            }
+
+            // Пока проверяется автомобиль, данные соединения не читаем
+            connection.key.interestOps(0);
+            handshakeExecutor.execute(() -> {
+                Optional<GpsStreamService.StreamSession> session;
+                try {
+                    session = gpsStreamService.openStream(carId);
+                } catch (RuntimeException e) {
+                    logger.error("Ошибка проверки автомобиля " + carId + " для TCP соединения", e);
+                    session = Optional.empty();
+                }
+                Optional<GpsStreamService.StreamSession> result = session;
+                execute(() -> {
+                    try {
+                        attach(connection, carId, result);
+                    } catch (RuntimeException e) {
+                        fail(connection, e);
+                    }
+                });
+            });
+        }
+
+        private void attach(Connection connection, Long carId, Optional<GpsStreamService.StreamSession> session) {
+            if (!connection.channel.isOpen()) {
+                session.ifPresent(GpsStreamService.StreamSession::close);
+                return;
+            }
+            if (session.isEmpty()) {
+                reject(connection, "car not found: " + carId);
+                return;
+            }
+            connection.session = session.get();
+            reply(connection, "OK");
+            if (connection.pending.length > 0) {
+                connection.session.feed(connection.pending, 0, connection.pending.length);
+            }
+            connection.pending = null;
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void closeIdleConnections() {
+            long now = System.currentTimeMillis();
+            if (now - lastSweep < SWEEP_INTERVAL_MILLIS) {
+                return;
+            }
+            lastSweep = now;
+            for (SelectionKey key : selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                // Соединения, ожидающие проверки автомобиля, не трогаем
+                if (key.isValid() && key.interestOps() != 0 && now - connection.lastActivity > idleTimeoutMillis) {
+                    try {
+                        close(connection, true);
+                    } catch (RuntimeException e) {
+                        fail(connection, e);
+                    }
+                }
+            }
+        }
+
+        private void reject(Connection connection, String reason) {
+            reply(connection, "ERR " + reason);
+            close(connection, false);
+        }
+
+        private void reply(Connection connection, String message) {
+            try {
+                // Короткий ответ всегда помещается в пустой буфер отправки сокета
+                connection.channel.write(ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.US_ASCII)));
+            } catch (IOException e) {
+                logger.debug("Не удалось отправить ответ TCP клиенту", e);
+            }
+        }
+
+        /**
+         * Закрывает соединение, обработка которого завершилась ошибкой. Остальные соединения потока
+         * продолжают работать.
+         */
+        private void fail(Connection connection, RuntimeException error) {
+            logger.error("Ошибка обработки TCP соединения, соединение закрыто", error);
+            try {
+                close(connection, false);
+            } catch (RuntimeException e) {
+                logger.warn("Ошибка закрытия TCP соединения", e);
+            }
+        }
+
+        private void close(Connection connection, boolean finish) {
+            connection.key.cancel();
+            closeQuietly(connection.channel);
+            // Сессию отвязываем до завершения, чтобы при ее сбое не завершать ее повторно
+            GpsStreamService.StreamSession session = connection.session;
+            connection.session = null;
+            if (session != null) {
+                if (finish) {
+                    GpsStreamReport report = session.finish();
+                    logger.info("TCP поток автомобиля " + report.getCarId() + " завершен, дистанция: "
+                            + String.format("%.3f", report.getDistance()) + " км");
+                } else {
+                    session.close();
+                }
+            }
+        }
+    }
+
+    private static Long parseCarId(String line) {
+        if (!line.regionMatches(true, 0, HANDSHAKE_PREFIX, 0, HANDSHAKE_PREFIX.length())) {
+            return null;
+        }
+        try {
+            return Long.valueOf(line.substring(HANDSHAKE_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Ошибка закрытия TCP соединения", e);
+        }
+    }
+
+    /**
+     * Состояние одного TCP соединения.
+     */
+    private static final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final byte[] handshake = new byte[MAX_HANDSHAKE_LENGTH];
+        private int handshakeLength;
+        private byte[] pending;
+        private GpsStreamService.StreamSession session;
+        private long lastActivity = System.currentTimeMillis();
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogResult;
+import ru.webkonditer.samarafleet.dto.GpsTrackDistance;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.repo.GpsFixRepository;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+import ru.webkonditer.samarafleet.service.gps.GpsTrackStore;
+import ru.webkonditer.samarafleet.service.gps.HaversineKernel;
+import ru.webkonditer.samarafleet.service.gps.StationaryFixFilter;
+import ru.webkonditer.samarafleet.service.gps.TrackSimplifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Сервис хранения треков автомобилей.
+ * Точки из обработанных GPS логов сохраняются в бинарное хранилище на диске, привязанное к автомобилю (Car),
+ * и, если включено, пакетно записываются в таблицу gps_fixes. Перед записью из трека убираются повторные точки
+ * стоянок ({@link StationaryFixFilter}) и он упрощается с допуском gps.tracks.simplify-tolerance
+ * ({@link TrackSimplifier}); последняя позиция и геозоны получают все точки.
+ */
+@Service
+public class GpsTrackService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GpsTrackService.class);
+
+    private final GpsLogService gpsLogService;
+    private final GpsFixIngestService gpsFixIngestService;
+    private final CarRepository carRepository;
+    private final GpsFixRepository gpsFixRepository;
+    private final CarPositionService carPositionService;
+    private final GeofenceService geofenceService;
+    private final GpsTrackStore trackStore;
+    private final double simplifyTolerance;
+
+    /**
+     * Конструктор сервиса.
+     *
+     * @param gpsLogService       Сервис обработки GPS логов.
+     * @param gpsFixIngestService Сервис пакетной записи точек трека в базу данных.
+     * @param carRepository       Репозиторий для работы с данными об автомобилях.
+     * @param gpsFixRepository    Репозиторий точек трека в базе данных.
+     * @param carPositionService  Сервис последних известных позиций автомобилей.
+     * @param geofenceService     Сервис геозон дилеров.
+     * @param directory           Каталог хранилища треков.
+     * @param maxFixesPerSegment  Максимальное число точек в одном файле сегмента.
+     * @param simplifyTolerance   Допуск упрощения трека при записи в метрах (0 - сохранять все точки).
+     */
+    @Autowired
+    public GpsTrackService(GpsLogService gpsLogService,
+                           GpsFixIngestService gpsFixIngestService,
+                           CarRepository carRepository,
+                           GpsFixRepository gpsFixRepository,
+                           CarPositionService carPositionService,
+                           GeofenceService geofenceService,
+                           @Value("${gps.tracks.directory:data/tracks}") Path directory,
+                           @Value("${gps.tracks.max-fixes-per-segment:500000}") int maxFixesPerSegment,
+                           @Value("${gps.tracks.simplify-tolerance:3}") double simplifyTolerance) {
+        this.gpsLogService = gpsLogService;
+        this.gpsFixIngestService = gpsFixIngestService;
+        this.carRepository = carRepository;
+        this.gpsFixRepository = gpsFixRepository;
+        this.carPositionService = carPositionService;
+        this.geofenceService = geofenceService;
+        this.trackStore = new GpsTrackStore(directory, maxFixesPerSegment);
+        this.simplifyTolerance = simplifyTolerance;
+    }
+
+    /**
+     * Обрабатывает GPS лог и сохраняет его точки в трек автомобиля.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @param file  MultipartFile, содержащий GPS лог.
+     * @return Результат обработки лога (с итогами записи в базу данных, если она включена)
+     *         или пустой Optional, если автомобиль не найден.
+     * @throws IOException  В случае ошибок ввода/вывода.
+     * @throws SQLException В случае ошибок записи точек в базу данных.
+     */
+    public Optional<GpsLogResult> processAndStore(Long carId, MultipartFile file) throws IOException, SQLException {
+        if (!carRepository.existsById(carId)) {
+            return Optional.empty();
+        }
+        GpsTrackStore.TrackWriter writer = trackStore.openWriter(carId);
+        GpsFixIngestService.IngestSession ingestSession = null;
+        try (InputStream inputStream = gpsLogService.openLog(file)) {
+            GpsFixListener storedListener = writer;
+            if (gpsFixIngestService.isEnabled()) {
+                ingestSession = gpsFixIngestService.openSession(carId);
+                storedListener = storedListener.andThen(ingestSession);
+            }
+            TrackSimplifier simplifier = null;
+            StationaryFixFilter stationaryFilter = null;
+            if (simplifyTolerance > 0) {
+                simplifier = new TrackSimplifier(simplifyTolerance, storedListener);
+                stationaryFilter = new StationaryFixFilter(simplifier);
+                storedListener = stationaryFilter;
+            }
+            GpsFixListener fixListener = storedListener
+                    .andThen(carPositionService.positionUpdater(carId))
+                    .andThen(geofenceService.tracker(carId));
+
+            GpsLogResult result = gpsLogService.analyzeGpsLog(inputStream, fixListener);
+            if (simplifier != null) {
+                simplifier.finish();
+                logger.info("Трек автомобиля " + carId + " упрощен: " + stationaryFilter.getInputCount() + " -> "
+                        + stationaryFilter.getOutputCount() + " без стоянок -> " + simplifier.getOutputCount() + " точек");
+            }
+            writer.close();
+            logger.info("В трек автомобиля " + carId + " сохранено точек: " + writer.getTotalFixes());
+            if (ingestSession != null) {
+                result = result.withFixIngest(ingestSession.finish());
+            }
+            return Optional.of(result);
+        } catch (IOException | SQLException | RuntimeException e) {
+            writer.abort();
+            if (ingestSession != null) {
+                ingestSession.abort();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Читает точки трека автомобиля за интервал времени.
+     *
+     * @param carId    Идентификатор автомобиля.
+     * @param from     Начало интервала (включительно).
+     * @param to       Конец интервала (включительно).
+     * @param consumer Получатель точек.
+     * @return Количество прочитанных точек.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public long readTrack(Long carId, Instant from, Instant to, GpsFixListener consumer) throws IOException {
+        return trackStore.read(carId, from.toEpochMilli(), to.toEpochMilli(), consumer);
+    }
+
+    /**
+     * Читает точки трека автомобиля за интервал времени, упрощая трек с заданным допуском.
+     *
+     * @param carId     Идентификатор автомобиля.
+     * @param from      Начало интервала (включительно).
+     * @param to        Конец интервала (включительно).
+     * @param tolerance Допуск упрощения в метрах.
+     * @param consumer  Получатель точек.
+     * @return Количество переданных получателю точек.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public long readTrack(Long carId, Instant from, Instant to, double tolerance, GpsFixListener consumer)
+            throws IOException {
+        TrackSimplifier simplifier = new TrackSimplifier(tolerance, consumer);
+        trackStore.read(carId, from.toEpochMilli(), to.toEpochMilli(), simplifier);
+        simplifier.finish();
+        return simplifier.getOutputCount();
+    }
+
+    /**
+     * Считает пройденный путь по сохраненному треку автомобиля за интервал времени.
+     * Как и в дистанции лога, отрезок учитывается, только если скорость в его начальной точке округляется
+     * до ненулевой, поэтому стоянки не добавляют шум координат. Трек хранится упрощенным
+     * ({@link TrackSimplifier}), а его хорды не смешивают движение и стоянку, так что путь может быть короче
+     * дистанции исходного лога не больше чем на {@link TrackSimplifier#MAX_SHORTENING}. Исключение - точки
+     * без координат: лог не учитывает отрезки к ним, а в треке их соседи соединены, поэтому на таких логах
+     * путь бывает и немного длиннее.
+     * Точки читаются блоками в примитивные массивы, длины отрезков считаются {@link HaversineKernel}
+     * в быстром режиме: соседние точки трека близки, погрешность не больше
+     * {@link HaversineKernel#FAST_PATH_RELATIVE_ERROR}.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @param from  Начало интервала (включительно).
+     * @param to    Конец интервала (включительно).
+     * @return Пройденный путь и число точек.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public GpsTrackDistance trackDistance(Long carId, Instant from, Instant to) throws IOException {
+        PathLength path = new PathLength();
+        long count = trackStore.read(carId, from.toEpochMilli(), to.toEpochMilli(), path);
+        return new GpsTrackDistance(carId, from, to, count, path.finish());
+    }
+
+    /**
+     * Удаляет трек автомобиля из хранилища и из базы данных.
+     *
+     * @param carId Идентификатор автомобиля.
+     */
+    public void deleteTrack(Long carId) {
+        gpsFixRepository.deleteByCarId(carId);
+        try {
+            trackStore.delete(carId);
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить трек автомобиля " + carId, e);
+        }
+    }
+
+    /**
+     * Накопление точек трека блоками для пакетного расчета пройденного пути.
+     * Последняя точка блока остается первой точкой следующего, чтобы не потерять отрезок между блоками.
+     */
+    private static final class PathLength implements GpsFixListener {
+
+        private static final int BLOCK_SIZE = 4096;
+
+        private final double[] latitudes = new double[BLOCK_SIZE];
+        private final double[] longitudes = new double[BLOCK_SIZE];
+        private final boolean[] moving = new boolean[BLOCK_SIZE];
+        private final double[] lengths = new double[BLOCK_SIZE - 1];
+        private int size;
+        private double distance;
+
+        @Override
+        public void onFix(long timeMillis, double latitude, double longitude, double speed) {
+            if (size == BLOCK_SIZE) {
+                distance += blockDistance();
+                latitudes[0] = latitudes[size - 1];
+                longitudes[0] = longitudes[size - 1];
+                moving[0] = moving[size - 1];
+                size = 1;
+            }
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            moving[size] = (int) Math.round(speed) > 0;
+            size++;
+        }
+
+        private double blockDistance() {
+            HaversineKernel.segmentLengths(latitudes, longitudes, 0, size, lengths, true);
+            double total = 0;
+            for (int i = 0; i < size - 1; i++) {
+                if (moving[i]) {
+                    total += lengths[i];
+                }
+            }
+            return total;
+        }
+
+        private double finish() {
+            return distance + blockDistance();
+        }
+    }
+}
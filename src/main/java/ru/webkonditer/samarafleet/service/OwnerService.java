@@ -1,15 +1,22 @@
 package ru.webkonditer.samarafleet.service;
 
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.webkonditer.samarafleet.dto.BulkLinkReport;
 import ru.webkonditer.samarafleet.model.Car;
 import ru.webkonditer.samarafleet.model.Owner;
 import ru.webkonditer.samarafleet.repo.CarRepository;
 import ru.webkonditer.samarafleet.repo.OwnerRepository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Сервис для управления владельцами и их автомобилями.
@@ -20,21 +27,44 @@ public class OwnerService {
     private final OwnerRepository ownerRepository;
     private final CarRepository carRepository;
     private final CarService carService;
+    private final GeofenceService geofenceService;
+    private final EntityManager entityManager;
 
     @Autowired
-    public OwnerService(OwnerRepository ownerRepository, CarRepository carRepository, CarService carService) {
+    public OwnerService(OwnerRepository ownerRepository, CarRepository carRepository, CarService carService,
+                        GeofenceService geofenceService, EntityManager entityManager) {
         this.ownerRepository = ownerRepository;
         this.carRepository = carRepository;
         this.carService = carService;
+        this.geofenceService = geofenceService;
+        this.entityManager = entityManager;
     }
 
     /**
-     * Получает список всех владельцев.
+     * Получает страницу владельцев после заданного идентификатора (keyset-пагинация по id).
      *
-     * @return Список всех владельцев.
+     * @param afterId Идентификатор последнего владельца предыдущей страницы.
+     * @param limit   Размер страницы.
+     * @return Владельцы в порядке идентификаторов.
      */
-    public List<Owner> getAllOwners() {
-        return ownerRepository.findAll();
+    public List<Owner> getOwnersAfter(long afterId, int limit) {
+        return ownerRepository.findPageAfter(afterId, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Передает всех владельцев потребителю по мере чтения из базы данных.
+     * Переданные владельцы отсоединяются от контекста, поэтому расход памяти не зависит от размера таблицы.
+     *
+     * @param consumer Потребитель владельцев.
+     */
+    @Transactional(readOnly = true)
+    public void forEachOwner(Consumer<? super Owner> consumer) {
+        try (Stream<Owner> owners = ownerRepository.streamAll()) {
+            owners.forEach(owner -> {
+                consumer.accept(owner);
+                entityManager.detach(owner);
+            });
+        }
     }
 
     /**
@@ -84,6 +114,8 @@ public class OwnerService {
      * @param ownerId Идентификатор владельца.
      */
     public void deleteOwner(Long ownerId) {
+        // Автомобили удаляются вместе с владельцем каскадно, их треки и позиции - заранее
+        carRepository.findIdsByOwnerId(ownerId).forEach(carService::deleteCarData);
         // Удаление владельца по ID
         ownerRepository.deleteById(ownerId);
     }
@@ -134,6 +166,8 @@ public class OwnerService {
         owner.addCar(car);
 
         ownerRepository.save(owner);
+        // Геозоны отслеживаются по дилеру владельца: у нового владельца он может быть другим
+        geofenceService.removeCars(List.of(carId));
 
         return ResponseEntity.ok(owner);
     }
@@ -162,6 +196,7 @@ public class OwnerService {
                 // Сохранение изменений в базе данных
                 ownerRepository.save(owner);
                 carRepository.save(car);
+                geofenceService.removeCars(List.of(carId));
 
                 // Возвращаем true в случае успеха
                 return true;
@@ -171,4 +206,47 @@ public class OwnerService {
         // Возвращаем false в случае неудачи
         return false;
     }
+
+    /**
+     * Передает автомобили владельцу набором UPDATE в одной транзакции. Ни автомобили, ни коллекция
+     * cars владельца не загружаются, поэтому стоимость не зависит от числа его автомобилей.
+     * Отслеживание геозон затронутых автомобилей сбрасывается после фиксации транзакции.
+     *
+     * @param ownerId Идентификатор владельца.
+     * @param carIds  Идентификаторы автомобилей; несуществующие пропускаются.
+     * @return Итоги или null, если владелец не найден.
+     */
+    @Transactional
+    public BulkLinkReport attachCarsToOwner(Long ownerId, Collection<Long> carIds) {
+        if (!ownerRepository.existsById(ownerId)) {
+            return null;
+        }
+        Owner owner = ownerRepository.getReferenceById(ownerId);
+        return BulkUpdates.inChunks(carIds, chunk -> {
+            int updated = carRepository.reassignOwner(owner, chunk);
+            geofenceService.removeCars(chunk);
+            return updated;
+        });
+    }
+
+    /**
+     * Открепляет автомобили от владельца набором UPDATE в одной транзакции.
+     * Автомобили, не принадлежащие владельцу, не меняются.
+     * Отслеживание геозон затронутых автомобилей сбрасывается после фиксации транзакции.
+     *
+     * @param ownerId Идентификатор владельца.
+     * @param carIds  Идентификаторы автомобилей.
+     * @return Итоги или null, если владелец не найден.
+     */
+    @Transactional
+    public BulkLinkReport detachCarsFromOwner(Long ownerId, Collection<Long> carIds) {
+        if (!ownerRepository.existsById(ownerId)) {
+            return null;
+        }
+        return BulkUpdates.inChunks(carIds, chunk -> {
+            int updated = carRepository.detachFromOwner(ownerId, chunk);
+            geofenceService.removeCars(chunk);
+            return updated;
+        });
+    }
 }
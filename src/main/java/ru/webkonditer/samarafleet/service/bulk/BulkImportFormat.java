@@ -0,0 +1,17 @@
+package ru.webkonditer.samarafleet.service.bulk;
+
+/**
+ * Формат файла массового импорта.
+ */
+public enum BulkImportFormat {
+
+    /**
+     * CSV с заголовком: первая строка - имена полей, порядок колонок любой.
+     */
+    CSV,
+
+    /**
+     * NDJSON: по JSON объекту на строку.
+     */
+    NDJSON
+}
@@ -0,0 +1,39 @@
+package ru.webkonditer.samarafleet.service.bulk;
+
+import java.io.IOException;
+
+/**
+ * Последовательное чтение записей файла импорта без загрузки файла в память.
+ * Запись с ошибкой формата не прерывает чтение: {@link #getError()} описывает ошибку,
+ * а следующий вызов {@link #next()} переходит к следующей записи.
+ */
+public interface BulkRecordReader {
+
+    /**
+     * Переходит к следующей записи.
+     *
+     * @return false, если записей больше нет.
+     * @throws IOException Ошибка чтения.
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Возвращает значение поля текущей записи.
+     *
+     * @param field Имя поля.
+     * @return Значение или null, если поля нет или оно пустое.
+     */
+    String get(String field);
+
+    /**
+     * Возвращает номер строки файла, с которой начинается текущая запись (с единицы).
+     */
+    long getLineNumber();
+
+    /**
+     * Возвращает ошибку формата текущей записи.
+     *
+     * @return Описание ошибки или null, если запись разобрана.
+     */
+    String getError();
+}
@@ -0,0 +1,177 @@
+package ru.webkonditer.samarafleet.service.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Потоковое чтение CSV (RFC 4180): поля через запятую, значения в двойных кавычках могут содержать запятые,
+ * переводы строк и удвоенные кавычки. Первая запись - заголовок с именами полей. Пустые строки пропускаются.
+ */
+public class CsvRecordReader implements BulkRecordReader {
+
+    private static final int NO_PUSHBACK = -2;
+
+    private final Reader reader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+    private long line = 1;
+    private long recordLine;
+    private String error;
+    // Прочитанный наперед символ или NO_PUSHBACK
+    private int pushback = NO_PUSHBACK;
+
+    /**
+     * Создает читатель и читает заголовок.
+     *
+     * @param reader Источник данных; рекомендуется буферизованный.
+     * @throws IOException              Ошибка чтения.
+     * @throws IllegalArgumentException Если заголовка нет или в нем повторяются имена полей.
+     */
+    public CsvRecordReader(Reader reader) throws IOException {
+        this.reader = reader;
+        if (!readRecord() || error != null) {
+            throw new IllegalArgumentException(error != null ? error : "CSV header is missing");
+        }
+        for (int i = 0; i < values.size(); i++) {
+            String name = values.get(i).trim();
+            if (columns.put(name, i) != null) {
+                throw new IllegalArgumentException("Duplicate CSV column: " + name);
+            }
+        }
+    }
+
+    /**
+     * Проверяет, есть ли поле в заголовке.
+     *
+     * @param field Имя поля.
+     * @return true, если колонка есть.
+     */
+    public boolean hasColumn(String field) {
+        return columns.containsKey(field);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!readRecord()) {
+            return false;
+        }
+        if (error == null && values.size() != columns.size()) {
+            error = "Expected " + columns.size() + " fields, found " + values.size();
+        }
+        return true;
+    }
+
+    @Override
+    public String get(String name) {
+        Integer index = columns.get(name);
+        if (index == null || error != null) {
+            return null;
+        }
+        String value = values.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public long getLineNumber() {
+        return recordLine;
+    }
+
+    @Override
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Читает следующую непустую запись в values.
+     *
+     * @return false, если данные закончились.
+     */
+    private boolean readRecord() throws IOException {
+        values.clear();
+        field.setLength(0);
+        error = null;
+
+        int c = read();
+        // Пустые строки между записями
+        while (c == '\r' || c == '\n') {
+            c = newLine(c);
+        }
+        if (c == -1) {
+            return false;
+        }
+        recordLine = line;
+
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    error = "Unterminated quoted field";
+                    values.add(field.toString());
+                    return true;
+                }
+                if (c == '"') {
+                    int following = read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = following;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && !fieldStarted) {
+                quoted = true;
+                fieldStarted = true;
+            } else if (c == ',') {
+                values.add(field.toString());
+                field.setLength(0);
+                fieldStarted = false;
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                values.add(field.toString());
+                if (c != -1) {
+                    // Символ после перевода строки - начало следующей записи
+                    pushback = newLine(c);
+                }
+                return true;
+            } else {
+                // Символы после закрывающей кавычки допускаются и дописываются к значению
+                field.append((char) c);
+                fieldStarted = true;
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Учитывает перевод строки (CR, LF или CRLF) и возвращает следующий символ.
+     */
+    private int newLine(int c) throws IOException {
+        line++;
+        int next = read();
+        if (c == '\r' && next == '\n') {
+            next = read();
+        }
+        return next;
+    }
+
+    private int read() throws IOException {
+        if (pushback != NO_PUSHBACK) {
+            int c = pushback;
+            pushback = NO_PUSHBACK;
+            return c;
+        }
+        return reader.read();
+    }
+}
@@ -0,0 +1,78 @@
+package ru.webkonditer.samarafleet.service.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Потоковое чтение NDJSON: каждая непустая строка - JSON объект, поля которого читаются как строки.
+ */
+public class NdjsonRecordReader implements BulkRecordReader {
+
+    private final BufferedReader reader;
+    private final ObjectMapper objectMapper;
+
+    private long line;
+    private long recordLine;
+    private JsonNode record;
+    private String error;
+
+    /**
+     * @param reader       Источник данных.
+     * @param objectMapper Парсер JSON.
+     */
+    public NdjsonRecordReader(BufferedReader reader, ObjectMapper objectMapper) {
+        this.reader = reader;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            line++;
+            if (text == null) {
+                return false;
+            }
+        } while (text.isBlank());
+
+        recordLine = line;
+        record = null;
+        error = null;
+        try {
+            JsonNode node = objectMapper.readTree(text);
+            if (node.isObject()) {
+                record = node;
+            } else {
+                error = "Expected a JSON object";
+            }
+        } catch (JsonProcessingException e) {
+            error = "Malformed JSON: " + e.getOriginalMessage();
+        }
+        return true;
+    }
+
+    @Override
+    public String get(String field) {
+        JsonNode value = record == null ? null : record.get(field);
+        if (value == null || value.isNull() || value.isContainerNode()) {
+            return null;
+        }
+        String text = value.asText().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    @Override
+    public long getLineNumber() {
+        return recordLine;
+    }
+
+    @Override
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,396 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Хранилище последних известных позиций автомобилей в примитивных массивах.
+ * <p>
+ * Каждому автомобилю при первой позиции выделяется ячейка фиксированного размера в общем массиве long
+ * (одна кэш-линия на ячейку). Запись ячейки защищена seqlock: писатель захватывает ячейку CAS-ом,
+ * переводя счетчик версии в нечетное значение, пишет поля и публикует следующее четное значение;
+ * читатель повторяет чтение, пока не увидит одну и ту же четную версию до и после. Блокировок
+ * и объектов на обновление нет. Индекс автомобиль - ячейка - открытая адресация по массиву long,
+ * ключ публикуется после номера ячейки, поэтому поиск тоже без блокировок; под монитором только
+ * выделение и освобождение ячеек.
+ * <p>
+ * Емкость фиксирована, ячейки удаленных автомобилей возвращаются в список свободных и выдаются заново.
+ * При освобождении у ячейки меняется поколение: обновление с поколением прежнего владельца отклоняется,
+ * поэтому получатель точек, открытый до удаления автомобиля, не пишет в чужую или пустую ячейку.
+ * Ключ удаленного автомобиля в индексе заменяется надгробием; когда надгробий становится много,
+ * индекс перестраивается в новые массивы, а читатели дочитывают тот, что успели взять.
+ */
+public final class CarPositionStore {
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Поля ячейки: версия, автомобиль, время и биты координат и скорости; остаток добивает ячейку до 64 байт
+    private static final int STRIDE = 8;
+    private static final int SEQ = 0;
+    private static final int CAR = 1;
+    private static final int TIME = 2;
+    private static final int LATITUDE = 3;
+    private static final int LONGITUDE = 4;
+    private static final int SPEED = 5;
+    private static final int GENERATION = 6;
+
+    // Время пустой ячейки: позиции еще нет или она удалена
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    // Ключ удаленного автомобиля в индексе: поиск идет дальше, вставка может занять это место
+    private static final long TOMBSTONE = -1;
+
+    private final int capacity;
+    private final long[] data;
+    private final int mask;
+    private volatile KeyTable table;
+    private volatile int allocated;
+
+    // Защищены монитором хранилища
+    private final int[] freeSlots;
+    private int freeCount;
+
+    /**
+     * Создает хранилище.
+     *
+     * @param capacity Максимальное число автомобилей.
+     */
+    public CarPositionStore(int capacity) {
+        this.capacity = capacity;
+        this.data = new long[capacity * STRIDE];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.table = new KeyTable(tableSize);
+        this.mask = tableSize - 1;
+        this.freeSlots = new int[capacity];
+        for (int slot = 0; slot < capacity; slot++) {
+            data[slot * STRIDE + TIME] = EMPTY;
+        }
+    }
+
+    /**
+     * Получатель позиций при обходе хранилища.
+     */
+    @FunctionalInterface
+    public interface PositionConsumer {
+
+        void accept(long carId, long timeMillis, double latitude, double longitude, double speed);
+    }
+
+    /**
+     * Снимок позиции одного автомобиля; заполняется при чтении, можно переиспользовать.
+     */
+    public static final class Position {
+
+        private long carId;
+        private long timeMillis;
+        private double latitude;
+        private double longitude;
+        private double speed;
+        private long version;
+        private long generation;
+
+        public long getCarId() {
+            return carId;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public double getSpeed() {
+            return speed;
+        }
+
+        /**
+         * Версия ячейки на момент чтения; меняется при каждом обновлении позиции.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Поколение ячейки на момент чтения; меняется при освобождении ячейки.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+    }
+
+    /**
+     * Индекс автомобиль - ячейка. Массивы заменяются целиком при перестройке.
+     */
+    private static final class KeyTable {
+
+        private final long[] keys;
+        private final int[] slots;
+        // Занятые места, включая надгробия; меняется под монитором хранилища
+        private int used;
+
+        private KeyTable(int size) {
+            this.keys = new long[size];
+            this.slots = new int[size];
+        }
+    }
+
+    /**
+     * Находит или выделяет ячейку автомобиля.
+     *
+     * @param carId Идентификатор автомобиля (положительный).
+     * @return Номер ячейки или -1, если хранилище заполнено.
+     */
+    public int slotOf(long carId) {
+        int slot = find(carId);
+        return slot >= 0 ? slot : allocate(carId);
+    }
+
+    /**
+     * Находит ячейку автомобиля без выделения.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Номер ячейки или -1, если у автомобиля еще не было позиций.
+     */
+    public int find(long carId) {
+        if (carId <= 0) {
+            return -1;
+        }
+        KeyTable table = this.table;
+        for (int i = hash(carId); ; i = (i + 1) & mask) {
+            long key = (long) LONGS.getAcquire(table.keys, i);
+            if (key == carId) {
+                return table.slots[i];
+            }
+            if (key == 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Обновляет позицию, если она не старше сохраненной и ячейка не освобождалась.
+     *
+     * @param slot       Номер ячейки.
+     * @param generation Поколение ячейки, прочитанное при получении ячейки ({@link Position#getGeneration()}).
+     * @param timeMillis Время позиции.
+     * @param latitude   Широта.
+     * @param longitude  Долгота.
+     * @param speed      Скорость в км/ч.
+     * @return true, если позиция сохранена.
+     */
+    public boolean update(int slot, long generation, long timeMillis, double latitude, double longitude,
+                          double speed) {
+        int base = slot * STRIDE;
+        long seq = lock(base);
+        if (data[base + GENERATION] != generation
+                || (data[base + TIME] != EMPTY && data[base + TIME] > timeMillis)) {
+            // Ничего не меняли: возвращаем прежнюю версию
+            LONGS.setRelease(data, base + SEQ, seq);
+            return false;
+        }
+        data[base + TIME] = timeMillis;
+        data[base + LATITUDE] = Double.doubleToRawLongBits(latitude);
+        data[base + LONGITUDE] = Double.doubleToRawLongBits(longitude);
+        data[base + SPEED] = Double.doubleToRawLongBits(speed);
+        LONGS.setRelease(data, base + SEQ, seq + 2);
+        return true;
+    }
+
+    /**
+     * Удаляет позицию автомобиля и освобождает его ячейку.
+     * Обновления, начатые с прежним поколением ячейки, после этого отклоняются.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Номер освобожденной ячейки или -1, если у автомобиля не было ячейки.
+     */
+    public synchronized int remove(long carId) {
+        if (carId <= 0) {
+            return -1;
+        }
+        KeyTable table = this.table;
+        int i = hash(carId);
+        while (table.keys[i] != carId) {
+            if (table.keys[i] == 0) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+        int slot = table.slots[i];
+
+        int base = slot * STRIDE;
+        long seq = lock(base);
+        data[base + CAR] = 0;
+        data[base + TIME] = EMPTY;
+        data[base + GENERATION]++;
+        LONGS.setRelease(data, base + SEQ, seq + 2);
+
+        LONGS.setRelease(table.keys, i, TOMBSTONE);
+        freeSlots[freeCount++] = slot;
+        return slot;
+    }
+
+    /**
+     * Читает согласованный снимок позиции ячейки.
+     *
+     * @param slot     Номер ячейки.
+     * @param position Снимок, который нужно заполнить.
+     * @return true, если в ячейке есть позиция.
+     */
+    public boolean read(int slot, Position position) {
+        int base = slot * STRIDE;
+        while (true) {
+            long seq = (long) LONGS.getAcquire(data, base + SEQ);
+            if ((seq & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long carId = data[base + CAR];
+            long time = data[base + TIME];
+            long latitude = data[base + LATITUDE];
+            long longitude = data[base + LONGITUDE];
+            long speed = data[base + SPEED];
+            long generation = data[base + GENERATION];
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getOpaque(data, base + SEQ) != seq) {
+                continue;
+            }
+            position.carId = carId;
+            position.timeMillis = time;
+            position.latitude = Double.longBitsToDouble(latitude);
+            position.longitude = Double.longBitsToDouble(longitude);
+            position.speed = Double.longBitsToDouble(speed);
+            position.version = seq;
+            position.generation = generation;
+            return time != EMPTY;
+        }
+    }
+
+    /**
+     * Обходит все сохраненные позиции, каждая читается согласованно.
+     *
+     * @param consumer Получатель позиций.
+     */
+    public void forEach(PositionConsumer consumer) {
+        Position position = new Position();
+        int count = allocated;
+        for (int slot = 0; slot < count; slot++) {
+            if (read(slot, position)) {
+                consumer.accept(position.carId, position.timeMillis, position.latitude, position.longitude,
+                        position.speed);
+            }
+        }
+    }
+
+    /**
+     * Возвращает число когда-либо выделенных ячеек; ячейки нумеруются подряд с нуля,
+     * освобожденные ячейки среди них читаются как пустые.
+     */
+    public int getAllocated() {
+        return allocated;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private long lock(int base) {
+        while (true) {
+            long seq = (long) LONGS.getVolatile(data, base + SEQ);
+            if ((seq & 1) == 0 && LONGS.compareAndSet(data, base + SEQ, seq, seq + 1)) {
+                return seq;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private synchronized int allocate(long carId) {
+        if (carId <= 0) {
+            return -1;
+        }
+        KeyTable table = this.table;
+        int i = hash(carId);
+        int insertAt = -1;
+        while (true) {
+            long key = table.keys[i];
+            if (key == carId) {
+                return table.slots[i];
+            }
+            if (key == 0) {
+                break;
+            }
+            if (key == TOMBSTONE && insertAt < 0) {
+                insertAt = i;
+            }
+            i = (i + 1) & mask;
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else if (allocated < capacity) {
+            slot = allocated;
+        } else {
+            return -1;
+        }
+        int base = slot * STRIDE;
+        long seq = lock(base);
+        data[base + CAR] = carId;
+        LONGS.setRelease(data, base + SEQ, seq + 2);
+        if (slot == allocated) {
+            allocated = slot + 1;
+        }
+
+        if (insertAt < 0) {
+            insertAt = i;
+            // Надгробия не освобождают места: при заполнении на три четверти индекс перестраивается
+            if (++table.used > (mask + 1) / 4 * 3) {
+                table = rebuild();
+                insertAt = probeFree(table, carId);
+                table.used++;
+            }
+        }
+        table.slots[insertAt] = slot;
+        // Ключ публикуется последним: нашедший его читатель видит и номер ячейки
+        LONGS.setRelease(table.keys, insertAt, carId);
+        return slot;
+    }
+
+    /**
+     * Переносит живые ключи в новые массивы без надгробий. Вызывается под монитором.
+     */
+    private KeyTable rebuild() {
+        KeyTable current = this.table;
+        KeyTable rebuilt = new KeyTable(mask + 1);
+        for (int i = 0; i <= mask; i++) {
+            long key = current.keys[i];
+            if (key > 0) {
+                int j = probeFree(rebuilt, key);
+                rebuilt.keys[j] = key;
+                rebuilt.slots[j] = current.slots[i];
+                rebuilt.used++;
+            }
+        }
+        // Публикация через volatile: читатель новой таблицы видит ее заполненной
+        this.table = rebuilt;
+        return rebuilt;
+    }
+
+    private int probeFree(KeyTable table, long carId) {
+        int i = hash(carId);
+        while (table.keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private int hash(long carId) {
+        long h = carId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
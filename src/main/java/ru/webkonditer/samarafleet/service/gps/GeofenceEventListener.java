@@ -0,0 +1,20 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Получатель событий въезда в геозоны и выезда из них.
+ */
+@FunctionalInterface
+public interface GeofenceEventListener {
+
+    /**
+     * Обрабатывает событие геозоны.
+     *
+     * @param geofenceId Идентификатор геозоны.
+     * @param carId      Идентификатор автомобиля.
+     * @param enter      true - въезд, false - выезд.
+     * @param timeMillis Время точки, на которой обнаружено событие.
+     * @param latitude   Широта точки.
+     * @param longitude  Долгота точки.
+     */
+    void onEvent(long geofenceId, long carId, boolean enter, long timeMillis, double latitude, double longitude);
+}
@@ -0,0 +1,307 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый индекс геозон для проверки точек на лету.
+ * <p>
+ * Предварительный отбор - сетка по широте и долготе: для каждой пары (дилер, клетка) заранее записаны
+ * геозоны дилера, прямоугольник которых пересекает клетку. Проверка точки - поиск клетки в таблице с открытой
+ * адресацией (без создания объектов), затем сравнение с прямоугольниками кандидатов и точная проверка
+ * попадания в многоугольник только для них. Точка вне всех геозон дилера обычно отсеивается одним
+ * поиском в таблице.
+ * <p>
+ * Геозона, прямоугольник которой занимает больше {@link #MAX_CELLS_PER_FENCE} клеток, в сетку не записывается:
+ * такие геозоны хранятся в отдельном списке дилера (в той же таблице под особым ключом клетки) и проверяются
+ * для каждой точки. Так размер индекса и время его перестроения ограничены числом геозон, а не их площадью.
+ * <p>
+ * Индекс не меняется после построения; при изменении геозон строится новый и подменяется целиком.
+ */
+public final class GeofenceIndex {
+
+    /**
+     * Максимальное число клеток сетки, в которые записывается одна геозона.
+     */
+    public static final int MAX_CELLS_PER_FENCE = 4096;
+
+    private static final long[] NO_FENCES = new long[0];
+    private static final int[] NO_CANDIDATES = new int[0];
+
+    // Ключ клетки для крупных геозон дилера; обычные клетки такого ключа не дают (широта ограничена)
+    private static final long WIDE_CELL = Long.MIN_VALUE;
+
+    private final double cellSize;
+    private final Map<Long, Polygon> polygons;
+
+    // Таблица (дилер, клетка) -> номера многоугольников в массиве fences
+    private final long[] dealerKeys;
+    private final long[] cellKeys;
+    private final int[][] candidates;
+    private final int mask;
+    private final Polygon[] fences;
+    private final int maxCandidates;
+
+    private GeofenceIndex(double cellSize, Collection<Polygon> source) {
+        this.cellSize = cellSize;
+        this.fences = source.stream()
+                .sorted((a, b) -> Long.compare(a.id, b.id))
+                .toArray(Polygon[]::new);
+        this.polygons = new HashMap<>();
+        for (Polygon polygon : fences) {
+            polygons.put(polygon.id, polygon);
+        }
+
+        Map<CellKey, List<Integer>> cells = new HashMap<>();
+        for (int i = 0; i < fences.length; i++) {
+            Polygon polygon = fences[i];
+            long rows = row(polygon.maxLatitude) - row(polygon.minLatitude) + 1;
+            long columns = column(polygon.maxLongitude) - column(polygon.minLongitude) + 1;
+            if (rows * columns > MAX_CELLS_PER_FENCE) {
+                cells.computeIfAbsent(new CellKey(polygon.dealerId, WIDE_CELL), k -> new ArrayList<>()).add(i);
+                continue;
+            }
+            for (long row = row(polygon.minLatitude); row <= row(polygon.maxLatitude); row++) {
+                for (long column = column(polygon.minLongitude); column <= column(polygon.maxLongitude); column++) {
+                    cells.computeIfAbsent(new CellKey(polygon.dealerId, key(row, column)), k -> new ArrayList<>())
+                            .add(i);
+                }
+            }
+        }
+
+        int size = Integer.highestOneBit(Math.max(4, cells.size() * 2 - 1)) << 1;
+        this.mask = size - 1;
+        this.dealerKeys = new long[size];
+        this.cellKeys = new long[size];
+        this.candidates = new int[size][];
+        int max = 0;
+        for (Map.Entry<CellKey, List<Integer>> entry : cells.entrySet()) {
+            CellKey cell = entry.getKey();
+            int i = hash(cell.dealerId, cell.cell) & mask;
+            while (candidates[i] != null) {
+                i = (i + 1) & mask;
+            }
+            dealerKeys[i] = cell.dealerId;
+            cellKeys[i] = cell.cell;
+            // Номера идут по возрастанию идентификаторов геозон, поэтому и результат проверки упорядочен
+            candidates[i] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+        }
+        // Кандидаты точки - клетка и крупные геозоны дилера
+        for (int i = 0; i < size; i++) {
+            if (candidates[i] != null) {
+                int wide = cellKeys[i] == WIDE_CELL ? 0 : wideCandidates(dealerKeys[i]).length;
+                max = Math.max(max, candidates[i].length + wide);
+            }
+        }
+        this.maxCandidates = max;
+    }
+
+    /**
+     * Строит индекс.
+     *
+     * @param polygons Геозоны.
+     * @param cellSize Размер клетки сетки в градусах.
+     * @return Индекс.
+     */
+    public static GeofenceIndex build(Collection<Polygon> polygons, double cellSize) {
+        return new GeofenceIndex(cellSize, polygons);
+    }
+
+    /**
+     * Многоугольник геозоны. Координаты считаются плоскими (геозоны малы по сравнению с Землей);
+     * многоугольник не должен пересекать 180-й меридиан.
+     */
+    public static final class Polygon {
+
+        private final long id;
+        private final long dealerId;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final double minLatitude;
+        private final double maxLatitude;
+        private final double minLongitude;
+        private final double maxLongitude;
+
+        /**
+         * Создает многоугольник.
+         *
+         * @param id         Идентификатор геозоны.
+         * @param dealerId   Идентификатор дилера.
+         * @param latitudes  Широты вершин в порядке обхода.
+         * @param longitudes Долготы вершин в порядке обхода.
+         */
+        public Polygon(long id, long dealerId, double[] latitudes, double[] longitudes) {
+            if (latitudes.length != longitudes.length || latitudes.length < 3) {
+                throw new IllegalArgumentException("A geofence polygon needs at least 3 vertices");
+            }
+            this.id = id;
+            this.dealerId = dealerId;
+            this.latitudes = latitudes.clone();
+            this.longitudes = longitudes.clone();
+            this.minLatitude = Arrays.stream(latitudes).min().getAsDouble();
+            this.maxLatitude = Arrays.stream(latitudes).max().getAsDouble();
+            this.minLongitude = Arrays.stream(longitudes).min().getAsDouble();
+            this.maxLongitude = Arrays.stream(longitudes).max().getAsDouble();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getDealerId() {
+            return dealerId;
+        }
+
+        /**
+         * Проверяет попадание точки в многоугольник (метод трассировки луча).
+         *
+         * @param latitude  Широта точки.
+         * @param longitude Долгота точки.
+         * @return true, если точка внутри.
+         */
+        public boolean contains(double latitude, double longitude) {
+            if (latitude < minLatitude || latitude > maxLatitude
+                    || longitude < minLongitude || longitude > maxLongitude) {
+                return false;
+            }
+            boolean inside = false;
+            int n = latitudes.length;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double latI = latitudes[i];
+                double latJ = latitudes[j];
+                if ((latI > latitude) != (latJ > latitude)) {
+                    double crossing = longitudes[i]
+                            + (latitude - latI) * (longitudes[j] - longitudes[i]) / (latJ - latI);
+                    if (longitude < crossing) {
+                        inside = !inside;
+                    }
+                }
+            }
+            return inside;
+        }
+    }
+
+    /**
+     * Находит геозоны дилера, содержащие точку.
+     *
+     * @param dealerId  Идентификатор дилера.
+     * @param latitude  Широта точки.
+     * @param longitude Долгота точки.
+     * @param result    Массив для идентификаторов геозон, не короче {@link #getMaxCandidates()}.
+     * @return Число найденных геозон; идентификаторы в result упорядочены по возрастанию.
+     */
+    public int containing(long dealerId, double latitude, double longitude, long[] result) {
+        int[] cell = find(dealerId, key(row(latitude), column(longitude)));
+        if (cell == null) {
+            cell = NO_CANDIDATES;
+        }
+        int[] wide = wideCandidates(dealerId);
+        // Оба списка упорядочены по номеру геозоны; слияние сохраняет порядок идентификаторов
+        int count = 0;
+        for (int i = 0, j = 0; i < cell.length || j < wide.length; ) {
+            int index = j >= wide.length || (i < cell.length && cell[i] < wide[j]) ? cell[i++] : wide[j++];
+            Polygon polygon = fences[index];
+            if (polygon.contains(latitude, longitude)) {
+                result[count++] = polygon.id;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Проверяет, есть ли геозона в индексе.
+     *
+     * @param geofenceId Идентификатор геозоны.
+     * @return true, если геозона есть.
+     */
+    public boolean hasFence(long geofenceId) {
+        return polygons.containsKey(geofenceId);
+    }
+
+    /**
+     * Возвращает новый индекс с добавленной или замененной геозоной.
+     *
+     * @param polygon Геозона.
+     * @return Новый индекс.
+     */
+    public GeofenceIndex with(Polygon polygon) {
+        Map<Long, Polygon> copy = new HashMap<>(polygons);
+        copy.put(polygon.id, polygon);
+        return new GeofenceIndex(cellSize, copy.values());
+    }
+
+    /**
+     * Возвращает новый индекс без указанных геозон.
+     *
+     * @param geofenceIds Идентификаторы удаляемых геозон.
+     * @return Новый индекс.
+     */
+    public GeofenceIndex without(Collection<Long> geofenceIds) {
+        Map<Long, Polygon> copy = new HashMap<>(polygons);
+        copy.keySet().removeAll(geofenceIds);
+        return new GeofenceIndex(cellSize, copy.values());
+    }
+
+    /**
+     * Возвращает идентификаторы геозон дилера.
+     *
+     * @param dealerId Идентификатор дилера.
+     * @return Идентификаторы геозон.
+     */
+    public long[] dealerFences(long dealerId) {
+        long[] ids = Arrays.stream(fences).filter(p -> p.dealerId == dealerId).mapToLong(p -> p.id).toArray();
+        return ids.length > 0 ? ids : NO_FENCES;
+    }
+
+    /**
+     * Максимальное число геозон-кандидатов в одной клетке.
+     */
+    public int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    public int getFenceCount() {
+        return fences.length;
+    }
+
+    private int[] wideCandidates(long dealerId) {
+        int[] wide = find(dealerId, WIDE_CELL);
+        return wide != null ? wide : NO_CANDIDATES;
+    }
+
+    private int[] find(long dealerId, long cell) {
+        for (int i = hash(dealerId, cell) & mask; ; i = (i + 1) & mask) {
+            int[] found = candidates[i];
+            if (found == null) {
+                return null;
+            }
+            if (dealerKeys[i] == dealerId && cellKeys[i] == cell) {
+                return found;
+            }
+        }
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor(latitude / cellSize);
+    }
+
+    private long column(double longitude) {
+        return (long) Math.floor(longitude / cellSize);
+    }
+
+    private static long key(long row, long column) {
+        return (row << 32) | (column & 0xffffffffL);
+    }
+
+    private static int hash(long dealerId, long cell) {
+        long h = (cell ^ (dealerId * 0x9E3779B97F4A7C15L)) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private record CellKey(long dealerId, long cell) {
+    }
+}
@@ -0,0 +1,114 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Отслеживание геозон, в которых находится автомобиль.
+ * <p>
+ * Каждая точка проверяется по текущему {@link GeofenceIndex}; набор геозон, содержащих точку, сравнивается
+ * с набором для предыдущей точки, и разница превращается в события въезда и выезда. Оба набора - упорядоченные
+ * массивы идентификаторов, поэтому сравнение - один проход слиянием без создания объектов. Точки старше уже
+ * учтенной пропускаются: события не должны зависеть от порядка, в котором пришли данные из разных источников.
+ * <p>
+ * Один экземпляр отслеживает один автомобиль и может получать точки из нескольких потоков одновременно.
+ */
+public final class GeofenceTracker implements GpsFixListener {
+
+    private final long carId;
+    private final long dealerId;
+    private final Supplier<GeofenceIndex> index;
+    private final GeofenceEventListener listener;
+
+    private long[] inside = new long[4];
+    private int insideCount;
+    private long[] found = new long[4];
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * Создает отслеживание.
+     *
+     * @param carId    Идентификатор автомобиля.
+     * @param dealerId Идентификатор дилера владельца автомобиля.
+     * @param index    Источник актуального индекса геозон.
+     * @param listener Получатель событий.
+     */
+    public GeofenceTracker(long carId, long dealerId, Supplier<GeofenceIndex> index, GeofenceEventListener listener) {
+        this.carId = carId;
+        this.dealerId = dealerId;
+        this.index = index;
+        this.listener = listener;
+    }
+
+    /**
+     * Задает начальное положение автомобиля без событий (например, последнюю известную позицию после запуска).
+     *
+     * @param timeMillis Время позиции.
+     * @param latitude   Широта.
+     * @param longitude  Долгота.
+     */
+    public synchronized void initialize(long timeMillis, double latitude, double longitude) {
+        GeofenceIndex current = index.get();
+        ensureCapacity(current.getMaxCandidates());
+        insideCount = current.containing(dealerId, latitude, longitude, inside);
+        lastTime = timeMillis;
+    }
+
+    @Override
+    public synchronized void onFix(long timeMillis, double latitude, double longitude, double speed) {
+        if (timeMillis < lastTime) {
+            return;
+        }
+        lastTime = timeMillis;
+
+        GeofenceIndex current = index.get();
+        ensureCapacity(current.getMaxCandidates());
+        int foundCount = current.containing(dealerId, latitude, longitude, found);
+        if (foundCount == 0 && insideCount == 0) {
+            return;
+        }
+
+        int i = 0;
+        int j = 0;
+        while (i < insideCount || j < foundCount) {
+            if (j == foundCount || (i < insideCount && inside[i] < found[j])) {
+                // Геозону могли удалить, пока автомобиль был в ней: выезд из нее уже не событие
+                if (current.hasFence(inside[i])) {
+                    listener.onEvent(inside[i], carId, false, timeMillis, latitude, longitude);
+                }
+                i++;
+            } else if (i == insideCount || found[j] < inside[i]) {
+                listener.onEvent(found[j], carId, true, timeMillis, latitude, longitude);
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+
+        long[] previous = inside;
+        inside = found;
+        insideCount = foundCount;
+        found = previous;
+    }
+
+    /**
+     * Возвращает идентификаторы геозон, в которых сейчас находится автомобиль.
+     */
+    public synchronized long[] getInside() {
+        return Arrays.copyOf(inside, insideCount);
+    }
+
+    public long getDealerId() {
+        return dealerId;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (found.length < capacity) {
+            found = new long[capacity];
+        }
+        if (inside.length < capacity) {
+            inside = Arrays.copyOf(inside, capacity);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Потоковый расчет пройденного пути по строкам NMEA лога.
+ * Держит скользящее окно из предыдущей, текущей и следующей строки в виде примитивов:
+ * отрезок между соседними $GPGGA учитывается, если строка между ними - $GNVTG с ненулевой скоростью.
+ * Пустые строки и $GNZDA в окно не попадают. Экземпляр не потокобезопасен.
+ * <p>
+ * Аккумуляторы соседних участков лога можно объединять через {@link #merge(GpsDistanceAccumulator)}:
+ * для этого запоминаются две первые строки участка, а две последние и так лежат в окне.
+ * <p>
+ * Если задан {@link GpsFixListener}, аккумулятор дополнительно выдает точки трека: время берется из $GPGGA,
+ * дата - из последнего $GNZDA, скорость - из $GNVTG, следующего за точкой. Точки выдаются только
+ * при последовательной обработке лога, после последней строки нужно вызвать {@link #finish()}.
+ * Аналогично {@link GpsSegmentListener} получает каждый учтенный отрезок пути.
+ * Попутно считаются точки, невалидные строки и границы трека; эти счетчики тоже объединяются при merge.
+ * <p>
+ * Отрезок с невалидными координатами на конце по умолчанию прерывает обработку {@link NumberFormatException},
+ * как и разбор лога целиком. Для длительных потоков его можно только пропускать:
+ * см. {@link #setSkipMalformedSegments(boolean)}.
+ */
+public class GpsDistanceAccumulator implements NmeaLineHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(GpsDistanceAccumulator.class);
+
+    // Виды строк в окне
+    private static final byte NONE = 0;
+    private static final byte OTHER = 1;
+    private static final byte POINT = 2;
+    private static final byte INVALID_POINT = 3;
+    private static final byte MALFORMED_POINT = 4;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final NmeaCursor cursor = new NmeaCursor();
+
+    // Две первые строки участка, нужны для сшивки с предыдущим участком
+    private final byte[] headKind = new byte[2];
+    private final double[] headLatitude = new double[2];
+    private final double[] headLongitude = new double[2];
+    private final boolean[] headMoving = new boolean[2];
+    private long lineCount;
+
+    private byte previousKind = NONE;
+    private double previousLatitude;
+    private double previousLongitude;
+
+    private byte currentKind = NONE;
+    private double currentLatitude;
+    private double currentLongitude;
+    private boolean currentMoving;
+
+    private double totalDistance;
+
+    // Широта конца последнего учтенного отрезка и ее косинус
+    private double cosCacheLatitude = Double.NaN;
+    private double cosCacheValue;
+
+    // Счетчики и границы трека
+    private long fixCount;
+    private long invalidSentenceCount;
+    private long rejectedSegmentCount;
+    private double minLatitude = Double.POSITIVE_INFINITY;
+    private double minLongitude = Double.POSITIVE_INFINITY;
+    private double maxLatitude = Double.NEGATIVE_INFINITY;
+    private double maxLongitude = Double.NEGATIVE_INFINITY;
+
+    private GpsSegmentListener segmentListener;
+    private boolean skipMalformedSegments;
+
+    // Состояние выдачи точек трека
+    private GpsFixListener fixListener;
+    private long epochDay;
+    private long lastTimeOfDay = -1;
+    private boolean hasPendingFix;
+    private long pendingTime;
+    private double pendingLatitude;
+    private double pendingLongitude;
+    private double pendingSpeed;
+
+    /**
+     * Включает выдачу точек трека.
+     *
+     * @param fixListener Получатель точек.
+     * @param epochDay    Дата (в днях с начала эпохи), которая используется до первого $GNZDA в логе.
+     */
+    public void setFixListener(GpsFixListener fixListener, long epochDay) {
+        this.fixListener = fixListener;
+        this.epochDay = epochDay;
+    }
+
+    /**
+     * Включает выдачу учтенных отрезков пути.
+     *
+     * @param segmentListener Получатель отрезков.
+     */
+    public void setSegmentListener(GpsSegmentListener segmentListener) {
+        this.segmentListener = segmentListener;
+    }
+
+    /**
+     * Включает пропуск отрезков с невалидными координатами вместо ошибки.
+     * Пропущенные отрезки не попадают в дистанцию и считаются в {@link #getRejectedSegmentCount()}.
+     *
+     * @param skipMalformedSegments true, чтобы пропускать такие отрезки.
+     */
+    public void setSkipMalformedSegments(boolean skipMalformedSegments) {
+        this.skipMalformedSegments = skipMalformedSegments;
+    }
+
+    @Override
+    public void onLine(byte[] buffer, int from, int to) {
+        NmeaCursor line = cursor.reset(buffer, from, to);
+        // Пропускаем пустые строки
+        if (line.isBlank()) {
+            return;
+        }
+        // $GNZDA в окно не попадает, но задает дату для точек трека
+        if (line.startsWith(NmeaCursor.GNZDA)) {
+            if (fixListener != null) {
+                acceptDate(line);
+            }
+            return;
+        }
+
+        byte nextKind = OTHER;
+        double nextLatitude = 0;
+        double nextLongitude = 0;
+        boolean nextMoving = false;
+
+        if (line.startsWith(NmeaCursor.GPGGA)) {
+            nextKind = INVALID_POINT;
+            if (line.field(2) && !line.isFieldEmpty()) {
+                nextLatitude = line.fieldAsDouble();
+                if (line.field(4) && !line.isFieldEmpty()) {
+                    nextLongitude = line.fieldAsDouble();
+                    nextKind = Double.isNaN(nextLatitude) || Double.isNaN(nextLongitude) ? MALFORMED_POINT : POINT;
+                }
+            }
+            if (nextKind == INVALID_POINT) {
+                logger.error("Ошибка (Невалидная GPGGA строка): " + line);
+                invalidSentenceCount++;
+            } else if (nextKind == POINT) {
+                acceptPoint(nextLatitude, nextLongitude);
+                if (fixListener != null) {
+                    acceptFix(line, nextLatitude, nextLongitude);
+                }
+            }
+        } else if (line.startsWith(NmeaCursor.GNVTG)) {
+            double speed = speedKmh(line);
+            if (Double.isNaN(speed)) {
+                invalidSentenceCount++;
+            }
+            nextMoving = !Double.isNaN(speed) && (int) Math.round(speed) > 0;
+            if (hasPendingFix && !Double.isNaN(speed)) {
+                pendingSpeed = speed;
+            }
+        }
+
+        acceptNext(nextKind, nextLatitude, nextLongitude, nextMoving, line);
+    }
+
+    /**
+     * Завершает обработку лога: выдает последнюю точку трека, ожидавшую скорости из $GNVTG.
+     */
+    public void finish() {
+        flushPendingFix();
+    }
+
+    /**
+     * Присоединяет результат следующего по порядку участка лога.
+     * Учитываются отрезки, у которых строка $GNVTG или ее соседи оказались по разные стороны границы,
+     * поэтому итог совпадает с последовательной обработкой всего лога (с точностью до порядка сложения).
+     *
+     * @param next Аккумулятор участка, идущего сразу за этим.
+     */
+    public void merge(GpsDistanceAccumulator next) {
+        fixCount += next.fixCount;
+        invalidSentenceCount += next.invalidSentenceCount;
+        rejectedSegmentCount += next.rejectedSegmentCount;
+        minLatitude = Math.min(minLatitude, next.minLatitude);
+        minLongitude = Math.min(minLongitude, next.minLongitude);
+        maxLatitude = Math.max(maxLatitude, next.maxLatitude);
+        maxLongitude = Math.max(maxLongitude, next.maxLongitude);
+
+        if (next.lineCount == 0) {
+            return;
+        }
+        if (lineCount == 0) {
+            copyFrom(next);
+            return;
+        }
+
+        double distance = totalDistance + next.totalDistance;
+        // Последняя строка этого участка: предыдущая строка здесь, следующая - первая строка следующего участка
+        if (lineCount >= 2 && currentMoving) {
+            distance += segment(previousKind, previousLatitude, previousLongitude,
+                    next.headKind[0], next.headLatitude[0], next.headLongitude[0]);
+        }
+        // Первая строка следующего участка: предыдущая строка - последняя строка этого участка
+        if (next.lineCount >= 2 && next.headMoving[0]) {
+            distance += segment(currentKind, currentLatitude, currentLongitude,
+                    next.headKind[1], next.headLatitude[1], next.headLongitude[1]);
+        }
+        totalDistance = distance;
+
+        if (lineCount == 1) {
+            setHead(1, next.headKind[0], next.headLatitude[0], next.headLongitude[0], next.headMoving[0]);
+        }
+        if (next.lineCount == 1) {
+            previousKind = currentKind;
+            previousLatitude = currentLatitude;
+            previousLongitude = currentLongitude;
+        } else {
+            previousKind = next.previousKind;
+            previousLatitude = next.previousLatitude;
+            previousLongitude = next.previousLongitude;
+        }
+        currentKind = next.currentKind;
+        currentLatitude = next.currentLatitude;
+        currentLongitude = next.currentLongitude;
+        currentMoving = next.currentMoving;
+        lineCount += next.lineCount;
+    }
+
+    /**
+     * Возвращает накопленную дистанцию.
+     *
+     * @return Общая дистанция в километрах.
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * Возвращает число строк $GPGGA с координатами.
+     *
+     * @return Число точек.
+     */
+    public long getFixCount() {
+        return fixCount;
+    }
+
+    /**
+     * Возвращает число невалидных строк: $GPGGA без координат и $GNVTG без скорости.
+     *
+     * @return Число невалидных строк.
+     */
+    public long getInvalidSentenceCount() {
+        return invalidSentenceCount;
+    }
+
+    /**
+     * Возвращает число отрезков, пропущенных из-за невалидных координат.
+     *
+     * @return Число пропущенных отрезков.
+     */
+    public long getRejectedSegmentCount() {
+        return rejectedSegmentCount;
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    /**
+     * Вычисляет расстояние между двумя точками на Земле с использованием формулы гаверсинуса.
+     *
+     * @param latitude1  Широта первой точки в градусах.
+     * @param longitude1 Долгота первой точки в градусах.
+     * @param latitude2  Широта второй точки в градусах.
+     * @param longitude2 Долгота второй точки в градусах.
+     * @return Расстояние между точками в км.
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        return HaversineKernel.distance(latitude1, longitude1, latitude2, longitude2);
+    }
+
+    /**
+     * Извлекает скорость в км/ч из строки $GNVTG, округленную до целого.
+     *
+     * @param line Курсор, установленный на строку $GNVTG.
+     * @return Скорость в км/ч или 0, если строка невалидна.
+     */
+    public static int speedOf(NmeaCursor line) {
+        double speed = speedKmh(line);
+        return Double.isNaN(speed) ? 0 : (int) Math.round(speed);
+    }
+
+    private static double speedKmh(NmeaCursor line) {
+        // Индекс, соответствующий параметру скорости в км/ч
+        double speed = line.field(7) ? line.fieldAsDouble() : Double.NaN;
+        if (Double.isNaN(speed)) {
+            logger.error("Ошибка (Невалидная GNVTG строка): " + line);
+        }
+        return speed;
+    }
+
+    private void acceptDate(NmeaCursor line) {
+        int day = line.field(2) ? line.fieldAsInt() : -1;
+        int month = line.field(3) ? line.fieldAsInt() : -1;
+        int year = line.field(4) ? line.fieldAsInt() : -1;
+        if (day < 1 || day > 31 || month < 1 || month > 12 || year < 1970) {
+            return;
+        }
+        epochDay = epochDay(year, month, day);
+        lastTimeOfDay = -1;
+    }
+
+    private void acceptPoint(double latitude, double longitude) {
+        fixCount++;
+        if (latitude < minLatitude) {
+            minLatitude = latitude;
+        }
+        if (latitude > maxLatitude) {
+            maxLatitude = latitude;
+        }
+        if (longitude < minLongitude) {
+            minLongitude = longitude;
+        }
+        if (longitude > maxLongitude) {
+            maxLongitude = longitude;
+        }
+    }
+
+    private void acceptFix(NmeaCursor line, double latitude, double longitude) {
+        // Время в формате hhmmss.ss
+        double time = line.field(1) ? line.fieldAsDouble() : Double.NaN;
+        if (Double.isNaN(time) || time < 0 || time >= 240000) {
+            return;
+        }
+        int hours = (int) (time / 10000);
+        int minutes = (int) (time / 100) % 100;
+        long timeOfDay = ((hours * 60L + minutes) * 60) * 1000 + Math.round((time % 100) * 1000);
+
+        // Переход через полночь без нового $GNZDA
+        if (lastTimeOfDay >= 0 && timeOfDay < lastTimeOfDay - MILLIS_PER_DAY / 2) {
+            epochDay++;
+        }
+        lastTimeOfDay = timeOfDay;
+
+        flushPendingFix();
+        hasPendingFix = true;
+        pendingTime = epochDay * MILLIS_PER_DAY + timeOfDay;
+        pendingLatitude = latitude;
+        pendingLongitude = longitude;
+        pendingSpeed = 0;
+    }
+
+    private void flushPendingFix() {
+        if (hasPendingFix) {
+            hasPendingFix = false;
+            fixListener.onFix(pendingTime, pendingLatitude, pendingLongitude, pendingSpeed);
+        }
+    }
+
+    /**
+     * Номер дня с начала эпохи для даты григорианского календаря, без создания объектов.
+     */
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private void acceptNext(byte nextKind, double nextLatitude, double nextLongitude, boolean nextMoving,
+                            NmeaCursor line) {
+        boolean malformed = false;
+        if (currentMoving && isPoint(previousKind) && isPoint(nextKind)) {
+            if (previousKind == MALFORMED_POINT || nextKind == MALFORMED_POINT) {
+                malformed = true;
+                rejectedSegmentCount++;
+            } else {
+                // Получаем длину отрезка и прибавляем к общему расстоянию
+                // Конец отрезка обычно - начало следующего: косинус его широты считается один раз
+                double previousCos = previousLatitude == cosCacheLatitude ? cosCacheValue
+                        : HaversineKernel.cosLatitude(previousLatitude);
+                double nextCos = HaversineKernel.cosLatitude(nextLatitude);
+                cosCacheLatitude = nextLatitude;
+                cosCacheValue = nextCos;
+                double segment = HaversineKernel.distance(previousLatitude, previousCos, previousLongitude,
+                        nextLatitude, nextCos, nextLongitude);
+                totalDistance += segment;
+                if (segmentListener != null) {
+                    segmentListener.onSegment(segment);
+                }
+            }
+        }
+
+        if (lineCount < 2) {
+            setHead((int) lineCount, nextKind, nextLatitude, nextLongitude, nextMoving);
+        }
+        lineCount++;
+
+        previousKind = currentKind;
+        previousLatitude = currentLatitude;
+        previousLongitude = currentLongitude;
+
+        currentKind = nextKind;
+        currentLatitude = nextLatitude;
+        currentLongitude = nextLongitude;
+        currentMoving = nextMoving;
+
+        // Окно сдвинуто и при ошибке: иначе следующая строка сошлась бы с точкой до невалидной
+        if (malformed) {
+            if (!skipMalformedSegments) {
+                throw new NumberFormatException("Невалидные координаты в GPGGA строке рядом с: " + line);
+            }
+            logger.warn("Отрезок пропущен (Невалидные координаты в GPGGA строке рядом с: " + line + ")");
+        }
+    }
+
+    private static double segment(byte startKind, double startLatitude, double startLongitude,
+                                  byte endKind, double endLatitude, double endLongitude) {
+        if (!isPoint(startKind) || !isPoint(endKind)) {
+            return 0;
+        }
+        if (startKind == MALFORMED_POINT || endKind == MALFORMED_POINT) {
+            throw new NumberFormatException("Невалидные координаты в GPGGA строке на границе участков лога");
+        }
+        return distance(startLatitude, startLongitude, endLatitude, endLongitude);
+    }
+
+    private void setHead(int index, byte kind, double latitude, double longitude, boolean moving) {
+        headKind[index] = kind;
+        headLatitude[index] = latitude;
+        headLongitude[index] = longitude;
+        headMoving[index] = moving;
+    }
+
+    private void copyFrom(GpsDistanceAccumulator other) {
+        for (int i = 0; i < 2; i++) {
+            setHead(i, other.headKind[i], other.headLatitude[i], other.headLongitude[i], other.headMoving[i]);
+        }
+        lineCount = other.lineCount;
+        previousKind = other.previousKind;
+        previousLatitude = other.previousLatitude;
+        previousLongitude = other.previousLongitude;
+        currentKind = other.currentKind;
+        currentLatitude = other.currentLatitude;
+        currentLongitude = other.currentLongitude;
+        currentMoving = other.currentMoving;
+        totalDistance = other.totalDistance;
+    }
+
+    private static boolean isPoint(byte kind) {
+        return kind == POINT || kind == MALFORMED_POINT;
+    }
+}
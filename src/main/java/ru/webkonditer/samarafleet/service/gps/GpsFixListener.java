@@ -0,0 +1,31 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Получатель точек трека (фиксов), извлеченных из GPS лога.
+ */
+@FunctionalInterface
+public interface GpsFixListener {
+
+    /**
+     * Обрабатывает очередную точку трека.
+     *
+     * @param timeMillis Время точки в миллисекундах с начала эпохи (UTC).
+     * @param latitude   Широта в градусах.
+     * @param longitude  Долгота в градусах.
+     * @param speed      Скорость в км/ч.
+     */
+    void onFix(long timeMillis, double latitude, double longitude, double speed);
+
+    /**
+     * Возвращает получателя, передающего каждую точку сначала этому получателю, затем следующему.
+     *
+     * @param next Следующий получатель.
+     * @return Составной получатель.
+     */
+    default GpsFixListener andThen(GpsFixListener next) {
+        return (timeMillis, latitude, longitude, speed) -> {
+            onFix(timeMillis, latitude, longitude, speed);
+            next.onFix(timeMillis, latitude, longitude, speed);
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Формат сжатия загруженного GPS лога, определяется по первым байтам содержимого, а не по имени файла.
+ */
+public enum GpsLogCompression {
+
+    NONE,
+    GZIP,
+    ZIP;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Определяет формат по началу потока, не сдвигая его позицию.
+     *
+     * @param inputStream Поток с поддержкой mark/reset.
+     * @return Формат сжатия.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public static GpsLogCompression detect(InputStream inputStream) throws IOException {
+        inputStream.mark(4);
+        byte[] magic = inputStream.readNBytes(4);
+        inputStream.reset();
+        if (magic.length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return GZIP;
+        }
+        if (magic.length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return ZIP;
+        }
+        return NONE;
+    }
+
+    /**
+     * Оборачивает поток в потоковую распаковку gzip, если он сжат; лог распаковывается по мере чтения.
+     * Zip архив не разворачивается: его записи нужно обрабатывать по отдельности.
+     *
+     * @param inputStream Поток с поддержкой mark/reset.
+     * @return Поток с исходным текстом лога.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public static InputStream decompress(InputStream inputStream) throws IOException {
+        return detect(inputStream) == GZIP ? new GZIPInputStream(inputStream, BUFFER_SIZE) : inputStream;
+    }
+}
@@ -0,0 +1,249 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import ru.webkonditer.samarafleet.dto.GpsLogCacheStats;
+import ru.webkonditer.samarafleet.dto.GpsLogResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш результатов обработки GPS логов по хешу содержимого.
+ * <p>
+ * Ключ - SHA-256 содержимого и размер лога. Записи вытесняются по давности использования при превышении
+ * максимального числа записей и удаляются по истечении срока хранения. Кроме ключей хранится число записей
+ * каждого размера: если логов такого размера в кэше нет, повторная загрузка заведомо не найдется, и хеш
+ * считается попутно при разборе, а не отдельным проходом перед ним.
+ * <p>
+ * Для одного лога может храниться только дистанция (результат параллельного расчета) или полный
+ * структурированный результат, из которого берется и дистанция.
+ */
+public class GpsLogResultCache {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Порядок доступа: первая запись - давно не использовавшаяся
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Integer> sizes = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Создает кэш.
+     *
+     * @param maxEntries Максимальное число записей; 0 отключает кэш.
+     * @param ttlMillis  Срок хранения записи в мс.
+     */
+    public GpsLogResultCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Проверяет, есть ли в кэше хотя бы один лог такого размера. Отрицательный ответ - уже промах поиска,
+     * и он учитывается в статистике; положительный учитывается последующим поиском по ключу.
+     *
+     * @param size Размер лога в байтах.
+     * @return true, если имеет смысл посчитать хеш до разбора лога.
+     */
+    public synchronized boolean mayContain(long size) {
+        if (sizes.containsKey(size)) {
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Ищет дистанцию по ключу.
+     *
+     * @param key Ключ лога.
+     * @return Дистанция в км или null, если записи нет.
+     */
+    public Double getDistance(String key) {
+        Entry entry = get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.totalDistance;
+    }
+
+    /**
+     * Ищет полный результат по ключу.
+     *
+     * @param key Ключ лога.
+     * @return Результат или null, если записи нет или в ней только дистанция.
+     */
+    public GpsLogResult getResult(String key) {
+        Entry entry = get(key);
+        if (entry == null || entry.result == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.result;
+    }
+
+    /**
+     * Сохраняет дистанцию, посчитанную после промаха. Полный результат для того же лога не затирается.
+     *
+     * @param key           Ключ лога.
+     * @param size          Размер лога в байтах.
+     * @param totalDistance Дистанция в км.
+     */
+    public void putDistance(String key, long size, double totalDistance) {
+        put(key, size, totalDistance, null);
+    }
+
+    /**
+     * Сохраняет полный результат, посчитанный после промаха. Результат неизменяем и отдается из кэша без копирования.
+     *
+     * @param key    Ключ лога.
+     * @param size   Размер лога в байтах.
+     * @param result Результат обработки лога.
+     */
+    public void putResult(String key, long size, GpsLogResult result) {
+        put(key, size, result.getTotalDistance(), result);
+    }
+
+    /**
+     * Возвращает статистику кэша.
+     *
+     * @return Снимок счетчиков.
+     */
+    public GpsLogCacheStats getStats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        return new GpsLogCacheStats(isEnabled(), size, maxEntries, ttlMillis / 1000,
+                hitCount, missCount, evictions.sum(), total > 0 ? (double) hitCount / total : 0);
+    }
+
+    /**
+     * Создает объект для подсчета хеша содержимого лога.
+     *
+     * @return Новый MessageDigest.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязателен для любой реализации Java
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Строит ключ кэша по посчитанному хешу.
+     *
+     * @param digest Хеш содержимого.
+     * @param size   Размер лога в байтах.
+     * @return Ключ лога.
+     */
+    public static String key(MessageDigest digest, long size) {
+        return HexFormat.of().formatHex(digest.digest()) + ":" + size;
+    }
+
+    /**
+     * Считает ключ кэша по всему содержимому потока.
+     *
+     * @param inputStream Поток с содержимым лога. Не закрывается.
+     * @return Ключ лога.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public static String key(InputStream inputStream) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            size += read;
+        }
+        return key(digest, size);
+    }
+
+    private synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            release(entry.size);
+            evictions.increment();
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(String key, long size, double totalDistance, GpsLogResult result) {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry previous = entries.get(key);
+            if (previous != null && result == null && previous.result != null && previous.expiresAt > now) {
+                return;
+            }
+            if (previous == null) {
+                sizes.merge(size, 1, Integer::sum);
+            }
+            entries.put(key, new Entry(size, now + ttlMillis, totalDistance, result));
+            evict(now);
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entries.size() <= maxEntries && entry.expiresAt > now) {
+                // Дальше по порядку доступа идут более свежие записи; просроченные среди них удалятся при чтении
+                break;
+            }
+            iterator.remove();
+            release(entry.size);
+            evictions.increment();
+        }
+    }
+
+    private void release(long size) {
+        sizes.computeIfPresent(size, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private final long expiresAt;
+        private final double totalDistance;
+        private final GpsLogResult result;
+
+        private Entry(long size, long expiresAt, double totalDistance, GpsLogResult result) {
+            this.size = size;
+            this.expiresAt = expiresAt;
+            this.totalDistance = totalDistance;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Потоковая статистика движения по точкам трека: время в движении и гистограмма скоростей.
+ * Память не зависит от длины трека: хранится только предыдущая точка и фиксированный массив корзин.
+ */
+public class GpsMotionStatistics implements GpsFixListener {
+
+    // Ширина корзины гистограммы в км/ч
+    public static final int BUCKET_WIDTH = 10;
+
+    // Число корзин; последняя корзина открытая и включает все скорости от (BUCKET_COUNT - 1) * BUCKET_WIDTH
+    public static final int BUCKET_COUNT = 16;
+
+    private final long[] speedHistogram = new long[BUCKET_COUNT];
+    private long movingMillis;
+
+    private boolean hasPrevious;
+    private long previousTime;
+    private boolean previousMoving;
+
+    @Override
+    public void onFix(long timeMillis, double latitude, double longitude, double speed) {
+        // Интервал до следующей точки считается движением по тому же правилу, что и дистанция
+        if (hasPrevious && previousMoving && timeMillis > previousTime) {
+            movingMillis += timeMillis - previousTime;
+        }
+        hasPrevious = true;
+        previousTime = timeMillis;
+        previousMoving = (int) Math.round(speed) > 0;
+
+        int bucket = speed > 0 ? (int) (speed / BUCKET_WIDTH) : 0;
+        speedHistogram[Math.min(bucket, BUCKET_COUNT - 1)]++;
+    }
+
+    /**
+     * Возвращает время в движении.
+     *
+     * @return Время в мс.
+     */
+    public long getMovingMillis() {
+        return movingMillis;
+    }
+
+    /**
+     * Возвращает гистограмму скоростей: число точек в каждой корзине шириной {@link #BUCKET_WIDTH} км/ч.
+     *
+     * @return Массив из {@link #BUCKET_COUNT} счетчиков.
+     */
+    public long[] getSpeedHistogram() {
+        return speedHistogram;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Получатель отрезков пути, учтенных в общей дистанции.
+ */
+@FunctionalInterface
+public interface GpsSegmentListener {
+
+    /**
+     * Обрабатывает отрезок между двумя соседними $GPGGA вокруг $GNVTG с ненулевой скоростью.
+     * Вызывается сразу после выдачи точки начала отрезка.
+     *
+     * @param distance Длина отрезка в км.
+     */
+    void onSegment(double distance);
+}
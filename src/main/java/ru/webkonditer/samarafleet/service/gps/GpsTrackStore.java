@@ -0,0 +1,349 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище треков автомобилей в компактном бинарном формате на локальном диске.
+ * <p>
+ * Для каждого автомобиля заводится каталог с сегментами и индексом. Сегмент - неизменяемый файл,
+ * в котором точки записаны дельтами относительно предыдущей точки: время в миллисекундах,
+ * координаты в фиксированной точке (1e-7 градуса), скорость в 0.01 км/ч, все в виде zigzag varint.
+ * Индекс - файл из записей фиксированной длины с номером сегмента, интервалом времени и числом точек;
+ * записи только дописываются, поэтому читатели не блокируются писателями.
+ * Чтение по интервалу времени выбирает сегменты по индексу и отображает их в память.
+ */
+public class GpsTrackStore {
+
+    private static final int SEGMENT_MAGIC = 0x4754524B; // "GTRK"
+    private static final byte SEGMENT_VERSION = 1;
+    // magic, version, флаг сортировки по времени, число точек
+    private static final int SEGMENT_HEADER_SIZE = 4 + 1 + 1 + 4;
+    // номер сегмента, начало и конец интервала времени, число точек
+    private static final int INDEX_ENTRY_SIZE = 4 + 8 + 8 + 4;
+
+    private static final String INDEX_FILE = "index.bin";
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final double SPEED_SCALE = 100;
+
+    private final Path baseDirectory;
+    private final int maxFixesPerSegment;
+    private final ConcurrentMap<Long, Object> carLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Создает хранилище.
+     *
+     * @param baseDirectory      Каталог хранилища.
+     * @param maxFixesPerSegment Максимальное число точек в одном сегменте.
+     */
+    public GpsTrackStore(Path baseDirectory, int maxFixesPerSegment) {
+        this.baseDirectory = baseDirectory;
+        this.maxFixesPerSegment = maxFixesPerSegment;
+    }
+
+    /**
+     * Открывает писателя трека автомобиля. Точки становятся видны читателям после закрытия писателя
+     * (или заполнения очередного сегмента).
+     *
+     * @param carId Идентификатор автомобиля.
+     * @return Писатель трека.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public TrackWriter openWriter(long carId) throws IOException {
+        Path directory = carDirectory(carId);
+        Files.createDirectories(directory);
+        return new TrackWriter(carId, directory);
+    }
+
+    /**
+     * Читает точки трека автомобиля за интервал времени в порядке хранения
+     * (внутри каждого сегмента - по возрастанию времени, если точки приходили упорядоченными).
+     *
+     * @param carId      Идентификатор автомобиля.
+     * @param fromMillis Начало интервала (включительно).
+     * @param toMillis   Конец интервала (включительно).
+     * @param consumer   Получатель точек.
+     * @return Количество прочитанных точек.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public long read(long carId, long fromMillis, long toMillis, GpsFixListener consumer) throws IOException {
+        Path directory = carDirectory(carId);
+        long count = 0;
+        for (IndexEntry entry : readIndex(directory)) {
+            if (entry.lastTime < fromMillis || entry.firstTime > toMillis) {
+                continue;
+            }
+            count += readSegment(directory.resolve(segmentFileName(entry.segment)), fromMillis, toMillis, consumer);
+        }
+        return count;
+    }
+
+    /**
+     * Удаляет трек автомобиля целиком.
+     *
+     * @param carId Идентификатор автомобиля.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public void delete(long carId) throws IOException {
+        Path directory = carDirectory(carId);
+        synchronized (lockFor(carId)) {
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private long readSegment(Path segmentFile, long fromMillis, long toMillis, GpsFixListener consumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SEGMENT_MAGIC || buffer.get() != SEGMENT_VERSION) {
+                throw new IOException("Неизвестный формат сегмента трека: " + segmentFile);
+            }
+            boolean sorted = buffer.get() != 0;
+            int fixes = buffer.getInt();
+
+            long time = 0;
+            long latitude = 0;
+            long longitude = 0;
+            long count = 0;
+            for (int i = 0; i < fixes; i++) {
+                time += readSignedVarLong(buffer);
+                latitude += readSignedVarLong(buffer);
+                longitude += readSignedVarLong(buffer);
+                long speed = readVarLong(buffer);
+                if (time > toMillis && sorted) {
+                    break;
+                }
+                if (time >= fromMillis && time <= toMillis) {
+                    consumer.onFix(time, latitude / COORDINATE_SCALE, longitude / COORDINATE_SCALE,
+                            speed / SPEED_SCALE);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private List<IndexEntry> readIndex(Path directory) throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            return List.of();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        List<IndexEntry> entries = new ArrayList<>();
+        // Неполная последняя запись (дописывается прямо сейчас) пропускается
+        while (buffer.remaining() >= INDEX_ENTRY_SIZE) {
+            entries.add(new IndexEntry(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getInt()));
+        }
+        entries.sort(Comparator.comparingLong(IndexEntry::firstTime));
+        return entries;
+    }
+
+    private Path carDirectory(long carId) {
+        return baseDirectory.resolve(Long.toString(carId));
+    }
+
+    private Object lockFor(long carId) {
+        return carLocks.computeIfAbsent(carId, id -> new Object());
+    }
+
+    private static String segmentFileName(int segment) {
+        return String.format("%08d.seg", segment);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long readSignedVarLong(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Запись индекса: сегмент и интервал времени его точек.
+     */
+    private record IndexEntry(int segment, long firstTime, long lastTime, int count) {
+    }
+
+    /**
+     * Писатель трека одного автомобиля. Точки пишутся потоково во временный файл сегмента,
+     * который при заполнении или закрытии атомарно публикуется под следующим номером и попадает в индекс.
+     * Экземпляр не потокобезопасен.
+     */
+    public class TrackWriter implements GpsFixListener, Closeable {
+
+        private final long carId;
+        private final Path directory;
+
+        private Path tempFile;
+        private DataOutputStream output;
+        private int fixes;
+        private boolean sorted;
+        private long firstTime;
+        private long lastTime;
+        private long previousTime;
+        private long previousLatitude;
+        private long previousLongitude;
+        private long totalFixes;
+
+        private TrackWriter(long carId, Path directory) {
+            this.carId = carId;
+            this.directory = directory;
+        }
+
+        @Override
+        public void onFix(long timeMillis, double latitude, double longitude, double speed) {
+            try {
+                if (output == null) {
+                    startSegment();
+                }
+                long fixedLatitude = Math.round(latitude * COORDINATE_SCALE);
+                long fixedLongitude = Math.round(longitude * COORDINATE_SCALE);
+                writeSignedVarLong(timeMillis - previousTime);
+                writeSignedVarLong(fixedLatitude - previousLatitude);
+                writeSignedVarLong(fixedLongitude - previousLongitude);
+                writeVarLong(Math.max(0, Math.round(speed * SPEED_SCALE)));
+
+                if (fixes == 0) {
+                    firstTime = timeMillis;
+                    lastTime = timeMillis;
+                } else {
+                    sorted &= timeMillis >= previousTime;
+                    firstTime = Math.min(firstTime, timeMillis);
+                    lastTime = Math.max(lastTime, timeMillis);
+                }
+                previousTime = timeMillis;
+                previousLatitude = fixedLatitude;
+                previousLongitude = fixedLongitude;
+                fixes++;
+                totalFixes++;
+
+                if (fixes >= maxFixesPerSegment) {
+                    publishSegment();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Возвращает число точек, записанных этим писателем.
+         *
+         * @return Число точек.
+         */
+        public long getTotalFixes() {
+            return totalFixes;
+        }
+
+        /**
+         * Публикует последний сегмент.
+         *
+         * @throws IOException В случае ошибок ввода/вывода.
+         */
+        @Override
+        public void close() throws IOException {
+            if (output != null) {
+                publishSegment();
+            }
+        }
+
+        /**
+         * Прерывает запись: неопубликованный сегмент удаляется, опубликованные остаются.
+         */
+        public void abort() {
+            try {
+                if (output != null) {
+                    output.close();
+                    Files.deleteIfExists(tempFile);
+                    output = null;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void startSegment() throws IOException {
+            tempFile = Files.createTempFile(directory, "segment-", ".tmp");
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024));
+            // Заголовок с числом точек перезаписывается при публикации
+            output.write(new byte[SEGMENT_HEADER_SIZE]);
+            fixes = 0;
+            sorted = true;
+            previousTime = 0;
+            previousLatitude = 0;
+            previousLongitude = 0;
+        }
+
+        private void publishSegment() throws IOException {
+            output.close();
+            output = null;
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE)
+                        .putInt(SEGMENT_MAGIC).put(SEGMENT_VERSION).put((byte) (sorted ? 1 : 0)).putInt(fixes)
+                        .flip();
+                channel.write(header, 0);
+                channel.force(false);
+            }
+
+            synchronized (lockFor(carId)) {
+                Path indexFile = directory.resolve(INDEX_FILE);
+                int segment = Files.exists(indexFile) ? (int) (Files.size(indexFile) / INDEX_ENTRY_SIZE) + 1 : 1;
+                Files.move(tempFile, directory.resolve(segmentFileName(segment)), StandardCopyOption.ATOMIC_MOVE);
+
+                ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE)
+                        .putInt(segment).putLong(firstTime).putLong(lastTime).putInt(fixes)
+                        .flip();
+                try (FileChannel channel = FileChannel.open(indexFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    channel.write(entry);
+                }
+            }
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            OutputStream out = output;
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private void writeSignedVarLong(long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Расчет расстояний по формуле гаверсинуса для последовательностей точек в примитивных массивах.
+ * <p>
+ * В треке каждая точка - конец одного отрезка и начало следующего, поэтому косинус широты считается
+ * один раз на точку, а не дважды на отрезок; результат при этом совпадает с {@link #distance} бит в бит.
+ * <p>
+ * Быстрый режим для коротких отрезков (разности широт и долгот меньше {@link #FAST_PATH_MAX_ANGLE} радиан,
+ * около 6 км) заменяет синусы и арктангенс равнопромежуточным приближением
+ * c = sqrt(dφ² + cos φ1 · cos φ2 · dλ²). Относительная погрешность длины отрезка в этом режиме не превышает
+ * {@link #FAST_PATH_RELATIVE_ERROR}; более длинные отрезки всегда считаются точно.
+ */
+public final class HaversineKernel {
+
+    /**
+     * Радиус Земли в километрах.
+     */
+    public static final double EARTH_RADIUS = 6371.0;
+
+    /**
+     * Максимальная разность широт и долгот отрезка (радианы), при которой используется быстрый режим.
+     */
+    public static final double FAST_PATH_MAX_ANGLE = 1e-3;
+
+    /**
+     * Гарантированная относительная погрешность быстрого режима: порядка θ²/24 для θ = {@link #FAST_PATH_MAX_ANGLE},
+     * с запасом.
+     */
+    public static final double FAST_PATH_RELATIVE_ERROR = 1e-7;
+
+    private HaversineKernel() {
+    }
+
+    /**
+     * Вычисляет расстояние между двумя точками на Земле с использованием формулы гаверсинуса.
+     *
+     * @param latitude1  Широта первой точки в градусах.
+     * @param longitude1 Долгота первой точки в градусах.
+     * @param latitude2  Широта второй точки в градусах.
+     * @param longitude2 Долгота второй точки в градусах.
+     * @return Расстояние между точками в км.
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        return distance(latitude1, cosLatitude(latitude1), longitude1, latitude2, cosLatitude(latitude2), longitude2);
+    }
+
+    /**
+     * Вычисляет расстояние по формуле гаверсинуса с уже посчитанными косинусами широт.
+     *
+     * @param latitude1    Широта первой точки в градусах.
+     * @param cosLatitude1 Косинус широты первой точки ({@link #cosLatitude}).
+     * @param longitude1   Долгота первой точки в градусах.
+     * @param latitude2    Широта второй точки в градусах.
+     * @param cosLatitude2 Косинус широты второй точки.
+     * @param longitude2   Долгота второй точки в градусах.
+     * @return Расстояние между точками в км.
+     */
+    public static double distance(double latitude1, double cosLatitude1, double longitude1,
+                                  double latitude2, double cosLatitude2, double longitude2) {
+        // Разница между широтами и долготами в радианах
+        double dLat = Math.toRadians(latitude2) - Math.toRadians(latitude1);
+        double dLon = Math.toRadians(longitude2) - Math.toRadians(longitude1);
+
+        // Формула гаверсинуса для вычисления расстояния
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                cosLatitude1 * cosLatitude2 *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        // Вычисление расстояния в километрах
+        return EARTH_RADIUS * c;
+    }
+
+    /**
+     * Вычисляет расстояние, для коротких отрезков - равнопромежуточным приближением.
+     *
+     * @param latitude1    Широта первой точки в градусах.
+     * @param cosLatitude1 Косинус широты первой точки.
+     * @param longitude1   Долгота первой точки в градусах.
+     * @param latitude2    Широта второй точки в градусах.
+     * @param cosLatitude2 Косинус широты второй точки.
+     * @param longitude2   Долгота второй точки в градусах.
+     * @return Расстояние между точками в км.
+     */
+    public static double fastDistance(double latitude1, double cosLatitude1, double longitude1,
+                                      double latitude2, double cosLatitude2, double longitude2) {
+        double dLat = Math.toRadians(latitude2) - Math.toRadians(latitude1);
+        double dLon = Math.toRadians(longitude2) - Math.toRadians(longitude1);
+        if (Math.abs(dLat) > FAST_PATH_MAX_ANGLE || Math.abs(dLon) > FAST_PATH_MAX_ANGLE) {
+            return distance(latitude1, cosLatitude1, longitude1, latitude2, cosLatitude2, longitude2);
+        }
+        return EARTH_RADIUS * Math.sqrt(dLat * dLat + cosLatitude1 * cosLatitude2 * dLon * dLon);
+    }
+
+    /**
+     * Косинус широты, заданной в градусах.
+     *
+     * @param latitude Широта в градусах.
+     * @return Косинус широты.
+     */
+    public static double cosLatitude(double latitude) {
+        return Math.cos(Math.toRadians(latitude));
+    }
+
+    /**
+     * Вычисляет длины отрезков между соседними точками.
+     *
+     * @param latitudes  Широты точек в градусах.
+     * @param longitudes Долготы точек в градусах.
+     * @param from       Индекс первой точки.
+     * @param to         Индекс за последней точкой.
+     * @param lengths    Массив для длин: длина отрезка (i, i + 1) пишется в lengths[i - from].
+     * @param fast       Использовать быстрый режим для коротких отрезков.
+     */
+    public static void segmentLengths(double[] latitudes, double[] longitudes, int from, int to,
+                                      double[] lengths, boolean fast) {
+        if (to - from < 2) {
+            return;
+        }
+        double previousCos = cosLatitude(latitudes[from]);
+        for (int i = from + 1; i < to; i++) {
+            double cos = cosLatitude(latitudes[i]);
+            lengths[i - 1 - from] = fast
+                    ? fastDistance(latitudes[i - 1], previousCos, longitudes[i - 1], latitudes[i], cos, longitudes[i])
+                    : distance(latitudes[i - 1], previousCos, longitudes[i - 1], latitudes[i], cos, longitudes[i]);
+            previousCos = cos;
+        }
+    }
+
+    /**
+     * Вычисляет длину ломаной.
+     *
+     * @param latitudes  Широты точек в градусах.
+     * @param longitudes Долготы точек в градусах.
+     * @param from       Индекс первой точки.
+     * @param to         Индекс за последней точкой.
+     * @param fast       Использовать быстрый режим для коротких отрезков.
+     * @return Длина в км.
+     */
+    public static double pathLength(double[] latitudes, double[] longitudes, int from, int to, boolean fast) {
+        if (to - from < 2) {
+            return 0;
+        }
+        double total = 0;
+        double previousCos = cosLatitude(latitudes[from]);
+        for (int i = from + 1; i < to; i++) {
+            double cos = cosLatitude(latitudes[i]);
+            total += fast
+                    ? fastDistance(latitudes[i - 1], previousCos, longitudes[i - 1], latitudes[i], cos, longitudes[i])
+                    : distance(latitudes[i - 1], previousCos, longitudes[i - 1], latitudes[i], cos, longitudes[i]);
+            previousCos = cos;
+        }
+        return total;
+    }
+}
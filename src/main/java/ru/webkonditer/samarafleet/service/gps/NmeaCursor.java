@@ -0,0 +1,218 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Переиспользуемый курсор по одной NMEA строке, лежащей в байтовом буфере.
+ * Позволяет разбирать поля прямо в примитивы без создания строк, массивов и объектов-оберток.
+ * Экземпляр не потокобезопасен и рассчитан на повторное использование для каждой следующей строки.
+ */
+public final class NmeaCursor {
+
+    public static final byte[] GPGGA = ascii("$GPGGA");
+    public static final byte[] GNVTG = ascii("$GNVTG");
+    public static final byte[] GNZDA = ascii("$GNZDA");
+
+    // Максимальное количество цифр, при котором мантисса гарантированно точно представима в double
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private byte[] buffer;
+    private int lineStart;
+    private int lineEnd;
+
+    private int fieldIndex;
+    private int fieldStart;
+    private int fieldEnd;
+
+    /**
+     * Устанавливает курсор на новую строку.
+     *
+     * @param buffer Буфер с данными.
+     * @param from   Начало строки (включительно).
+     * @param to     Конец строки (исключительно), без символов перевода строки.
+     * @return Этот же курсор.
+     */
+    public NmeaCursor reset(byte[] buffer, int from, int to) {
+        this.buffer = buffer;
+        this.lineStart = from;
+        this.lineEnd = to;
+        this.fieldIndex = 0;
+        this.fieldStart = from;
+        this.fieldEnd = indexOfComma(from);
+        return this;
+    }
+
+    /**
+     * Проверяет, что строка состоит только из пробельных и управляющих символов (аналог trim().isEmpty()).
+     *
+     * @return true, если строка пустая.
+     */
+    public boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if ((buffer[i] & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет, начинается ли строка с указанного префикса.
+     *
+     * @param prefix Префикс в виде ASCII байтов.
+     * @return true, если строка начинается с префикса.
+     */
+    public boolean startsWith(byte[] prefix) {
+        if (lineEnd - lineStart < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[lineStart + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Перемещает курсор на поле с указанным индексом (поля разделены запятыми, нулевое поле - тип сообщения).
+     * Перемещение вперед продолжается с текущего поля, поэтому поля выгодно читать по возрастанию индекса.
+     *
+     * @param index Индекс поля.
+     * @return true, если такое поле есть в строке.
+     */
+    public boolean field(int index) {
+        if (index < fieldIndex) {
+            reset(buffer, lineStart, lineEnd);
+        }
+        while (fieldIndex < index) {
+            if (fieldEnd >= lineEnd) {
+                return false;
+            }
+            fieldIndex++;
+            fieldStart = fieldEnd + 1;
+            fieldEnd = indexOfComma(fieldStart);
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет, пустое ли текущее поле.
+     *
+     * @return true, если поле пустое.
+     */
+    public boolean isFieldEmpty() {
+        return fieldStart >= fieldEnd;
+    }
+
+    /**
+     * Разбирает текущее поле как число с плавающей точкой.
+     * Результат совпадает с {@link Double#parseDouble(String)}; для обычных десятичных записей
+     * разбор идет без выделения памяти, для редких форм (экспонента, длинная мантисса) - через строку.
+     *
+     * @return Значение поля или NaN, если поле пустое или не является числом.
+     */
+    public double fieldAsDouble() {
+        int i = fieldStart;
+        int end = fieldEnd;
+        if (i >= end) {
+            return Double.NaN;
+        }
+
+        boolean negative = false;
+        byte first = buffer[i];
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        boolean anyDigit = false;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenDot) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return slowFieldAsDouble();
+            }
+            if (digits > MAX_EXACT_DIGITS || fractionDigits >= POWERS_OF_TEN.length) {
+                return slowFieldAsDouble();
+            }
+        }
+        if (!anyDigit) {
+            return Double.NaN;
+        }
+
+        // Оба операнда точно представимы, поэтому деление дает корректно округленный результат
+        double value = (double) mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Разбирает текущее поле как неотрицательное целое число.
+     *
+     * @return Значение поля или -1, если поле пустое или содержит не только цифры.
+     */
+    public int fieldAsInt() {
+        if (fieldStart >= fieldEnd || fieldEnd - fieldStart > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = fieldStart; i < fieldEnd; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Возвращает строку целиком. Используется только для сообщений об ошибках.
+     *
+     * @return Текущая строка.
+     */
+    @Override
+    public String toString() {
+        return buffer == null ? "" : new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    private double slowFieldAsDouble() {
+        try {
+            return Double.parseDouble(new String(buffer, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private int indexOfComma(int from) {
+        for (int i = from; i < lineEnd; i++) {
+            if (buffer[i] == ',') {
+                return i;
+            }
+        }
+        return lineEnd;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
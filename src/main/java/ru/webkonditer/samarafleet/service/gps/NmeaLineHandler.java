@@ -0,0 +1,18 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Получатель строк NMEA лога.
+ */
+@FunctionalInterface
+public interface NmeaLineHandler {
+
+    /**
+     * Обрабатывает очередную строку. Буфер принадлежит вызывающей стороне и может быть
+     * переиспользован после возврата из метода, поэтому сохранять ссылку на него нельзя.
+     *
+     * @param buffer Буфер с данными.
+     * @param from   Начало строки (включительно).
+     * @param to     Конец строки (исключительно), без символов перевода строки.
+     */
+    void onLine(byte[] buffer, int from, int to);
+}
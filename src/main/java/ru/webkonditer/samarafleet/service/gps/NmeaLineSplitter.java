@@ -0,0 +1,107 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Делит поток байтов на строки по символам '\n' и '\r' и передает их обработчику без создания строк.
+ * Данные можно как подавать порциями по мере поступления ({@link #feed(byte[], int, int)}),
+ * так и вычитывать из потока целиком ({@link #readFrom(InputStream)}).
+ * Строки, целиком лежащие в поданной порции, передаются без копирования.
+ */
+public final class NmeaLineSplitter {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // NMEA сообщение не длиннее 82 символов, более длинные строки считаем мусором и отбрасываем
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final NmeaLineHandler handler;
+
+    private byte[] carry = new byte[256];
+    private int carryLength;
+    private boolean discardingLine;
+
+    /**
+     * Создает делитель строк.
+     *
+     * @param handler Обработчик строк.
+     */
+    public NmeaLineSplitter(NmeaLineHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Вычитывает поток до конца и передает все строки обработчику, включая последнюю строку без перевода строки.
+     * Поток не закрывается.
+     *
+     * @param inputStream Поток с данными.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public void readFrom(InputStream inputStream) throws IOException {
+        byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(readBuffer)) != -1) {
+            feed(readBuffer, 0, read);
+        }
+        finish();
+    }
+
+    /**
+     * Подает очередную порцию данных. Незавершенная строка в конце порции запоминается до следующего вызова.
+     *
+     * @param data   Буфер с данными.
+     * @param offset Начало данных.
+     * @param length Длина данных.
+     */
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (b == '\n' || b == '\r') {
+                if (carryLength > 0 || discardingLine) {
+                    appendToCarry(data, lineStart, i);
+                    flushCarry();
+                } else if (i > lineStart && i - lineStart <= MAX_LINE_LENGTH) {
+                    // Ограничение длины действует и на строки, целиком лежащие в порции
+                    handler.onLine(data, lineStart, i);
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < end) {
+            appendToCarry(data, lineStart, end);
+        }
+    }
+
+    /**
+     * Завершает поток данных и передает обработчику последнюю строку без перевода строки, если она есть.
+     */
+    public void finish() {
+        flushCarry();
+    }
+
+    private void appendToCarry(byte[] data, int from, int to) {
+        int length = to - from;
+        if (discardingLine || carryLength + length > MAX_LINE_LENGTH) {
+            discardingLine = true;
+            carryLength = 0;
+            return;
+        }
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+        System.arraycopy(data, from, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    private void flushCarry() {
+        if (!discardingLine && carryLength > 0) {
+            handler.onLine(carry, 0, carryLength);
+        }
+        carryLength = 0;
+        discardingLine = false;
+    }
+}
@@ -0,0 +1,393 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Генератор детерминированных NMEA логов для нагрузочного тестирования и бенчмарков.
+ * <p>
+ * Раз в секунду пишутся $GPGGA и $GNVTG, раз в минуту $GNZDA, как у реального трекера. Машина разгоняется,
+ * едет с меняющейся скоростью и курсом, стоит на светофорах и на длинных стоянках. Координаты в логе
+ * содержат шум приемника, изредка встречаются $GPGGA без координат, $GNVTG без скорости, пустые строки
+ * и лишние или неполные $GNZDA. Одинаковые seed и настройки дают один и тот же лог байт в байт.
+ * <p>
+ * Параллельно считается эталонная дистанция - ровно то, что должна насчитать обработка лога
+ * ({@link GpsDistanceAccumulator}): отрезки между соседними валидными $GPGGA, если $GNVTG между ними
+ * показывает скорость, округляющуюся больше чем до нуля. Координаты для расчета берутся в том виде,
+ * в каком они записаны в лог. Отдельно считается истинный путь машины без шума и пропусков.
+ * Экземпляр не потокобезопасен.
+ */
+public class NmeaLogGenerator {
+
+    private static final double METERS_PER_DEGREE = 111_195.0;
+
+    private static final int SECONDS_PER_DAY = 86_400;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Random random;
+
+    // Настройки
+    private double jitter = 2;
+    private double invalidSentenceRate = 0.002;
+    private double zdaNoiseRate = 0.01;
+    private LocalDate startDate = LocalDate.of(2023, 1, 1);
+
+    // Истинное состояние машины
+    private double latitude = 53.2;
+    private double longitude = 50.1;
+    private double heading;
+    private double speed;
+    private double targetSpeed;
+    private long legSeconds;
+    private long stopSeconds;
+    private boolean stopping;
+
+    // Эталон: последняя записанная $GPGGA и скорость из последней $GNVTG
+    private boolean lastPointValid;
+    private double lastLatitude;
+    private double lastLongitude;
+    private boolean lastMoving;
+
+    // Итоги
+    private long second;
+    private long bytes;
+    private long fixCount;
+    private long invalidSentenceCount;
+    private double distance;
+    private double trueDistance;
+
+    private final StringBuilder body = new StringBuilder(128);
+
+    /**
+     * @param seed Начальное значение генератора случайных чисел.
+     */
+    public NmeaLogGenerator(long seed) {
+        this.random = new Random(seed);
+        this.heading = random.nextDouble() * 2 * Math.PI;
+    }
+
+    /**
+     * Задает начальную точку маршрута. Вызывается до первой записи.
+     *
+     * @param latitude  Широта в градусах.
+     * @param longitude Долгота в градусах.
+     */
+    public void setStart(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Задает дату начала лога (время начинается с полуночи). Вызывается до первой записи.
+     *
+     * @param startDate Дата первой секунды лога.
+     */
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    /**
+     * Задает шум координат.
+     *
+     * @param jitter Среднеквадратичное отклонение по каждой оси в метрах (0 - без шума).
+     */
+    public void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    /**
+     * Задает долю $GPGGA без координат; доля $GNVTG без скорости вчетверо меньше.
+     *
+     * @param invalidSentenceRate Вероятность от 0 до 1.
+     */
+    public void setInvalidSentenceRate(double invalidSentenceRate) {
+        this.invalidSentenceRate = invalidSentenceRate;
+    }
+
+    /**
+     * Задает частоту лишних $GNZDA (повторных или с пустой датой) и пустых строк.
+     *
+     * @param zdaNoiseRate Вероятность на секунду от 0 до 1.
+     */
+    public void setZdaNoiseRate(double zdaNoiseRate) {
+        this.zdaNoiseRate = zdaNoiseRate;
+    }
+
+    /**
+     * Пишет лог до заданного размера (последняя секунда дописывается целиком).
+     *
+     * @param out      Поток для записи.
+     * @param maxBytes Размер лога в байтах.
+     * @throws IOException Ошибка записи.
+     */
+    public void write(OutputStream out, long maxBytes) throws IOException {
+        write(out, maxBytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Пишет лог заданной длительности.
+     *
+     * @param out     Поток для записи.
+     * @param seconds Число секунд лога.
+     * @throws IOException Ошибка записи.
+     */
+    public void writeSeconds(OutputStream out, long seconds) throws IOException {
+        write(out, Long.MAX_VALUE, second + seconds);
+    }
+
+    private void write(OutputStream out, long maxBytes, long endSecond) throws IOException {
+        StringBuilder lines = new StringBuilder(BUFFER_SIZE + 512);
+        byte[] buffer = new byte[BUFFER_SIZE + 512];
+        while (bytes < maxBytes && second < endSecond) {
+            lines.setLength(0);
+            while (lines.length() < BUFFER_SIZE && bytes < maxBytes && second < endSecond) {
+                appendSecond(lines);
+            }
+            int length = lines.length();
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            for (int i = 0; i < length; i++) {
+                buffer[i] = (byte) lines.charAt(i);
+            }
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Дописывает строки следующей секунды лога: при необходимости $GNZDA, затем $GPGGA и $GNVTG.
+     *
+     * @param lines Буфер для строк (только ASCII, строки завершаются CRLF).
+     */
+    public void appendSecond(StringBuilder lines) {
+        int start = lines.length();
+        move();
+
+        long timeOfDay = second % SECONDS_PER_DAY;
+        LocalDate date = startDate.plusDays(second / SECONDS_PER_DAY);
+        if (second % 60 == 0) {
+            appendZda(lines, timeOfDay, date);
+        }
+        if (random.nextDouble() < zdaNoiseRate) {
+            if (random.nextBoolean()) {
+                appendZda(lines, timeOfDay, date);
+            } else {
+                body.setLength(0);
+                body.append("GNZDA,");
+                appendTime(body, timeOfDay);
+                body.append(",,,,,");
+                sentence(lines);
+            }
+        }
+        if (random.nextDouble() < zdaNoiseRate / 10) {
+            lines.append("\r\n");
+        }
+
+        // $GPGGA: координаты с шумом приемника, в логе - 6 знаков после запятой
+        body.setLength(0);
+        body.append("GPGGA,");
+        appendTime(body, timeOfDay);
+        boolean pointValid = random.nextDouble() >= invalidSentenceRate;
+        double pointLatitude = 0;
+        double pointLongitude = 0;
+        if (pointValid) {
+            double cos = Math.cos(Math.toRadians(latitude));
+            long latitudeUnits = Math.round((latitude + jitter * random.nextGaussian() / METERS_PER_DEGREE) * 1e6);
+            long longitudeUnits = Math.round(
+                    (longitude + jitter * random.nextGaussian() / (METERS_PER_DEGREE * cos)) * 1e6);
+            // Так же, как при разборе строки: целое число единиц, деленное на точно представимую степень десяти
+            pointLatitude = latitudeUnits / 1e6;
+            pointLongitude = longitudeUnits / 1e6;
+            body.append(',');
+            appendFixed(body, latitudeUnits, 6);
+            body.append(",N,");
+            appendFixed(body, longitudeUnits, 6);
+            body.append(",E,1,").append(6 + random.nextInt(8)).append(',');
+            appendFixed(body, 6 + random.nextInt(10), 1);
+            body.append(',');
+            appendFixed(body, 1000 + random.nextInt(20), 1);
+            body.append(",M,0.0,M,,");
+            fixCount++;
+        } else {
+            body.append(",,N,,E,0,00,,,M,,M,,");
+            invalidSentenceCount++;
+        }
+        sentence(lines);
+
+        if (lastMoving && lastPointValid && pointValid) {
+            distance += HaversineKernel.distance(lastLatitude, lastLongitude, pointLatitude, pointLongitude);
+        }
+        lastPointValid = pointValid;
+        lastLatitude = pointLatitude;
+        lastLongitude = pointLongitude;
+
+        // $GNVTG: курс и скорость с шумом, на стоянке скорость близка к нулю
+        body.setLength(0);
+        body.append("GNVTG,");
+        if (random.nextDouble() >= invalidSentenceRate / 4) {
+            double reportedSpeed = speed > 0 ? Math.max(0, speed + 0.3 * random.nextGaussian())
+                    : Math.abs(0.2 * random.nextGaussian());
+            long speedUnits = Math.round(reportedSpeed * 100);
+            appendFixed(body, Math.round(((Math.toDegrees(heading) % 360 + 360) % 360) * 10), 1);
+            body.append(",T,,M,");
+            appendFixed(body, Math.round(reportedSpeed / 1.852 * 100), 2);
+            body.append(",N,");
+            appendFixed(body, speedUnits, 2);
+            body.append(",K,A");
+            lastMoving = Math.round(speedUnits / 100.0) > 0;
+        } else {
+            body.append(",T,,M,,N,,K,N");
+            invalidSentenceCount++;
+            lastMoving = false;
+        }
+        sentence(lines);
+
+        second++;
+        bytes += lines.length() - start;
+    }
+
+    /**
+     * Возвращает число записанных секунд лога.
+     */
+    public long getSeconds() {
+        return second;
+    }
+
+    /**
+     * Возвращает размер записанного лога в байтах.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Возвращает число $GPGGA с координатами.
+     */
+    public long getFixCount() {
+        return fixCount;
+    }
+
+    /**
+     * Возвращает число невалидных строк $GPGGA и $GNVTG.
+     */
+    public long getInvalidSentenceCount() {
+        return invalidSentenceCount;
+    }
+
+    /**
+     * Возвращает эталонную дистанцию, которую должна насчитать обработка записанного лога.
+     *
+     * @return Дистанция в км.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Возвращает истинный путь машины без шума координат и пропущенных точек.
+     *
+     * @return Путь в км.
+     */
+    public double getTrueDistance() {
+        return trueDistance;
+    }
+
+    private void move() {
+        if (stopSeconds > 0) {
+            // Стоянка; после нее машина иногда поворачивает
+            if (--stopSeconds == 0 && random.nextInt(3) == 0) {
+                heading += random.nextBoolean() ? Math.PI / 2 : -Math.PI / 2;
+            }
+            return;
+        }
+        if (!stopping && legSeconds <= 0) {
+            // Новый участок: смена скорости или торможение перед остановкой
+            if (speed > 0 && random.nextInt(4) == 0) {
+                stopping = true;
+                targetSpeed = 0;
+            } else {
+                targetSpeed = 20 + 70 * random.nextDouble();
+                legSeconds = 30 + random.nextInt(90);
+            }
+        }
+        legSeconds--;
+
+        double delta = targetSpeed - speed;
+        speed = Math.max(0, speed + Math.signum(delta) * Math.min(Math.abs(delta), 3));
+        if (stopping && speed == 0) {
+            // Светофор или, реже, длинная стоянка, которая завершает поездку
+            stopping = false;
+            stopSeconds = random.nextInt(5) == 0 ? 300 + random.nextInt(900) : 15 + random.nextInt(75);
+            return;
+        }
+
+        heading += random.nextGaussian() * 0.05;
+        double meters = speed / 3.6;
+        double nextLatitude = latitude + meters * Math.cos(heading) / METERS_PER_DEGREE;
+        double nextLongitude = longitude
+                + meters * Math.sin(heading) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+        trueDistance += HaversineKernel.distance(latitude, longitude, nextLatitude, nextLongitude);
+        latitude = nextLatitude;
+        longitude = nextLongitude;
+    }
+
+    private void appendZda(StringBuilder lines, long timeOfDay, LocalDate date) {
+        body.setLength(0);
+        body.append("GNZDA,");
+        appendTime(body, timeOfDay);
+        body.append(',');
+        appendTwoDigits(body, date.getDayOfMonth());
+        body.append(',');
+        appendTwoDigits(body, date.getMonthValue());
+        body.append(',').append(date.getYear()).append(",00,00");
+        sentence(lines);
+    }
+
+    /**
+     * Дописывает строку из body со знаком $, контрольной суммой и CRLF.
+     */
+    private void sentence(StringBuilder lines) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        lines.append('$').append(body).append('*')
+                .append(Character.toUpperCase(Character.forDigit(checksum >> 4, 16)))
+                .append(Character.toUpperCase(Character.forDigit(checksum & 0xF, 16)))
+                .append("\r\n");
+    }
+
+    private static void appendTime(StringBuilder builder, long timeOfDay) {
+        appendTwoDigits(builder, (int) (timeOfDay / 3600));
+        appendTwoDigits(builder, (int) (timeOfDay / 60 % 60));
+        appendTwoDigits(builder, (int) (timeOfDay % 60));
+        builder.append(".00");
+    }
+
+    private static void appendTwoDigits(StringBuilder builder, int value) {
+        builder.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Дописывает число units / 10^decimals с фиксированным числом знаков после запятой.
+     */
+    private static void appendFixed(StringBuilder builder, long units, int decimals) {
+        if (units < 0) {
+            builder.append('-');
+            units = -units;
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        builder.append(units / scale).append('.');
+        String fraction = Long.toString(units % scale);
+        for (int i = fraction.length(); i < decimals; i++) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
+}
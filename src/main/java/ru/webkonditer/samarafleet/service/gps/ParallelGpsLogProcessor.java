@@ -0,0 +1,164 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Параллельный расчет дистанции по большому GPS логу.
+ * Файл делится на участки по границам строк, каждый участок обрабатывается в fork-join пуле своим
+ * {@link GpsDistanceAccumulator}, после чего результаты сшиваются по порядку. Тройки
+ * $GPGGA/$GNVTG/$GPGGA, разрезанные границей участков, учитываются при сшивке.
+ */
+public class ParallelGpsLogProcessor {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // Сколько участков приходится на один поток, чтобы сгладить разную скорость их обработки
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final long minChunkSize;
+
+    /**
+     * Создает обработчик.
+     *
+     * @param pool         Пул, в котором обрабатываются участки.
+     * @param minChunkSize Минимальный размер участка в байтах.
+     */
+    public ParallelGpsLogProcessor(ForkJoinPool pool, long minChunkSize) {
+        this.pool = pool;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Вычисляет общую дистанцию по файлу лога.
+     *
+     * @param file Путь к файлу лога.
+     * @return Общая дистанция в километрах.
+     * @throws IOException В случае ошибок ввода/вывода.
+     */
+    public double calculateTotalDistance(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<ChunkTask> tasks = new ArrayList<>();
+            long[] bounds = splitAtLineBoundaries(channel);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                ChunkTask task = new ChunkTask(channel, bounds[i], bounds[i + 1]);
+                pool.execute(task);
+                tasks.add(task);
+            }
+
+            // Сшиваем результаты строго в порядке следования участков
+            GpsDistanceAccumulator total = new GpsDistanceAccumulator();
+            for (ChunkTask task : tasks) {
+                total.merge(joinChunk(task));
+            }
+            return total.getTotalDistance();
+        }
+    }
+
+    /**
+     * Проверяет, имеет ли смысл параллельная обработка файла такого размера.
+     *
+     * @param size Размер файла в байтах.
+     * @return true, если файл можно разбить хотя бы на два участка и в пуле больше одного потока.
+     */
+    public boolean isWorthParallel(long size) {
+        return pool.getParallelism() > 1 && size >= 2 * minChunkSize;
+    }
+
+    /**
+     * Делит файл на участки примерно равного размера, сдвигая каждую границу к началу следующей строки.
+     * Размер участка зависит от размера файла и числа потоков пула, но не меньше минимального.
+     */
+    private long[] splitAtLineBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.max(minChunkSize, size / ((long) pool.getParallelism() * CHUNKS_PER_THREAD));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long position = chunkSize;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < size) {
+            long boundary = nextLineStart(channel, position, probe);
+            if (boundary >= size) {
+                break;
+            }
+            bounds.add(boundary);
+            position = boundary + chunkSize;
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        long offset = position - 1;
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = probe.get(i);
+                if (b == '\n' || b == '\r') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private static GpsDistanceAccumulator joinChunk(ChunkTask task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Обработка одного участка файла. Участок отображается в память и читается блоками в переиспользуемый буфер.
+     */
+    private static class ChunkTask extends RecursiveTask<GpsDistanceAccumulator> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected GpsDistanceAccumulator compute() {
+            GpsDistanceAccumulator accumulator = new GpsDistanceAccumulator();
+            NmeaLineSplitter splitter = new NmeaLineSplitter(accumulator);
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            try {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                while (mapped.hasRemaining()) {
+                    int length = Math.min(buffer.length, mapped.remaining());
+                    mapped.get(buffer, 0, length);
+                    splitter.feed(buffer, 0, length);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            splitter.finish();
+            return accumulator;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Поток, сообщающий о количестве прочитанных байтов и прерывающий чтение при прерывании потока выполнения.
+ * Используется для отображения прогресса и отмены фоновой обработки логов.
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    private final LongConsumer progressListener;
+    private long bytesRead;
+
+    /**
+     * Создает поток.
+     *
+     * @param in               Исходный поток.
+     * @param progressListener Получатель общего количества прочитанных байтов.
+     */
+    public ProgressInputStream(InputStream in, LongConsumer progressListener) {
+        super(in);
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkInterrupted();
+        int b = super.read();
+        if (b != -1) {
+            progress(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkInterrupted();
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            progress(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        progress(skipped);
+        return skipped;
+    }
+
+    private void progress(long delta) {
+        bytesRead += delta;
+        progressListener.accept(bytesRead);
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Обработка лога прервана");
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Пространственный индекс текущих позиций автомобилей: равномерная сетка по широте и долготе.
+ * <p>
+ * Индекс хранит только номера ячеек {@link CarPositionStore}; координаты всегда читаются из хранилища,
+ * поэтому результат запроса проверяется по точной позиции, а не по клетке. Обновление позиции внутри той же
+ * клетки сетки (обычный случай при частых точках) стоит одного сравнения; при переходе в другую клетку
+ * автомобиль переносится под блокировками двух клеток. Запросы не блокируют писателей надолго: клетка
+ * копируется под своей блокировкой и дальше проверяется без нее.
+ * <p>
+ * Расстояния считаются по формуле гаверсинуса, как и при расчете дистанции по логам.
+ */
+public final class SpatialGridIndex {
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final long NO_CELL = Long.MIN_VALUE;
+
+    // Дальше этого числа колец поиск ближайших переключается на полный просмотр хранилища
+    private static final int MAX_RINGS = 64;
+
+    // Длина градуса меридиана в км
+    private static final double KM_PER_DEGREE = Math.PI * 6371.0 / 180;
+
+    private final CarPositionStore store;
+    private final double cellSize;
+    private final long[] slotCells;
+    private final Object[] slotLocks = new Object[64];
+    private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+
+    /**
+     * Создает индекс над хранилищем позиций.
+     *
+     * @param store    Хранилище позиций.
+     * @param cellSize Размер клетки сетки в градусах.
+     */
+    public SpatialGridIndex(CarPositionStore store, double cellSize) {
+        this.store = store;
+        this.cellSize = cellSize;
+        this.slotCells = new long[store.getCapacity()];
+        Arrays.fill(slotCells, NO_CELL);
+        for (int i = 0; i < slotLocks.length; i++) {
+            slotLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Результат запроса ближайших автомобилей.
+     */
+    public static final class Neighbor {
+
+        private final CarPositionStore.Position position;
+        private final double distance;
+
+        private Neighbor(CarPositionStore.Position position, double distance) {
+            this.position = position;
+            this.distance = distance;
+        }
+
+        public CarPositionStore.Position getPosition() {
+            return position;
+        }
+
+        /**
+         * Расстояние до точки запроса в км.
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Учитывает новую позицию ячейки хранилища. Вызывается после успешного обновления хранилища.
+     *
+     * @param slot      Номер ячейки хранилища.
+     * @param latitude  Новая широта.
+     * @param longitude Новая долгота.
+     */
+    public void update(int slot, double latitude, double longitude) {
+        // Быстрая проверка без блокировки; клетка ячейки меняется только под блокировкой ниже
+        if ((long) LONGS.getOpaque(slotCells, slot) == cellOf(latitude, longitude)) {
+            return;
+        }
+        relocate(slot);
+    }
+
+    /**
+     * Убирает из индекса ячейку хранилища, освобожденную вместе с позицией.
+     * Если ячейку уже успел занять другой автомобиль, она остается в индексе по его позиции.
+     *
+     * @param slot Номер ячейки хранилища.
+     */
+    public void remove(int slot) {
+        relocate(slot);
+    }
+
+    /**
+     * Находит автомобили внутри прямоугольника.
+     *
+     * @param minLatitude  Минимальная широта.
+     * @param minLongitude Минимальная долгота.
+     * @param maxLatitude  Максимальная широта.
+     * @param maxLongitude Максимальная долгота.
+     * @param limit        Максимальное число результатов.
+     * @return Позиции автомобилей.
+     */
+    public List<CarPositionStore.Position> within(double minLatitude, double minLongitude,
+                                                  double maxLatitude, double maxLongitude, int limit) {
+        List<CarPositionStore.Position> result = new ArrayList<>();
+        long minRow = row(minLatitude);
+        long maxRow = row(maxLatitude);
+        long minColumn = column(minLongitude);
+        long maxColumn = column(maxLongitude);
+        if (minRow > maxRow || minColumn > maxColumn) {
+            return result;
+        }
+
+        if ((maxRow - minRow + 1) * (maxColumn - minColumn + 1) > cells.size()) {
+            // Прямоугольник больше занятой части сетки: дешевле пройти по непустым клеткам
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                long row = entry.getKey() >> 32;
+                long column = (int) (long) entry.getKey();
+                if (row >= minRow && row <= maxRow && column >= minColumn && column <= maxColumn) {
+                    if (!collect(entry.getValue(), minLatitude, minLongitude, maxLatitude, maxLongitude,
+                            limit, result)) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long column = minColumn; column <= maxColumn; column++) {
+                Cell cell = cells.get(key(row, column));
+                if (cell != null && !collect(cell, minLatitude, minLongitude, maxLatitude, maxLongitude,
+                        limit, result)) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Находит ближайшие к точке автомобили, упорядоченные по расстоянию.
+     * Клетки просматриваются кольцами вокруг точки, пока k-й найденный не окажется ближе любого
+     * непросмотренного кольца.
+     *
+     * @param latitude    Широта точки.
+     * @param longitude   Долгота точки.
+     * @param k           Максимальное число результатов.
+     * @param maxDistance Максимальное расстояние в км (бесконечность - без ограничения).
+     * @return Ближайшие автомобили.
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, double maxDistance) {
+        List<Neighbor> found = new ArrayList<>();
+        if (k <= 0) {
+            return found;
+        }
+        long centerRow = row(latitude);
+        long centerColumn = column(longitude);
+        int[] slots = new int[16];
+
+        for (int ring = 0; ring <= MAX_RINGS; ring++) {
+            // Любая точка кольца ring не ближе (ring - 1) клеток от точки запроса
+            double ringDistance = Math.max(0, ring - 1) * minCellSpanKm(latitude, ring);
+            if (ringDistance > maxDistance || (found.size() >= k && ringDistance > found.get(k - 1).distance)) {
+                return trim(found, k);
+            }
+            for (long row = centerRow - ring; row <= centerRow + ring; row++) {
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                for (long column = centerColumn - ring; column <= centerColumn + ring;
+                     column += edgeRow || ring == 0 ? 1 : 2L * ring) {
+                    Cell cell = cells.get(key(row, column));
+                    if (cell != null) {
+                        slots = cell.copy(slots);
+                        addCandidates(slots, latitude, longitude, maxDistance, found);
+                    }
+                }
+            }
+            found.sort((a, b) -> Double.compare(a.distance, b.distance));
+        }
+
+        // Точек рядом мало, а колец уже много: просматриваем все хранилище
+        found.clear();
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        int count = store.getAllocated();
+        for (int slot = 0; slot < count; slot++) {
+            if (store.read(slot, position)) {
+                double distance = GpsDistanceAccumulator.distance(latitude, longitude,
+                        position.getLatitude(), position.getLongitude());
+                if (distance <= maxDistance) {
+                    found.add(new Neighbor(position, distance));
+                    position = new CarPositionStore.Position();
+                }
+            }
+        }
+        found.sort((a, b) -> Double.compare(a.distance, b.distance));
+        return trim(found, k);
+    }
+
+    private void addCandidates(int[] slots, double latitude, double longitude, double maxDistance,
+                               List<Neighbor> found) {
+        int size = slots[0];
+        for (int i = 1; i <= size; i++) {
+            CarPositionStore.Position position = new CarPositionStore.Position();
+            if (store.read(slots[i], position)) {
+                double distance = GpsDistanceAccumulator.distance(latitude, longitude,
+                        position.getLatitude(), position.getLongitude());
+                if (distance <= maxDistance) {
+                    found.add(new Neighbor(position, distance));
+                }
+            }
+        }
+    }
+
+    private boolean collect(Cell cell, double minLatitude, double minLongitude, double maxLatitude,
+                            double maxLongitude, int limit, List<CarPositionStore.Position> result) {
+        int[] slots = cell.copy(new int[16]);
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        for (int i = 1; i <= slots[0]; i++) {
+            if (store.read(slots[i], position)
+                    && position.getLatitude() >= minLatitude && position.getLatitude() <= maxLatitude
+                    && position.getLongitude() >= minLongitude && position.getLongitude() <= maxLongitude) {
+                result.add(position);
+                position = new CarPositionStore.Position();
+                if (result.size() >= limit) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static List<Neighbor> trim(List<Neighbor> found, int k) {
+        return found.size() > k ? new ArrayList<>(found.subList(0, k)) : found;
+    }
+
+    /**
+     * Минимальный размер клетки в км среди колец до ring: высота клетки постоянна,
+     * ширина уменьшается к полюсам.
+     */
+    private double minCellSpanKm(double latitude, int ring) {
+        double farthestLatitude = Math.min(90, Math.abs(latitude) + (ring + 1) * cellSize);
+        double width = cellSize * KM_PER_DEGREE * Math.cos(Math.toRadians(farthestLatitude));
+        return Math.min(cellSize * KM_PER_DEGREE, width);
+    }
+
+    /**
+     * Возвращает число непустых клеток сетки.
+     */
+    int getCellCount() {
+        return cells.size();
+    }
+
+    private void relocate(int slot) {
+        synchronized (slotLocks[slot & (slotLocks.length - 1)]) {
+            // Переносим по текущей позиции в хранилище: при гонке двух писателей побеждает последняя запись
+            CarPositionStore.Position position = new CarPositionStore.Position();
+            long target = store.read(slot, position) ? cellOf(position.getLatitude(), position.getLongitude()) : NO_CELL;
+            move(slot, target);
+        }
+    }
+
+    private void move(int slot, long target) {
+        long current = slotCells[slot];
+        if (current == target) {
+            return;
+        }
+        // Клетка меняется внутри compute: пустая клетка удаляется из карты атомарно с последним удалением,
+        // и добавление не может попасть в уже убранную клетку. Иначе карта копила бы пустые клетки,
+        // а within сравнивает площадь запроса с числом клеток
+        if (current != NO_CELL) {
+            cells.computeIfPresent(current, (key, cell) -> cell.remove(slot) ? cell : null);
+        }
+        if (target != NO_CELL) {
+            cells.compute(target, (key, cell) -> {
+                Cell result = cell != null ? cell : new Cell();
+                result.add(slot);
+                return result;
+            });
+        }
+        LONGS.setOpaque(slotCells, slot, target);
+    }
+
+    private long cellOf(double latitude, double longitude) {
+        return key(row(latitude), column(longitude));
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor(latitude / cellSize);
+    }
+
+    private long column(double longitude) {
+        return (long) Math.floor(longitude / cellSize);
+    }
+
+    private static long key(long row, long column) {
+        return (row << 32) | (column & 0xffffffffL);
+    }
+
+    /**
+     * Клетка сетки: номера ячеек хранилища в массиве int.
+     */
+    private static final class Cell {
+
+        private int[] slots = new int[4];
+        private int size;
+
+        synchronized void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        /**
+         * Убирает ячейку из клетки.
+         *
+         * @return false, если клетка осталась пустой.
+         */
+        synchronized boolean remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    break;
+                }
+            }
+            return size > 0;
+        }
+
+        /**
+         * Копирует содержимое в буфер: в нулевом элементе число ячеек, дальше сами ячейки.
+         */
+        synchronized int[] copy(int[] buffer) {
+            if (buffer.length < size + 1) {
+                buffer = new int[size + 1];
+            }
+            buffer[0] = size;
+            System.arraycopy(slots, 0, buffer, 1, size);
+            return buffer;
+        }
+    }
+}
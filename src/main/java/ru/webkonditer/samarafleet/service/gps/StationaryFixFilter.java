@@ -0,0 +1,52 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Отбрасывает точки трека, записанные на стоянке.
+ * Точка считается стоящей, если ее скорость из $GNVTG округляется до 0 км/ч - по тому же правилу
+ * расчет дистанции не учитывает отрезок после такой точки. Передается первая точка стоянки, остальные
+ * точки до начала движения отбрасываются: отрезки между ними в дистанцию лога не входят, а шум координат
+ * на месте иначе занимал бы большую часть сохраненного трека. Экземпляр не потокобезопасен.
+ */
+public final class StationaryFixFilter implements GpsFixListener {
+
+    private final GpsFixListener downstream;
+
+    private boolean previousStationary;
+    private long inputCount;
+    private long outputCount;
+
+    /**
+     * Создает фильтр стоянок.
+     *
+     * @param downstream Получатель точек в движении и первых точек стоянок.
+     */
+    public StationaryFixFilter(GpsFixListener downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void onFix(long timeMillis, double latitude, double longitude, double speed) {
+        inputCount++;
+        boolean stationary = (int) Math.round(speed) == 0;
+        if (stationary && previousStationary) {
+            return;
+        }
+        previousStationary = stationary;
+        outputCount++;
+        downstream.onFix(timeMillis, latitude, longitude, speed);
+    }
+
+    /**
+     * Возвращает число полученных точек.
+     */
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * Возвращает число переданных дальше точек.
+     */
+    public long getOutputCount() {
+        return outputCount;
+    }
+}
@@ -0,0 +1,177 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+/**
+ * Потоковое упрощение трека с допуском в метрах (алгоритм "открывающегося окна").
+ * <p>
+ * Последняя переданная дальше точка - якорь. Следующие точки копятся в окне, пока каждая из них лежит
+ * не дальше допуска от отрезка между якорем и самой новой точкой, а сам отрезок короче пути по точкам окна
+ * не больше чем на {@link #MAX_SHORTENING}. Как только новая точка нарушает одно из условий,
+ * предыдущая точка передается дальше и становится якорем. Окно ограничено {@link #MAX_WINDOW}
+ * точками, поэтому затраты на точку ограничены, а задержка - не больше окна; первая и последняя точки трека
+ * сохраняются всегда. Расстояния до отрезка считаются в локальной равнопромежуточной проекции вокруг якоря.
+ * <p>
+ * Хорда не смешивает движение и стоянку: точка считается движущейся, если ее скорость округляется
+ * до ненулевой, и все начала отрезков под хордой (якорь и точки окна, кроме конца хорды) движутся или стоят
+ * так же, как якорь. Если следующая точка добавила бы отрезок с другим состоянием, предыдущая точка
+ * становится якорем. Поэтому правило дистанции лога (отрезок учитывается по скорости в его начале),
+ * примененное к хордам, учитывает ровно те участки пути, которые учел бы на исходном треке.
+ * <p>
+ * Погрешность дистанции. Пусть D - длина исходного трека (сумма расстояний между соседними точками),
+ * d - длина упрощенного. Упрощенный трек состоит из хорд исходного, и каждая хорда короче заменяемого ею
+ * участка пути не больше чем на {@link #MAX_SHORTENING}, поэтому (1 - MAX_SHORTENING) * D &lt;= d &lt;= D
+ * при любом допуске, скорости и частоте точек, в том числе на стоянке (с точностью до погрешности
+ * локальной проекции, на участках окна - тысячные доли процента). То же верно для путей в движении, так как
+ * каждая хорда целиком относится к движению или к стоянке. Допуск влияет только на степень сжатия.
+ * Цена гарантии - стоянки: шум координат на месте быстро удлиняет путь относительно хорды, поэтому там
+ * сохраняется заметная часть точек.
+ * <p>
+ * Экземпляр не потокобезопасен.
+ */
+public final class TrackSimplifier implements GpsFixListener {
+
+    /**
+     * Максимальное число точек между двумя сохраненными точками.
+     */
+    public static final int MAX_WINDOW = 128;
+
+    /**
+     * Максимальная доля, на которую хорда упрощенного трека может быть короче заменяемого ею участка пути.
+     */
+    public static final double MAX_SHORTENING = 0.01;
+
+    // Длина градуса меридиана в метрах
+    private static final double METERS_PER_DEGREE = Math.PI * 6371_000.0 / 180;
+
+    private final double tolerance;
+    private final GpsFixListener downstream;
+
+    private boolean hasAnchor;
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private double anchorScale;
+    private boolean anchorMoving;
+
+    // Окно точек после якоря; координаты в метрах относительно якоря
+    private final long[] times = new long[MAX_WINDOW];
+    private final double[] latitudes = new double[MAX_WINDOW];
+    private final double[] longitudes = new double[MAX_WINDOW];
+    private final double[] speeds = new double[MAX_WINDOW];
+    private final double[] xs = new double[MAX_WINDOW];
+    private final double[] ys = new double[MAX_WINDOW];
+    private int windowSize;
+    // Длина пути в метрах от якоря через все точки окна
+    private double windowPath;
+
+    private long inputCount;
+    private long outputCount;
+
+    /**
+     * Создает упрощение трека.
+     *
+     * @param tolerance  Допуск в метрах.
+     * @param downstream Получатель сохраненных точек.
+     */
+    public TrackSimplifier(double tolerance, GpsFixListener downstream) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerance must be non-negative: " + tolerance);
+        }
+        this.tolerance = tolerance;
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void onFix(long timeMillis, double latitude, double longitude, double speed) {
+        inputCount++;
+        if (!hasAnchor) {
+            emitAnchor(timeMillis, latitude, longitude, speed);
+            return;
+        }
+
+        double x = (longitude - anchorLongitude) * anchorScale;
+        double y = (latitude - anchorLatitude) * METERS_PER_DEGREE;
+        double path = windowSize > 0
+                ? windowPath + Math.hypot(x - xs[windowSize - 1], y - ys[windowSize - 1])
+                : Math.hypot(x, y);
+        if (windowSize == MAX_WINDOW
+                || (windowSize > 0 && (isMoving(speeds[windowSize - 1]) != anchorMoving
+                        || !(Math.hypot(x, y) >= (1 - MAX_SHORTENING) * path && fits(x, y))))) {
+            // Предыдущая точка - последняя, до которой хорда от якоря еще укладывается в допуск
+            // и не захватывает отрезок с другим состоянием движения
+            int last = windowSize - 1;
+            emitAnchor(times[last], latitudes[last], longitudes[last], speeds[last]);
+            x = (longitude - anchorLongitude) * anchorScale;
+            y = (latitude - anchorLatitude) * METERS_PER_DEGREE;
+            path = Math.hypot(x, y);
+        }
+
+        times[windowSize] = timeMillis;
+        latitudes[windowSize] = latitude;
+        longitudes[windowSize] = longitude;
+        speeds[windowSize] = speed;
+        xs[windowSize] = x;
+        ys[windowSize] = y;
+        windowSize++;
+        windowPath = path;
+    }
+
+    /**
+     * Передает дальше последнюю точку трека. Вызывается после последней точки.
+     */
+    public void finish() {
+        if (windowSize > 0) {
+            int last = windowSize - 1;
+            emitAnchor(times[last], latitudes[last], longitudes[last], speeds[last]);
+        }
+    }
+
+    /**
+     * Возвращает число полученных точек.
+     */
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * Возвращает число переданных дальше точек.
+     */
+    public long getOutputCount() {
+        return outputCount;
+    }
+
+    /**
+     * Проверяет, что все точки окна не дальше допуска от отрезка между якорем (0, 0) и точкой (x, y).
+     */
+    private boolean fits(double x, double y) {
+        double lengthSquared = x * x + y * y;
+        double toleranceSquared = tolerance * tolerance;
+        for (int i = 0; i < windowSize; i++) {
+            double px = xs[i];
+            double py = ys[i];
+            double t = lengthSquared > 0 ? (px * x + py * y) / lengthSquared : 0;
+            t = Math.max(0, Math.min(1, t));
+            double dx = px - t * x;
+            double dy = py - t * y;
+            if (dx * dx + dy * dy > toleranceSquared) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // То же правило движения, что и в расчете дистанции лога
+    private static boolean isMoving(double speed) {
+        return (int) Math.round(speed) > 0;
+    }
+
+    private void emitAnchor(long timeMillis, double latitude, double longitude, double speed) {
+        downstream.onFix(timeMillis, latitude, longitude, speed);
+        outputCount++;
+        hasAnchor = true;
+        anchorLatitude = latitude;
+        anchorLongitude = longitude;
+        anchorScale = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        anchorMoving = isMoving(speed);
+        windowSize = 0;
+        windowPath = 0;
+    }
+}
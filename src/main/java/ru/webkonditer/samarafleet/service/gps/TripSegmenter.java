@@ -0,0 +1,147 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import ru.webkonditer.samarafleet.dto.GpsTrip;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковое разбиение трека на поездки и стоянки.
+ * <p>
+ * Поездка начинается с первой точки, скорость в которой не ниже порога движения. Если скорость опускается
+ * ниже порога, начинается возможная стоянка; если она длится не меньше минимальной длительности,
+ * поездка завершается в точке начала стоянки, иначе стоянка засчитывается как простой внутри поездки.
+ * Дистанция поездки складывается из отрезков, учтенных в общей дистанции, пока поездка открыта; отрезки
+ * после начала возможной стоянки засчитываются, только если машина снова поехала.
+ * Работает в том же проходе, что и расчет дистанции, и хранит только текущую поездку и список готовых.
+ */
+public class TripSegmenter implements GpsFixListener, GpsSegmentListener {
+
+    private final double movingSpeed;
+    private final long minStopMillis;
+    private final List<GpsTrip> trips = new ArrayList<>();
+
+    private boolean inTrip;
+    private long startTime;
+    private double startLatitude;
+    private double startLongitude;
+    private long lastTime;
+    private double lastLatitude;
+    private double lastLongitude;
+    private double distance;
+    private double maxSpeed;
+    private long idleMillis;
+
+    // Начало текущей возможной стоянки, -1 если машина движется
+    private long stopTime = -1;
+    private double stopLatitude;
+    private double stopLongitude;
+    // Дистанция после начала возможной стоянки: отбрасывается, если стоянка завершает поездку
+    private double stopDistance;
+
+    /**
+     * Создает разбиение на поездки.
+     *
+     * @param movingSpeed   Скорость в км/ч, начиная с которой машина считается движущейся.
+     * @param minStopMillis Минимальная длительность остановки в мс, завершающей поездку.
+     */
+    public TripSegmenter(double movingSpeed, long minStopMillis) {
+        this.movingSpeed = movingSpeed;
+        this.minStopMillis = minStopMillis;
+    }
+
+    @Override
+    public void onFix(long timeMillis, double latitude, double longitude, double speed) {
+        boolean moving = speed >= movingSpeed;
+        if (!inTrip) {
+            if (moving) {
+                startTrip(timeMillis, latitude, longitude, speed);
+            }
+            return;
+        }
+
+        if (moving) {
+            if (stopTime >= 0) {
+                // Короткая остановка закончилась, засчитываем ее как простой
+                idleMillis += timeMillis - stopTime;
+                distance += stopDistance;
+                stopDistance = 0;
+                stopTime = -1;
+            }
+            maxSpeed = Math.max(maxSpeed, speed);
+        } else if (stopTime < 0) {
+            stopTime = timeMillis;
+            stopLatitude = latitude;
+            stopLongitude = longitude;
+            stopDistance = 0;
+        } else if (timeMillis - stopTime >= minStopMillis) {
+            closeTrip(stopTime, stopLatitude, stopLongitude);
+            return;
+        }
+
+        lastTime = timeMillis;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+    }
+
+    @Override
+    public void onSegment(double segmentDistance) {
+        if (!inTrip) {
+            return;
+        }
+        if (stopTime >= 0) {
+            stopDistance += segmentDistance;
+        } else {
+            distance += segmentDistance;
+        }
+    }
+
+    /**
+     * Завершает разбиение: незакрытая поездка заканчивается в начале стоянки или в последней точке.
+     */
+    public void finish() {
+        if (inTrip) {
+            if (stopTime >= 0) {
+                closeTrip(stopTime, stopLatitude, stopLongitude);
+            } else {
+                closeTrip(lastTime, lastLatitude, lastLongitude);
+            }
+        }
+    }
+
+    /**
+     * Возвращает выделенные поездки.
+     *
+     * @return Список поездок в порядке следования.
+     */
+    public List<GpsTrip> getTrips() {
+        return trips;
+    }
+
+    private void startTrip(long timeMillis, double latitude, double longitude, double speed) {
+        inTrip = true;
+        startTime = timeMillis;
+        startLatitude = latitude;
+        startLongitude = longitude;
+        lastTime = timeMillis;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        distance = 0;
+        maxSpeed = speed;
+        idleMillis = 0;
+        stopTime = -1;
+        stopDistance = 0;
+    }
+
+    private void closeTrip(long endTime, double endLatitude, double endLongitude) {
+        long movingMillis = Math.max(0, endTime - startTime - idleMillis);
+        double averageSpeed = movingMillis > 0 ? distance / (movingMillis / 3_600_000.0) : 0;
+        trips.add(new GpsTrip(Instant.ofEpochMilli(startTime), Instant.ofEpochMilli(endTime),
+                startLatitude, startLongitude, endLatitude, endLongitude,
+                distance, maxSpeed, averageSpeed, idleMillis / 1000));
+        inTrip = false;
+        stopTime = -1;
+        stopDistance = 0;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.webkonditer.samarafleet.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogResult;
+import ru.webkonditer.samarafleet.service.GpsLogService;
+import ru.webkonditer.samarafleet.service.GpsTrackService;
+import ru.webkonditer.samarafleet.service.gps.GpsLogCompression;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(GpsLogController.class)
+@WithMockUser
+class GpsLogControllerTest {
+
+    private static final String TEXT = "Total distance: 1.000 km";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private GpsLogService gpsLogService;
+
+    @MockBean
+    private GpsTrackService gpsTrackService;
+
+    @BeforeEach
+    void mockService() throws Exception {
+        when(gpsLogService.detectCompression(any())).thenReturn(GpsLogCompression.NONE);
+        when(gpsLogService.processGpsLog(any(MultipartFile.class))).thenReturn(TEXT);
+        when(gpsLogService.analyzeGpsLog(any(MultipartFile.class)))
+                .thenReturn(new GpsLogResult(1.0, 60, 10, 0, List.of(), null, null));
+    }
+
+    @Test
+    void textIsReturnedByDefault() throws Exception {
+        expectText(upload());
+        expectText(upload().header(HttpHeaders.ACCEPT, "*/*"));
+        expectText(upload().header(HttpHeaders.ACCEPT, "application/json;q=0.5, text/plain"));
+    }
+
+    @Test
+    void jsonIsReturnedWhenPreferred() throws Exception {
+        expectJson(upload().header(HttpHeaders.ACCEPT, "application/json"));
+        expectJson(upload().header(HttpHeaders.ACCEPT, "text/plain;q=0.5, application/json"));
+        expectJson(upload().header(HttpHeaders.ACCEPT, "application/*"));
+    }
+
+    private MockHttpServletRequestBuilder upload() {
+        return multipart("/upload-gps-log")
+                .file(new MockMultipartFile("file", "log.txt", "text/plain", new byte[]{'$'}))
+                .with(csrf());
+    }
+
+    private void expectText(MockHttpServletRequestBuilder request) throws Exception {
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andExpect(content().string(TEXT));
+    }
+
+    private void expectJson(MockHttpServletRequestBuilder request) throws Exception {
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.totalDistance").value(1.0));
+    }
+}
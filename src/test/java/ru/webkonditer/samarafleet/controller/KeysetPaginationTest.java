@@ -0,0 +1,68 @@
+package ru.webkonditer.samarafleet.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.webkonditer.samarafleet.dto.KeysetPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetPaginationTest {
+
+    // Идентификаторы с пропусками, как после удалений
+    private final List<Long> ids = LongStream.rangeClosed(1, 95).filter(id -> id % 7 != 0).boxed().toList();
+
+    private final KeysetPagination.PageLoader<Long> loader = (afterId, limit) ->
+            ids.stream().filter(id -> id > afterId).limit(limit).toList();
+
+    @Test
+    void pagesCoverAllIdsOnceInOrder() {
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ResponseEntity<KeysetPage<Long>> response = KeysetPagination.page(cursor, 10, loader, Long::longValue);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            seen.addAll(response.getBody().getItems());
+            cursor = response.getBody().getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(ids, seen);
+        assertEquals((ids.size() + 9) / 10, pages);
+    }
+
+    @Test
+    void exactlyFullLastPageHasNoNextCursor() {
+        ResponseEntity<KeysetPage<Long>> response = KeysetPagination.page(null, ids.size(), loader, Long::longValue);
+        assertEquals(ids.size(), response.getBody().getItems().size());
+        assertNull(response.getBody().getNextCursor());
+    }
+
+    @Test
+    void invalidCursorOrLimitIsRejected() {
+        assertEquals(HttpStatus.BAD_REQUEST, KeysetPagination.page("not a cursor", 10, loader, Long::longValue)
+                .getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, KeysetPagination.page(null, 0, loader, Long::longValue)
+                .getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, KeysetPagination.page(null, KeysetPagination.MAX_LIMIT + 1, loader,
+                Long::longValue).getStatusCode());
+        assertEquals(42L, KeysetPagination.decodeCursor(KeysetPagination.encodeCursor(42)));
+    }
+
+    @Test
+    void ndjsonOnlyWhenExplicitlyAccepted() {
+        assertTrue(KeysetPagination.acceptsNdjson("application/x-ndjson"));
+        assertTrue(KeysetPagination.acceptsNdjson("application/json;q=0.5, application/x-ndjson"));
+        assertFalse(KeysetPagination.acceptsNdjson("*/*"));
+        assertFalse(KeysetPagination.acceptsNdjson("application/json"));
+        assertFalse(KeysetPagination.acceptsNdjson(null));
+    }
+}
@@ -0,0 +1,152 @@
+package ru.webkonditer.samarafleet.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.webkonditer.samarafleet.dto.BulkImportReport;
+import ru.webkonditer.samarafleet.service.bulk.BulkImportFormat;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import(EntityCacheService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BulkImportServiceTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityCacheService entityCacheService;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private BulkImportService bulkImportService;
+
+    @BeforeEach
+    void createService() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        bulkImportService = new BulkImportService(dataSource, new ObjectMapper(), entityCacheService, 3, 100);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from cars");
+        jdbcTemplate.update("delete from owners");
+        jdbcTemplate.update("delete from dealers");
+    }
+
+    @Test
+    void csvDealersAreImportedAndInvalidRowsReported() throws IOException {
+        BulkImportReport report = bulkImportService.importDealers(input("""
+                name,email,representativeName
+                "Volga, Motors",volga@example.com,Ivanov
+                Samara Auto,,Petrov
+                Kama,kama@example.com,"Sidorov ""Jr""\"
+                Volga Again,volga@example.com,Smirnov
+                Lada,lada@example.com
+                Zhiguli,zhiguli@example.com,
+                """), BulkImportFormat.CSV);
+
+        assertEquals(6, report.getRowCount());
+        assertEquals(3, report.getImportedCount());
+        assertEquals(3, report.getFailedCount());
+        assertEquals(List.of(3L, 5L, 6L), report.getErrors().stream().map(BulkImportReport.RowError::getLine).toList());
+        assertEquals("Duplicate email: volga@example.com", report.getErrors().get(1).getMessage());
+        assertEquals(List.of("Volga, Motors", "Kama", "Zhiguli"),
+                jdbcTemplate.queryForList("select name from dealers order by id", String.class));
+        assertEquals("Sidorov \"Jr\"", jdbcTemplate.queryForObject(
+                "select representative_name from dealers where email = 'kama@example.com'", String.class));
+    }
+
+    @Test
+    void ndjsonOwnersAreLinkedToDealersByEmail() throws IOException {
+        jdbcTemplate.update("insert into dealers (name, email) values ('Volga', 'volga@example.com')");
+        Long dealerId = jdbcTemplate.queryForObject("select id from dealers", Long.class);
+
+        BulkImportReport report = bulkImportService.importOwners(input("""
+                {"fullName": "Ivan", "email": "ivan@example.com", "dealerEmail": "volga@example.com"}
+                {"fullName": "Petr", "email": "petr@example.com", "dealerEmail": "unknown@example.com"}
+                {"fullName": "Oleg", "email":
+
+                {"fullName": "Anna", "phone": "+7000", "email": "anna@example.com"}
+                """), BulkImportFormat.NDJSON);
+
+        assertEquals(4, report.getRowCount());
+        assertEquals(2, report.getImportedCount());
+        assertEquals("Unknown dealerEmail: unknown@example.com", report.getErrors().get(0).getMessage());
+        assertEquals(3, report.getErrors().get(1).getLine());
+        assertEquals(dealerId, jdbcTemplate.queryForObject(
+                "select dealer_id from owners where email = 'ivan@example.com'", Long.class));
+        assertEquals(null, jdbcTemplate.queryForObject(
+                "select dealer_id from owners where email = 'anna@example.com'", Long.class));
+    }
+
+    @Test
+    void ambiguousDealerEmailIsRejected() throws IOException {
+        // Обычные эндпоинты допускают дилеров с одинаковым email
+        jdbcTemplate.update("insert into dealers (name, email) values ('Volga', 'volga@example.com')");
+        jdbcTemplate.update("insert into dealers (name, email) values ('Volga Two', 'volga@example.com')");
+        jdbcTemplate.update("insert into dealers (name, email) values ('Kama', 'kama@example.com')");
+
+        BulkImportReport report = bulkImportService.importOwners(input("""
+                {"fullName": "Ivan", "email": "ivan@example.com", "dealerEmail": "volga@example.com"}
+                {"fullName": "Petr", "email": "petr@example.com", "dealerEmail": "kama@example.com"}
+                {"fullName": "Oleg", "email": "oleg@example.com", "dealerEmail": "volga@example.com"}
+                {"fullName": "Anna", "email": "anna@example.com", "dealerEmail": "volga@example.com"}
+                """), BulkImportFormat.NDJSON);
+
+        // Ссылки из следующих пакетов берутся из уже прочитанных и тоже отклоняются
+        assertEquals(1, report.getImportedCount());
+        assertEquals(List.of(1L, 3L, 4L), report.getErrors().stream().map(BulkImportReport.RowError::getLine).toList());
+        assertEquals("Ambiguous dealerEmail: volga@example.com", report.getErrors().get(0).getMessage());
+        assertEquals(List.of("petr@example.com"),
+                jdbcTemplate.queryForList("select email from owners", String.class));
+    }
+
+    @Test
+    void rejectedBatchFallsBackToSingleRows() throws IOException {
+        jdbcTemplate.update("insert into owners (full_name, email) values ('Ivan', 'ivan@example.com')");
+
+        BulkImportReport report = bulkImportService.importCars(input("registrationNumber,manufactureDate,ownerEmail\n"
+                + "A001,2020-01-01,ivan@example.com\n"
+                + "A".repeat(300) + ",2020-01-01,ivan@example.com\n"
+                + "A003,2021-01-01,\n"
+                + "A004,2022-01-01,ivan@example.com\n"), BulkImportFormat.CSV);
+
+        assertEquals(4, report.getRowCount());
+        assertEquals(3, report.getImportedCount());
+        assertEquals(1, report.getFailedCount());
+        assertEquals(3, report.getErrors().get(0).getLine());
+        assertTrue(report.getErrors().get(0).getMessage().startsWith("Database error"));
+        assertEquals(List.of("A001", "A003", "A004"),
+                jdbcTemplate.queryForList("select registration_number from cars order by id", String.class));
+    }
+
+    @Test
+    void csvWithoutRequiredColumnIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> bulkImportService.importCars(
+                input("number,manufactureDate\nA001,2020-01-01\n"), BulkImportFormat.CSV));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from cars", Long.class));
+    }
+
+    private static InputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
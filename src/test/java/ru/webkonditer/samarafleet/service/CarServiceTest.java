@@ -0,0 +1,102 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import ru.webkonditer.samarafleet.model.Car;
+import ru.webkonditer.samarafleet.model.Dealer;
+import ru.webkonditer.samarafleet.model.Owner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(CarService.class)
+class CarServiceTest {
+
+    private static final int CARS = 250;
+
+    @Autowired
+    private CarService carService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private GpsTrackService gpsTrackService;
+
+    @MockBean
+    private CarPositionService carPositionService;
+
+    @MockBean
+    private GeofenceService geofenceService;
+
+    private final List<Long> carIds = new ArrayList<>();
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void createCars() {
+        Dealer dealer = entityManager.persist(new Dealer("Dealer", "dealer@example.com", "Representative"));
+        Owner owner = null;
+        for (int i = 0; i < CARS; i++) {
+            if (i % 10 == 0) {
+                owner = entityManager.persist(new Owner("Owner " + i, "+7000" + i, "owner" + i + "@example.com",
+                        dealer, new ArrayList<>()));
+            }
+            Car car = new Car("A" + i, "2020-01-01");
+            // Часть машин без владельца
+            car.setOwner(i % 3 == 0 ? null : owner);
+            carIds.add(entityManager.persist(car).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void pagesFollowIdsWithOneStatementEach() {
+        List<Long> seen = new ArrayList<>();
+        long afterId = Long.MIN_VALUE;
+        int pages = 0;
+        List<Car> page;
+        while (!(page = carService.getCarsAfter(afterId, 100)).isEmpty()) {
+            page.forEach(car -> seen.add(car.getId()));
+            afterId = page.get(page.size() - 1).getId();
+            pages++;
+        }
+
+        assertEquals(carIds, seen);
+        assertEquals(pages + 1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void streamingVisitsAllCarsAndKeepsNothingInContext() {
+        List<Long> seen = new ArrayList<>();
+        List<Car> visited = new ArrayList<>();
+        carService.forEachCar(car -> {
+            seen.add(car.getId());
+            visited.add(car);
+        });
+
+        assertEquals(carIds, seen);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertFalse(visited.stream().anyMatch(car -> entityManager.getEntityManager().contains(car)
+                || car.getOwner() != null && entityManager.getEntityManager().contains(car.getOwner())));
+    }
+}
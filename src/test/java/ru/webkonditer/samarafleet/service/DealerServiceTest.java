@@ -0,0 +1,149 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import ru.webkonditer.samarafleet.dto.BulkLinkReport;
+import ru.webkonditer.samarafleet.model.Car;
+import ru.webkonditer.samarafleet.model.Dealer;
+import ru.webkonditer.samarafleet.model.Owner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(DealerService.class)
+class DealerServiceTest {
+
+    private static final int OWNERS = 50;
+    private static final int CARS_PER_OWNER = 3;
+
+    @Autowired
+    private DealerService dealerService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private OwnerService ownerService;
+
+    @MockBean
+    private CarService carService;
+
+    @MockBean
+    private GeofenceService geofenceService;
+
+    private Long dealerId;
+
+    private Long otherId;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void createFleet() {
+        Dealer dealer = entityManager.persist(new Dealer("Dealer", "dealer@example.com", "Representative"));
+        Dealer other = entityManager.persist(new Dealer("Other", "other@example.com", "Representative"));
+        for (int i = 0; i < OWNERS; i++) {
+            Owner owner = entityManager.persist(new Owner("Owner " + i, "+7000" + i, "owner" + i + "@example.com",
+                    i % 5 == 4 ? other : dealer, new ArrayList<>()));
+            for (int j = 0; j < CARS_PER_OWNER; j++) {
+                Car car = new Car("A" + i + "-" + j, "2020-01-01");
+                car.setOwner(owner);
+                entityManager.persist(car);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        dealerId = dealer.getId();
+        otherId = other.getId();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void dealerCarsAreLoadedWithOneStatement() {
+        List<String> dealerNames = new ArrayList<>();
+        dealerService.forEachDealerCar(dealerId, car -> dealerNames.add(car.getOwner().getDealer().getName()));
+
+        assertEquals(OWNERS * 4 / 5 * CARS_PER_OWNER, dealerNames.size());
+        assertEquals(List.of("Dealer"), dealerNames.stream().distinct().toList());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void dealerOwnersAreLoadedWithOneStatement() {
+        List<Long> ownerIds = new ArrayList<>();
+        dealerService.forEachDealerOwner(dealerId, owner -> ownerIds.add(owner.getId()));
+
+        assertEquals(OWNERS * 4 / 5, ownerIds.size());
+        assertEquals(ownerIds.stream().sorted().toList(), ownerIds);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void unknownDealerHasNoCars() {
+        List<Car> cars = new ArrayList<>();
+        dealerService.forEachDealerCar(-1L, cars::add);
+
+        assertEquals(0, cars.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void ownersAreMovedWithoutLoadingCollections() {
+        List<Long> otherOwnerIds = new ArrayList<>();
+        dealerService.forEachDealerOwner(otherId, owner -> otherOwnerIds.add(owner.getId()));
+        List<Long> requested = new ArrayList<>(otherOwnerIds);
+        requested.add(otherOwnerIds.get(0));
+        requested.add(-1L);
+        statistics.clear();
+
+        BulkLinkReport report = dealerService.attachOwnersToDealer(dealerId, requested);
+
+        assertEquals(otherOwnerIds.size() + 1, report.getRequestedCount());
+        assertEquals(otherOwnerIds.size(), report.getUpdatedCount());
+        // Проверка дилера, один UPDATE и выборка автомобилей для сброса геозон; коллекции owners не читаются
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+        assertEquals(OWNERS, countDealerOwners(dealerId));
+        assertEquals(0, countDealerOwners(otherId));
+        verify(geofenceService).removeCars(argThat(carIds -> carIds.size() == otherOwnerIds.size() * CARS_PER_OWNER));
+    }
+
+    @Test
+    void onlyOwnDealerOwnersAreDetached() {
+        List<Long> ownerIds = new ArrayList<>();
+        dealerService.forEachDealerOwner(dealerId, owner -> ownerIds.add(owner.getId()));
+        dealerService.forEachDealerOwner(otherId, owner -> ownerIds.add(owner.getId()));
+
+        BulkLinkReport report = dealerService.detachOwnersFromDealer(otherId, ownerIds);
+
+        assertEquals(OWNERS, report.getRequestedCount());
+        assertEquals(OWNERS / 5, report.getUpdatedCount());
+        assertEquals(OWNERS * 4 / 5, countDealerOwners(dealerId));
+        assertEquals(0, countDealerOwners(otherId));
+        assertNull(dealerService.detachOwnersFromDealer(-1L, ownerIds));
+    }
+
+    private int countDealerOwners(Long id) {
+        List<Owner> owners = new ArrayList<>();
+        dealerService.forEachDealerOwner(id, owners::add);
+        return owners.size();
+    }
+}
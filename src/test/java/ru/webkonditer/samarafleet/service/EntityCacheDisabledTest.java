@@ -0,0 +1,102 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.webkonditer.samarafleet.config.EntityCacheConfiguration;
+import ru.webkonditer.samarafleet.model.Dealer;
+import ru.webkonditer.samarafleet.model.Owner;
+import ru.webkonditer.samarafleet.repo.DealerRepository;
+import ru.webkonditer.samarafleet.repo.OwnerRepository;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Статистика включена явно: при выключенном кэше ее не включает EntityCacheConfiguration
+@DataJpaTest(properties = {"entity-cache.enabled=false", "spring.jpa.properties.hibernate.generate_statistics=true"})
+@Import({EntityCacheConfiguration.class, EntityCacheService.class, DealerService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EntityCacheDisabledTest {
+
+    private static final int OWNERS = 10;
+
+    @Autowired
+    private EntityCacheService entityCacheService;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private OwnerRepository ownerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private OwnerService ownerService;
+
+    @MockBean
+    private CarService carService;
+
+    @MockBean
+    private GeofenceService geofenceService;
+
+    private Long dealerId;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void createDealer() {
+        Dealer dealer = dealerRepository.save(new Dealer("Dealer", "dealer@example.com", "Representative"));
+        dealerId = dealer.getId();
+        for (int i = 0; i < OWNERS; i++) {
+            ownerRepository.save(new Owner("Owner " + i, "+7000" + i, "owner" + i + "@example.com",
+                    dealer, new ArrayList<>()));
+        }
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        ownerRepository.deleteAll();
+        dealerRepository.deleteAll();
+    }
+
+    @Test
+    void nothingIsPutIntoCache() {
+        assertEquals(OWNERS, countDealerOwners());
+        long statements = statistics.getPrepareStatementCount();
+
+        // Повторное чтение снова идет в базу
+        assertEquals(OWNERS, countDealerOwners());
+        assertTrue(statistics.getPrepareStatementCount() > statements);
+
+        assertEquals(0, statistics.getSecondLevelCachePutCount());
+        assertEquals(0, statistics.getSecondLevelCacheHitCount());
+        assertEquals(0, statistics.getSecondLevelCacheRegionNames().length);
+        assertTrue(entityCacheService.getStats().isEmpty());
+    }
+
+    private int countDealerOwners() {
+        Integer count = new TransactionTemplate(transactionManager).execute(status ->
+                dealerRepository.findById(dealerId).orElseThrow().getOwners().size());
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,144 @@
+package ru.webkonditer.samarafleet.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.webkonditer.samarafleet.config.EntityCacheConfiguration;
+import ru.webkonditer.samarafleet.dto.EntityCacheRegionStats;
+import ru.webkonditer.samarafleet.model.Dealer;
+import ru.webkonditer.samarafleet.model.Owner;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.repo.DealerRepository;
+import ru.webkonditer.samarafleet.repo.OwnerRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "entity-cache.dealers.max-entries=500")
+@Import({EntityCacheConfiguration.class, EntityCacheService.class, DealerService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EntityCacheServiceTest {
+
+    private static final int OWNERS = 10;
+
+    @Autowired
+    private EntityCacheService entityCacheService;
+
+    @Autowired
+    private DealerService dealerService;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private OwnerRepository ownerRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private OwnerService ownerService;
+
+    @MockBean
+    private CarService carService;
+
+    @MockBean
+    private GeofenceService geofenceService;
+
+    private Long dealerId;
+
+    private Long otherId;
+
+    private final List<Long> ownerIds = new ArrayList<>();
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void createDealers() {
+        Dealer dealer = dealerRepository.save(new Dealer("Dealer", "dealer@example.com", "Representative"));
+        dealerId = dealer.getId();
+        otherId = dealerRepository.save(new Dealer("Other", "other@example.com", "Representative")).getId();
+        for (int i = 0; i < OWNERS; i++) {
+            ownerIds.add(ownerRepository.save(new Owner("Owner " + i, "+7000" + i, "owner" + i + "@example.com",
+                    dealer, new ArrayList<>())).getId());
+        }
+        entityManagerFactory.getCache().evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        carRepository.deleteAll();
+        ownerRepository.deleteAll();
+        dealerRepository.deleteAll();
+    }
+
+    @Test
+    void repeatedReadsAreServedFromCache() {
+        assertEquals(OWNERS, countDealerOwners(dealerId));
+        long statements = statistics.getPrepareStatementCount();
+
+        assertEquals(OWNERS, countDealerOwners(dealerId));
+        assertEquals("Dealer", dealerRepository.findById(dealerId).orElseThrow().getName());
+
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        EntityCacheRegionStats dealers = regionStats(EntityCacheConfiguration.DEALERS);
+        assertEquals(500, dealers.getMaxEntries());
+        assertTrue(dealers.getHits() >= 2);
+        assertTrue(regionStats(EntityCacheConfiguration.DEALER_OWNERS).getHits() >= 1);
+    }
+
+    @Test
+    void collectionsAreInvalidatedOnAttachAndDetach() {
+        assertEquals(OWNERS, countDealerOwners(dealerId));
+        assertEquals(0, countDealerOwners(otherId));
+
+        dealerService.attachOwnersToDealer(otherId, ownerIds.subList(0, 4));
+        assertEquals(OWNERS - 4, countDealerOwners(dealerId));
+        assertEquals(4, countDealerOwners(otherId));
+
+        dealerService.detachOwnersFromDealer(otherId, ownerIds.subList(0, 1));
+        assertEquals(3, countDealerOwners(otherId));
+
+        // Изменение связи через сущность сбрасывает коллекции старого и нового дилера
+        Owner owner = ownerRepository.findById(ownerIds.get(5)).orElseThrow();
+        owner.setDealer(dealerRepository.getReferenceById(otherId));
+        ownerRepository.save(owner);
+        assertEquals(OWNERS - 5, countDealerOwners(dealerId));
+        assertEquals(4, countDealerOwners(otherId));
+    }
+
+    private int countDealerOwners(Long id) {
+        Integer count = new TransactionTemplate(transactionManager).execute(status ->
+                dealerRepository.findById(id).orElseThrow().getOwners().size());
+        return count == null ? 0 : count;
+    }
+
+    private EntityCacheRegionStats regionStats(String region) {
+        return entityCacheService.getStats().stream()
+                .filter(stats -> stats.getRegion().equals(region))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,193 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.webkonditer.samarafleet.dto.GeofenceEventInfo;
+import ru.webkonditer.samarafleet.model.Car;
+import ru.webkonditer.samarafleet.model.Dealer;
+import ru.webkonditer.samarafleet.model.Geofence;
+import ru.webkonditer.samarafleet.model.GeofenceEventType;
+import ru.webkonditer.samarafleet.model.GeofenceVertex;
+import ru.webkonditer.samarafleet.model.Owner;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.repo.DealerRepository;
+import ru.webkonditer.samarafleet.repo.GeofenceRepository;
+import ru.webkonditer.samarafleet.repo.OwnerRepository;
+import ru.webkonditer.samarafleet.service.gps.GpsFixListener;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import({GeofenceService.class, CarPositionService.class, CarService.class, DealerService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GeofenceServiceTest {
+
+    private static final double LATITUDE = 53.2;
+    private static final double LONGITUDE = 50.1;
+
+    @Autowired
+    private GeofenceService geofenceService;
+
+    @Autowired
+    private DealerService dealerService;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private OwnerRepository ownerRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private GeofenceRepository geofenceRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private OwnerService ownerService;
+
+    @MockBean
+    private GpsTrackService gpsTrackService;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private Long dealerId;
+
+    private Long carId;
+
+    @BeforeEach
+    void createFleet() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        Dealer dealer = dealerRepository.save(new Dealer("Dealer", "dealer@example.com", "Representative"));
+        dealerId = dealer.getId();
+        Owner owner = ownerRepository.save(new Owner("Owner", "+7000", "owner@example.com", dealer, new ArrayList<>()));
+        Car car = new Car("A001", "2020-01-01");
+        car.setOwner(owner);
+        carId = carRepository.save(car).getId();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        geofenceRepository.deleteAll();
+        carRepository.deleteAll();
+        ownerRepository.deleteAll();
+        dealerRepository.deleteAll();
+    }
+
+    @Test
+    void eventsFollowCreatedAndDeletedGeofence() {
+        Geofence geofence = geofenceService.createGeofence(dealerId, square(0.01)).orElseThrow();
+        assertTrue(geofenceService.createGeofence(-1L, square(0.01)).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> geofenceService.createGeofence(dealerId, square(20)));
+
+        GpsFixListener tracker = geofenceService.tracker(carId);
+        tracker.onFix(1_000, LATITUDE + 0.1, LONGITUDE, 0);
+        tracker.onFix(2_000, LATITUDE, LONGITUDE, 0);
+        tracker.onFix(3_000, LATITUDE + 0.1, LONGITUDE, 0);
+
+        List<GeofenceEventInfo> events = geofenceService.getDealerEvents(dealerId, Instant.EPOCH,
+                Instant.ofEpochMilli(10_000));
+        assertEquals(List.of(GeofenceEventType.ENTER, GeofenceEventType.EXIT),
+                events.stream().map(GeofenceEventInfo::getType).toList());
+        assertEquals(geofence.getId(), events.get(0).getGeofenceId());
+
+        assertFalse(geofenceService.deleteGeofence(dealerId + 1, geofence.getId()));
+        assertTrue(geofenceService.deleteGeofence(dealerId, geofence.getId()));
+        // Удаленная геозона больше не дает событий, ее события удалены вместе с ней
+        tracker.onFix(4_000, LATITUDE, LONGITUDE, 0);
+        assertEquals(0, geofenceService.flush());
+        assertEquals(List.of(), geofenceService.getDealerEvents(dealerId, Instant.EPOCH, Instant.ofEpochMilli(10_000)));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from geofence_vertices", Long.class));
+    }
+
+    @Test
+    void dealerWithGeofenceIsDeleted() {
+        geofenceService.createGeofence(dealerId, square(0.01)).orElseThrow();
+        GpsFixListener tracker = geofenceService.tracker(carId);
+        tracker.onFix(1_000, LATITUDE, LONGITUDE, 0);
+        assertEquals(1, geofenceService.flush());
+
+        dealerService.deleteDealer(dealerId);
+
+        assertFalse(dealerRepository.existsById(dealerId));
+        assertFalse(carRepository.existsById(carId));
+        assertEquals(0, geofenceRepository.count());
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from geofence_vertices", Long.class));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from geofence_events", Long.class));
+        assertTrue(geofenceService.getDealerGeofences(dealerId).isEmpty());
+        // Геозоны дилера убраны из индекса: точки прежнего отслеживания событий не дают
+        tracker.onFix(2_000, LATITUDE + 0.1, LONGITUDE, 0);
+        tracker.onFix(3_000, LATITUDE, LONGITUDE, 0);
+        assertEquals(0, geofenceService.flush());
+    }
+
+    @Test
+    void removedCarStartsTrackingAnew() {
+        geofenceService.createGeofence(dealerId, square(0.01)).orElseThrow();
+        GpsFixListener tracker = geofenceService.tracker(carId);
+        tracker.onFix(1_000, LATITUDE, LONGITUDE, 0);
+        assertSame(tracker, geofenceService.tracker(carId));
+
+        // После смены владельца или дилера состояние прежнего отслеживания не переиспользуется
+        geofenceService.removeCars(List.of(carId));
+        assertNotSame(tracker, geofenceService.tracker(carId));
+    }
+
+    @Test
+    void trackerIsRemovedOnlyAfterCommit() {
+        geofenceService.createGeofence(dealerId, square(0.01)).orElseThrow();
+        GpsFixListener tracker = geofenceService.tracker(carId);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        // Откат: связь не менялась, отслеживание сохраняется
+        transaction.executeWithoutResult(status -> {
+            geofenceService.removeCars(List.of(carId));
+            status.setRollbackOnly();
+        });
+        assertSame(tracker, geofenceService.tracker(carId));
+
+        // До фиксации поток данных видит прежнее отслеживание, после нее - новое
+        transaction.executeWithoutResult(status -> {
+            geofenceService.removeCars(List.of(carId));
+            assertSame(tracker, geofenceService.tracker(carId));
+        });
+        assertNotSame(tracker, geofenceService.tracker(carId));
+    }
+
+    private static Geofence square(double size) {
+        Geofence geofence = new Geofence();
+        geofence.setName("Square");
+        geofence.setVertices(new ArrayList<>(List.of(
+                new GeofenceVertex(LATITUDE - size / 2, LONGITUDE - size / 2),
+                new GeofenceVertex(LATITUDE - size / 2, LONGITUDE + size / 2),
+                new GeofenceVertex(LATITUDE + size / 2, LONGITUDE + size / 2),
+                new GeofenceVertex(LATITUDE + size / 2, LONGITUDE - size / 2))));
+        return geofence;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.webkonditer.samarafleet.dto.GpsFixIngestReport;
+import ru.webkonditer.samarafleet.model.Car;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GpsFixIngestServiceTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private GpsFixIngestService gpsFixIngestService;
+
+    private Long carId;
+
+    @BeforeEach
+    void createService() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        gpsFixIngestService = new GpsFixIngestService(dataSource, true, BATCH_SIZE);
+        carId = carRepository.save(new Car("A001", "2020-01-01")).getId();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from gps_fixes");
+        carRepository.deleteAll();
+    }
+
+    @Test
+    void fixesAreWrittenInJdbcBatches() throws SQLException {
+        GpsFixIngestReport report;
+        try (GpsFixIngestService.IngestSession session = gpsFixIngestService.openSession(carId)) {
+            feed(session, 7);
+            report = session.finish();
+        }
+
+        // H2 не поддерживает COPY: запись идет через JDBC batch
+        assertEquals("JDBC batch", report.getMethod());
+        assertEquals(7, report.getRows());
+        assertEquals(3, report.getBatches());
+        assertEquals(List.of(0.0, 1.0, 2.0, 3.0, 4.0, 5.0, 6.0), jdbcTemplate.queryForList(
+                "select speed from gps_fixes where car_id = ? order by fix_time", Double.class, carId));
+    }
+
+    @Test
+    void fixesAreStreamedToCopyOnPostgresql() throws SQLException {
+        // PostgreSQL подменен: соединение поддерживает COPY, переданные в него байты собираются
+        ByteArrayOutputStream copied = new ByteArrayOutputStream();
+        CopyIn copyIn = mock(CopyIn.class);
+        doAnswer(invocation -> {
+            copied.write(invocation.<byte[]>getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+        CopyManager copyManager = mock(CopyManager.class);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+        PGConnection pgConnection = mock(PGConnection.class);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        Connection connection = mock(Connection.class);
+        when(connection.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        DataSource postgresql = mock(DataSource.class);
+        when(postgresql.getConnection()).thenReturn(connection);
+
+        int rows = 5_000;
+        GpsFixIngestReport report;
+        try (GpsFixIngestService.IngestSession session =
+                     new GpsFixIngestService(postgresql, true, rows).openSession(carId)) {
+            feed(session, rows);
+            report = session.finish();
+        }
+
+        assertEquals("COPY", report.getMethod());
+        assertEquals(rows, report.getRows());
+        assertEquals(1, report.getBatches());
+        verify(copyIn).endCopy();
+        verify(connection).commit();
+        // Пакет передается несколькими порциями через буфер, а не одним массивом
+        verify(copyIn, atLeast(2)).writeToCopy(any(byte[].class), anyInt(), anyInt());
+        String[] lines = copied.toString(StandardCharsets.US_ASCII).split("\n");
+        assertEquals(rows, lines.length);
+        assertEquals(carId + ",1970-01-01T00:00:00Z,53.2,50.1,0.0", lines[0]);
+        assertEquals(carId + ",1970-01-01T01:23:19Z," + (53.2 + 4_999 * 1e-4) + ",50.1,4999.0", lines[rows - 1]);
+    }
+
+    @Test
+    void abortKeepsCommittedBatches() throws SQLException {
+        GpsFixIngestService.IngestSession session = gpsFixIngestService.openSession(carId);
+        feed(session, 7);
+        session.abort();
+
+        // Каждый полный пакет зафиксирован своей транзакцией, неполный откатывается
+        assertEquals(2 * BATCH_SIZE, countFixes());
+    }
+
+    @Test
+    void rejectedBatchIsRolledBack() throws SQLException {
+        GpsFixIngestService.IngestSession session = gpsFixIngestService.openSession(-1);
+        assertThrows(IllegalStateException.class, () -> feed(session, BATCH_SIZE));
+        session.abort();
+
+        assertEquals(0, countFixes());
+    }
+
+    @Test
+    void fixesDoNotBlockCarDeletion() throws SQLException {
+        try (GpsFixIngestService.IngestSession session = gpsFixIngestService.openSession(carId)) {
+            feed(session, 4);
+            session.finish();
+        }
+
+        carRepository.deleteById(carId);
+
+        assertEquals(0, countFixes());
+    }
+
+    private static void feed(GpsFixIngestService.IngestSession session, int count) {
+        for (int i = 0; i < count; i++) {
+            session.onFix(1_000L * i, 53.2 + i * 1e-4, 50.1, i);
+        }
+    }
+
+    private long countFixes() {
+        return jdbcTemplate.queryForObject("select count(*) from gps_fixes", Long.class);
+    }
+}
@@ -0,0 +1,162 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import ru.webkonditer.samarafleet.dto.GpsLogEntryResult;
+
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GpsLogBatchServiceTest {
+
+    private final GpsLogService gpsLogService = new GpsLogService(
+            2, DataSize.ofMegabytes(4), 5, Duration.ofMinutes(5), 0, Duration.ofHours(1));
+    private final GpsLogBatchService gpsLogBatchService = new GpsLogBatchService(gpsLogService, 2, 16);
+
+    // Пакетный сервис с одним потоком, обработка в котором ждет разрешения теста
+    private final GpsLogService blockingGpsLogService = mock(GpsLogService.class);
+    private final GpsLogBatchService blockingBatchService = new GpsLogBatchService(blockingGpsLogService, 1, 2);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+    private final AtomicBoolean fileExistedOnInterrupt = new AtomicBoolean();
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        gpsLogBatchService.shutdown();
+        blockingBatchService.shutdown();
+        gpsLogService.shutdown();
+    }
+
+    @Test
+    void everyFileOfBatchGetsResult() throws Exception {
+        Random random = new Random(5);
+        Map<String, Double> expected = new HashMap<>();
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String log = GpsLogServiceTest.randomLog(random, 3_000);
+            String name = "log-" + i + ".nmea";
+            expected.put(name, GpsLogServiceTest.referenceDistance(log));
+            files.add(new MockMultipartFile("files", name, "text/plain", log.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        CollectingListener listener = new CollectingListener();
+        gpsLogBatchService.submit(files, listener);
+        assertTrue(listener.completed.await(30, TimeUnit.SECONDS), "Пакет не обработан");
+
+        Map<String, Double> actual = new HashMap<>();
+        for (GpsLogEntryResult result : listener.results) {
+            assertNull(result.getError());
+            actual.put(result.getName(), result.getResult().getTotalDistance());
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void batchNotFittingQueueIsRejected() throws Exception {
+        blockProcessing();
+        blockingBatchService.submit(files(1), new CollectingListener());
+        awaitStarted();
+
+        // Поток занят, в очереди два места
+        assertThrows(RejectedExecutionException.class, () -> blockingBatchService.submit(files(3), new CollectingListener()));
+        CollectingListener accepted = new CollectingListener();
+        blockingBatchService.submit(files(2), accepted);
+
+        release.countDown();
+        assertTrue(accepted.completed.await(5, TimeUnit.SECONDS), "Принятый пакет не обработан");
+        assertEquals(2, accepted.results.size());
+        verify(blockingGpsLogService, times(3)).analyzeFile(anyString(), any(Path.class));
+    }
+
+    @Test
+    void cancelKeepsFileOfRunningTask() throws Exception {
+        blockProcessing();
+        CollectingListener listener = new CollectingListener();
+        GpsLogBatchService.Batch batch = blockingBatchService.submit(files(3), listener);
+        awaitStarted();
+
+        batch.cancel();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Обработка не была прервана");
+        assertTrue(fileExistedOnInterrupt.get(), "Файл запущенной задачи удален отменой");
+
+        // Снятые с очереди файлы не обрабатываются, результаты отмененного пакета не передаются
+        Thread.sleep(50);
+        verify(blockingGpsLogService, times(1)).analyzeFile(anyString(), any(Path.class));
+        assertTrue(listener.results.isEmpty());
+        assertEquals(1, listener.completed.getCount());
+    }
+
+    private void blockProcessing() throws Exception {
+        when(blockingGpsLogService.analyzeFile(anyString(), any(Path.class))).thenAnswer(invocation -> {
+            String name = invocation.getArgument(0);
+            Path file = invocation.getArgument(1);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                fileExistedOnInterrupt.set(Files.exists(file));
+                interrupted.countDown();
+                throw new InterruptedIOException();
+            }
+            return List.of(new GpsLogEntryResult(name, null, null));
+        });
+    }
+
+    private void awaitStarted() throws InterruptedException {
+        assertTrue(started.await(5, TimeUnit.SECONDS), "Обработка пакета не началась");
+    }
+
+    private static List<MultipartFile> files(int count) {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(new MockMultipartFile("files", "log-" + i + ".nmea", "text/plain", new byte[16]));
+        }
+        return files;
+    }
+
+    private static class CollectingListener implements GpsLogBatchService.ResultListener {
+
+        private final BlockingQueue<GpsLogEntryResult> results = new LinkedBlockingQueue<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onResult(List<GpsLogEntryResult> results) {
+            this.results.addAll(results);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import ru.webkonditer.samarafleet.controller.GpsLogJobController;
+import ru.webkonditer.samarafleet.dto.GpsLogJobInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GpsLogJobServiceTest {
+
+    private static final int LOG_SIZE = 256 * 1024;
+    private static final int READ_BEFORE_PAUSE = 100 * 1024;
+
+    // Обработка лога ждет разрешения теста, чтобы задачи можно было держать в работе и в очереди
+    private final GpsLogService gpsLogService = mock(GpsLogService.class);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    // Один поток, одно место в очереди; завершенные задачи сразу считаются устаревшими
+    private final GpsLogJobService gpsLogJobService = new GpsLogJobService(gpsLogService, 1, 1, Duration.ZERO);
+
+    // Настоящая обработка логов для проверки распаковки
+    private final GpsLogService realLogService = new GpsLogService(
+            4, DataSize.ofBytes(300), 5, Duration.ofMinutes(5), 100, Duration.ofHours(1));
+    private final GpsLogJobService realJobService = new GpsLogJobService(realLogService, 1, 4, Duration.ofHours(1));
+
+    @BeforeEach
+    void blockProcessing() throws Exception {
+        when(gpsLogService.processGpsLog(any(InputStream.class))).thenAnswer(invocation -> {
+            InputStream inputStream = invocation.getArgument(0);
+            inputStream.readNBytes(READ_BEFORE_PAUSE);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new InterruptedIOException();
+            }
+            inputStream.readAllBytes();
+            return "done";
+        });
+    }
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        gpsLogJobService.shutdown();
+        realJobService.shutdown();
+    }
+
+    @Test
+    void progressIsReportedWhileRunning() throws Exception {
+        GpsLogJobInfo job = gpsLogJobService.submit(log());
+        assertEquals(GpsLogJobInfo.Status.QUEUED, job.getStatus());
+        assertEquals(LOG_SIZE, job.getBytesTotal());
+        awaitStarted();
+
+        GpsLogJobInfo running = gpsLogJobService.getJob(job.getId()).orElseThrow();
+        assertEquals(GpsLogJobInfo.Status.RUNNING, running.getStatus());
+        assertTrue(running.getBytesProcessed() >= READ_BEFORE_PAUSE && running.getBytesProcessed() < LOG_SIZE);
+        assertEquals((double) running.getBytesProcessed() / LOG_SIZE, running.getProgress(), 1e-9);
+        assertTrue(gpsLogJobService.getResult(job.getId()).isEmpty());
+
+        release.countDown();
+        GpsLogJobInfo done = awaitFinished(job.getId());
+        assertEquals(GpsLogJobInfo.Status.DONE, done.getStatus());
+        assertEquals(LOG_SIZE, done.getBytesProcessed());
+        assertEquals(1.0, done.getProgress());
+        assertEquals("done", gpsLogJobService.getResult(job.getId()).orElseThrow());
+    }
+
+    @Test
+    void fullQueueRejectsJob() throws Exception {
+        GpsLogJobInfo running = gpsLogJobService.submit(log());
+        awaitStarted();
+        GpsLogJobInfo queued = gpsLogJobService.submit(log());
+
+        assertThrows(RejectedExecutionException.class, () -> gpsLogJobService.submit(log()));
+        // Контроллер отвечает на заполненную очередь кодом 503
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                new GpsLogJobController(gpsLogJobService).submitJob(log()).getStatusCode());
+
+        // Отклоненные задачи не регистрируются, принятые продолжают выполняться
+        release.countDown();
+        assertEquals(GpsLogJobInfo.Status.DONE, awaitFinished(running.getId()).getStatus());
+        assertEquals(GpsLogJobInfo.Status.DONE, awaitFinished(queued.getId()).getStatus());
+        verify(gpsLogService, times(2)).processGpsLog(any(InputStream.class));
+    }
+
+    @Test
+    void queuedJobIsCancelledWithoutRunning() throws Exception {
+        GpsLogJobInfo running = gpsLogJobService.submit(log());
+        awaitStarted();
+        GpsLogJobInfo queued = gpsLogJobService.submit(log());
+
+        GpsLogJobInfo cancelled = gpsLogJobService.cancel(queued.getId()).orElseThrow();
+        assertEquals(GpsLogJobInfo.Status.CANCELLED, cancelled.getStatus());
+        assertTrue(gpsLogJobService.cancel("unknown").isEmpty());
+
+        // Место в очереди освободилось сразу
+        GpsLogJobInfo next = gpsLogJobService.submit(log());
+        release.countDown();
+        assertEquals(GpsLogJobInfo.Status.DONE, awaitFinished(running.getId()).getStatus());
+        assertEquals(GpsLogJobInfo.Status.DONE, awaitFinished(next.getId()).getStatus());
+        assertEquals(GpsLogJobInfo.Status.CANCELLED, gpsLogJobService.getJob(queued.getId()).orElseThrow().getStatus());
+        verify(gpsLogService, times(2)).processGpsLog(any(InputStream.class));
+    }
+
+    @Test
+    void runningJobIsInterrupted() throws Exception {
+        GpsLogJobInfo job = gpsLogJobService.submit(log());
+        awaitStarted();
+
+        assertEquals(GpsLogJobInfo.Status.CANCELLED, gpsLogJobService.cancel(job.getId()).orElseThrow().getStatus());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Обработка не была прервана");
+
+        GpsLogJobInfo info = awaitFinished(job.getId());
+        assertEquals(GpsLogJobInfo.Status.CANCELLED, info.getStatus());
+        assertTrue(gpsLogJobService.getResult(job.getId()).isEmpty());
+    }
+
+    @Test
+    void onlyFinishedJobsAreEvicted() throws Exception {
+        GpsLogJobInfo running = gpsLogJobService.submit(log());
+        awaitStarted();
+        GpsLogJobInfo queued = gpsLogJobService.submit(log());
+
+        gpsLogJobService.evictExpiredJobs();
+        assertTrue(gpsLogJobService.getJob(running.getId()).isPresent());
+        assertTrue(gpsLogJobService.getJob(queued.getId()).isPresent());
+
+        release.countDown();
+        awaitFinished(running.getId());
+        awaitFinished(queued.getId());
+        Thread.sleep(5);
+        gpsLogJobService.evictExpiredJobs();
+        assertTrue(gpsLogJobService.getJob(running.getId()).isEmpty());
+        assertTrue(gpsLogJobService.getResult(queued.getId()).isEmpty());
+    }
+
+    @Test
+    void gzipLogIsDecompressedInJob() throws Exception {
+        String log = GpsLogServiceTest.randomLog(new Random(5), 2_000);
+        byte[] gzip = GpsLogServiceTest.gzip(log);
+
+        GpsLogJobInfo job = realJobService.submit(new MockMultipartFile("file", "log.gz", "application/gzip", gzip));
+        GpsLogJobInfo info = awaitFinished(realJobService, job.getId());
+
+        assertEquals(GpsLogJobInfo.Status.DONE, info.getStatus());
+        assertEquals(gzip.length, info.getBytesProcessed());
+        assertEquals(realLogService.processGpsLog(new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8))),
+                realJobService.getResult(job.getId()).orElseThrow());
+    }
+
+    @Test
+    void zipArchiveIsRejected() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("log.nmea"));
+            zip.write("$GNZDA,000000.00,01,01,2023,00,00*00\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> realJobService.submit(
+                new MockMultipartFile("file", "logs.zip", "application/zip", archive.toByteArray())));
+    }
+
+    private static MockMultipartFile log() {
+        return new MockMultipartFile("file", "log.nmea", "text/plain", new byte[LOG_SIZE]);
+    }
+
+    private void awaitStarted() throws InterruptedException {
+        assertTrue(started.await(5, TimeUnit.SECONDS), "GPS log job did not start");
+    }
+
+    private GpsLogJobInfo awaitFinished(String jobId) throws InterruptedException {
+        return awaitFinished(gpsLogJobService, jobId);
+    }
+
+    private static GpsLogJobInfo awaitFinished(GpsLogJobService jobService, String jobId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            GpsLogJobInfo info = jobService.getJob(jobId).orElseThrow();
+            if (info.getStatus().isFinished()) {
+                return info;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("GPS log job did not finish");
+    }
+}
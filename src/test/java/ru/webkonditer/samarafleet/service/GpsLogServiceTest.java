@@ -0,0 +1,348 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import ru.webkonditer.samarafleet.dto.GpsFixIngestReport;
+import ru.webkonditer.samarafleet.dto.GpsLogEntryResult;
+import ru.webkonditer.samarafleet.dto.GpsLogResult;
+import ru.webkonditer.samarafleet.dto.GpsTrip;
+import ru.webkonditer.samarafleet.dto.GpsTripReport;
+import ru.webkonditer.samarafleet.service.gps.GpsDistanceAccumulator;
+import ru.webkonditer.samarafleet.service.gps.NmeaLogGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GpsLogServiceTest {
+
+    // Маленький участок, чтобы параллельный путь резал даже тестовые логи на много частей
+    private final GpsLogService gpsLogService = new GpsLogService(
+            4, DataSize.ofBytes(300), 5, Duration.ofMinutes(5), 100, Duration.ofHours(1));
+
+    @Test
+    void processGpsLogReturnsFormattedDistance() throws Exception {
+        String log = String.join("\n",
+                "$GPGGA,000001.00,53.0000,N,50.0000,E,1,08,1.0,100.0,M,0.0,M,,*00",
+                "$GNVTG,,T,,M,10.0,N,18.5,K,A*00",
+                "$GNZDA,000001.00,01,01,2023,00,00*00",
+                "$GPGGA,000002.00,53.0100,N,50.0000,E,1,08,1.0,100.0,M,0.0,M,,*00",
+                "");
+        MockMultipartFile file = new MockMultipartFile("file", "log.txt", "text/plain",
+                log.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("Общая дистанция: " + String.format("%.3f", 1.112) + " километров.",
+                gpsLogService.processGpsLog(file));
+    }
+
+    @Test
+    void repeatedUploadIsServedFromCache() throws Exception {
+        Random random = new Random(7);
+        String log = randomLog(random, 2_000);
+        String other = randomLog(random, 2_000);
+        MockMultipartFile file = new MockMultipartFile("file", "log.txt", "text/plain",
+                log.getBytes(StandardCharsets.UTF_8));
+        MockMultipartFile otherFile = new MockMultipartFile("file", "other.txt", "text/plain",
+                other.getBytes(StandardCharsets.UTF_8));
+
+        String first = gpsLogService.processGpsLog(file);
+        assertEquals(first, gpsLogService.processGpsLog(file));
+        gpsLogService.processGpsLog(otherFile);
+        // Полного результата в кэше еще нет, только дистанция
+        GpsLogResult result = gpsLogService.analyzeGpsLog(file);
+        assertEquals(result, gpsLogService.analyzeGpsLog(file));
+        assertEquals(first, gpsLogService.formatResult(result));
+
+        assertEquals(2, gpsLogService.getCacheStats().getHits());
+        assertEquals(3, gpsLogService.getCacheStats().getMisses());
+        assertEquals(2, gpsLogService.getCacheStats().getSize());
+
+        // Общий для всех запросов результат из кэша изменить нельзя
+        assertThrows(UnsupportedOperationException.class, () -> result.getSpeedHistogram().clear());
+        assertNotNull(result.withFixIngest(new GpsFixIngestReport(1, 1, 1, 1.0, "COPY")).getFixIngest());
+        assertNull(gpsLogService.analyzeGpsLog(file).getFixIngest());
+    }
+
+    @Test
+    void failedUploadIsCountedAsMiss() {
+        AtomicInteger opened = new AtomicInteger();
+        MockMultipartFile file = new MockMultipartFile("file", "log.txt", "text/plain",
+                randomLog(new Random(8), 100).getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                // Начало файла для определения сжатия читается, сам лог - уже нет
+                if (opened.incrementAndGet() > 1) {
+                    throw new IOException("read failure");
+                }
+                return super.getInputStream();
+            }
+        };
+
+        assertThrows(IOException.class, () -> gpsLogService.analyzeGpsLog(file));
+        assertEquals(0, gpsLogService.getCacheStats().getHits());
+        assertEquals(1, gpsLogService.getCacheStats().getMisses());
+        assertEquals(0, gpsLogService.getCacheStats().getSize());
+    }
+
+    @Test
+    void compressedLogsAreDecodedOnTheFly() throws Exception {
+        Random random = new Random(21);
+        String first = randomLog(random, 1_000);
+        String second = randomLog(random, 1_000);
+
+        MockMultipartFile gzipFile = new MockMultipartFile("file", "log.gz", "application/gzip", gzip(first));
+        assertEquals(referenceDistance(first), gpsLogService.analyzeGpsLog(gzipFile).getTotalDistance(), 0.0);
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("logs/"));
+            zip.putNextEntry(new ZipEntry("logs/first.nmea"));
+            zip.write(first.getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("logs/second.nmea.gz"));
+            zip.write(gzip(second));
+            zip.putNextEntry(new ZipEntry("logs/broken.nmea"));
+            zip.write("$GPGGA,000000.00,abc,N,50.0,E\n$GNVTG,,T,,M,0.0,N,10.0,K,A\n$GPGGA,000001.00,53.0,N,50.0,E\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        MockMultipartFile zipFile = new MockMultipartFile("file", "logs.zip", "application/zip", archive.toByteArray());
+
+        List<GpsLogEntryResult> results = gpsLogService.analyzeArchive(zipFile);
+        assertEquals(3, results.size());
+        assertEquals("logs/first.nmea", results.get(0).getName());
+        assertEquals(referenceDistance(first), results.get(0).getResult().getTotalDistance(), 0.0);
+        assertEquals(referenceDistance(second), results.get(1).getResult().getTotalDistance(), 0.0);
+        assertNull(results.get(2).getResult());
+        assertTrue(gpsLogService.processGpsLog(zipFile).startsWith("logs/first.nmea: Общая дистанция: "));
+    }
+
+    static byte[] gzip(String log) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(log.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void analyzeGpsLogCollectsStatistics() throws Exception {
+        String log = String.join("\n",
+                "$GNZDA,000000.00,01,01,2023,00,00*00",
+                "$GPGGA,000000.00,53.0000,N,50.0000,E,1,08,1.0,100.0,M,0.0,M,,*00",
+                "$GNVTG,,T,,M,10.0,N,18.5,K,A*00",
+                "$GPGGA,000010.00,53.0100,N,50.0200,E,1,08,1.0,100.0,M,0.0,M,,*00",
+                "$GNVTG,,T,,M,0.0,N,0.0,K,A*00",
+                "$GPGGA,000020.00,,N,,E,0,00,,,M,,M,,*00",
+                "$GNVTG,,T,,M,,N,,K,N*00",
+                "$GPGGA,000030.00,52.9900,N,50.0100,E,1,08,1.0,100.0,M,0.0,M,,*00",
+                "$GNVTG,,T,,M,80.0,N,155.0,K,A*00",
+                "");
+
+        GpsLogResult result = gpsLogService.analyzeGpsLog(
+                new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(GpsDistanceAccumulator.distance(53.0, 50.0, 53.01, 50.02), result.getTotalDistance(), 0.0);
+        assertEquals(10, result.getMovingSeconds());
+        assertEquals(3, result.getFixCount());
+        assertEquals(2, result.getInvalidSentenceCount());
+        assertEquals(1, result.getSpeedHistogram().get(0).getCount());
+        assertEquals(1, result.getSpeedHistogram().get(1).getCount());
+        GpsLogResult.SpeedBucket last = result.getSpeedHistogram().get(result.getSpeedHistogram().size() - 1);
+        assertNull(last.getToSpeed());
+        assertEquals(1, last.getCount());
+        assertEquals(52.99, result.getBoundingBox().getMinLatitude(), 0.0);
+        assertEquals(53.01, result.getBoundingBox().getMaxLatitude(), 0.0);
+        assertEquals(50.0, result.getBoundingBox().getMinLongitude(), 0.0);
+        assertEquals(50.02, result.getBoundingBox().getMaxLongitude(), 0.0);
+    }
+
+    @Test
+    void generatedLogMatchesGroundTruth(@TempDir Path tempDir) throws Exception {
+        NmeaLogGenerator generator = new NmeaLogGenerator(11);
+        generator.setInvalidSentenceRate(0.02);
+        generator.setZdaNoiseRate(0.05);
+        Path file = tempDir.resolve("generated.nmea");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            generator.writeSeconds(out, 20_000);
+        }
+        byte[] log = Files.readAllBytes(file);
+
+        GpsLogResult result = gpsLogService.analyzeGpsLog(new ByteArrayInputStream(log), null);
+        assertEquals(generator.getDistance(), result.getTotalDistance(), 0.0);
+        assertEquals(generator.getFixCount(), result.getFixCount());
+        assertEquals(generator.getInvalidSentenceCount(), result.getInvalidSentenceCount());
+        // Параллельная обработка складывает отрезки в другом порядке
+        assertEquals(generator.getDistance(), gpsLogService.calculateTotalDistance(file),
+                generator.getDistance() * 1e-12);
+        // Шум координат удлиняет путь, пропуски точек и отрезки на малой скорости укорачивают
+        assertEquals(generator.getTrueDistance(), generator.getDistance(), generator.getTrueDistance() * 0.05);
+
+        NmeaLogGenerator same = new NmeaLogGenerator(11);
+        same.setInvalidSentenceRate(0.02);
+        same.setZdaNoiseRate(0.05);
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        same.write(again, log.length);
+        assertArrayEquals(log, again.toByteArray());
+    }
+
+    @Test
+    void streamingDistanceMatchesListBasedAlgorithm() throws Exception {
+        Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            String log = randomLog(random, 2_000);
+            double expected = referenceDistance(log);
+            double actual = gpsLogService.calculateTotalDistance(
+                    new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(expected, actual, 0.0);
+        }
+    }
+
+    @Test
+    void parallelDistanceMatchesSequential(@TempDir Path tempDir) throws Exception {
+        Random random = new Random(13);
+        for (int run = 0; run < 20; run++) {
+            String log = randomLog(random, 500 + random.nextInt(3_000));
+            Path file = tempDir.resolve("log-" + run + ".nmea");
+            Files.writeString(file, log);
+
+            double expected = referenceDistance(log);
+            double actual = gpsLogService.calculateTotalDistance(file);
+            assertEquals(expected, actual, 1e-9);
+            assertEquals(String.format("%.3f", expected), String.format("%.3f", actual));
+        }
+    }
+
+    @Test
+    void tripsAreSplitByLongStops() throws Exception {
+        StringBuilder log = new StringBuilder("$GNZDA,000000.00,01,01,2023,00,00*00\n");
+        double latitude = 53.2;
+        // 10 минут движения, остановка на 2 минуты, еще 5 минут движения, стоянка 10 минут, 5 минут движения
+        int[] speeds = new int[32];
+        for (int minute = 0; minute < speeds.length; minute++) {
+            boolean stopped = (minute >= 10 && minute < 12) || (minute >= 17 && minute < 27);
+            speeds[minute] = stopped ? 0 : 40;
+        }
+        for (int minute = 0; minute < speeds.length; minute++) {
+            if (speeds[minute] > 0) {
+                latitude += 0.005;
+            }
+            log.append(String.format(Locale.ROOT, "$GPGGA,00%02d00.00,%.6f,N,50.100000,E,1,08,1.0,100.0,M,0.0,M,,*00\n",
+                    minute, latitude));
+            log.append(String.format(Locale.ROOT, "$GNVTG,,T,,M,0.0,N,%d.0,K,A*00\n", speeds[minute]));
+        }
+
+        GpsTripReport report = gpsLogService.processTrips(
+                new ByteArrayInputStream(log.toString().getBytes(StandardCharsets.UTF_8)));
+        // Сжатая загрузка дает тот же результат
+        GpsTripReport gzipReport = gpsLogService.processTrips(
+                new MockMultipartFile("file", "log.gz", "application/gzip", gzip(log.toString())));
+        assertEquals(report.getTotalDistance(), gzipReport.getTotalDistance(), 0.0);
+        assertEquals(report.getTrips().size(), gzipReport.getTrips().size());
+
+        assertEquals(referenceDistance(log.toString()), report.getTotalDistance(), 0.0);
+        List<GpsTrip> trips = report.getTrips();
+        assertEquals(2, trips.size());
+
+        GpsTrip first = trips.get(0);
+        assertEquals(Instant.parse("2023-01-01T00:00:00Z"), first.getStartTime());
+        assertEquals(Instant.parse("2023-01-01T00:17:00Z"), first.getEndTime());
+        assertEquals(120, first.getIdleSeconds());
+        assertEquals(40.0, first.getMaxSpeed(), 0.0);
+        assertTrue(first.getAverageSpeed() > 0);
+
+        GpsTrip second = trips.get(1);
+        assertEquals(Instant.parse("2023-01-01T00:27:00Z"), second.getStartTime());
+        assertEquals(Instant.parse("2023-01-01T00:31:00Z"), second.getEndTime());
+        assertEquals(report.getTotalDistance(), first.getDistance() + second.getDistance(), 1e-9);
+    }
+
+    static String randomLog(Random random, int lines) {
+        StringBuilder log = new StringBuilder();
+        double latitude = 53.2;
+        double longitude = 50.1;
+        for (int i = 0; i < lines; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                latitude += random.nextDouble() * 0.001;
+                longitude += random.nextDouble() * 0.001;
+                log.append(String.format(Locale.ROOT, "$GPGGA,%06d.00,%.6f,N,%.6f,E,1,08,1.0,100.0,M,0.0,M,,*00",
+                        i, latitude, longitude));
+            } else if (kind < 8) {
+                log.append(String.format(Locale.ROOT, "$GNVTG,,T,,M,0.0,N,%.3f,K,A*00", random.nextDouble() * 3));
+            } else if (kind == 8) {
+                log.append("$GNZDA,000000.00,01,01,2023,00,00*00");
+            } else {
+                log.append(random.nextBoolean() ? "$GPGGA,000000.00,,N,,E,0,00,,,M,,M,,*00" : "   ");
+            }
+            log.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        return log.toString();
+    }
+
+    /**
+     * Эталонная реализация исходного алгоритма: все строки в списке, соседи по индексу.
+     */
+    static double referenceDistance(String log) {
+        List<String> lines = new ArrayList<>();
+        for (String line : log.split("\r?\n")) {
+            if (!line.trim().isEmpty() && !line.startsWith("$GNZDA")) {
+                lines.add(line);
+            }
+        }
+        double totalDistance = 0;
+        for (int i = 1; i + 1 < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.startsWith("$GNVTG") && Math.round(Double.parseDouble(line.split(",")[7])) > 0) {
+                double[] start = referencePoint(lines.get(i - 1));
+                double[] end = referencePoint(lines.get(i + 1));
+                if (start != null && end != null) {
+                    double lat1 = Math.toRadians(start[0]);
+                    double lon1 = Math.toRadians(start[1]);
+                    double lat2 = Math.toRadians(end[0]);
+                    double lon2 = Math.toRadians(end[1]);
+                    double dLat = lat2 - lat1;
+                    double dLon = lon2 - lon1;
+                    double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                            Math.cos(lat1) * Math.cos(lat2) *
+                                    Math.sin(dLon / 2) * Math.sin(dLon / 2);
+                    totalDistance += 6371.0 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+                }
+            }
+        }
+        return totalDistance;
+    }
+
+    private static double[] referencePoint(String line) {
+        if (!line.startsWith("$GPGGA")) {
+            return null;
+        }
+        String[] tokens = line.split(",");
+        if (tokens.length < 5 || tokens[2].isEmpty() || tokens[4].isEmpty()) {
+            return null;
+        }
+        return new double[]{Double.parseDouble(tokens[2]), Double.parseDouble(tokens[4])};
+    }
+}
@@ -0,0 +1,101 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.Test;
+import ru.webkonditer.samarafleet.dto.CarPositionInfo;
+import ru.webkonditer.samarafleet.dto.GpsStreamReport;
+import ru.webkonditer.samarafleet.repo.CarPositionRepository;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.service.gps.GpsDistanceAccumulator;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GpsStreamServiceTest {
+
+    @Test
+    void odometerFollowsStreamFedInArbitraryChunks() {
+        CarRepository carRepository = mock(CarRepository.class);
+        when(carRepository.existsById(1L)).thenReturn(true);
+        CarPositionService carPositionService =
+                new CarPositionService(mock(CarPositionRepository.class), mock(DataSource.class), 1_000, 0.01);
+        GeofenceService geofenceService = mock(GeofenceService.class);
+        double[] lastTracked = new double[2];
+        when(geofenceService.tracker(1L)).thenReturn((timeMillis, latitude, longitude, speed) -> {
+            lastTracked[0] = latitude;
+            lastTracked[1] = longitude;
+        });
+        GpsStreamService gpsStreamService = new GpsStreamService(carRepository, carPositionService, geofenceService);
+
+        Random random = new Random(3);
+        String log = GpsLogServiceTest.randomLog(random, 5_000);
+        byte[] bytes = log.getBytes(StandardCharsets.UTF_8);
+        double expected = GpsLogServiceTest.referenceDistance(log);
+
+        GpsStreamService.StreamSession session = gpsStreamService.openStream(1L).orElseThrow();
+        assertEquals(1, gpsStreamService.getOdometer(1L).orElseThrow().getActiveStreams());
+        for (int offset = 0; offset < bytes.length; ) {
+            int length = Math.min(1 + random.nextInt(200), bytes.length - offset);
+            session.feed(bytes, offset, length);
+            offset += length;
+        }
+        GpsStreamReport report = session.finish();
+
+        assertEquals(bytes.length, report.getBytesReceived());
+        assertEquals(expected, report.getDistance(), 1e-9);
+        assertEquals(expected, report.getOdometer().getDistance(), 1e-9);
+        assertEquals(0, report.getOdometer().getActiveStreams());
+        // Последняя точка лога доходит и до позиции, и до геозон
+        double[] last = lastFix(log);
+        CarPositionInfo position = carPositionService.getPosition(1L).orElseThrow();
+        assertEquals(last[0], position.getLatitude(), 1e-9);
+        assertEquals(last[1], position.getLongitude(), 1e-9);
+        assertArrayEquals(last, lastTracked, 1e-9);
+        assertTrue(gpsStreamService.openStream(2L).isEmpty());
+    }
+
+    @Test
+    void malformedPointDoesNotJoinNeighbours() {
+        CarRepository carRepository = mock(CarRepository.class);
+        when(carRepository.existsById(1L)).thenReturn(true);
+        GeofenceService geofenceService = mock(GeofenceService.class);
+        when(geofenceService.tracker(1L)).thenReturn((timeMillis, latitude, longitude, speed) -> {
+        });
+        GpsStreamService gpsStreamService = new GpsStreamService(carRepository,
+                new CarPositionService(mock(CarPositionRepository.class), mock(DataSource.class), 1_000, 0.01),
+                geofenceService);
+
+        String log = "$GPGGA,000000.00,53.200000,N,50.100000,E\n"
+                + "$GNVTG,,T,,M,0.0,N,40.0,K,A\n"
+                + "$GPGGA,000001.00,53.2x,N,50.1,E\n"
+                + "$GPGGA,000002.00,53.210000,N,50.110000,E\n"
+                + "$GNVTG,,T,,M,0.0,N,40.0,K,A\n"
+                + "$GPGGA,000003.00,53.220000,N,50.120000,E\n";
+        byte[] bytes = log.getBytes(StandardCharsets.UTF_8);
+
+        GpsStreamService.StreamSession session = gpsStreamService.openStream(1L).orElseThrow();
+        session.feed(bytes, 0, bytes.length);
+        GpsStreamReport report = session.finish();
+
+        // Отрезок до невалидной точки пропущен, точка после нее не соединяется с точкой до нее
+        assertEquals(1, report.getRejectedLineCount());
+        assertEquals(GpsDistanceAccumulator.distance(53.21, 50.11, 53.22, 50.12), report.getDistance(), 1e-9);
+    }
+
+    private static double[] lastFix(String log) {
+        double[] last = null;
+        for (String line : log.split("\r?\n")) {
+            String[] tokens = line.split(",");
+            if (line.startsWith("$GPGGA") && !tokens[2].isEmpty()) {
+                last = new double[]{Double.parseDouble(tokens[2]), Double.parseDouble(tokens[4])};
+            }
+        }
+        return last;
+    }
+}
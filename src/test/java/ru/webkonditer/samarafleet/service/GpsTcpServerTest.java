@@ -0,0 +1,147 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.webkonditer.samarafleet.dto.CarOdometer;
+import ru.webkonditer.samarafleet.repo.CarPositionRepository;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GpsTcpServerTest {
+
+    private GpsStreamService gpsStreamService;
+    private GpsTcpServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        CarRepository carRepository = mock(CarRepository.class);
+        when(carRepository.existsById(anyLong())).thenAnswer(invocation -> (Long) invocation.getArgument(0) < 100);
+        GeofenceService geofenceService = mock(GeofenceService.class);
+        when(geofenceService.tracker(anyLong())).thenReturn((timeMillis, latitude, longitude, speed) -> {
+        });
+        // Трекер автомобиля 99 падает на первой же точке
+        when(geofenceService.tracker(99L)).thenReturn((timeMillis, latitude, longitude, speed) -> {
+            throw new IllegalStateException("tracker failure");
+        });
+        gpsStreamService = new GpsStreamService(carRepository,
+                new CarPositionService(mock(CarPositionRepository.class), mock(DataSource.class), 1_000, 0.01),
+                geofenceService);
+        server = new GpsTcpServer(gpsStreamService, "127.0.0.1", 0, 2, Duration.ofMinutes(1));
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void trackersStreamIntoCarOdometers() throws Exception {
+        Random random = new Random(11);
+        List<String> logs = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+        for (int car = 1; car <= 20; car++) {
+            logs.add(GpsLogServiceTest.randomLog(random, 1_000));
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            sockets.add(socket);
+            // Первые данные лога идут в том же пакете, что и рукопожатие
+            String log = logs.get(car - 1);
+            socket.getOutputStream().write(("CAR " + car + "\n" + log.substring(0, 100))
+                    .getBytes(StandardCharsets.US_ASCII));
+        }
+        for (int car = 1; car <= 20; car++) {
+            Socket socket = sockets.get(car - 1);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertEquals("OK", reader.readLine());
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(logs.get(car - 1).substring(100).getBytes(StandardCharsets.US_ASCII));
+            socket.shutdownOutput();
+            assertNull(reader.readLine());
+            socket.close();
+        }
+
+        for (int car = 1; car <= 20; car++) {
+            CarOdometer odometer = awaitFinished((long) car);
+            assertEquals(GpsLogServiceTest.referenceDistance(logs.get(car - 1)), odometer.getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    void unknownCarIsRejected() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.getOutputStream().write("CAR 500\n".getBytes(StandardCharsets.US_ASCII));
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertTrue(reader.readLine().startsWith("ERR"));
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.getOutputStream().write("HELLO\n".getBytes(StandardCharsets.US_ASCII));
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertTrue(reader.readLine().startsWith("ERR"));
+        }
+    }
+
+    @Test
+    void failingConnectionDoesNotStopWorker() throws Exception {
+        Random random = new Random(12);
+        // По одному сбойному соединению на каждый поток селектора
+        for (int i = 0; i < 2; i++) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                socket.setSoTimeout(10_000);
+                socket.getOutputStream().write(("CAR 99\n" + GpsLogServiceTest.randomLog(random, 10))
+                        .getBytes(StandardCharsets.US_ASCII));
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                assertEquals("OK", reader.readLine());
+                assertNull(reader.readLine());
+            }
+        }
+
+        for (long car = 1; car <= 2; car++) {
+            String log = GpsLogServiceTest.randomLog(random, 100);
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                socket.setSoTimeout(10_000);
+                socket.getOutputStream().write(("CAR " + car + "\n" + log).getBytes(StandardCharsets.US_ASCII));
+                socket.shutdownOutput();
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                assertEquals("OK", reader.readLine());
+                assertNull(reader.readLine());
+            }
+            assertEquals(GpsLogServiceTest.referenceDistance(log), awaitFinished(car).getDistance(), 1e-9);
+        }
+    }
+
+    private CarOdometer awaitFinished(Long carId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            CarOdometer odometer = gpsStreamService.getOdometer(carId).orElse(null);
+            if (odometer != null && odometer.getActiveStreams() == 0) {
+                return odometer;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Поток автомобиля " + carId + " не завершился");
+    }
+}
@@ -0,0 +1,61 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import ru.webkonditer.samarafleet.dto.GpsLogResult;
+import ru.webkonditer.samarafleet.dto.GpsTrackDistance;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.repo.GpsFixRepository;
+import ru.webkonditer.samarafleet.service.gps.NmeaLogGenerator;
+import ru.webkonditer.samarafleet.service.gps.TrackSimplifier;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GpsTrackServiceTest {
+
+    @Test
+    void storedTrackDistanceMatchesLogDistance(@TempDir Path tempDir) throws Exception {
+        GpsLogService gpsLogService = new GpsLogService(
+                4, DataSize.ofBytes(300), 5, Duration.ofMinutes(5), 100, Duration.ofHours(1));
+        CarRepository carRepository = mock(CarRepository.class);
+        when(carRepository.existsById(1L)).thenReturn(true);
+        CarPositionService carPositionService = mock(CarPositionService.class);
+        when(carPositionService.positionUpdater(1L)).thenReturn((timeMillis, latitude, longitude, speed) -> {
+        });
+        GeofenceService geofenceService = mock(GeofenceService.class);
+        when(geofenceService.tracker(1L)).thenReturn((timeMillis, latitude, longitude, speed) -> {
+        });
+        GpsTrackService gpsTrackService = new GpsTrackService(gpsLogService, mock(GpsFixIngestService.class),
+                carRepository, mock(GpsFixRepository.class), carPositionService, geofenceService,
+                tempDir, 500_000, 3);
+
+        // Поездки со стоянками и шумом координат около 2 м; без точек без координат,
+        // вокруг которых лог и трек считают отрезки по-разному
+        NmeaLogGenerator generator = new NmeaLogGenerator(17);
+        generator.setInvalidSentenceRate(0);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        generator.writeSeconds(log, 20_000);
+        MockMultipartFile file = new MockMultipartFile("file", "log.nmea", "text/plain", log.toByteArray());
+
+        GpsLogResult result = gpsTrackService.processAndStore(1L, file).orElseThrow();
+        GpsTrackDistance distance = gpsTrackService.trackDistance(1L, Instant.EPOCH,
+                Instant.parse("2100-01-01T00:00:00Z"));
+
+        double expected = result.getTotalDistance();
+        assertTrue(distance.getFixCount() * 2 < result.getFixCount(),
+                "stored " + distance.getFixCount() + " of " + result.getFixCount() + " fixes");
+        assertTrue(distance.getDistance() <= expected * (1 + 1e-6),
+                "track " + distance.getDistance() + " km, log " + expected + " km");
+        assertTrue(distance.getDistance() >= expected * (1 - TrackSimplifier.MAX_SHORTENING),
+                "track " + distance.getDistance() + " km, log " + expected + " km");
+    }
+}
@@ -0,0 +1,104 @@
+package ru.webkonditer.samarafleet.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.webkonditer.samarafleet.model.Car;
+import ru.webkonditer.samarafleet.model.Owner;
+import ru.webkonditer.samarafleet.repo.CarRepository;
+import ru.webkonditer.samarafleet.repo.OwnerRepository;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest
+@Import({OwnerService.class, CarService.class, CarPositionService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OwnerServiceTest {
+
+    @Autowired
+    private OwnerService ownerService;
+
+    @Autowired
+    private CarPositionService carPositionService;
+
+    @Autowired
+    private OwnerRepository ownerRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @MockBean
+    private GpsTrackService gpsTrackService;
+
+    @MockBean
+    private GeofenceService geofenceService;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private Long ownerId;
+
+    private final List<Long> carIds = new ArrayList<>();
+
+    @BeforeEach
+    void createCarsWithPositions() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        Owner owner = ownerRepository.save(new Owner("Owner", "+7000", "owner@example.com", null, new ArrayList<>()));
+        ownerId = owner.getId();
+        for (int i = 0; i < 2; i++) {
+            Car car = new Car("A00" + i, "2020-01-01");
+            car.setOwner(owner);
+            Long carId = carRepository.save(car).getId();
+            carIds.add(carId);
+            carPositionService.positionUpdater(carId).onFix(1_000, 53.2, 50.1 + i * 0.001, 10);
+        }
+        assertEquals(2, carPositionService.flush());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        carIds.forEach(carPositionService::deletePosition);
+        carRepository.deleteAll();
+        ownerRepository.deleteAll();
+    }
+
+    @Test
+    void ownerWithReportedPositionsIsDeleted() {
+        ownerService.deleteOwner(ownerId);
+
+        assertFalse(ownerRepository.existsById(ownerId));
+        assertEquals(0, carRepository.count());
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from car_positions", Long.class));
+        for (Long carId : carIds) {
+            assertTrue(carPositionService.getPosition(carId).isEmpty());
+            verify(gpsTrackService).deleteTrack(carId);
+            verify(geofenceService).removeCars(List.of(carId));
+        }
+        assertEquals(List.of(), carPositionService.findNearest(53.2, 50.1, 10, null));
+    }
+
+    @Test
+    void positionRowsDoNotBlockCascadedDeletion() {
+        // Удаление в обход сервиса: строки позиций удаляет каскад базы данных
+        ownerRepository.deleteById(ownerId);
+
+        assertEquals(0, carRepository.count());
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from car_positions", Long.class));
+    }
+}
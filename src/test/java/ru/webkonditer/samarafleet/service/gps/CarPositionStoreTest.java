@@ -0,0 +1,142 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CarPositionStoreTest {
+
+    @Test
+    void olderPositionDoesNotOverwriteNewer() {
+        CarPositionStore store = new CarPositionStore(4);
+        int slot = store.slotOf(42);
+        assertEquals(slot, store.slotOf(42));
+        assertEquals(-1, store.find(43));
+
+        long generation = generation(store, slot);
+        assertTrue(store.update(slot, generation, 2_000, 53.2, 50.1, 40));
+        assertFalse(store.update(slot, generation, 1_000, 0, 0, 0));
+
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        assertTrue(store.read(slot, position));
+        assertEquals(42, position.getCarId());
+        assertEquals(2_000, position.getTimeMillis());
+        assertEquals(53.2, position.getLatitude(), 0.0);
+
+        assertEquals(slot, store.remove(42));
+        assertFalse(store.read(slot, position));
+        assertEquals(-1, store.find(42));
+        assertEquals(-1, store.remove(42));
+    }
+
+    @Test
+    void storeIsBoundedByCapacity() {
+        CarPositionStore store = new CarPositionStore(2);
+        assertEquals(0, store.slotOf(1));
+        assertEquals(1, store.slotOf(2));
+        assertEquals(-1, store.slotOf(3));
+        assertEquals(-1, store.slotOf(0));
+
+        // Ячейка удаленного автомобиля выдается заново
+        assertEquals(0, store.remove(1));
+        assertEquals(0, store.slotOf(3));
+        assertEquals(2, store.getAllocated());
+    }
+
+    @Test
+    void staleWriterCannotUpdateFreedSlot() {
+        CarPositionStore store = new CarPositionStore(1);
+        int slot = store.slotOf(1);
+        long staleGeneration = generation(store, slot);
+        assertTrue(store.update(slot, staleGeneration, 1_000, 53.2, 50.1, 40));
+
+        store.remove(1);
+        // Освобожденная ячейка остается пустой, сколько бы ни писал получатель удаленного автомобиля
+        assertFalse(store.update(slot, staleGeneration, 2_000, 53.3, 50.2, 40));
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        assertFalse(store.read(slot, position));
+
+        // И после передачи другому автомобилю
+        assertEquals(slot, store.slotOf(2));
+        assertFalse(store.update(slot, staleGeneration, 3_000, 53.4, 50.3, 40));
+        assertTrue(store.update(slot, generation(store, slot), 3_000, 55.7, 37.6, 20));
+        assertTrue(store.read(slot, position));
+        assertEquals(2, position.getCarId());
+        assertEquals(55.7, position.getLatitude(), 0.0);
+    }
+
+    @Test
+    void keyIndexSurvivesChurn() {
+        CarPositionStore store = new CarPositionStore(4);
+        store.slotOf(1_000_000);
+        // Каждое удаление оставляет надгробие: без перестройки индекс заполнился бы ими
+        for (long carId = 1; carId <= 10_000; carId++) {
+            int slot = store.slotOf(carId);
+            assertTrue(slot >= 0);
+            assertEquals(slot, store.find(carId));
+            assertEquals(slot, store.remove(carId));
+            assertEquals(-1, store.find(carId));
+        }
+        assertEquals(2, store.getAllocated());
+        assertTrue(store.find(1_000_000) >= 0);
+    }
+
+    @Test
+    void readersNeverSeeTornPositions() throws Exception {
+        CarPositionStore store = new CarPositionStore(8);
+        int slot = store.slotOf(7);
+        long generation = generation(store, slot);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        // Два писателя одной ячейки: координаты каждой позиции выводятся из ее времени
+        for (int writer = 0; writer < 2; writer++) {
+            int offset = writer;
+            threads.add(new Thread(() -> {
+                for (long time = offset; time < 2_000_000; time += 2) {
+                    store.update(slot, generation, time, time, -time, time % 100);
+                }
+            }));
+        }
+        for (int reader = 0; reader < 2; reader++) {
+            threads.add(new Thread(() -> {
+                CarPositionStore.Position position = new CarPositionStore.Position();
+                while (running.get()) {
+                    if (store.read(slot, position)) {
+                        long time = position.getTimeMillis();
+                        if (position.getLatitude() != time || position.getLongitude() != -time
+                                || position.getSpeed() != time % 100) {
+                            failure.set("Несогласованная позиция для времени " + time);
+                        }
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        threads.get(0).join();
+        threads.get(1).join();
+        running.set(false);
+        threads.get(2).join();
+        threads.get(3).join();
+
+        assertNull(failure.get());
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        assertTrue(store.read(slot, position));
+        assertEquals(1_999_999, position.getTimeMillis());
+    }
+
+    private static long generation(CarPositionStore store, int slot) {
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        store.read(slot, position);
+        return position.getGeneration();
+    }
+}
@@ -0,0 +1,110 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GeofenceTrackerTest {
+
+    private static GeofenceIndex.Polygon square(long id, long dealerId, double latitude, double longitude, double size) {
+        return new GeofenceIndex.Polygon(id, dealerId,
+                new double[]{latitude, latitude, latitude + size, latitude + size},
+                new double[]{longitude, longitude + size, longitude + size, longitude});
+    }
+
+    @Test
+    void enterAndExitEventsFollowTheTrack() {
+        GeofenceIndex index = GeofenceIndex.build(List.of(
+                square(1, 7, 53.20, 50.10, 0.05),
+                square(2, 7, 53.22, 50.12, 0.05),
+                // Геозона другого дилера на том же месте не влияет на автомобиль
+                square(3, 8, 53.20, 50.10, 0.10)), 0.01);
+        List<String> events = new ArrayList<>();
+        GeofenceTracker tracker = new GeofenceTracker(42, 7, () -> index,
+                (geofenceId, carId, enter, timeMillis, latitude, longitude) ->
+                        events.add((enter ? "enter " : "exit ") + geofenceId + " at " + timeMillis));
+
+        tracker.onFix(1, 53.19, 50.09, 0);
+        tracker.onFix(2, 53.21, 50.11, 0);
+        tracker.onFix(3, 53.23, 50.13, 0);
+        // Старая точка пришла позже: пропускается
+        tracker.onFix(0, 53.0, 50.0, 0);
+        tracker.onFix(4, 53.26, 50.16, 0);
+        tracker.onFix(5, 53.30, 50.30, 0);
+
+        assertEquals(List.of("enter 1 at 2", "enter 2 at 3", "exit 1 at 4", "exit 2 at 5"), events);
+        assertArrayEquals(new long[0], tracker.getInside());
+    }
+
+    @Test
+    void deletedFenceDoesNotProduceExit() {
+        GeofenceIndex.Polygon fence = square(1, 7, 53.20, 50.10, 0.05);
+        GeofenceIndex[] index = {GeofenceIndex.build(List.of(fence), 0.01)};
+        List<Long> events = new ArrayList<>();
+        GeofenceTracker tracker = new GeofenceTracker(42, 7, () -> index[0],
+                (geofenceId, carId, enter, timeMillis, latitude, longitude) -> events.add(geofenceId));
+        tracker.initialize(1, 53.21, 50.11);
+        assertArrayEquals(new long[]{1}, tracker.getInside());
+
+        index[0] = index[0].without(List.of(1L));
+        tracker.onFix(2, 53.30, 50.30, 0);
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    void indexMatchesPolygonScan() {
+        Random random = new Random(11);
+        List<GeofenceIndex.Polygon> polygons = new ArrayList<>();
+        for (int id = 1; id <= 200; id++) {
+            int vertices = 3 + random.nextInt(6);
+            double latitude = 53 + random.nextDouble() * 0.5;
+            double longitude = 50 + random.nextDouble() * 0.5;
+            double[] latitudes = new double[vertices];
+            double[] longitudes = new double[vertices];
+            for (int v = 0; v < vertices; v++) {
+                double angle = 2 * Math.PI * v / vertices;
+                double radius = 0.005 + random.nextDouble() * 0.03;
+                latitudes[v] = latitude + radius * Math.sin(angle);
+                longitudes[v] = longitude + radius * Math.cos(angle);
+            }
+            polygons.add(new GeofenceIndex.Polygon(id, id % 3, latitudes, longitudes));
+        }
+        // Крупные геозоны хранятся не в сетке, а в списке дилера
+        polygons.add(square(1000, 1, 53.1, 50.1, 0.8));
+        polygons.add(square(1001, 2, 53.0, 50.0, 10));
+        GeofenceIndex index = GeofenceIndex.build(polygons, 0.01);
+        long[] found = new long[index.getMaxCandidates()];
+
+        for (int i = 0; i < 20_000; i++) {
+            double latitude = 52.95 + random.nextDouble() * 0.6;
+            double longitude = 49.95 + random.nextDouble() * 0.6;
+            long dealerId = random.nextInt(3);
+            long[] expected = polygons.stream()
+                    .filter(p -> p.getDealerId() == dealerId && p.contains(latitude, longitude))
+                    .mapToLong(GeofenceIndex.Polygon::getId)
+                    .toArray();
+            int count = index.containing(dealerId, latitude, longitude, found);
+            assertArrayEquals(expected, Arrays.copyOf(found, count));
+        }
+    }
+
+    @Test
+    void wideFenceDoesNotFillTheGrid() {
+        GeofenceIndex index = GeofenceIndex.build(List.of(
+                new GeofenceIndex.Polygon(1, 7, new double[]{-90, -90, 90, 90}, new double[]{-180, 180, 180, -180}),
+                square(2, 7, 53.20, 50.10, 0.05)), 0.01);
+        long[] found = new long[index.getMaxCandidates()];
+
+        assertEquals(2, index.getMaxCandidates());
+        assertEquals(2, index.containing(7, 53.21, 50.11, found));
+        assertArrayEquals(new long[]{1, 2}, Arrays.copyOf(found, 2));
+        assertEquals(1, index.containing(7, -45, 120, found));
+        assertEquals(0, index.containing(8, 53.21, 50.11, found));
+    }
+}
@@ -0,0 +1,40 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GpsTrackStoreTest {
+
+    @Test
+    void readsBackTimeRangeAcrossSegments(@TempDir Path directory) throws Exception {
+        GpsTrackStore store = new GpsTrackStore(directory, 100);
+        long start = 1_700_000_000_000L;
+
+        try (GpsTrackStore.TrackWriter writer = store.openWriter(7)) {
+            for (int i = 0; i < 1_000; i++) {
+                writer.onFix(start + i * 1_000L, 53.2 + i * 1e-5, 50.1 - i * 1e-5, i % 90);
+            }
+        }
+
+        List<double[]> fixes = new ArrayList<>();
+        long count = store.read(7, start + 250_000, start + 499_000,
+                (time, latitude, longitude, speed) -> fixes.add(new double[]{time, latitude, longitude, speed}));
+
+        assertEquals(250, count);
+        for (int i = 0; i < fixes.size(); i++) {
+            int index = 250 + i;
+            double[] fix = fixes.get(i);
+            assertEquals(start + index * 1_000L, (long) fix[0]);
+            assertEquals(53.2 + index * 1e-5, fix[1], 1e-7);
+            assertEquals(50.1 - index * 1e-5, fix[2], 1e-7);
+            assertEquals(index % 90, fix[3], 0.01);
+        }
+        assertEquals(0, store.read(8, 0, Long.MAX_VALUE, (time, latitude, longitude, speed) -> { }));
+    }
+}
@@ -0,0 +1,43 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HaversineKernelTest {
+
+    @Test
+    void exactKernelMatchesPointwiseFormula() {
+        Random random = new Random(2);
+        int count = 10_000;
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            // Короткие отрезки вперемешку с длинными скачками
+            latitudes[i] = i > 0 && random.nextInt(10) > 0 ? latitudes[i - 1] + random.nextGaussian() * 1e-3
+                    : -80 + random.nextDouble() * 160;
+            longitudes[i] = i > 0 && random.nextInt(10) > 0 ? longitudes[i - 1] + random.nextGaussian() * 1e-3
+                    : -180 + random.nextDouble() * 360;
+        }
+
+        double[] lengths = new double[count - 1];
+        HaversineKernel.segmentLengths(latitudes, longitudes, 0, count, lengths, false);
+        double[] fastLengths = new double[count - 1];
+        HaversineKernel.segmentLengths(latitudes, longitudes, 0, count, fastLengths, true);
+        double expectedTotal = 0;
+        for (int i = 1; i < count; i++) {
+            double expected = GpsDistanceAccumulator.distance(latitudes[i - 1], longitudes[i - 1],
+                    latitudes[i], longitudes[i]);
+            expectedTotal += expected;
+            assertEquals(expected, lengths[i - 1], 0.0);
+            assertTrue(Math.abs(fastLengths[i - 1] - expected) <= HaversineKernel.FAST_PATH_RELATIVE_ERROR * expected,
+                    "segment " + i + ": " + fastLengths[i - 1] + " vs " + expected);
+        }
+        assertEquals(expectedTotal, HaversineKernel.pathLength(latitudes, longitudes, 0, count, false), 0.0);
+        assertEquals(expectedTotal, HaversineKernel.pathLength(latitudes, longitudes, 0, count, true),
+                HaversineKernel.FAST_PATH_RELATIVE_ERROR * expectedTotal);
+    }
+}
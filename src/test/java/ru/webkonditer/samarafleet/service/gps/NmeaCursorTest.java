@@ -0,0 +1,73 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NmeaCursorTest {
+
+    private final NmeaCursor cursor = new NmeaCursor();
+
+    @Test
+    void navigatesFieldsLikeSplit() {
+        NmeaCursor line = cursorOf("$GPGGA,123519.00,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47");
+
+        assertTrue(line.startsWith(NmeaCursor.GPGGA));
+        assertFalse(line.startsWith(NmeaCursor.GNVTG));
+        assertTrue(line.field(2));
+        assertEquals(4807.038, line.fieldAsDouble());
+        assertTrue(line.field(4));
+        assertEquals(1131.0, line.fieldAsDouble());
+        assertTrue(line.field(1));
+        assertEquals(123519.0, line.fieldAsDouble());
+        assertTrue(line.field(13));
+        assertTrue(line.isFieldEmpty());
+        assertFalse(line.field(15));
+    }
+
+    @Test
+    void parsesDoublesExactlyLikeDoubleParseDouble() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            String value = String.format(Locale.ROOT, "%." + random.nextInt(9) + "f",
+                    (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8)));
+            NmeaCursor line = cursorOf("$GNVTG," + value);
+            assertTrue(line.field(1));
+            assertEquals(Double.parseDouble(value), line.fieldAsDouble(), value);
+        }
+        for (String value : new String[]{"1e3", " 12.5", "+.5", "5.", "0.30000000000000004441", "1.5d"}) {
+            assertEquals(Double.parseDouble(value), cursorOf("x," + value).field(1) ? cursor.fieldAsDouble() : 0, value);
+        }
+        for (String value : new String[]{"", "-", ".", "12a5", "1.2.3", "abc"}) {
+            NmeaCursor line = cursorOf("x," + value + ",");
+            line.field(1);
+            assertTrue(Double.isNaN(line.fieldAsDouble()), value);
+        }
+    }
+
+    @Test
+    void parsesZdaDate() {
+        NmeaCursor line = cursorOf("$GNZDA,092751.000,23,11,2023,00,00*4A");
+
+        assertTrue(line.startsWith(NmeaCursor.GNZDA));
+        assertTrue(line.field(2));
+        assertEquals(23, line.fieldAsInt());
+        assertTrue(line.field(3));
+        assertEquals(11, line.fieldAsInt());
+        assertTrue(line.field(4));
+        assertEquals(2023, line.fieldAsInt());
+        assertTrue(line.field(6));
+        assertEquals(-1, line.fieldAsInt());
+    }
+
+    private NmeaCursor cursorOf(String line) {
+        byte[] bytes = ("  " + line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        return cursor.reset(bytes, 2, bytes.length - 2);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NmeaLineSplitterTest {
+
+    private final List<String> lines = new ArrayList<>();
+
+    private final NmeaLineSplitter splitter = new NmeaLineSplitter(
+            (buffer, from, to) -> lines.add(new String(buffer, from, to - from, StandardCharsets.US_ASCII)));
+
+    @Test
+    void overlongLineIsDroppedWhereverBufferBoundariesFall() {
+        byte[] data = ("$GPGGA,first\n" + "x".repeat(70_000) + "\n$GPGGA,last").getBytes(StandardCharsets.US_ASCII);
+
+        // Длинная строка целиком в одной порции
+        splitter.feed(data, 0, data.length);
+        splitter.finish();
+        assertEquals(List.of("$GPGGA,first", "$GPGGA,last"), lines);
+
+        // Та же строка, разрезанная между порциями
+        lines.clear();
+        for (int offset = 0; offset < data.length; offset += 1_000) {
+            splitter.feed(data, offset, Math.min(1_000, data.length - offset));
+        }
+        splitter.finish();
+        assertEquals(List.of("$GPGGA,first", "$GPGGA,last"), lines);
+    }
+}
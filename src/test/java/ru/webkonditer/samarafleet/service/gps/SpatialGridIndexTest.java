@@ -0,0 +1,126 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpatialGridIndexTest {
+
+    @Test
+    void queriesMatchFullScan() {
+        int count = 20_000;
+        CarPositionStore store = new CarPositionStore(count);
+        SpatialGridIndex index = new SpatialGridIndex(store, 0.01);
+        Random random = new Random(7);
+        for (long carId = 1; carId <= count; carId++) {
+            place(store, index, carId, 53 + random.nextDouble(), 50 + random.nextDouble());
+        }
+        // Часть автомобилей переезжает в другие клетки
+        for (long carId = 1; carId <= count; carId += 3) {
+            place(store, index, carId, 53 + random.nextDouble(), 50 + random.nextDouble());
+        }
+
+        for (int query = 0; query < 20; query++) {
+            double latitude = 53 + random.nextDouble();
+            double longitude = 50 + random.nextDouble();
+
+            List<Long> expected = scan(store).stream()
+                    .sorted(Comparator.comparingDouble(p -> distance(p, latitude, longitude)))
+                    .limit(10)
+                    .map(CarPositionStore.Position::getCarId)
+                    .collect(Collectors.toList());
+            List<Long> actual = index.nearest(latitude, longitude, 10, Double.POSITIVE_INFINITY).stream()
+                    .map(neighbor -> neighbor.getPosition().getCarId())
+                    .collect(Collectors.toList());
+            assertEquals(expected, actual);
+
+            Set<Long> expectedInRadius = scan(store).stream()
+                    .filter(p -> distance(p, latitude, longitude) <= 2)
+                    .map(CarPositionStore.Position::getCarId)
+                    .collect(Collectors.toSet());
+            Set<Long> actualInRadius = index.nearest(latitude, longitude, count, 2).stream()
+                    .map(neighbor -> neighbor.getPosition().getCarId())
+                    .collect(Collectors.toSet());
+            assertEquals(expectedInRadius, actualInRadius);
+
+            double maxLatitude = latitude + 0.05;
+            double maxLongitude = longitude + 0.08;
+            Set<Long> expectedInBox = scan(store).stream()
+                    .filter(p -> p.getLatitude() >= latitude && p.getLatitude() <= maxLatitude
+                            && p.getLongitude() >= longitude && p.getLongitude() <= maxLongitude)
+                    .map(CarPositionStore.Position::getCarId)
+                    .collect(Collectors.toSet());
+            Set<Long> actualInBox = index.within(latitude, longitude, maxLatitude, maxLongitude, count).stream()
+                    .map(CarPositionStore.Position::getCarId)
+                    .collect(Collectors.toSet());
+            assertEquals(expectedInBox, actualInBox);
+        }
+    }
+
+    @Test
+    void farAwayCarsAreFoundAndRemovedCarsAreNot() {
+        CarPositionStore store = new CarPositionStore(4);
+        SpatialGridIndex index = new SpatialGridIndex(store, 0.01);
+        place(store, index, 1, 53.2, 50.1);
+        place(store, index, 2, 55.7, 37.6);
+
+        // До второго автомобиля сотни клеток: поиск переходит на полный просмотр
+        List<SpatialGridIndex.Neighbor> nearest = index.nearest(55.0, 40.0, 2, Double.POSITIVE_INFINITY);
+        assertEquals(2, nearest.size());
+        assertEquals(2, nearest.get(0).getPosition().getCarId());
+
+        index.remove(store.remove(2));
+        assertEquals(1, index.nearest(55.0, 40.0, 2, Double.POSITIVE_INFINITY).size());
+        assertTrue(index.within(-90, -180, 90, 180, 10).stream().allMatch(p -> p.getCarId() == 1));
+        assertTrue(index.nearest(55.0, 40.0, 2, 100).isEmpty());
+    }
+
+    @Test
+    void emptyCellsAreDropped() {
+        CarPositionStore store = new CarPositionStore(4);
+        SpatialGridIndex index = new SpatialGridIndex(store, 0.01);
+        place(store, index, 2, 55.7, 37.6);
+        // Автомобиль проезжает сотню клеток: за ним не должны оставаться пустые клетки
+        for (int i = 0; i < 100; i++) {
+            place(store, index, 1, 53.2 + i * 0.01, 50.1);
+        }
+        assertEquals(2, index.getCellCount());
+
+        index.remove(store.remove(1));
+        index.remove(store.remove(2));
+        assertEquals(0, index.getCellCount());
+        assertTrue(index.within(-90, -180, 90, 180, 10).isEmpty());
+    }
+
+    private static void place(CarPositionStore store, SpatialGridIndex index, long carId,
+                              double latitude, double longitude) {
+        int slot = store.slotOf(carId);
+        CarPositionStore.Position position = new CarPositionStore.Position();
+        store.read(slot, position);
+        store.update(slot, position.getGeneration(), System.nanoTime(), latitude, longitude, 0);
+        index.update(slot, latitude, longitude);
+    }
+
+    private static List<CarPositionStore.Position> scan(CarPositionStore store) {
+        List<CarPositionStore.Position> positions = new ArrayList<>();
+        for (int slot = 0; slot < store.getAllocated(); slot++) {
+            CarPositionStore.Position position = new CarPositionStore.Position();
+            if (store.read(slot, position)) {
+                positions.add(position);
+            }
+        }
+        return positions;
+    }
+
+    private static double distance(CarPositionStore.Position position, double latitude, double longitude) {
+        return GpsDistanceAccumulator.distance(latitude, longitude, position.getLatitude(), position.getLongitude());
+    }
+}
@@ -0,0 +1,26 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StationaryFixFilterTest {
+
+    @Test
+    void onlyFirstFixOfStopIsPassed() {
+        List<Long> times = new ArrayList<>();
+        StationaryFixFilter filter = new StationaryFixFilter((time, lat, lon, speed) -> times.add(time));
+
+        double[] speeds = {0.2, 0.4, 30, 42, 0.3, 0, 0.49, 0, 12, 0};
+        for (int i = 0; i < speeds.length; i++) {
+            filter.onFix(i, 53.2, 50.1, speeds[i]);
+        }
+
+        assertEquals(List.of(0L, 2L, 3L, 4L, 8L, 9L), times);
+        assertEquals(speeds.length, filter.getInputCount());
+        assertEquals(times.size(), filter.getOutputCount());
+    }
+}
@@ -0,0 +1,189 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackSimplifierTest {
+
+    // Длина градуса меридиана в метрах
+    private static final double METERS_PER_DEGREE = Math.PI * 6371_000.0 / 180;
+
+    @Test
+    void distanceStaysWithinDocumentedBound() {
+        // Машина едет по плавно поворачивающей дороге 15 м/с, точка в секунду, шум координат около метра
+        Random random = new Random(5);
+        List<double[]> track = new ArrayList<>();
+        double latitude = 53.2;
+        double longitude = 50.1;
+        double heading = 0;
+        for (int i = 0; i < 20_000; i++) {
+            heading += random.nextGaussian() * 0.02;
+            latitude += 15 * Math.cos(heading) / METERS_PER_DEGREE;
+            longitude += 15 * Math.sin(heading) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+            track.add(new double[]{i * 1_000L,
+                    latitude + random.nextGaussian() / METERS_PER_DEGREE,
+                    longitude + random.nextGaussian() / METERS_PER_DEGREE, 54});
+        }
+
+        double tolerance = 5;
+        List<double[]> simplified = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(tolerance,
+                (time, lat, lon, speed) -> simplified.add(new double[]{time, lat, lon, speed}));
+        for (double[] fix : track) {
+            simplifier.onFix((long) fix[0], fix[1], fix[2], fix[3]);
+        }
+        simplifier.finish();
+
+        assertEquals(track.size(), simplifier.getInputCount());
+        assertEquals(simplified.size(), simplifier.getOutputCount());
+        assertTrue(simplified.size() * 10 <= track.size(), "kept " + simplified.size() + " of " + track.size());
+        assertEquals(track.get(0)[0], simplified.get(0)[0]);
+        assertEquals(track.get(track.size() - 1)[0], simplified.get(simplified.size() - 1)[0]);
+
+        // Каждая отброшенная точка лежит не дальше допуска от хорды между соседними сохраненными
+        int next = 0;
+        for (int i = 1; i < simplified.size(); i++) {
+            double[] from = simplified.get(i - 1);
+            double[] to = simplified.get(i);
+            while (track.get(next)[0] < from[0]) {
+                next++;
+            }
+            for (next++; track.get(next)[0] < to[0]; next++) {
+                double deviation = distanceToChord(track.get(next), from, to);
+                assertTrue(deviation <= tolerance + 1e-6, "point " + next + " is " + deviation + " m off its chord");
+            }
+        }
+
+        assertShortenedWithinBound(track, simplified);
+    }
+
+    @Test
+    void stopNoiseStaysWithinBound() {
+        // Машина стоит, шум координат около метра - больше шага и сравним с допуском
+        Random random = new Random(6);
+        List<double[]> track = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            track.add(new double[]{i * 1_000L, 53.2 + random.nextGaussian() / METERS_PER_DEGREE,
+                    50.1 + random.nextGaussian() / METERS_PER_DEGREE, 0});
+        }
+
+        List<double[]> simplified = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(3,
+                (time, lat, lon, speed) -> simplified.add(new double[]{time, lat, lon, speed}));
+        for (double[] fix : track) {
+            simplifier.onFix((long) fix[0], fix[1], fix[2], fix[3]);
+        }
+        simplifier.finish();
+
+        assertShortenedWithinBound(track, simplified);
+    }
+
+    @Test
+    void chordsDoNotJoinStopsAndDriving() {
+        // Стоянка, прямой выезд 15 м/с, стоянка; шум координат около метра
+        Random random = new Random(7);
+        List<double[]> track = new ArrayList<>();
+        double latitude = 53.2;
+        for (int i = 0; i < 1_200; i++) {
+            boolean moving = i >= 300 && i < 900;
+            if (moving) {
+                latitude += 15 / METERS_PER_DEGREE;
+            }
+            track.add(new double[]{i * 1_000L, latitude + random.nextGaussian() / METERS_PER_DEGREE,
+                    50.1 + random.nextGaussian() / METERS_PER_DEGREE, moving ? 54 : 0.3});
+        }
+
+        List<double[]> simplified = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(3,
+                (time, lat, lon, speed) -> simplified.add(new double[]{time, lat, lon, speed}));
+        for (double[] fix : track) {
+            simplifier.onFix((long) fix[0], fix[1], fix[2], fix[3]);
+        }
+        simplifier.finish();
+
+        // Все начала отрезков под хордой движутся или стоят так же, как ее начало
+        int next = 0;
+        for (int i = 1; i < simplified.size(); i++) {
+            double[] from = simplified.get(i - 1);
+            double[] to = simplified.get(i);
+            while (track.get(next)[0] < from[0]) {
+                next++;
+            }
+            for (; track.get(next)[0] < to[0]; next++) {
+                assertTrue((from[3] > 0.5) == (track.get(next)[3] > 0.5), "chord from " + from[0] + " to " + to[0]);
+            }
+        }
+
+        double full = movingLength(track);
+        double reduced = movingLength(simplified);
+        assertTrue(reduced <= full + 1e-9);
+        assertTrue((full - reduced) / full <= TrackSimplifier.MAX_SHORTENING + 1e-4,
+                "full " + full + " km, simplified " + reduced + " km");
+    }
+
+    @Test
+    void straightLineKeepsOnlyWindowBoundaries() {
+        List<Long> kept = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(1, (time, lat, lon, speed) -> kept.add(time));
+        int count = 3 * TrackSimplifier.MAX_WINDOW + 10;
+        for (int i = 0; i < count; i++) {
+            simplifier.onFix(i, 53.2 + i * 1e-4, 50.1, 0);
+        }
+        simplifier.finish();
+
+        // Первая точка, по точке на каждое заполненное окно и последняя
+        assertEquals(List.of(0L, 128L, 256L, 384L, (long) count - 1), kept);
+    }
+
+    private static void assertShortenedWithinBound(List<double[]> track, List<double[]> simplified) {
+        double full = length(track);
+        double reduced = length(simplified);
+        assertTrue(reduced <= full + 1e-9);
+        // Запас на разницу между локальной проекцией и расстоянием по гаверсинусу
+        assertTrue((full - reduced) / full <= TrackSimplifier.MAX_SHORTENING + 1e-4,
+                "full " + full + " km, simplified " + reduced + " km");
+    }
+
+    /**
+     * Расстояние в метрах от точки до отрезка в равнопромежуточной проекции вокруг его начала.
+     */
+    private static double distanceToChord(double[] point, double[] from, double[] to) {
+        double scale = METERS_PER_DEGREE * Math.cos(Math.toRadians(from[1]));
+        double x = (to[2] - from[2]) * scale;
+        double y = (to[1] - from[1]) * METERS_PER_DEGREE;
+        double px = (point[2] - from[2]) * scale;
+        double py = (point[1] - from[1]) * METERS_PER_DEGREE;
+        double lengthSquared = x * x + y * y;
+        double t = lengthSquared > 0 ? Math.max(0, Math.min(1, (px * x + py * y) / lengthSquared)) : 0;
+        return Math.hypot(px - t * x, py - t * y);
+    }
+
+    /**
+     * Длина пути по правилу дистанции лога: отрезок учитывается, если скорость в его начале не округляется до 0.
+     */
+    private static double movingLength(List<double[]> track) {
+        double distance = 0;
+        for (int i = 1; i < track.size(); i++) {
+            if (Math.round(track.get(i - 1)[3]) > 0) {
+                distance += GpsDistanceAccumulator.distance(track.get(i - 1)[1], track.get(i - 1)[2],
+                        track.get(i)[1], track.get(i)[2]);
+            }
+        }
+        return distance;
+    }
+
+    private static double length(List<double[]> track) {
+        double distance = 0;
+        for (int i = 1; i < track.size(); i++) {
+            distance += GpsDistanceAccumulator.distance(track.get(i - 1)[1], track.get(i - 1)[2],
+                    track.get(i)[1], track.get(i)[2]);
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.webkonditer.samarafleet.service.gps;
+
+import org.junit.jupiter.api.Test;
+import ru.webkonditer.samarafleet.dto.GpsTrip;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TripSegmenterTest {
+
+    private static final long MINUTE = 60_000;
+
+    private final TripSegmenter segmenter = new TripSegmenter(5, 5 * MINUTE);
+
+    @Test
+    void creepDuringClosingStopIsNotCounted() {
+        drive(0, 2);
+        // Стоянка с дрейфом координат, завершающая поездку
+        segmenter.onFix(2 * MINUTE, 53.2, 50.1, 0);
+        segmenter.onSegment(0.05);
+        segmenter.onFix(3 * MINUTE, 53.2, 50.1, 1);
+        segmenter.onSegment(0.05);
+        segmenter.onFix(7 * MINUTE, 53.2, 50.1, 0);
+        segmenter.finish();
+
+        GpsTrip trip = segmenter.getTrips().get(0);
+        assertEquals(1, segmenter.getTrips().size());
+        assertEquals(Instant.ofEpochMilli(2 * MINUTE), trip.getEndTime());
+        assertEquals(2.0, trip.getDistance(), 1e-12);
+        assertEquals(60.0, trip.getAverageSpeed(), 1e-9);
+    }
+
+    @Test
+    void creepDuringShortStopIsCounted() {
+        drive(0, 2);
+        segmenter.onFix(2 * MINUTE, 53.2, 50.1, 0);
+        segmenter.onSegment(0.05);
+        // Машина поехала раньше минимальной длительности стоянки
+        drive(3 * MINUTE, 2);
+        segmenter.finish();
+
+        List<GpsTrip> trips = segmenter.getTrips();
+        assertEquals(1, trips.size());
+        assertEquals(4.05, trips.get(0).getDistance(), 1e-12);
+        assertEquals(60, trips.get(0).getIdleSeconds());
+    }
+
+    @Test
+    void finishInsideStopDropsCreep() {
+        drive(0, 2);
+        segmenter.onFix(2 * MINUTE, 53.2, 50.1, 0);
+        segmenter.onSegment(0.05);
+        segmenter.finish();
+
+        assertEquals(2.0, segmenter.getTrips().get(0).getDistance(), 1e-12);
+    }
+
+    /**
+     * Подает минуты движения со скоростью 60 км/ч: по точке и отрезку в 1 км на каждую минуту.
+     */
+    private void drive(long fromMillis, int minutes) {
+        for (int i = 0; i < minutes; i++) {
+            segmenter.onFix(fromMillis + i * MINUTE, 53.2, 50.1, 60);
+            segmenter.onSegment(1.0);
+        }
+    }
+}